@@ -0,0 +1,575 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.GraphSnapshot;
+import it.wolfed.model.InterfaceVertex;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.PlaceVertex;
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Int-indexed, immutable compilation of a {@link PetriNetGraph}.
+ *
+ * Places (interfaces included, as in the PNML export) and transitions are
+ * numbered 0..n-1; presets and postsets are stored as compressed rows with
+ * their arc weights, in both directions, so the behavioural engines never
+ * touch the mxGraph model.
+ */
+public class CompiledNet
+{
+    /**
+     * Places by index (PlaceVertex or InterfaceVertex).
+     */
+    private final Vertex[] places;
+
+    /**
+     * Transitions by index.
+     */
+    private final TransitionVertex[] transitions;
+
+    /**
+     * Initial marking, from {@link PlaceVertex#getTokens()}.
+     */
+    private final int[] initialMarking;
+
+    /**
+     * Input places (and weights) of each transition.
+     */
+    private final int[] presetStart, preset, presetWeight;
+
+    /**
+     * Output places (and weights) of each transition.
+     */
+    private final int[] postsetStart, postset, postsetWeight;
+
+    /**
+     * Transitions consuming from each place.
+     */
+    private final int[] consumersStart, consumers;
+
+    /**
+     * Transitions producing in each place.
+     */
+    private final int[] producersStart, producers;
+
+    /**
+     * {@link CompiledNet} Constructor.
+     *
+     * @param places
+     * @param transitions
+     * @param initialMarking
+     * @param arcSources        arc sources (place or transition index)
+     * @param arcTargets        arc targets (place or transition index)
+     * @param arcFromPlace      true for place -> transition arcs
+     * @param arcCount
+     */
+    CompiledNet(Vertex[] places, TransitionVertex[] transitions, int[] initialMarking,
+            int[] arcSources, int[] arcTargets, boolean[] arcFromPlace, int arcCount)
+    {
+        this.places = places;
+        this.transitions = transitions;
+        this.initialMarking = initialMarking;
+
+        int[][] in = group(transitions.length, arcTargets, arcSources, arcFromPlace, true, arcCount);
+        presetStart = in[0];
+        preset = in[1];
+        presetWeight = in[2];
+
+        int[][] out = group(transitions.length, arcSources, arcTargets, arcFromPlace, false, arcCount);
+        postsetStart = out[0];
+        postset = out[1];
+        postsetWeight = out[2];
+
+        int[][] consumed = group(places.length, arcSources, arcTargets, arcFromPlace, true, arcCount);
+        consumersStart = consumed[0];
+        consumers = consumed[1];
+
+        int[][] produced = group(places.length, arcTargets, arcSources, arcFromPlace, false, arcCount);
+        producersStart = produced[0];
+        producers = produced[1];
+    }
+
+    /**
+     * {@link CompiledNet} Constructor (same structure, another marking).
+     *
+     * @param net
+     * @param initialMarking
+     */
+    private CompiledNet(CompiledNet net, int[] initialMarking)
+    {
+        this.places = net.places;
+        this.transitions = net.transitions;
+        this.initialMarking = initialMarking;
+        this.presetStart = net.presetStart;
+        this.preset = net.preset;
+        this.presetWeight = net.presetWeight;
+        this.postsetStart = net.postsetStart;
+        this.postset = net.postset;
+        this.postsetWeight = net.postsetWeight;
+        this.consumersStart = net.consumersStart;
+        this.consumers = net.consumers;
+        this.producersStart = net.producersStart;
+        this.producers = net.producers;
+    }
+
+    /**
+     * Compiles a graph.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     * @return CompiledNet
+     */
+    public static CompiledNet compile(PetriNetGraph graph)
+    {
+        return compile(new GraphSnapshot(graph));
+    }
+
+    /**
+     * Compiles a graph snapshot (on any thread).
+     *
+     * @param snapshot
+     * @return CompiledNet
+     */
+    public static CompiledNet compile(GraphSnapshot snapshot)
+    {
+        List<Vertex> places = new ArrayList<>();
+        List<TransitionVertex> transitions = new ArrayList<>();
+        int[] placeTokens = new int[snapshot.getVertexCount()];
+        Map<Object, Integer> indexes = new HashMap<>();
+
+        for (int i = 0; i < snapshot.getVertexCount(); i++)
+        {
+            Object cell = snapshot.getVertex(i);
+
+            if(cell instanceof PlaceVertex || cell instanceof InterfaceVertex)
+            {
+                placeTokens[places.size()] = snapshot.getTokens(i);
+                indexes.put(cell, places.size());
+                places.add((Vertex) cell);
+            }
+            else if(cell instanceof TransitionVertex)
+            {
+                indexes.put(cell, transitions.size());
+                transitions.add((TransitionVertex) cell);
+            }
+        }
+
+        int edgeCount = snapshot.getEdgeCount();
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        boolean[] fromPlace = new boolean[edgeCount];
+        int arcCount = 0;
+
+        for (int e = 0; e < edgeCount; e++)
+        {
+            Object source = snapshot.getSource(e);
+            Object target = snapshot.getTarget(e);
+            Integer sourceIndex = indexes.get(source);
+            Integer targetIndex = indexes.get(target);
+
+            // Only place -> transition and transition -> place arcs
+            if(sourceIndex == null || targetIndex == null
+                || (source instanceof TransitionVertex) == (target instanceof TransitionVertex))
+            {
+                continue;
+            }
+
+            sources[arcCount] = sourceIndex;
+            targets[arcCount] = targetIndex;
+            fromPlace[arcCount] = ! (source instanceof TransitionVertex);
+            arcCount++;
+        }
+
+        int[] initialMarking = Arrays.copyOf(placeTokens, places.size());
+
+        return new CompiledNet(
+            places.toArray(new Vertex[places.size()]),
+            transitions.toArray(new TransitionVertex[transitions.size()]),
+            initialMarking,
+            sources,
+            targets,
+            fromPlace,
+            arcCount
+        );
+    }
+
+    /**
+     * Groups the arcs of one direction by row, merging parallel arcs in weights.
+     *
+     * @param rows
+     * @param rowOf
+     * @param columnOf
+     * @param fromPlace
+     * @param direction     the arcFromPlace value to select
+     * @param arcCount
+     * @return int[][] {start, columns, weights}
+     */
+    private static int[][] group(int rows, int[] rowOf, int[] columnOf, boolean[] fromPlace,
+            boolean direction, int arcCount)
+    {
+        int[] start = new int[rows + 1];
+
+        for (int a = 0; a < arcCount; a++)
+        {
+            if(fromPlace[a] == direction)
+            {
+                start[rowOf[a] + 1]++;
+            }
+        }
+
+        for (int r = 0; r < rows; r++)
+        {
+            start[r + 1] += start[r];
+        }
+
+        int[] columns = new int[start[rows]];
+        int[] weights = new int[start[rows]];
+        int[] fill = new int[rows];
+
+        for (int a = 0; a < arcCount; a++)
+        {
+            if(fromPlace[a] != direction)
+            {
+                continue;
+            }
+
+            int row = rowOf[a];
+            boolean merged = false;
+
+            for (int k = start[row]; k < start[row] + fill[row]; k++)
+            {
+                if(columns[k] == columnOf[a])
+                {
+                    weights[k]++;
+                    merged = true;
+                    break;
+                }
+            }
+
+            if( ! merged)
+            {
+                columns[start[row] + fill[row]] = columnOf[a];
+                weights[start[row] + fill[row]] = 1;
+                fill[row]++;
+            }
+        }
+
+        // Compact rows shrunk by merged arcs
+        int[] compactStart = new int[rows + 1];
+        int size = 0;
+
+        for (int r = 0; r < rows; r++)
+        {
+            compactStart[r] = size;
+            System.arraycopy(columns, start[r], columns, size, fill[r]);
+            System.arraycopy(weights, start[r], weights, size, fill[r]);
+            size += fill[r];
+        }
+
+        compactStart[rows] = size;
+
+        return new int[][] {
+            compactStart,
+            Arrays.copyOf(columns, size),
+            Arrays.copyOf(weights, size)
+        };
+    }
+
+    /**
+     * Returns the number of places.
+     *
+     * @return int
+     */
+    public int getPlaceCount()
+    {
+        return places.length;
+    }
+
+    /**
+     * Returns the number of transitions.
+     *
+     * @return int
+     */
+    public int getTransitionCount()
+    {
+        return transitions.length;
+    }
+
+    /**
+     * Returns the place at index.
+     *
+     * @param place
+     * @return Vertex
+     */
+    public Vertex getPlace(int place)
+    {
+        return places[place];
+    }
+
+    /**
+     * Returns the transition at index.
+     *
+     * @param transition
+     * @return TransitionVertex
+     */
+    public TransitionVertex getTransition(int transition)
+    {
+        return transitions[transition];
+    }
+
+    /**
+     * Returns the index of a place, -1 if not found.
+     *
+     * @param place
+     * @return int
+     */
+    public int indexOfPlace(Object place)
+    {
+        for (int p = 0; p < places.length; p++)
+        {
+            if(places[p] == place)
+            {
+                return p;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns a copy of the initial marking.
+     *
+     * @return int[]
+     */
+    public int[] getInitialMarking()
+    {
+        return initialMarking.clone();
+    }
+
+    /**
+     * Returns the same net with another initial marking.
+     *
+     * @param marking
+     * @return CompiledNet
+     */
+    public CompiledNet withInitialMarking(int[] marking)
+    {
+        return new CompiledNet(this, marking.clone());
+    }
+
+    /**
+     * Returns the net short-circuited: one more transition, with a null
+     * vertex, moving a token from finalPlace to initialPlace.
+     *
+     * @param finalPlace
+     * @param initialPlace
+     * @return CompiledNet
+     */
+    CompiledNet withShortCircuit(int finalPlace, int initialPlace)
+    {
+        int arcCount = 2;
+
+        for (int weight : presetWeight)
+        {
+            arcCount += weight;
+        }
+
+        for (int weight : postsetWeight)
+        {
+            arcCount += weight;
+        }
+
+        // One arc per unit of weight, merged back by the grouping
+        int[] sources = new int[arcCount];
+        int[] targets = new int[arcCount];
+        boolean[] fromPlace = new boolean[arcCount];
+        int size = 0;
+
+        for (int t = 0; t < transitions.length; t++)
+        {
+            for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+            {
+                for (int w = 0; w < presetWeight[k]; w++)
+                {
+                    sources[size] = preset[k];
+                    targets[size] = t;
+                    fromPlace[size++] = true;
+                }
+            }
+
+            for (int k = postsetStart[t]; k < postsetStart[t + 1]; k++)
+            {
+                for (int w = 0; w < postsetWeight[k]; w++)
+                {
+                    sources[size] = t;
+                    targets[size] = postset[k];
+                    fromPlace[size++] = false;
+                }
+            }
+        }
+
+        sources[size] = finalPlace;
+        targets[size] = transitions.length;
+        fromPlace[size++] = true;
+        sources[size] = transitions.length;
+        targets[size] = initialPlace;
+        fromPlace[size++] = false;
+
+        return new CompiledNet(
+            places,
+            Arrays.copyOf(transitions, transitions.length + 1),
+            initialMarking.clone(),
+            sources,
+            targets,
+            fromPlace,
+            arcCount
+        );
+    }
+
+    /**
+     * Returns if a transition is enabled in marking.
+     *
+     * @param transition
+     * @param marking
+     * @return boolean
+     */
+    public boolean isEnabled(int transition, int[] marking)
+    {
+        for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+        {
+            if(marking[preset[k]] < presetWeight[k])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fires a transition, updating marking in place.
+     *
+     * The transition must be enabled.
+     *
+     * @param transition
+     * @param marking
+     */
+    public void fire(int transition, int[] marking)
+    {
+        for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+        {
+            marking[preset[k]] -= presetWeight[k];
+        }
+
+        for (int k = postsetStart[transition]; k < postsetStart[transition + 1]; k++)
+        {
+            marking[postset[k]] += postsetWeight[k];
+        }
+    }
+
+    /**
+     * Row offsets of the transitions presets.
+     *
+     * @return int[]
+     */
+    public int[] getPresetStart()
+    {
+        return presetStart;
+    }
+
+    /**
+     * Input places, grouped by transition.
+     *
+     * @return int[]
+     */
+    public int[] getPreset()
+    {
+        return preset;
+    }
+
+    /**
+     * Input arc weights, aligned with {@link CompiledNet#getPreset()}.
+     *
+     * @return int[]
+     */
+    public int[] getPresetWeight()
+    {
+        return presetWeight;
+    }
+
+    /**
+     * Row offsets of the transitions postsets.
+     *
+     * @return int[]
+     */
+    public int[] getPostsetStart()
+    {
+        return postsetStart;
+    }
+
+    /**
+     * Output places, grouped by transition.
+     *
+     * @return int[]
+     */
+    public int[] getPostset()
+    {
+        return postset;
+    }
+
+    /**
+     * Output arc weights, aligned with {@link CompiledNet#getPostset()}.
+     *
+     * @return int[]
+     */
+    public int[] getPostsetWeight()
+    {
+        return postsetWeight;
+    }
+
+    /**
+     * Row offsets of the places consumers.
+     *
+     * @return int[]
+     */
+    public int[] getConsumersStart()
+    {
+        return consumersStart;
+    }
+
+    /**
+     * Transitions consuming from a place, grouped by place.
+     *
+     * @return int[]
+     */
+    public int[] getConsumers()
+    {
+        return consumers;
+    }
+
+    /**
+     * Row offsets of the places producers.
+     *
+     * @return int[]
+     */
+    public int[] getProducersStart()
+    {
+        return producersStart;
+    }
+
+    /**
+     * Transitions producing in a place, grouped by place.
+     *
+     * @return int[]
+     */
+    public int[] getProducers()
+    {
+        return producers;
+    }
+}
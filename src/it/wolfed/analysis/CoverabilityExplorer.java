@@ -0,0 +1,306 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import java.util.Arrays;
+
+/**
+ * Karp-Miller coverability graph.
+ *
+ * A breadth-first search like {@link ReachabilityExplorer}, on the same
+ * {@link MarkingStore}: when a new marking strictly covers a marking on
+ * its path from the initial one, the grown places are accelerated to
+ * {@link MarkingStore#OMEGA}. The search always terminates; the node
+ * budget bounds its memory anyway, and it can stop at the first unbounded
+ * place found.
+ */
+public class CoverabilityExplorer
+{
+    /**
+     * Default node budget.
+     */
+    public static final int DEFAULT_MAX_NODES = 1000000;
+
+    private final CompiledNet net;
+
+    private int maxNodes = DEFAULT_MAX_NODES;
+
+    private boolean stopOnUnbounded;
+
+    /**
+     * {@link CoverabilityExplorer} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public CoverabilityExplorer(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph));
+    }
+
+    /**
+     * {@link CoverabilityExplorer} Constructor.
+     *
+     * @param net
+     */
+    public CoverabilityExplorer(CompiledNet net)
+    {
+        this.net = net;
+    }
+
+    /**
+     * Sets the node budget.
+     *
+     * @param maxNodes
+     * @return CoverabilityExplorer
+     */
+    public CoverabilityExplorer setMaxNodes(int maxNodes)
+    {
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Sets if the search stops at the first unbounded place.
+     *
+     * @param stopOnUnbounded
+     * @return CoverabilityExplorer
+     */
+    public CoverabilityExplorer setStopOnUnbounded(boolean stopOnUnbounded)
+    {
+        this.stopOnUnbounded = stopOnUnbounded;
+        return this;
+    }
+
+    /**
+     * Builds the coverability graph.
+     *
+     * @return CoverabilityGraph
+     */
+    public CoverabilityGraph explore()
+    {
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+        MarkingStore store = new MarkingStore(places);
+
+        int[] predecessorState = new int[1024];
+        int[] predecessorTransition = new int[1024];
+        int[] edgeStart = new int[1024];
+        int[] edgeTarget = new int[4096];
+        int[] edgeTransition = new int[4096];
+        int[] deadlocks = new int[16];
+        int deadlockCount = 0;
+        int edgeCount = 0;
+        boolean complete = true;
+        boolean[] unbounded = new boolean[places];
+        int witness = -1;
+
+        long[] supports = new long[1024];
+        int[] marking = new int[places];
+        int[] successor = new int[places];
+        int[] ancestor = new int[places];
+
+        store.add(net.getInitialMarking());
+        supports[0] = support(net.getInitialMarking());
+        predecessorState[0] = -1;
+        predecessorTransition[0] = -1;
+
+        int expanded = 0;
+
+        search:
+        for (; expanded < store.size(); expanded++)
+        {
+            store.get(expanded, marking);
+            edgeStart = ReachabilityExplorer.ensure(edgeStart, expanded + 2);
+            edgeStart[expanded] = edgeCount;
+
+            boolean dead = true;
+
+            for (int t = 0; t < transitions; t++)
+            {
+                if( ! net.isEnabled(t, marking))
+                {
+                    continue;
+                }
+
+                dead = false;
+                fire(t, marking, successor);
+
+                boolean accelerated = accelerate(store, expanded, successor, ancestor, predecessorState, supports);
+                int state = store.indexOf(successor);
+
+                if(state == -1)
+                {
+                    if(store.size() >= maxNodes)
+                    {
+                        // Over the budget: the successor is dropped
+                        complete = false;
+                        continue;
+                    }
+
+                    state = store.add(successor);
+                    predecessorState = ReachabilityExplorer.ensure(predecessorState, state + 1);
+                    predecessorTransition = ReachabilityExplorer.ensure(predecessorTransition, state + 1);
+                    predecessorState[state] = expanded;
+                    predecessorTransition[state] = t;
+
+                    if(state >= supports.length)
+                    {
+                        supports = Arrays.copyOf(supports, supports.length + (supports.length >> 1));
+                    }
+
+                    supports[state] = support(successor);
+
+                    if(accelerated)
+                    {
+                        for (int p = 0; p < places; p++)
+                        {
+                            unbounded[p] = unbounded[p] || successor[p] == MarkingStore.OMEGA;
+                        }
+
+                        if(witness == -1)
+                        {
+                            witness = state;
+                        }
+                    }
+                }
+
+                edgeTarget = ReachabilityExplorer.ensure(edgeTarget, edgeCount + 1);
+                edgeTransition = ReachabilityExplorer.ensure(edgeTransition, edgeCount + 1);
+                edgeTarget[edgeCount] = state;
+                edgeTransition[edgeCount] = t;
+                edgeCount++;
+
+                if(witness != -1 && stopOnUnbounded)
+                {
+                    complete = false;
+                    expanded++;
+                    break search;
+                }
+            }
+
+            if(dead)
+            {
+                deadlocks = ReachabilityExplorer.ensure(deadlocks, deadlockCount + 1);
+                deadlocks[deadlockCount++] = expanded;
+            }
+        }
+
+        edgeStart = ReachabilityExplorer.ensure(edgeStart, store.size() + 1);
+        Arrays.fill(edgeStart, expanded, store.size() + 1, edgeCount);
+
+        return new CoverabilityGraph(
+            net,
+            store,
+            Arrays.copyOf(predecessorState, store.size()),
+            Arrays.copyOf(predecessorTransition, store.size()),
+            Arrays.copyOf(edgeStart, store.size() + 1),
+            Arrays.copyOf(edgeTarget, edgeCount),
+            Arrays.copyOf(edgeTransition, edgeCount),
+            edgeCount,
+            Arrays.copyOf(deadlocks, deadlockCount),
+            complete,
+            unbounded,
+            witness
+        );
+    }
+
+    /**
+     * Fires a transition on an omega-marking (omega places stay omega).
+     *
+     * @param transition
+     * @param marking
+     * @param successor
+     */
+    private void fire(int transition, int[] marking, int[] successor)
+    {
+        System.arraycopy(marking, 0, successor, 0, marking.length);
+        net.fire(transition, successor);
+
+        for (int p = 0; p < marking.length; p++)
+        {
+            if(marking[p] == MarkingStore.OMEGA)
+            {
+                successor[p] = MarkingStore.OMEGA;
+            }
+        }
+    }
+
+    /**
+     * Returns the marked places, folded on 64 bits.
+     *
+     * If a marking covers another, its support includes the other support.
+     *
+     * @param marking
+     * @return long
+     */
+    private static long support(int[] marking)
+    {
+        long support = 0;
+
+        for (int p = 0; p < marking.length; p++)
+        {
+            if(marking[p] != 0)
+            {
+                support |= 1L << (p & 63);
+            }
+        }
+
+        return support;
+    }
+
+    /**
+     * Sets to omega the places where successor strictly grows over an
+     * ancestor of parent (parent included).
+     *
+     * @param store
+     * @param parent
+     * @param successor
+     * @param ancestor          scratch buffer
+     * @param predecessorState
+     * @param supports
+     * @return boolean          true if some place has been accelerated
+     */
+    private boolean accelerate(MarkingStore store, int parent, int[] successor, int[] ancestor,
+            int[] predecessorState, long[] supports)
+    {
+        boolean accelerated = false;
+        long support = support(successor);
+
+        for (int state = parent; state != -1; state = predecessorState[state])
+        {
+            // A marked place of the ancestor is empty: no covering
+            if((supports[state] & ~support) != 0)
+            {
+                continue;
+            }
+
+            store.get(state, ancestor);
+
+            boolean covers = true;
+            boolean strictly = false;
+
+            for (int p = 0; p < successor.length && covers; p++)
+            {
+                covers = successor[p] >= ancestor[p];
+                strictly = strictly || successor[p] > ancestor[p];
+            }
+
+            if( ! covers || ! strictly)
+            {
+                continue;
+            }
+
+            for (int p = 0; p < successor.length; p++)
+            {
+                if(successor[p] > ancestor[p] && successor[p] != MarkingStore.OMEGA)
+                {
+                    successor[p] = MarkingStore.OMEGA;
+                    accelerated = true;
+                }
+            }
+        }
+
+        return accelerated;
+    }
+}
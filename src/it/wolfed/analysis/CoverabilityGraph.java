@@ -0,0 +1,107 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coverability graph of a {@link CompiledNet}, as built by {@link CoverabilityExplorer}.
+ *
+ * Markings may hold {@link MarkingStore#OMEGA} on the unbounded places.
+ */
+public class CoverabilityGraph extends ReachabilityGraph
+{
+    /**
+     * Places found unbounded, by index.
+     */
+    private final boolean[] unbounded;
+
+    /**
+     * First state with an omega, -1 if none.
+     */
+    private final int witness;
+
+    /**
+     * {@link CoverabilityGraph} Constructor.
+     *
+     * @param net
+     * @param store
+     * @param predecessorState
+     * @param predecessorTransition
+     * @param edgeStart
+     * @param edgeTarget
+     * @param edgeTransition
+     * @param edgeCount
+     * @param deadlocks
+     * @param complete
+     * @param unbounded
+     * @param witness
+     */
+    CoverabilityGraph(CompiledNet net, MarkingStore store,
+            int[] predecessorState, int[] predecessorTransition,
+            int[] edgeStart, int[] edgeTarget, int[] edgeTransition, long edgeCount,
+            int[] deadlocks, boolean complete, boolean[] unbounded, int witness)
+    {
+        super(net, store, predecessorState, predecessorTransition,
+            edgeStart, edgeTarget, edgeTransition, edgeCount, edgeCount, deadlocks, complete);
+
+        this.unbounded = unbounded;
+        this.witness = witness;
+    }
+
+    /**
+     * Returns if no place has been found unbounded.
+     *
+     * Conclusive only if the graph is complete, or the net is unbounded.
+     *
+     * @return boolean
+     */
+    public boolean isBounded()
+    {
+        return witness == -1;
+    }
+
+    /**
+     * Returns the places found unbounded.
+     *
+     * @return List<Vertex>
+     */
+    public List<Vertex> getUnboundedPlaces()
+    {
+        List<Vertex> places = new ArrayList<>();
+
+        for (int p = 0; p < unbounded.length; p++)
+        {
+            if(unbounded[p])
+            {
+                places.add(getNet().getPlace(p));
+            }
+        }
+
+        return Collections.unmodifiableList(places);
+    }
+
+    /**
+     * Returns if the place at index has been found unbounded.
+     *
+     * @param place
+     * @return boolean
+     */
+    public boolean isUnbounded(int place)
+    {
+        return unbounded[place];
+    }
+
+    /**
+     * Returns the first state with an omega, -1 if bounded.
+     *
+     * Its trace ends with the firing that pumps the tokens.
+     *
+     * @return int
+     */
+    public int getUnboundedWitness()
+    {
+        return witness;
+    }
+}
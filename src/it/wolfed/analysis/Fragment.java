@@ -0,0 +1,323 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single-entry single-exit fragment of a {@link ProcessStructureTree}.
+ *
+ * A fragment is bounded by an entry and an exit node (place or
+ * transition), shared with the enclosing fragment; its children are the
+ * fragments it is made of, its interior the nodes it absorbs at this
+ * level. The blocks match the operations:
+ *
+ * TRIVIAL: a single arc.
+ * SEQUENCE: children chained through the interior nodes.
+ * PARALLEL: children from an and-split to an and-join (transitions).
+ * CHOICE: children from a xor-split to a xor-join (places).
+ * LOOP: children from entry to exit (forward) and back (backward); a loop
+ * on a single node has the same entry and exit.
+ * RIGID: any other fragment.
+ *
+ * Node indexes are those of the {@link CompiledNet}: places first, then
+ * transitions (place count + transition index).
+ */
+public class Fragment
+{
+    /**
+     * The kinds of fragment.
+     */
+    public enum Type
+    {
+        TRIVIAL,
+        SEQUENCE,
+        PARALLEL,
+        CHOICE,
+        LOOP,
+        RIGID
+    }
+
+    private final Type type;
+
+    private final CompiledNet net;
+
+    private final int entry;
+
+    private final int exit;
+
+    /**
+     * Weight of a TRIVIAL arc.
+     */
+    private final int weight;
+
+    private final List<Fragment> children;
+
+    /**
+     * Nodes absorbed at this level.
+     */
+    private final int[] interior;
+
+    private final long hash;
+
+    private Fragment parent;
+
+    /**
+     * {@link Fragment} Constructor.
+     *
+     * @param type
+     * @param net
+     * @param entry
+     * @param exit
+     * @param weight
+     * @param children
+     * @param interior
+     * @param hash
+     */
+    Fragment(Type type, CompiledNet net, int entry, int exit, int weight, List<Fragment> children,
+            int[] interior, long hash)
+    {
+        this.type = type;
+        this.net = net;
+        this.entry = entry;
+        this.exit = exit;
+        this.weight = weight;
+        this.children = Collections.unmodifiableList(children);
+        this.interior = interior;
+        this.hash = hash;
+
+        for (Fragment child : children)
+        {
+            child.parent = this;
+        }
+    }
+
+    /**
+     * Returns the type.
+     *
+     * @return Type
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * Returns the entry node index.
+     *
+     * @return int
+     */
+    public int getEntryNode()
+    {
+        return entry;
+    }
+
+    /**
+     * Returns the exit node index.
+     *
+     * @return int
+     */
+    public int getExitNode()
+    {
+        return exit;
+    }
+
+    /**
+     * Returns the entry vertex.
+     *
+     * @return Vertex
+     */
+    public Vertex getEntry()
+    {
+        return getVertex(entry);
+    }
+
+    /**
+     * Returns the exit vertex.
+     *
+     * @return Vertex
+     */
+    public Vertex getExit()
+    {
+        return getVertex(exit);
+    }
+
+    /**
+     * Returns if a node index is a place.
+     *
+     * @param node
+     * @return boolean
+     */
+    boolean isPlace(int node)
+    {
+        return node < net.getPlaceCount();
+    }
+
+    /**
+     * Returns the vertex of a node index.
+     *
+     * @param node
+     * @return Vertex
+     */
+    private Vertex getVertex(int node)
+    {
+        return isPlace(node) ? net.getPlace(node) : net.getTransition(node - net.getPlaceCount());
+    }
+
+    /**
+     * Returns the weight of a TRIVIAL arc (0 otherwise).
+     *
+     * @return int
+     */
+    public int getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns the children.
+     *
+     * @return List<Fragment>
+     */
+    public List<Fragment> getChildren()
+    {
+        return children;
+    }
+
+    /**
+     * Returns the enclosing fragment, null for the root.
+     *
+     * @return Fragment
+     */
+    public Fragment getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * Returns the nodes absorbed at this level (not in the children).
+     *
+     * @return int[]
+     */
+    int[] getInterior()
+    {
+        return interior;
+    }
+
+    /**
+     * Returns the structural hash: equal for fragments of the same shape,
+     * whatever their vertices.
+     *
+     * @return long
+     */
+    public long getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * Returns if the fragment and all its descendants are blocks (no RIGID).
+     *
+     * @return boolean
+     */
+    public boolean isStructured()
+    {
+        if(type == Type.RIGID)
+        {
+            return false;
+        }
+
+        for (Fragment child : children)
+        {
+            if( ! child.isStructured())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns if the block splits and joins on the right kind of node:
+     * transitions for PARALLEL, places for CHOICE and LOOP. RIGID fragments
+     * are never well-formed.
+     *
+     * @return boolean
+     */
+    public boolean isWellFormed()
+    {
+        switch (type)
+        {
+            case TRIVIAL:
+            case SEQUENCE:
+                return true;
+            case PARALLEL:
+                return ! isPlace(entry) && ! isPlace(exit);
+            case CHOICE:
+            case LOOP:
+                return isPlace(entry) && isPlace(exit);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the vertices of the fragment (boundary and descendants).
+     *
+     * @return List<Vertex>
+     */
+    public List<Vertex> getVertices()
+    {
+        List<Vertex> vertices = new ArrayList<>();
+        vertices.add(getVertex(entry));
+
+        if(exit != entry)
+        {
+            vertices.add(getVertex(exit));
+        }
+
+        collectInterior(vertices);
+
+        return vertices;
+    }
+
+    /**
+     * Adds the interior vertices of the subtree.
+     *
+     * @param vertices
+     */
+    private void collectInterior(List<Vertex> vertices)
+    {
+        for (int node : interior)
+        {
+            vertices.add(getVertex(node));
+        }
+
+        for (Fragment child : children)
+        {
+            child.collectInterior(vertices);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder(type.name());
+
+        if(type != Type.TRIVIAL)
+        {
+            builder.append('(');
+
+            for (int i = 0; i < children.size(); i++)
+            {
+                builder.append(i == 0 ? "" : ", ").append(children.get(i));
+            }
+
+            builder.append(')');
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,504 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Soundness of a workflow net, fragment by fragment of its
+ * {@link ProcessStructureTree}.
+ *
+ * A net is sound iff each of its fragments is, once its children are
+ * replaced by single nodes (a sound child behaves as one transition, or
+ * one place, between its entry and exit). Well-formed blocks are sound by
+ * construction; RIGID fragments and ill-formed blocks are checked as small
+ * workflow nets by {@link SoundnessChecker}, in parallel. Their verdicts
+ * are cached by fragment hash, so that repeated shapes (in the net, or
+ * across calls sharing the cache) are searched once.
+ *
+ * Nets with resource tokens or weighted arcs are left undecided.
+ */
+public class FragmentSoundness
+{
+    private final ProcessStructureTree tree;
+
+    private int maxStates = SoundnessChecker.DEFAULT_MAX_STATES;
+
+    private int parallelism = 1;
+
+    /**
+     * Verdict by fragment hash (absent if unknown).
+     */
+    private Map<Long, Boolean> cache = new HashMap<>();
+
+    /**
+     * Fragments found unsound by the last decision.
+     */
+    private final List<Fragment> unsoundFragments = new ArrayList<>();
+
+    /**
+     * Fragments searched by the last decision.
+     */
+    private int searchCount;
+
+    /**
+     * {@link FragmentSoundness} Constructor.
+     *
+     * @param tree
+     */
+    public FragmentSoundness(ProcessStructureTree tree)
+    {
+        this.tree = tree;
+    }
+
+    /**
+     * Sets the states limit of each fragment search.
+     *
+     * @param maxStates
+     * @return FragmentSoundness
+     */
+    public FragmentSoundness setMaxStates(int maxStates)
+    {
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    /**
+     * Sets the number of fragments searched at once.
+     *
+     * @param parallelism
+     * @return FragmentSoundness
+     */
+    public FragmentSoundness setParallelism(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Sets the verdicts cache, to share between decisions (on one thread).
+     *
+     * @param cache
+     * @return FragmentSoundness
+     */
+    public FragmentSoundness setCache(Map<Long, Boolean> cache)
+    {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Decides the soundness.
+     *
+     * @return StructuralSoundness.Verdict
+     */
+    public StructuralSoundness.Verdict decide()
+    {
+        unsoundFragments.clear();
+        searchCount = 0;
+
+        CompiledNet net = tree.getNet();
+        int[] marking = net.getInitialMarking();
+
+        for (int p = 0; p < marking.length; p++)
+        {
+            if(p != tree.getInitialPlace() && marking[p] != 0)
+            {
+                return StructuralSoundness.Verdict.UNKNOWN;
+            }
+        }
+
+        if( ! new NetClassification(net).isOrdinary())
+        {
+            return StructuralSoundness.Verdict.UNKNOWN;
+        }
+
+        // One search per shape not cached yet
+        Map<Long, Fragment> pending = new LinkedHashMap<>();
+
+        for (Fragment fragment : tree.getFragments())
+        {
+            if(isSearched(fragment) && ! cache.containsKey(fragment.getHash()))
+            {
+                pending.put(fragment.getHash(), fragment);
+            }
+        }
+
+        Fragment[] searched = pending.values().toArray(new Fragment[pending.size()]);
+        Boolean[] verdicts = new Boolean[searched.length];
+        searchCount = searched.length;
+
+        if(parallelism == 1 || searched.length < 2)
+        {
+            for (int i = 0; i < searched.length; i++)
+            {
+                verdicts[i] = search(searched[i]);
+            }
+        }
+        else
+        {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+            try
+            {
+                pool.invoke(new SearchTask(searched, verdicts, 0, searched.length));
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+
+        for (int i = 0; i < searched.length; i++)
+        {
+            if(verdicts[i] != null)
+            {
+                cache.put(searched[i].getHash(), verdicts[i]);
+            }
+        }
+
+        boolean known = true;
+
+        for (Fragment fragment : tree.getFragments())
+        {
+            Boolean verdict = getVerdict(fragment);
+
+            if(verdict == null)
+            {
+                known = false;
+            }
+            else if( ! verdict)
+            {
+                unsoundFragments.add(fragment);
+            }
+        }
+
+        if( ! unsoundFragments.isEmpty())
+        {
+            return StructuralSoundness.Verdict.UNSOUND;
+        }
+
+        return known ? StructuralSoundness.Verdict.SOUND : StructuralSoundness.Verdict.UNKNOWN;
+    }
+
+    /**
+     * Returns the fragments found unsound by the last decision (children
+     * first).
+     *
+     * @return List<Fragment>
+     */
+    public List<Fragment> getUnsoundFragments()
+    {
+        return unsoundFragments;
+    }
+
+    /**
+     * Returns the number of fragments searched by the last decision (the
+     * others were blocks or cached).
+     *
+     * @return int
+     */
+    public int getSearchCount()
+    {
+        return searchCount;
+    }
+
+    /**
+     * Returns if a fragment needs a search.
+     *
+     * @param fragment
+     * @return boolean
+     */
+    private static boolean isSearched(Fragment fragment)
+    {
+        return ! fragment.isWellFormed() && fragment.getEntryNode() != fragment.getExitNode();
+    }
+
+    /**
+     * Returns the verdict of a fragment alone, null if unknown.
+     *
+     * @param fragment
+     * @return Boolean
+     */
+    private Boolean getVerdict(Fragment fragment)
+    {
+        if(isSearched(fragment))
+        {
+            return cache.get(fragment.getHash());
+        }
+
+        // A loop on a single transition can never start
+        return fragment.isWellFormed();
+    }
+
+    /**
+     * Searches a fragment, its children replaced by single nodes.
+     *
+     * @param fragment
+     * @return Boolean  null if the states limit was reached
+     */
+    private Boolean search(Fragment fragment)
+    {
+        SoundnessResult result = new FragmentNet(fragment).check(maxStates);
+
+        if(result.getViolation() == SoundnessResult.Violation.STATE_LIMIT)
+        {
+            return null;
+        }
+
+        return result.isSound();
+    }
+
+    /**
+     * Searches a range of fragments, splitting it until a single one is
+     * left.
+     */
+    private class SearchTask extends RecursiveAction
+    {
+        private final Fragment[] fragments;
+
+        private final Boolean[] verdicts;
+
+        private final int from;
+
+        private final int to;
+
+        SearchTask(Fragment[] fragments, Boolean[] verdicts, int from, int to)
+        {
+            this.fragments = fragments;
+            this.verdicts = verdicts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from == 1)
+            {
+                verdicts[from] = search(fragments[from]);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new SearchTask(fragments, verdicts, from, middle),
+                new SearchTask(fragments, verdicts, middle, to)
+            );
+        }
+    }
+
+    /**
+     * A fragment as a workflow net: a new initial (final) place before
+     * (after) a transition entry (exit), a child as one transition from
+     * place to place, one place from transition to transition, or both.
+     */
+    private class FragmentNet
+    {
+        private final CompiledNet net = tree.getNet();
+
+        private final Map<Integer, Integer> local = new HashMap<>();
+
+        private final List<Vertex> places = new ArrayList<>();
+
+        private final List<TransitionVertex> transitions = new ArrayList<>();
+
+        private int[] sources = new int[16];
+
+        private int[] targets = new int[16];
+
+        private boolean[] fromPlace = new boolean[16];
+
+        private int arcCount;
+
+        private final int initialPlace;
+
+        private final int finalPlace;
+
+        /**
+         * {@link FragmentNet} Constructor.
+         *
+         * @param fragment
+         */
+        FragmentNet(Fragment fragment)
+        {
+            int entry = fragment.getEntryNode();
+            int exit = fragment.getExitNode();
+
+            if(isPlace(entry))
+            {
+                initialPlace = map(entry);
+            }
+            else
+            {
+                initialPlace = newPlace();
+                arc(initialPlace, map(entry), true);
+            }
+
+            if(isPlace(exit))
+            {
+                finalPlace = map(exit);
+            }
+            else
+            {
+                finalPlace = newPlace();
+                arc(map(exit), finalPlace, false);
+            }
+
+            for (Fragment child : fragment.getChildren())
+            {
+                int source = map(child.getEntryNode());
+                int target = map(child.getExitNode());
+                boolean sourcePlace = isPlace(child.getEntryNode());
+                boolean targetPlace = isPlace(child.getExitNode());
+
+                if(child.getType() == Fragment.Type.TRIVIAL)
+                {
+                    arc(source, target, sourcePlace);
+                }
+                else if(sourcePlace && targetPlace)
+                {
+                    int t = newTransition();
+                    arc(source, t, true);
+                    arc(t, target, false);
+                }
+                else if( ! sourcePlace && ! targetPlace)
+                {
+                    int p = newPlace();
+                    arc(source, p, false);
+                    arc(p, target, true);
+                }
+                else if(sourcePlace)
+                {
+                    int t = newTransition();
+                    int p = newPlace();
+                    arc(source, t, true);
+                    arc(t, p, false);
+                    arc(p, target, true);
+                }
+                else
+                {
+                    int p = newPlace();
+                    int t = newTransition();
+                    arc(source, p, false);
+                    arc(p, t, true);
+                    arc(t, target, false);
+                }
+            }
+        }
+
+        /**
+         * Checks the soundness.
+         *
+         * @param maxStates
+         * @return SoundnessResult
+         */
+        SoundnessResult check(int maxStates)
+        {
+            int[] marking = new int[places.size()];
+            marking[initialPlace] = 1;
+
+            CompiledNet fragmentNet = new CompiledNet(
+                places.toArray(new Vertex[places.size()]),
+                transitions.toArray(new TransitionVertex[transitions.size()]),
+                marking,
+                sources,
+                targets,
+                fromPlace,
+                arcCount
+            );
+
+            return new SoundnessChecker(fragmentNet, initialPlace, finalPlace).setMaxStates(maxStates).check();
+        }
+
+        /**
+         * Returns if a node of the net is a place.
+         *
+         * @param node
+         * @return boolean
+         */
+        private boolean isPlace(int node)
+        {
+            return node < net.getPlaceCount();
+        }
+
+        /**
+         * Returns the local index of a node of the net.
+         *
+         * @param node
+         * @return int
+         */
+        private int map(int node)
+        {
+            Integer index = local.get(node);
+
+            if(index == null)
+            {
+                if(isPlace(node))
+                {
+                    index = places.size();
+                    places.add(net.getPlace(node));
+                }
+                else
+                {
+                    index = transitions.size();
+                    transitions.add(net.getTransition(node - net.getPlaceCount()));
+                }
+
+                local.put(node, index);
+            }
+
+            return index;
+        }
+
+        /**
+         * Adds a place with no vertex.
+         *
+         * @return int
+         */
+        private int newPlace()
+        {
+            places.add(null);
+            return places.size() - 1;
+        }
+
+        /**
+         * Adds a transition with no vertex.
+         *
+         * @return int
+         */
+        private int newTransition()
+        {
+            transitions.add(null);
+            return transitions.size() - 1;
+        }
+
+        /**
+         * Adds an arc.
+         *
+         * @param source
+         * @param target
+         * @param isFromPlace
+         */
+        private void arc(int source, int target, boolean isFromPlace)
+        {
+            if(arcCount == sources.length)
+            {
+                sources = Arrays.copyOf(sources, arcCount * 2);
+                targets = Arrays.copyOf(targets, arcCount * 2);
+                fromPlace = Arrays.copyOf(fromPlace, arcCount * 2);
+            }
+
+            sources[arcCount] = source;
+            targets[arcCount] = target;
+            fromPlace[arcCount++] = isFromPlace;
+        }
+    }
+}
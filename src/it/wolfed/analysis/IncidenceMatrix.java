@@ -0,0 +1,419 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import java.util.Arrays;
+
+/**
+ * Sparse incidence matrix of a {@link CompiledNet}.
+ *
+ * C[p][t] = (tokens t puts in p) - (tokens t takes from p), stored both by
+ * place rows (CSR) and by transition columns (CSC); zero entries (no arc,
+ * or self-loops with equal weights) are not stored.
+ */
+public class IncidenceMatrix
+{
+    private final CompiledNet net;
+
+    /**
+     * Rows (places): offsets, transition indexes, values.
+     */
+    private final int[] rowStart, rowColumn, rowValue;
+
+    /**
+     * Columns (transitions): offsets, place indexes, values.
+     */
+    private final int[] columnStart, columnRow, columnValue;
+
+    /**
+     * {@link IncidenceMatrix} Constructor.
+     *
+     * @param net
+     */
+    public IncidenceMatrix(CompiledNet net)
+    {
+        this.net = net;
+
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+        int[] presetStart = net.getPresetStart();
+        int[] preset = net.getPreset();
+        int[] presetWeight = net.getPresetWeight();
+        int[] postsetStart = net.getPostsetStart();
+        int[] postset = net.getPostset();
+        int[] postsetWeight = net.getPostsetWeight();
+
+        // Unsorted columns, self-loops cancelled on a dense accumulator
+        int[] start = new int[transitions + 1];
+        int[] rows = new int[preset.length + postset.length];
+        int[] values = new int[preset.length + postset.length];
+        int[] accumulator = new int[places];
+        int size = 0;
+
+        for (int t = 0; t < transitions; t++)
+        {
+            start[t] = size;
+
+            for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+            {
+                accumulator[preset[k]] -= presetWeight[k];
+            }
+
+            for (int k = postsetStart[t]; k < postsetStart[t + 1]; k++)
+            {
+                accumulator[postset[k]] += postsetWeight[k];
+            }
+
+            for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+            {
+                size = flush(accumulator, preset[k], rows, values, size);
+            }
+
+            for (int k = postsetStart[t]; k < postsetStart[t + 1]; k++)
+            {
+                size = flush(accumulator, postset[k], rows, values, size);
+            }
+        }
+
+        start[transitions] = size;
+
+        // Transposing twice sorts both forms
+        int[][] csr = transpose(transitions, places, start, rows, values);
+        rowStart = csr[0];
+        rowColumn = csr[1];
+        rowValue = csr[2];
+
+        int[][] csc = transpose(places, transitions, rowStart, rowColumn, rowValue);
+        columnStart = csc[0];
+        columnRow = csc[1];
+        columnValue = csc[2];
+    }
+
+    /**
+     * Builds the matrix of a graph.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     * @return IncidenceMatrix
+     */
+    public static IncidenceMatrix compile(PetriNetGraph graph)
+    {
+        return new IncidenceMatrix(CompiledNet.compile(graph));
+    }
+
+    /**
+     * Moves a non-zero accumulated entry to the column (once).
+     *
+     * @param accumulator
+     * @param place
+     * @param rows
+     * @param values
+     * @param size
+     * @return int  the new size
+     */
+    private static int flush(int[] accumulator, int place, int[] rows, int[] values, int size)
+    {
+        if(accumulator[place] != 0)
+        {
+            rows[size] = place;
+            values[size] = accumulator[place];
+            accumulator[place] = 0;
+            size++;
+        }
+
+        return size;
+    }
+
+    /**
+     * Transposes a compressed matrix (the result rows are sorted).
+     *
+     * @param lines
+     * @param width
+     * @param start
+     * @param index
+     * @param value
+     * @return int[][] {start, index, value}
+     */
+    private static int[][] transpose(int lines, int width, int[] start, int[] index, int[] value)
+    {
+        int nonZeros = start[lines];
+        int[] tStart = new int[width + 1];
+        int[] tIndex = new int[nonZeros];
+        int[] tValue = new int[nonZeros];
+
+        for (int k = 0; k < nonZeros; k++)
+        {
+            tStart[index[k] + 1]++;
+        }
+
+        for (int i = 0; i < width; i++)
+        {
+            tStart[i + 1] += tStart[i];
+        }
+
+        int[] fill = new int[width];
+
+        for (int line = 0; line < lines; line++)
+        {
+            for (int k = start[line]; k < start[line + 1]; k++)
+            {
+                int position = tStart[index[k]] + fill[index[k]]++;
+                tIndex[position] = line;
+                tValue[position] = value[k];
+            }
+        }
+
+        return new int[][] {tStart, tIndex, tValue};
+    }
+
+    /**
+     * Returns the compiled net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Returns the number of rows (places).
+     *
+     * @return int
+     */
+    public int getRowCount()
+    {
+        return rowStart.length - 1;
+    }
+
+    /**
+     * Returns the number of columns (transitions).
+     *
+     * @return int
+     */
+    public int getColumnCount()
+    {
+        return columnStart.length - 1;
+    }
+
+    /**
+     * Returns the number of non-zero entries.
+     *
+     * @return int
+     */
+    public int getNonZeroCount()
+    {
+        return rowValue.length;
+    }
+
+    /**
+     * Returns C[place][transition].
+     *
+     * @param place
+     * @param transition
+     * @return int
+     */
+    public int get(int place, int transition)
+    {
+        for (int k = rowStart[place]; k < rowStart[place + 1]; k++)
+        {
+            if(rowColumn[k] == transition)
+            {
+                return rowValue[k];
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the rank of the matrix.
+     *
+     * Sparse elimination modulo two primes near 2^31: the rational rank
+     * is the largest, unless both primes divide all its maximal minors.
+     *
+     * @return int
+     */
+    public int getRank()
+    {
+        return Math.max(getRank(2147483647L), getRank(2147483629L));
+    }
+
+    /**
+     * Returns the rank modulo a prime, eliminating the place rows in order
+     * against pivots indexed by leading column.
+     *
+     * @param prime
+     * @return int
+     */
+    private int getRank(long prime)
+    {
+        int width = getColumnCount();
+        int[][] pivotColumns = new int[width][];
+        long[][] pivotValues = new long[width][];
+        int rank = 0;
+
+        for (int p = 0; p < getRowCount(); p++)
+        {
+            int size = rowStart[p + 1] - rowStart[p];
+            int[] columns = Arrays.copyOfRange(rowColumn, rowStart[p], rowStart[p + 1]);
+            long[] values = new long[size];
+
+            for (int k = 0; k < size; k++)
+            {
+                values[k] = ((rowValue[rowStart[p] + k] % prime) + prime) % prime;
+            }
+
+            while (size > 0)
+            {
+                int lead = columns[0];
+
+                if(pivotColumns[lead] == null)
+                {
+                    // New pivot, scaled to a leading one
+                    long inverse = power(values[0], prime - 2, prime);
+
+                    for (int k = 0; k < size; k++)
+                    {
+                        values[k] = values[k] * inverse % prime;
+                    }
+
+                    pivotColumns[lead] = Arrays.copyOf(columns, size);
+                    pivotValues[lead] = Arrays.copyOf(values, size);
+                    rank++;
+                    break;
+                }
+
+                // row -= row[lead] * pivot
+                int[] pivotColumn = pivotColumns[lead];
+                long[] pivotValue = pivotValues[lead];
+                long factor = prime - values[0];
+                int[] mergedColumns = new int[size + pivotColumn.length];
+                long[] mergedValues = new long[mergedColumns.length];
+                int merged = 0;
+                int i = 0;
+                int j = 0;
+
+                while (i < size || j < pivotColumn.length)
+                {
+                    int column;
+                    long value;
+
+                    if(j == pivotColumn.length || (i < size && columns[i] < pivotColumn[j]))
+                    {
+                        column = columns[i];
+                        value = values[i++];
+                    }
+                    else if(i == size || pivotColumn[j] < columns[i])
+                    {
+                        column = pivotColumn[j];
+                        value = factor * pivotValue[j++] % prime;
+                    }
+                    else
+                    {
+                        column = columns[i];
+                        value = (values[i++] + factor * pivotValue[j++]) % prime;
+                    }
+
+                    if(value != 0)
+                    {
+                        mergedColumns[merged] = column;
+                        mergedValues[merged] = value;
+                        merged++;
+                    }
+                }
+
+                columns = mergedColumns;
+                values = mergedValues;
+                size = merged;
+            }
+        }
+
+        return rank;
+    }
+
+    /**
+     * Returns base^exponent modulo a prime.
+     *
+     * @param base
+     * @param exponent
+     * @param prime
+     * @return long
+     */
+    private static long power(long base, long exponent, long prime)
+    {
+        long result = 1;
+
+        for (base %= prime; exponent > 0; exponent >>= 1)
+        {
+            if((exponent & 1) != 0)
+            {
+                result = result * base % prime;
+            }
+
+            base = base * base % prime;
+        }
+
+        return result;
+    }
+
+    /**
+     * Row offsets (CSR).
+     *
+     * @return int[]
+     */
+    public int[] getRowStart()
+    {
+        return rowStart;
+    }
+
+    /**
+     * Transition of each row entry (CSR).
+     *
+     * @return int[]
+     */
+    public int[] getRowColumn()
+    {
+        return rowColumn;
+    }
+
+    /**
+     * Value of each row entry (CSR).
+     *
+     * @return int[]
+     */
+    public int[] getRowValue()
+    {
+        return rowValue;
+    }
+
+    /**
+     * Column offsets (CSC).
+     *
+     * @return int[]
+     */
+    public int[] getColumnStart()
+    {
+        return columnStart;
+    }
+
+    /**
+     * Place of each column entry (CSC).
+     *
+     * @return int[]
+     */
+    public int[] getColumnRow()
+    {
+        return columnRow;
+    }
+
+    /**
+     * Value of each column entry (CSC).
+     *
+     * @return int[]
+     */
+    public int[] getColumnValue()
+    {
+        return columnValue;
+    }
+}
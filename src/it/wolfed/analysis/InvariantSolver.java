@@ -0,0 +1,499 @@
+package it.wolfed.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Farkas algorithm for the minimal P- and T-invariants of an {@link IncidenceMatrix}.
+ *
+ * Starting from [C | I], one column of C is eliminated at a time (the one
+ * producing the fewest new rows), combining the rows of opposite sign.
+ * Rows are kept sparse; right after every step a row whose support
+ * contains the support of another row is pruned, so only minimal-support
+ * candidates survive.
+ */
+public class InvariantSolver
+{
+    /**
+     * Default rows limit.
+     */
+    public static final int DEFAULT_MAX_ROWS = 100000;
+
+    private int maxRows = DEFAULT_MAX_ROWS;
+
+    /**
+     * Sets the rows limit (the algorithm is exponential in the worst case).
+     *
+     * @param maxRows
+     * @return InvariantSolver
+     */
+    public InvariantSolver setMaxRows(int maxRows)
+    {
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Returns the P-invariants (y >= 0, y C = 0).
+     *
+     * @param matrix
+     * @return Invariants
+     */
+    public Invariants getPInvariants(IncidenceMatrix matrix)
+    {
+        return solve(matrix.getRowCount(), matrix.getColumnCount(),
+            matrix.getRowStart(), matrix.getRowColumn(), matrix.getRowValue());
+    }
+
+    /**
+     * Returns the T-invariants (x >= 0, C x = 0).
+     *
+     * @param matrix
+     * @return Invariants
+     */
+    public Invariants getTInvariants(IncidenceMatrix matrix)
+    {
+        return solve(matrix.getColumnCount(), matrix.getRowCount(),
+            matrix.getColumnStart(), matrix.getColumnRow(), matrix.getColumnValue());
+    }
+
+    /**
+     * Solves y A = 0, y >= 0, for A given by sorted compressed rows.
+     *
+     * @param lines
+     * @param width
+     * @param start
+     * @param index
+     * @param value
+     * @return Invariants
+     */
+    private Invariants solve(int lines, int width, int[] start, int[] index, int[] value)
+    {
+        List<Row> rows = new ArrayList<>();
+        List<List<Row>> byColumn = new ArrayList<>();
+        List<List<Row>> bySupport = new ArrayList<>();
+        int[] positive = new int[width];
+        int[] negative = new int[width];
+        int words = (lines + 63) >>> 6;
+        int alive = 0;
+
+        for (int j = 0; j < width; j++)
+        {
+            byColumn.add(new ArrayList<Row>());
+        }
+
+        for (int i = 0; i < lines; i++)
+        {
+            bySupport.add(new ArrayList<Row>());
+        }
+
+        for (int i = 0; i < lines; i++)
+        {
+            int length = start[i + 1] - start[i];
+            int[] columns = new int[length];
+            long[] values = new long[length];
+
+            for (int k = 0; k < length; k++)
+            {
+                columns[k] = index[start[i] + k];
+                values[k] = value[start[i] + k];
+            }
+
+            long[] bits = new long[words];
+            bits[i >>> 6] |= 1L << (i & 63);
+            Row row = new Row(columns, values, new int[] {i}, new long[] {1}, bits);
+            rows.add(row);
+            alive += add(row, byColumn, bySupport, positive, negative);
+        }
+
+        boolean complete = true;
+
+        while (true)
+        {
+            // Cheapest column: fewest new rows
+            int column = -1;
+            long best = Long.MAX_VALUE;
+
+            for (int j = 0; j < width; j++)
+            {
+                if(positive[j] + negative[j] == 0)
+                {
+                    continue;
+                }
+
+                long cost = (long) positive[j] * negative[j] - positive[j] - negative[j];
+
+                if(cost < best)
+                {
+                    best = cost;
+                    column = j;
+                }
+            }
+
+            if(column == -1)
+            {
+                break;
+            }
+
+            List<Row> plus = new ArrayList<>();
+            List<Row> minus = new ArrayList<>();
+
+            for (Row row : byColumn.get(column))
+            {
+                if(row.alive)
+                {
+                    (row.get(column) > 0 ? plus : minus).add(row);
+                    alive -= remove(row, positive, negative);
+                }
+            }
+
+            byColumn.get(column).clear();
+
+            List<Row> created = new ArrayList<>();
+
+            for (Row p : plus)
+            {
+                for (Row n : minus)
+                {
+                    created.add(Row.combine(p, n, column));
+                }
+            }
+
+            Collections.sort(created, BY_CARDINALITY);
+
+            // Early pruning: keep minimal supports only
+            for (Row row : created)
+            {
+                if( ! isDominated(row, bySupport))
+                {
+                    rows.add(row);
+                    alive += add(row, byColumn, bySupport, positive, negative);
+                }
+            }
+
+            if(alive > maxRows)
+            {
+                complete = false;
+                break;
+            }
+        }
+
+        List<int[]> supports = new ArrayList<>();
+        List<long[]> weights = new ArrayList<>();
+
+        for (Row row : rows)
+        {
+            if(row.alive && row.columns.length == 0)
+            {
+                supports.add(row.support);
+                weights.add(row.weights);
+            }
+        }
+
+        return new Invariants(lines, supports, weights, complete);
+    }
+
+    /**
+     * Indexes a live row.
+     *
+     * @param row
+     * @param byColumn
+     * @param bySupport
+     * @param positive
+     * @param negative
+     * @return int  1
+     */
+    private static int add(Row row, List<List<Row>> byColumn, List<List<Row>> bySupport,
+            int[] positive, int[] negative)
+    {
+        row.alive = true;
+
+        for (int k = 0; k < row.columns.length; k++)
+        {
+            byColumn.get(row.columns[k]).add(row);
+
+            if(row.values[k] > 0)
+            {
+                positive[row.columns[k]]++;
+            }
+            else
+            {
+                negative[row.columns[k]]++;
+            }
+        }
+
+        bySupport.get(row.support[0]).add(row);
+
+        return 1;
+    }
+
+    /**
+     * Drops a row (it stays in the indexes, skipped as dead).
+     *
+     * @param row
+     * @param positive
+     * @param negative
+     * @return int  1
+     */
+    private static int remove(Row row, int[] positive, int[] negative)
+    {
+        row.alive = false;
+
+        for (int k = 0; k < row.columns.length; k++)
+        {
+            if(row.values[k] > 0)
+            {
+                positive[row.columns[k]]--;
+            }
+            else
+            {
+                negative[row.columns[k]]--;
+            }
+        }
+
+        return 1;
+    }
+
+    /**
+     * Returns if the support of some live row is contained in the support
+     * of candidate.
+     *
+     * Such a row has its smallest support index in the candidate support,
+     * so only those buckets are scanned.
+     *
+     * @param candidate
+     * @param bySupport     live and dead rows, by smallest support index
+     * @return boolean
+     */
+    private static boolean isDominated(Row candidate, List<List<Row>> bySupport)
+    {
+        for (int first : candidate.support)
+        {
+            List<Row> bucket = bySupport.get(first);
+
+            for (int k = 0; k < bucket.size(); k++)
+            {
+                Row row = bucket.get(k);
+
+                if( ! row.alive)
+                {
+                    // Compact the dead rows away
+                    bucket.set(k, bucket.get(bucket.size() - 1));
+                    bucket.remove(bucket.size() - 1);
+                    k--;
+                    continue;
+                }
+
+                if(row.support.length <= candidate.support.length && candidate.contains(row))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Orders rows by support size.
+     */
+    private static final Comparator<Row> BY_CARDINALITY = new Comparator<Row>()
+    {
+        @Override
+        public int compare(Row a, Row b)
+        {
+            return Integer.compare(a.support.length, b.support.length);
+        }
+    };
+
+    /**
+     * A row of [A | I], both parts sparse and sorted.
+     */
+    private static class Row
+    {
+        /**
+         * Non-zero columns of the A part.
+         */
+        final int[] columns;
+
+        final long[] values;
+
+        /**
+         * Non-zero columns of the I part (the invariant support).
+         */
+        final int[] support;
+
+        final long[] weights;
+
+        /**
+         * Support as a bitset.
+         */
+        final long[] bits;
+
+        /**
+         * False once the row has been eliminated.
+         */
+        boolean alive;
+
+        Row(int[] columns, long[] values, int[] support, long[] weights, long[] bits)
+        {
+            this.columns = columns;
+            this.values = values;
+            this.support = support;
+            this.weights = weights;
+            this.bits = bits;
+        }
+
+        /**
+         * Returns the A part value at column.
+         *
+         * @param column
+         * @return long
+         */
+        long get(int column)
+        {
+            int k = Arrays.binarySearch(columns, column);
+
+            return k >= 0 ? values[k] : 0;
+        }
+
+        /**
+         * Returns if the support of row is contained in this support.
+         *
+         * @param row
+         * @return boolean
+         */
+        boolean contains(Row row)
+        {
+            for (int i : row.support)
+            {
+                if((bits[i >>> 6] & (1L << (i & 63))) == 0)
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Combines p (positive at column) and n (negative at column) to
+         * cancel column, dividing by the gcd.
+         *
+         * @param p
+         * @param n
+         * @param column
+         * @return Row
+         */
+        static Row combine(Row p, Row n, int column)
+        {
+            long a = -n.get(column);
+            long b = p.get(column);
+
+            // a p + b n
+            int[] columns = new int[p.columns.length + n.columns.length];
+            long[] values = new long[columns.length];
+            int size = merge(p.columns, p.values, a, n.columns, n.values, b, columns, values, column);
+
+            int[] support = new int[p.support.length + n.support.length];
+            long[] weights = new long[support.length];
+            int supportSize = merge(p.support, p.weights, a, n.support, n.weights, b, support, weights, -1);
+
+            long gcd = 0;
+
+            for (int k = 0; k < size; k++)
+            {
+                gcd = gcd(gcd, Math.abs(values[k]));
+            }
+
+            for (int k = 0; k < supportSize; k++)
+            {
+                gcd = gcd(gcd, weights[k]);
+            }
+
+            for (int k = 0; k < size; k++)
+            {
+                values[k] /= gcd;
+            }
+
+            for (int k = 0; k < supportSize; k++)
+            {
+                weights[k] /= gcd;
+            }
+
+            long[] bits = new long[p.bits.length];
+
+            for (int w = 0; w < bits.length; w++)
+            {
+                bits[w] = p.bits[w] | n.bits[w];
+            }
+
+            return new Row(
+                Arrays.copyOf(columns, size),
+                Arrays.copyOf(values, size),
+                Arrays.copyOf(support, supportSize),
+                Arrays.copyOf(weights, supportSize),
+                bits
+            );
+        }
+
+        /**
+         * Merges a x + b y (sorted sparse), skipping zeros and the skip index.
+         *
+         * @return int  the merged size
+         */
+        private static int merge(int[] xIndex, long[] xValue, long a, int[] yIndex, long[] yValue, long b,
+                int[] index, long[] value, int skip)
+        {
+            int i = 0;
+            int j = 0;
+            int size = 0;
+
+            while (i < xIndex.length || j < yIndex.length)
+            {
+                int column;
+                long v;
+
+                if(j == yIndex.length || (i < xIndex.length && xIndex[i] < yIndex[j]))
+                {
+                    column = xIndex[i];
+                    v = a * xValue[i++];
+                }
+                else if(i == xIndex.length || yIndex[j] < xIndex[i])
+                {
+                    column = yIndex[j];
+                    v = b * yValue[j++];
+                }
+                else
+                {
+                    column = xIndex[i];
+                    v = a * xValue[i++] + b * yValue[j++];
+                }
+
+                if(v != 0 && column != skip)
+                {
+                    index[size] = column;
+                    value[size] = v;
+                    size++;
+                }
+            }
+
+            return size;
+        }
+
+        private static long gcd(long a, long b)
+        {
+            while (b != 0)
+            {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+
+            return a;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package it.wolfed.analysis;
+
+import java.util.List;
+
+/**
+ * Minimal-support semi-positive invariants, as found by {@link InvariantSolver}.
+ *
+ * P-invariants are indexed by place, T-invariants by transition. A net
+ * covered by P-invariants is structurally bounded; a net live and bounded
+ * is covered by T-invariants.
+ */
+public class Invariants
+{
+    /**
+     * Number of places (or transitions).
+     */
+    private final int dimension;
+
+    /**
+     * Support of each invariant (sorted indexes).
+     */
+    private final List<int[]> supports;
+
+    /**
+     * Weights of each invariant, aligned with its support.
+     */
+    private final List<long[]> weights;
+
+    /**
+     * False if the solver has given up (rows limit).
+     */
+    private final boolean complete;
+
+    /**
+     * {@link Invariants} Constructor.
+     *
+     * @param dimension
+     * @param supports
+     * @param weights
+     * @param complete
+     */
+    Invariants(int dimension, List<int[]> supports, List<long[]> weights, boolean complete)
+    {
+        this.dimension = dimension;
+        this.supports = supports;
+        this.weights = weights;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the number of invariants.
+     *
+     * @return int
+     */
+    public int getCount()
+    {
+        return supports.size();
+    }
+
+    /**
+     * Returns the support (sorted indexes) of an invariant.
+     *
+     * @param invariant
+     * @return int[]
+     */
+    public int[] getSupport(int invariant)
+    {
+        return supports.get(invariant).clone();
+    }
+
+    /**
+     * Returns the weights of an invariant, aligned with its support.
+     *
+     * @param invariant
+     * @return long[]
+     */
+    public long[] getWeights(int invariant)
+    {
+        return weights.get(invariant).clone();
+    }
+
+    /**
+     * Returns if all the minimal invariants have been found.
+     *
+     * @return boolean
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Returns, by index, if some invariant covers it.
+     *
+     * @return boolean[]
+     */
+    public boolean[] getCovered()
+    {
+        boolean[] covered = new boolean[dimension];
+
+        for (int[] support : supports)
+        {
+            for (int index : support)
+            {
+                covered[index] = true;
+            }
+        }
+
+        return covered;
+    }
+
+    /**
+     * Returns if every index is covered by some invariant.
+     *
+     * @return boolean
+     */
+    public boolean isCovering()
+    {
+        for (boolean covered : getCovered())
+        {
+            if( ! covered)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
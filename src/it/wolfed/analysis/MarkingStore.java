@@ -0,0 +1,521 @@
+package it.wolfed.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Hashed set of markings, packed in primitive arrays.
+ *
+ * Every marking is stored as a fixed-width bit string (bits per place are
+ * widened, and all the stored markings re-packed, the first time a token
+ * count does not fit) in a single long arena; lookups go through an
+ * open-addressing table of state indexes. States are numbered in insertion
+ * order.
+ *
+ * The all-ones value of a place is reserved for {@link MarkingStore#OMEGA},
+ * the unbounded token count of the coverability markings.
+ */
+public class MarkingStore
+{
+    /**
+     * Unbounded token count (Karp-Miller omega).
+     */
+    public static final int OMEGA = Integer.MAX_VALUE;
+
+    /**
+     * Initial bits per place (up to 14 tokens, and omega).
+     */
+    private static final int INITIAL_BITS = 4;
+
+    /**
+     * Number of places.
+     */
+    private final int places;
+
+    /**
+     * Bits per place.
+     */
+    private int bits;
+
+    /**
+     * Longs per marking.
+     */
+    private int words;
+
+    /**
+     * Packed markings (state i at i * words).
+     */
+    private long[] arena;
+
+    /**
+     * Hash of each state.
+     */
+    private int[] hashes;
+
+    /**
+     * Open-addressing table: state index + 1, 0 when empty.
+     */
+    private int[] table;
+
+    /**
+     * Number of states.
+     */
+    private int size;
+
+    /**
+     * Scratch buffer for the marking being looked up.
+     */
+    private long[] packed;
+
+    /**
+     * {@link MarkingStore} Constructor.
+     *
+     * @param places
+     */
+    public MarkingStore(int places)
+    {
+        this.places = places;
+        this.bits = INITIAL_BITS;
+        this.words = wordsFor(bits);
+        this.arena = new long[1024 * words];
+        this.hashes = new int[1024];
+        this.table = new int[2048];
+        this.packed = new long[words];
+    }
+
+    /**
+     * Adds a marking if absent.
+     *
+     * @param marking
+     * @return int      index of the new state, or (-index - 1) of the existing one
+     */
+    public int add(int[] marking)
+    {
+        return add(marking, hash(marking, places));
+    }
+
+    /**
+     * Adds a marking if absent, its hash already computed.
+     *
+     * @param marking
+     * @param hash      {@link MarkingStore#hash(int[], int)} of the marking
+     * @return int      index of the new state, or (-index - 1) of the existing one
+     */
+    int add(int[] marking, int hash)
+    {
+        ensureFits(marking);
+        pack(marking, packed, 0);
+
+        int mask = table.length - 1;
+        int slot = hash & mask;
+
+        while (table[slot] != 0)
+        {
+            int state = table[slot] - 1;
+
+            if(hashes[state] == hash && equalsPacked(state, packed))
+            {
+                return -state - 1;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        if(size == hashes.length)
+        {
+            grow();
+        }
+
+        System.arraycopy(packed, 0, arena, size * words, words);
+        hashes[size] = hash;
+        table[slot] = size + 1;
+        size++;
+
+        if(size * 2 > table.length)
+        {
+            rehash(table.length * 2);
+        }
+
+        return size - 1;
+    }
+
+    /**
+     * Returns the index of a marking, -1 if absent.
+     *
+     * @param marking
+     * @return int
+     */
+    public int indexOf(int[] marking)
+    {
+        return indexOf(marking, packed);
+    }
+
+    /**
+     * Returns the index of a marking, -1 if absent, packing into buffer.
+     *
+     * With a buffer per thread, lookups may run concurrently as long as
+     * nothing is added meanwhile.
+     *
+     * @param marking
+     * @param buffer
+     * @return int
+     */
+    public int indexOf(int[] marking, long[] buffer)
+    {
+        for (int p = 0; p < places; p++)
+        {
+            if(marking[p] > maxTokens() && marking[p] != OMEGA)
+            {
+                return -1;
+            }
+        }
+
+        if(buffer.length < words)
+        {
+            buffer = new long[words];
+        }
+
+        int hash = hash(marking, places);
+        pack(marking, buffer, 0);
+
+        int mask = table.length - 1;
+        int slot = hash & mask;
+
+        while (table[slot] != 0)
+        {
+            int state = table[slot] - 1;
+
+            if(hashes[state] == hash && equalsPacked(state, buffer))
+            {
+                return state;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns a buffer for {@link MarkingStore#indexOf(int[], long[])}.
+     *
+     * @return long[]
+     */
+    public long[] newBuffer()
+    {
+        return new long[words];
+    }
+
+    /**
+     * Removes all the states, keeping the allocated capacity.
+     */
+    public void clear()
+    {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    /**
+     * Copies the marking of a state into marking.
+     *
+     * @param state
+     * @param marking
+     */
+    public void get(int state, int[] marking)
+    {
+        int base = state * words;
+
+        for (int p = 0; p < places; p++)
+        {
+            long offset = (long) p * bits;
+            int word = base + (int) (offset >>> 6);
+            int shift = (int) (offset & 63);
+            long value = arena[word] >>> shift;
+
+            if(shift + bits > 64)
+            {
+                value |= arena[word + 1] << (64 - shift);
+            }
+
+            value &= mask();
+            marking[p] = (value == mask()) ? OMEGA : (int) value;
+        }
+    }
+
+    /**
+     * Returns the number of stored states.
+     *
+     * @return int
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of places of each marking.
+     *
+     * @return int
+     */
+    public int getPlaceCount()
+    {
+        return places;
+    }
+
+    /**
+     * Returns the bytes held by the store arrays.
+     *
+     * @return long
+     */
+    public long getMemoryUsage()
+    {
+        return 8L * arena.length + 4L * hashes.length + 4L * table.length;
+    }
+
+    /**
+     * Builds a store from the states of several others, without hashing
+     * the markings again: state i of the result is state localOf[i] of
+     * parts[partOf[i]].
+     *
+     * @param parts     stores of the same number of places
+     * @param partOf
+     * @param localOf
+     * @param count     number of states
+     * @return MarkingStore
+     */
+    static MarkingStore merge(MarkingStore[] parts, int[] partOf, int[] localOf, int count)
+    {
+        MarkingStore merged = new MarkingStore(parts[0].places);
+        int capacity = Math.max(1024, count);
+
+        for (MarkingStore part : parts)
+        {
+            merged.bits = Math.max(merged.bits, part.bits);
+        }
+
+        merged.words = merged.wordsFor(merged.bits);
+        merged.packed = new long[merged.words];
+        merged.arena = new long[capacity * merged.words];
+        merged.hashes = new int[capacity];
+        int[] marking = new int[merged.places];
+
+        for (int state = 0; state < count; state++)
+        {
+            MarkingStore part = parts[partOf[state]];
+            int local = localOf[state];
+
+            if(part.bits == merged.bits)
+            {
+                System.arraycopy(part.arena, local * part.words, merged.arena, state * merged.words, merged.words);
+            }
+            else
+            {
+                // Narrower packing: re-pack
+                part.get(local, marking);
+                merged.pack(marking, merged.arena, state * merged.words);
+            }
+
+            merged.hashes[state] = part.hashes[local];
+        }
+
+        merged.size = count;
+        int tableCapacity = merged.table.length;
+
+        while (count * 2 > tableCapacity)
+        {
+            tableCapacity *= 2;
+        }
+
+        merged.rehash(tableCapacity);
+        return merged;
+    }
+
+    /**
+     * Hash of a marking (independent from the packing).
+     *
+     * @param marking
+     * @param places
+     * @return int
+     */
+    static int hash(int[] marking, int places)
+    {
+        int h = 0;
+
+        for (int p = 0; p < places; p++)
+        {
+            h = 31 * h + marking[p];
+        }
+
+        // Spread the low bits used by the table
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+
+        return h;
+    }
+
+    /**
+     * Packs a marking into target at offset.
+     *
+     * @param marking
+     * @param target
+     * @param base
+     */
+    private void pack(int[] marking, long[] target, int base)
+    {
+        Arrays.fill(target, base, base + words, 0L);
+
+        for (int p = 0; p < places; p++)
+        {
+            long offset = (long) p * bits;
+            int word = base + (int) (offset >>> 6);
+            int shift = (int) (offset & 63);
+            long value = (marking[p] == OMEGA) ? mask() : marking[p];
+            target[word] |= value << shift;
+
+            if(shift + bits > 64)
+            {
+                target[word + 1] |= value >>> (64 - shift);
+            }
+        }
+    }
+
+    /**
+     * Compares a packed marking with a stored state.
+     *
+     * @param state
+     * @param buffer
+     * @return boolean
+     */
+    private boolean equalsPacked(int state, long[] buffer)
+    {
+        int base = state * words;
+
+        for (int w = 0; w < words; w++)
+        {
+            if(arena[base + w] != buffer[w])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Widens the bits per place (re-packing all the states) if needed.
+     *
+     * @param marking
+     */
+    private void ensureFits(int[] marking)
+    {
+        int max = 0;
+
+        for (int p = 0; p < places; p++)
+        {
+            if(marking[p] != OMEGA)
+            {
+                max = Math.max(max, marking[p]);
+            }
+        }
+
+        if(max <= maxTokens())
+        {
+            return;
+        }
+
+        int newBits = bits;
+
+        while (newBits < 32 && ((1L << newBits) - 2) < max)
+        {
+            newBits *= 2;
+        }
+
+        int[] marking2 = new int[places];
+        int newWords = wordsFor(newBits);
+        long[] newArena = new long[(arena.length / words) * newWords];
+        int oldBits = bits;
+        int oldWords = words;
+        long[] oldArena = arena;
+
+        for (int state = 0; state < size; state++)
+        {
+            bits = oldBits;
+            words = oldWords;
+            arena = oldArena;
+            get(state, marking2);
+
+            bits = newBits;
+            words = newWords;
+            pack(marking2, newArena, state * newWords);
+        }
+
+        bits = newBits;
+        words = newWords;
+        arena = newArena;
+        packed = new long[words];
+    }
+
+    /**
+     * Grows the states capacity.
+     */
+    private void grow()
+    {
+        int capacity = hashes.length + (hashes.length >> 1);
+        hashes = Arrays.copyOf(hashes, capacity);
+        arena = Arrays.copyOf(arena, capacity * words);
+    }
+
+    /**
+     * Rebuilds the table with a new capacity (power of two).
+     *
+     * @param capacity
+     */
+    private void rehash(int capacity)
+    {
+        table = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int state = 0; state < size; state++)
+        {
+            int slot = hashes[state] & mask;
+
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = state + 1;
+        }
+    }
+
+    /**
+     * Returns the biggest token count the current packing can hold.
+     *
+     * @return long
+     */
+    private long maxTokens()
+    {
+        return mask() - 1;
+    }
+
+    /**
+     * Returns the bit mask of a place.
+     *
+     * @return long
+     */
+    private long mask()
+    {
+        return (1L << bits) - 1;
+    }
+
+    /**
+     * Returns the longs needed by a marking with bits per place.
+     *
+     * @param bitsPerPlace
+     * @return int
+     */
+    private int wordsFor(int bitsPerPlace)
+    {
+        return Math.max(1, (int) (((long) places * bitsPerPlace + 63) >>> 6));
+    }
+}
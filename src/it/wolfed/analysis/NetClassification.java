@@ -0,0 +1,188 @@
+package it.wolfed.analysis;
+
+/**
+ * Structural class of a {@link CompiledNet}, in one pass over its places
+ * (linear for bounded presets).
+ *
+ * S-net: every transition has one input and one output place.
+ * T-net (marked graph): every place has one input and one output transition.
+ * Free-choice: two transitions sharing an input place have no other input.
+ * Extended free-choice: two transitions sharing an input place have the
+ * same inputs.
+ *
+ * All of them are ordinary (weight-one arcs). A workflow net is
+ * classified short-circuited, as its initial and final places would
+ * otherwise break the S- and T-net conditions.
+ */
+public class NetClassification
+{
+    private final boolean ordinary;
+
+    private final boolean sNet;
+
+    private final boolean tNet;
+
+    private final boolean freeChoice;
+
+    private final boolean extendedFreeChoice;
+
+    /**
+     * {@link NetClassification} Constructor.
+     *
+     * @param net
+     */
+    public NetClassification(CompiledNet net)
+    {
+        int[] presetStart = net.getPresetStart();
+        int[] preset = net.getPreset();
+        int[] postsetStart = net.getPostsetStart();
+        int[] consumersStart = net.getConsumersStart();
+        int[] consumers = net.getConsumers();
+        int[] producersStart = net.getProducersStart();
+
+        boolean isOrdinary = true;
+
+        for (int weight : net.getPresetWeight())
+        {
+            isOrdinary = isOrdinary && weight == 1;
+        }
+
+        for (int weight : net.getPostsetWeight())
+        {
+            isOrdinary = isOrdinary && weight == 1;
+        }
+
+        boolean isSNet = isOrdinary;
+
+        for (int t = 0; t < net.getTransitionCount() && isSNet; t++)
+        {
+            isSNet = presetStart[t + 1] - presetStart[t] == 1 && postsetStart[t + 1] - postsetStart[t] == 1;
+        }
+
+        boolean isTNet = isOrdinary;
+        boolean isFreeChoice = isOrdinary;
+        boolean isExtendedFreeChoice = isOrdinary;
+
+        // Stamp of the place whose first consumer preset is marked
+        int[] stamps = new int[net.getPlaceCount()];
+
+        for (int p = 0; p < net.getPlaceCount() && isExtendedFreeChoice; p++)
+        {
+            int count = consumersStart[p + 1] - consumersStart[p];
+
+            isTNet = isTNet && count == 1 && producersStart[p + 1] - producersStart[p] == 1;
+
+            if(count < 2)
+            {
+                continue;
+            }
+
+            int first = consumers[consumersStart[p]];
+            int size = presetStart[first + 1] - presetStart[first];
+
+            for (int k = presetStart[first]; k < presetStart[first + 1]; k++)
+            {
+                stamps[preset[k]] = p + 1;
+            }
+
+            for (int j = consumersStart[p]; j < consumersStart[p + 1]; j++)
+            {
+                int t = consumers[j];
+
+                isFreeChoice = isFreeChoice && presetStart[t + 1] - presetStart[t] == 1;
+                isExtendedFreeChoice = isExtendedFreeChoice && presetStart[t + 1] - presetStart[t] == size;
+
+                for (int k = presetStart[t]; k < presetStart[t + 1] && isExtendedFreeChoice; k++)
+                {
+                    isExtendedFreeChoice = stamps[preset[k]] == p + 1;
+                }
+            }
+        }
+
+        this.ordinary = isOrdinary;
+        this.sNet = isSNet;
+        this.tNet = isTNet && isExtendedFreeChoice;
+        this.freeChoice = isFreeChoice && isExtendedFreeChoice;
+        this.extendedFreeChoice = isExtendedFreeChoice;
+    }
+
+    /**
+     * Returns if every arc has weight one.
+     *
+     * @return boolean
+     */
+    public boolean isOrdinary()
+    {
+        return ordinary;
+    }
+
+    /**
+     * Returns if the net is an S-net (state machine).
+     *
+     * @return boolean
+     */
+    public boolean isSNet()
+    {
+        return sNet;
+    }
+
+    /**
+     * Returns if the net is a T-net (marked graph).
+     *
+     * @return boolean
+     */
+    public boolean isTNet()
+    {
+        return tNet;
+    }
+
+    /**
+     * Returns if the net is free-choice.
+     *
+     * @return boolean
+     */
+    public boolean isFreeChoice()
+    {
+        return freeChoice;
+    }
+
+    /**
+     * Returns if the net is extended free-choice.
+     *
+     * @return boolean
+     */
+    public boolean isExtendedFreeChoice()
+    {
+        return extendedFreeChoice;
+    }
+
+    /**
+     * Returns the name of the narrowest class.
+     *
+     * @return String
+     */
+    public String getName()
+    {
+        if(sNet)
+        {
+            return "S-net";
+        }
+
+        if(tNet)
+        {
+            return "T-net";
+        }
+
+        if(freeChoice)
+        {
+            return "Free-choice";
+        }
+
+        if(extendedFreeChoice)
+        {
+            return "Extended free-choice";
+        }
+
+        return "General";
+    }
+}
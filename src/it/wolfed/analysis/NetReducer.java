@@ -0,0 +1,706 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Murata reduction rules, on a headless copy of a {@link CompiledNet}.
+ *
+ * The rules preserve liveness and boundedness, hence the soundness of a
+ * workflow net (its initial and final places are protected):
+ *
+ * Fusion of series places: p1 -> t -> p2, t the only consumer of p1 and
+ * with no other arcs: p1 and t merge into p2.
+ * Fusion of series transitions: t1 -> p -> t2, p unmarked with only those
+ * arcs and the only input of t2: p and t2 merge into t1.
+ * Fusion of parallel places (transitions): equal presets and postsets.
+ * Elimination of self-loop places: marked, with only a loop on one
+ * transition.
+ * Elimination of self-loop transitions: only a loop on one place.
+ *
+ * They are applied until none applies. The series fusions and the
+ * self-loops need weight-one arcs.
+ */
+public class NetReducer
+{
+    private final CompiledNet net;
+
+    /**
+     * Places never removed (by index).
+     */
+    private final boolean[] protectedPlaces;
+
+    /**
+     * Working copy: arcs in both directions, marking, liveness of nodes.
+     */
+    private Arcs[] preset, postset, consumers, producers;
+
+    private int[] marking;
+
+    private boolean[] placeAlive, transitionAlive;
+
+    /**
+     * Node each node has been fused into (itself if alive, -1 if eliminated).
+     */
+    private int[] placeParent, transitionParent;
+
+    /**
+     * {@link NetReducer} Constructor.
+     *
+     * The initial and final places of a workflow net are protected.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public NetReducer(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph));
+
+        if(graph.isWorkFlow())
+        {
+            protect(net.indexOfPlace(graph.getInitialPlaces().get(0)));
+            protect(net.indexOfPlace(graph.getFinalPlaces().get(0)));
+        }
+    }
+
+    /**
+     * {@link NetReducer} Constructor.
+     *
+     * @param net
+     */
+    public NetReducer(CompiledNet net)
+    {
+        this.net = net;
+        this.protectedPlaces = new boolean[net.getPlaceCount()];
+    }
+
+    /**
+     * Protects a place from removal (it may still absorb others).
+     *
+     * @param place
+     * @return NetReducer
+     */
+    public NetReducer protect(int place)
+    {
+        protectedPlaces[place] = true;
+        return this;
+    }
+
+    /**
+     * Reduces the net.
+     *
+     * @return NetReduction
+     */
+    public NetReduction reduce()
+    {
+        load();
+
+        boolean changed = true;
+
+        while (changed)
+        {
+            changed = false;
+
+            for (int t = 0; t < transitionAlive.length; t++)
+            {
+                changed |= transitionAlive[t] && fuseSeriesPlaces(t);
+                changed |= transitionAlive[t] && eliminateSelfLoopTransition(t);
+            }
+
+            for (int p = 0; p < placeAlive.length; p++)
+            {
+                changed |= placeAlive[p] && fuseSeriesTransitions(p);
+                changed |= placeAlive[p] && eliminateSelfLoopPlace(p);
+            }
+
+            changed |= fuseParallelPlaces();
+            changed |= fuseParallelTransitions();
+        }
+
+        return store();
+    }
+
+    /**
+     * Copies the net in the working structures.
+     */
+    private void load()
+    {
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+
+        preset = new Arcs[transitions];
+        postset = new Arcs[transitions];
+        consumers = new Arcs[places];
+        producers = new Arcs[places];
+        marking = net.getInitialMarking();
+        placeAlive = new boolean[places];
+        transitionAlive = new boolean[transitions];
+        placeParent = new int[places];
+        transitionParent = new int[transitions];
+
+        for (int p = 0; p < places; p++)
+        {
+            consumers[p] = new Arcs();
+            producers[p] = new Arcs();
+            placeAlive[p] = true;
+            placeParent[p] = p;
+        }
+
+        for (int t = 0; t < transitions; t++)
+        {
+            preset[t] = new Arcs();
+            postset[t] = new Arcs();
+            transitionAlive[t] = true;
+            transitionParent[t] = t;
+
+            for (int k = net.getPresetStart()[t]; k < net.getPresetStart()[t + 1]; k++)
+            {
+                link(net.getPreset()[k], t, net.getPresetWeight()[k], true);
+            }
+
+            for (int k = net.getPostsetStart()[t]; k < net.getPostsetStart()[t + 1]; k++)
+            {
+                link(net.getPostset()[k], t, net.getPostsetWeight()[k], false);
+            }
+        }
+    }
+
+    /**
+     * Builds the reduced net and the mapping from the working structures.
+     *
+     * @return NetReduction
+     */
+    private NetReduction store()
+    {
+        int[] placeIndex = new int[placeAlive.length];
+        int[] transitionIndex = new int[transitionAlive.length];
+        List<Vertex> places = new ArrayList<>();
+        List<TransitionVertex> transitions = new ArrayList<>();
+
+        for (int p = 0; p < placeAlive.length; p++)
+        {
+            placeIndex[p] = placeAlive[p] ? places.size() : -1;
+
+            if(placeAlive[p])
+            {
+                places.add(net.getPlace(p));
+            }
+        }
+
+        int arcCount = 0;
+
+        for (int t = 0; t < transitionAlive.length; t++)
+        {
+            transitionIndex[t] = transitionAlive[t] ? transitions.size() : -1;
+
+            if(transitionAlive[t])
+            {
+                transitions.add(net.getTransition(t));
+                arcCount += preset[t].getWeight() + postset[t].getWeight();
+            }
+        }
+
+        // One arc per unit of weight, merged back by the compilation
+        int[] sources = new int[arcCount];
+        int[] targets = new int[arcCount];
+        boolean[] fromPlace = new boolean[arcCount];
+        int size = 0;
+
+        for (int t = 0; t < transitionAlive.length; t++)
+        {
+            if( ! transitionAlive[t])
+            {
+                continue;
+            }
+
+            for (int k = 0; k < preset[t].size; k++)
+            {
+                for (int w = 0; w < preset[t].weight[k]; w++)
+                {
+                    sources[size] = placeIndex[preset[t].node[k]];
+                    targets[size] = transitionIndex[t];
+                    fromPlace[size++] = true;
+                }
+            }
+
+            for (int k = 0; k < postset[t].size; k++)
+            {
+                for (int w = 0; w < postset[t].weight[k]; w++)
+                {
+                    sources[size] = transitionIndex[t];
+                    targets[size] = placeIndex[postset[t].node[k]];
+                    fromPlace[size++] = false;
+                }
+            }
+        }
+
+        int[] initialMarking = new int[places.size()];
+
+        for (int p = 0; p < placeAlive.length; p++)
+        {
+            if(placeAlive[p])
+            {
+                initialMarking[placeIndex[p]] = marking[p];
+            }
+        }
+
+        CompiledNet reduced = new CompiledNet(
+            places.toArray(new Vertex[places.size()]),
+            transitions.toArray(new TransitionVertex[transitions.size()]),
+            initialMarking,
+            sources,
+            targets,
+            fromPlace,
+            arcCount
+        );
+
+        int[] placeMap = new int[placeAlive.length];
+        int[] transitionMap = new int[transitionAlive.length];
+
+        for (int p = 0; p < placeMap.length; p++)
+        {
+            int root = resolve(placeParent, p);
+            placeMap[p] = root == -1 ? -1 : placeIndex[root];
+        }
+
+        for (int t = 0; t < transitionMap.length; t++)
+        {
+            int root = resolve(transitionParent, t);
+            transitionMap[t] = root == -1 ? -1 : transitionIndex[root];
+        }
+
+        return new NetReduction(net, reduced, placeMap, transitionMap);
+    }
+
+    /**
+     * Follows the fusions of a node, -1 if it ends eliminated.
+     *
+     * @param parent
+     * @param node
+     * @return int
+     */
+    private static int resolve(int[] parent, int node)
+    {
+        while (node != -1 && parent[node] != node)
+        {
+            node = parent[node];
+        }
+
+        return node;
+    }
+
+    /**
+     * Fusion of series places around t.
+     *
+     * @param t
+     * @return boolean
+     */
+    private boolean fuseSeriesPlaces(int t)
+    {
+        if( ! preset[t].isSingle() || ! postset[t].isSingle())
+        {
+            return false;
+        }
+
+        int p1 = preset[t].node[0];
+        int p2 = postset[t].node[0];
+
+        // An empty source p1 would hide a dead t
+        if(p1 == p2 || protectedPlaces[p1] || ! consumers[p1].isSingle()
+            || (producers[p1].size == 0 && marking[p1] == 0))
+        {
+            return false;
+        }
+
+        Arcs inputs = producers[p1].copy();
+
+        for (int k = 0; k < inputs.size; k++)
+        {
+            link(p2, inputs.node[k], inputs.weight[k], false);
+        }
+
+        marking[p2] += marking[p1];
+        removePlace(p1);
+        removeTransition(t);
+        placeParent[p1] = p2;
+        transitionParent[t] = -1;
+
+        return true;
+    }
+
+    /**
+     * Fusion of series transitions around p.
+     *
+     * @param p
+     * @return boolean
+     */
+    private boolean fuseSeriesTransitions(int p)
+    {
+        if(protectedPlaces[p] || marking[p] != 0 || ! producers[p].isSingle() || ! consumers[p].isSingle())
+        {
+            return false;
+        }
+
+        int t1 = producers[p].node[0];
+        int t2 = consumers[p].node[0];
+
+        if(t1 == t2 || ! preset[t2].isSingle())
+        {
+            return false;
+        }
+
+        Arcs outputs = postset[t2].copy();
+
+        for (int k = 0; k < outputs.size; k++)
+        {
+            link(outputs.node[k], t1, outputs.weight[k], false);
+        }
+
+        removePlace(p);
+        removeTransition(t2);
+        placeParent[p] = -1;
+        transitionParent[t2] = t1;
+
+        return true;
+    }
+
+    /**
+     * Elimination of a self-loop place.
+     *
+     * @param p
+     * @return boolean
+     */
+    private boolean eliminateSelfLoopPlace(int p)
+    {
+        if(protectedPlaces[p] || marking[p] == 0 || ! producers[p].isSingle() || ! consumers[p].isSingle()
+            || producers[p].node[0] != consumers[p].node[0])
+        {
+            return false;
+        }
+
+        removePlace(p);
+        placeParent[p] = -1;
+
+        return true;
+    }
+
+    /**
+     * Elimination of a self-loop transition.
+     *
+     * @param t
+     * @return boolean
+     */
+    private boolean eliminateSelfLoopTransition(int t)
+    {
+        if( ! preset[t].isSingle() || ! postset[t].isSingle() || preset[t].node[0] != postset[t].node[0])
+        {
+            return false;
+        }
+
+        removeTransition(t);
+        transitionParent[t] = -1;
+
+        return true;
+    }
+
+    /**
+     * Fusion of parallel places: the one with the fewest tokens (or the
+     * protected one) is kept.
+     *
+     * @return boolean
+     */
+    private boolean fuseParallelPlaces()
+    {
+        boolean changed = false;
+        Map<Long, Integer> kept = new HashMap<>();
+
+        for (int p = 0; p < placeAlive.length; p++)
+        {
+            if( ! placeAlive[p])
+            {
+                continue;
+            }
+
+            long key = producers[p].hash() * 31 + consumers[p].hash();
+            Integer other = kept.get(key);
+
+            if(other == null || ! producers[p].equals(producers[other]) || ! consumers[p].equals(consumers[other]))
+            {
+                // Collisions just miss the fusion
+                kept.put(key, p);
+                continue;
+            }
+
+            int keep = other;
+            int drop = p;
+
+            if(protectedPlaces[drop] || ( ! protectedPlaces[keep] && marking[drop] < marking[keep]))
+            {
+                keep = p;
+                drop = other;
+            }
+
+            if(protectedPlaces[drop])
+            {
+                continue;
+            }
+
+            removePlace(drop);
+            placeParent[drop] = keep;
+            kept.put(key, keep);
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Fusion of parallel transitions.
+     *
+     * @return boolean
+     */
+    private boolean fuseParallelTransitions()
+    {
+        boolean changed = false;
+        Map<Long, Integer> kept = new HashMap<>();
+
+        for (int t = 0; t < transitionAlive.length; t++)
+        {
+            if( ! transitionAlive[t])
+            {
+                continue;
+            }
+
+            long key = preset[t].hash() * 31 + postset[t].hash();
+            Integer other = kept.get(key);
+
+            if(other == null || ! preset[t].equals(preset[other]) || ! postset[t].equals(postset[other]))
+            {
+                kept.put(key, t);
+                continue;
+            }
+
+            removeTransition(t);
+            transitionParent[t] = other;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    /**
+     * Adds an arc between place and transition.
+     *
+     * @param place
+     * @param transition
+     * @param weight
+     * @param input         true for place -> transition
+     */
+    private void link(int place, int transition, int weight, boolean input)
+    {
+        if(input)
+        {
+            preset[transition].add(place, weight);
+            consumers[place].add(transition, weight);
+        }
+        else
+        {
+            postset[transition].add(place, weight);
+            producers[place].add(transition, weight);
+        }
+    }
+
+    /**
+     * Removes a place and its arcs.
+     *
+     * @param p
+     */
+    private void removePlace(int p)
+    {
+        for (int k = 0; k < consumers[p].size; k++)
+        {
+            preset[consumers[p].node[k]].remove(p);
+        }
+
+        for (int k = 0; k < producers[p].size; k++)
+        {
+            postset[producers[p].node[k]].remove(p);
+        }
+
+        consumers[p] = new Arcs();
+        producers[p] = new Arcs();
+        placeAlive[p] = false;
+    }
+
+    /**
+     * Removes a transition and its arcs.
+     *
+     * @param t
+     */
+    private void removeTransition(int t)
+    {
+        for (int k = 0; k < preset[t].size; k++)
+        {
+            consumers[preset[t].node[k]].remove(t);
+        }
+
+        for (int k = 0; k < postset[t].size; k++)
+        {
+            producers[postset[t].node[k]].remove(t);
+        }
+
+        preset[t] = new Arcs();
+        postset[t] = new Arcs();
+        transitionAlive[t] = false;
+    }
+
+    /**
+     * Weighted arcs of a node (unsorted, merged by node).
+     */
+    private static class Arcs
+    {
+        int[] node = new int[2];
+
+        int[] weight = new int[2];
+
+        int size;
+
+        /**
+         * Adds weight to the arc to n.
+         *
+         * @param n
+         * @param w
+         */
+        void add(int n, int w)
+        {
+            for (int k = 0; k < size; k++)
+            {
+                if(node[k] == n)
+                {
+                    weight[k] += w;
+                    return;
+                }
+            }
+
+            node = ReachabilityExplorer.ensure(node, size + 1);
+            weight = ReachabilityExplorer.ensure(weight, size + 1);
+            node[size] = n;
+            weight[size] = w;
+            size++;
+        }
+
+        /**
+         * Removes the arc to n.
+         *
+         * @param n
+         */
+        void remove(int n)
+        {
+            for (int k = 0; k < size; k++)
+            {
+                if(node[k] == n)
+                {
+                    size--;
+                    node[k] = node[size];
+                    weight[k] = weight[size];
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns if there is exactly one arc, of weight one.
+         *
+         * @return boolean
+         */
+        boolean isSingle()
+        {
+            return size == 1 && weight[0] == 1;
+        }
+
+        /**
+         * Returns the total weight.
+         *
+         * @return int
+         */
+        int getWeight()
+        {
+            int total = 0;
+
+            for (int k = 0; k < size; k++)
+            {
+                total += weight[k];
+            }
+
+            return total;
+        }
+
+        /**
+         * Returns an order-independent hash.
+         *
+         * @return long
+         */
+        long hash()
+        {
+            long hash = size;
+
+            for (int k = 0; k < size; k++)
+            {
+                long h = (node[k] + 1) * 0x9E3779B97F4A7C15L + weight[k];
+                hash += h ^ (h >>> 29);
+            }
+
+            return hash;
+        }
+
+        /**
+         * Returns if both have the same arcs and weights.
+         *
+         * @param other
+         * @return boolean
+         */
+        boolean equals(Arcs other)
+        {
+            if(size != other.size)
+            {
+                return false;
+            }
+
+            search:
+            for (int k = 0; k < size; k++)
+            {
+                for (int j = 0; j < other.size; j++)
+                {
+                    if(other.node[j] == node[k])
+                    {
+                        if(other.weight[j] != weight[k])
+                        {
+                            return false;
+                        }
+
+                        continue search;
+                    }
+                }
+
+                return false;
+            }
+
+            return true;
+        }
+
+        Arcs copy()
+        {
+            Arcs copy = new Arcs();
+            copy.node = node.clone();
+            copy.weight = weight.clone();
+            copy.size = size;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package it.wolfed.analysis;
+
+import java.util.Arrays;
+
+/**
+ * A net reduced by {@link NetReducer}, with the mapping back to the
+ * original nodes.
+ *
+ * Each original place is fused into one reduced place or eliminated (-1);
+ * each original transition is fused into one reduced transition (firing
+ * it fires the whole fused sequence) or eliminated (-1).
+ */
+public class NetReduction
+{
+    private final CompiledNet original;
+
+    private final CompiledNet reduced;
+
+    /**
+     * Reduced index of each original place and transition, -1 if eliminated.
+     */
+    private final int[] placeMap, transitionMap;
+
+    /**
+     * {@link NetReduction} Constructor.
+     *
+     * @param original
+     * @param reduced
+     * @param placeMap
+     * @param transitionMap
+     */
+    NetReduction(CompiledNet original, CompiledNet reduced, int[] placeMap, int[] transitionMap)
+    {
+        this.original = original;
+        this.reduced = reduced;
+        this.placeMap = placeMap;
+        this.transitionMap = transitionMap;
+    }
+
+    /**
+     * Returns the original net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getOriginalNet()
+    {
+        return original;
+    }
+
+    /**
+     * Returns the reduced net.
+     *
+     * Its nodes are the original nodes kept as representatives.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return reduced;
+    }
+
+    /**
+     * Returns the reduced index of an original place, -1 if eliminated.
+     *
+     * @param place
+     * @return int
+     */
+    public int getReducedPlace(int place)
+    {
+        return placeMap[place];
+    }
+
+    /**
+     * Returns the reduced index of an original transition, -1 if eliminated.
+     *
+     * @param transition
+     * @return int
+     */
+    public int getReducedTransition(int transition)
+    {
+        return transitionMap[transition];
+    }
+
+    /**
+     * Returns the original places fused into a reduced place.
+     *
+     * @param place
+     * @return int[]
+     */
+    public int[] getPlaceOrigins(int place)
+    {
+        return origins(placeMap, place);
+    }
+
+    /**
+     * Returns the original transitions fused into a reduced transition.
+     *
+     * @param transition
+     * @return int[]
+     */
+    public int[] getTransitionOrigins(int transition)
+    {
+        return origins(transitionMap, transition);
+    }
+
+    /**
+     * Returns the fraction of nodes removed.
+     *
+     * @return double
+     */
+    public double getReductionRatio()
+    {
+        int before = original.getPlaceCount() + original.getTransitionCount();
+        int after = reduced.getPlaceCount() + reduced.getTransitionCount();
+
+        return before == 0 ? 0 : 1 - (double) after / before;
+    }
+
+    /**
+     * Returns the original indexes mapped to index.
+     *
+     * @param map
+     * @param index
+     * @return int[]
+     */
+    private static int[] origins(int[] map, int index)
+    {
+        int[] origins = new int[map.length];
+        int size = 0;
+
+        for (int i = 0; i < map.length; i++)
+        {
+            if(map[i] == index)
+            {
+                origins[size++] = i;
+            }
+        }
+
+        return Arrays.copyOf(origins, size);
+    }
+}
@@ -0,0 +1,451 @@
+package it.wolfed.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel mode of {@link ReachabilityExplorer}.
+ *
+ * The state space is explored level by level. The states of a level are
+ * split in chunks, expanded by fork-join tasks (work-stealing over the
+ * pool deques) straight into a lock-striped global store: each successor
+ * is hashed once, picks its stripe from the high bits of the hash and is
+ * added there, getting a provisional (stripe, local index) number. The
+ * chunks are then walked in order, giving the final number to each state
+ * the first time it is met: this is the order of the sequential search, so
+ * the resulting graph (state numbers, predecessors, edges, deadlocks) is
+ * identical. That walk only reads and writes int arrays; the markings are
+ * never hashed again, not even when the stripes are merged in the final
+ * store.
+ */
+class ParallelExploration
+{
+    /**
+     * States expanded by a leaf task.
+     */
+    private static final int CHUNK = 256;
+
+    private final CompiledNet net;
+
+    private final int maxStates;
+
+    private final boolean storeEdges;
+
+    private final int parallelism;
+
+    private final StateListener listener;
+
+    /**
+     * The global store, one lock each.
+     */
+    private Stripe[] stripes;
+
+    /**
+     * log2 of the number of stripes.
+     */
+    private int stripeBits;
+
+    /**
+     * Stripe of each numbered state.
+     */
+    private int[] partOf = new int[1024];
+
+    /**
+     * Index in its stripe of each numbered state.
+     */
+    private int[] localOf = new int[1024];
+
+    /**
+     * {@link ParallelExploration} Constructor.
+     *
+     * @param net
+     * @param maxStates
+     * @param storeEdges
+     * @param parallelism
+     * @param listener      may be null
+     */
+    ParallelExploration(CompiledNet net, int maxStates, boolean storeEdges, int parallelism,
+            StateListener listener)
+    {
+        this.net = net;
+        this.maxStates = maxStates;
+        this.storeEdges = storeEdges;
+        this.parallelism = parallelism;
+        this.listener = listener;
+    }
+
+    /**
+     * Explores the state space.
+     *
+     * @return ReachabilityGraph
+     */
+    ReachabilityGraph explore()
+    {
+        int places = net.getPlaceCount();
+
+        // At least 2 stripes, so that the stripe shift stays under 32
+        stripeBits = 1;
+
+        while ((1 << stripeBits) < parallelism * 16)
+        {
+            stripeBits++;
+        }
+
+        stripes = new Stripe[1 << stripeBits];
+
+        for (int s = 0; s < stripes.length; s++)
+        {
+            stripes[s] = new Stripe(places);
+        }
+
+        int[] predecessorState = new int[1024];
+        int[] predecessorTransition = new int[1024];
+        int[] edgeStart = storeEdges ? new int[1024] : null;
+        int[] edgeTarget = storeEdges ? new int[4096] : null;
+        int[] edgeTransition = storeEdges ? new int[4096] : null;
+        int[] deadlocks = new int[16];
+        int deadlockCount = 0;
+        long edgeCount = 0;
+        long enabledCount = 0;
+        boolean complete = true;
+        int[] marking = new int[places];
+
+        long initial = add(net.getInitialMarking());
+        partOf[0] = (int) (initial & (stripes.length - 1));
+        localOf[0] = (int) (initial >>> stripeBits);
+        stripes[partOf[0]].ensureNumbers();
+        stripes[partOf[0]].number[localOf[0]] = 0;
+        predecessorState[0] = -1;
+        predecessorTransition[0] = -1;
+
+        int count = 1;
+        int levelStart = 0;
+        int levelEnd = 1;
+        int expanded = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try
+        {
+            levels:
+            while (levelStart < levelEnd)
+            {
+                Chunk[] chunks = new Chunk[(levelEnd - levelStart + CHUNK - 1) / CHUNK];
+                pool.invoke(new ExpandTask(chunks, levelStart, levelEnd, 0, chunks.length));
+
+                for (Stripe stripe : stripes)
+                {
+                    stripe.ensureNumbers();
+                }
+
+                // Number in sequential order
+                int parent = levelStart;
+
+                for (Chunk chunk : chunks)
+                {
+                    for (int i = 0; i < chunk.parents; i++, parent++)
+                    {
+                        if(storeEdges)
+                        {
+                            edgeStart = ReachabilityExplorer.ensure(edgeStart, parent + 2);
+                            edgeStart[parent] = (int) edgeCount;
+                        }
+
+                        enabledCount += chunk.start[i + 1] - chunk.start[i];
+
+                        if(chunk.start[i] == chunk.start[i + 1])
+                        {
+                            deadlocks = ReachabilityExplorer.ensure(deadlocks, deadlockCount + 1);
+                            deadlocks[deadlockCount++] = parent;
+                        }
+
+                        for (int k = chunk.start[i]; k < chunk.start[i + 1]; k++)
+                        {
+                            long target = chunk.targets[k];
+                            int transition = chunk.transitions[k];
+                            int part = (int) (target & (stripes.length - 1));
+                            int local = (int) (target >>> stripeBits);
+                            int state = stripes[part].number[local];
+
+                            if(state == -1)
+                            {
+                                if(count >= maxStates)
+                                {
+                                    // Over the limit: the successor is dropped
+                                    complete = false;
+                                    continue;
+                                }
+
+                                state = count++;
+                                stripes[part].number[local] = state;
+
+                                partOf = ReachabilityExplorer.ensure(partOf, state + 1);
+                                localOf = ReachabilityExplorer.ensure(localOf, state + 1);
+                                partOf[state] = part;
+                                localOf[state] = local;
+
+                                predecessorState = ReachabilityExplorer.ensure(predecessorState, state + 1);
+                                predecessorTransition = ReachabilityExplorer.ensure(predecessorTransition, state + 1);
+                                predecessorState[state] = parent;
+                                predecessorTransition[state] = transition;
+                            }
+
+                            if(storeEdges)
+                            {
+                                edgeTarget = ReachabilityExplorer.ensure(edgeTarget, (int) edgeCount + 1);
+                                edgeTransition = ReachabilityExplorer.ensure(edgeTransition, (int) edgeCount + 1);
+                                edgeTarget[(int) edgeCount] = state;
+                                edgeTransition[(int) edgeCount] = transition;
+                            }
+
+                            edgeCount++;
+                        }
+
+                        expanded++;
+
+                        if(listener != null)
+                        {
+                            stripes[partOf[parent]].get(localOf[parent], marking);
+
+                            if( ! listener.stateExpanded(parent, marking, chunk.start[i] == chunk.start[i + 1]))
+                            {
+                                // Stopped: the states left have no edges
+                                complete = false;
+                                break levels;
+                            }
+                        }
+                    }
+                }
+
+                levelStart = levelEnd;
+                levelEnd = count;
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        MarkingStore[] sets = new MarkingStore[stripes.length];
+
+        for (int s = 0; s < stripes.length; s++)
+        {
+            sets[s] = stripes[s].set;
+        }
+
+        MarkingStore store = MarkingStore.merge(sets, partOf, localOf, count);
+        stripes = null;
+
+        if(storeEdges)
+        {
+            edgeStart = ReachabilityExplorer.ensure(edgeStart, count + 1);
+            Arrays.fill(edgeStart, expanded, count + 1, (int) edgeCount);
+            edgeStart = Arrays.copyOf(edgeStart, count + 1);
+            edgeTarget = Arrays.copyOf(edgeTarget, (int) edgeCount);
+            edgeTransition = Arrays.copyOf(edgeTransition, (int) edgeCount);
+        }
+
+        return new ReachabilityGraph(
+            net,
+            store,
+            Arrays.copyOf(predecessorState, count),
+            Arrays.copyOf(predecessorTransition, count),
+            edgeStart,
+            edgeTarget,
+            edgeTransition,
+            edgeCount,
+            enabledCount,
+            Arrays.copyOf(deadlocks, deadlockCount),
+            complete
+        );
+    }
+
+    /**
+     * Adds a marking to its stripe.
+     *
+     * @param marking
+     * @return long     provisional number: (local index << stripeBits) | stripe
+     */
+    private long add(int[] marking)
+    {
+        int hash = MarkingStore.hash(marking, marking.length);
+
+        // High bits: the stripe tables use the low ones
+        int s = hash >>> (32 - stripeBits);
+
+        return ((long) stripes[s].add(marking, hash) << stripeBits) | s;
+    }
+
+    /**
+     * Expands the states of a chunk, adding the successors to the store.
+     *
+     * @param from
+     * @param to
+     * @return Chunk
+     */
+    private Chunk expand(int from, int to)
+    {
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+        int[] marking = new int[places];
+        int[] successor = new int[places];
+        Chunk chunk = new Chunk(to - from);
+
+        for (int state = from; state < to; state++)
+        {
+            stripes[partOf[state]].get(localOf[state], marking);
+
+            for (int t = 0; t < transitions; t++)
+            {
+                if( ! net.isEnabled(t, marking))
+                {
+                    continue;
+                }
+
+                System.arraycopy(marking, 0, successor, 0, places);
+                net.fire(t, successor);
+                chunk.add(t, add(successor));
+            }
+
+            chunk.start[state - from + 1] = chunk.size;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Splits a range of chunks until a single one is left.
+     */
+    private class ExpandTask extends RecursiveAction
+    {
+        private final Chunk[] chunks;
+
+        private final int levelStart;
+
+        private final int levelEnd;
+
+        private final int from;
+
+        private final int to;
+
+        ExpandTask(Chunk[] chunks, int levelStart, int levelEnd, int from, int to)
+        {
+            this.chunks = chunks;
+            this.levelStart = levelStart;
+            this.levelEnd = levelEnd;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from == 1)
+            {
+                int first = levelStart + from * CHUNK;
+                chunks[from] = expand(first, Math.min(first + CHUNK, levelEnd));
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new ExpandTask(chunks, levelStart, levelEnd, from, middle),
+                new ExpandTask(chunks, levelStart, levelEnd, middle, to)
+            );
+        }
+    }
+
+    /**
+     * One lock of the global store.
+     */
+    private static class Stripe
+    {
+        /**
+         * States of the stripe, numbered states or not.
+         */
+        final MarkingStore set;
+
+        /**
+         * Final state numbers, -1 if none yet. Owned by the numbering walk.
+         */
+        int[] number = new int[0];
+
+        Stripe(int places)
+        {
+            set = new MarkingStore(places);
+        }
+
+        /**
+         * Adds a marking, returning its local index.
+         *
+         * @param marking
+         * @param hash
+         * @return int
+         */
+        synchronized int add(int[] marking, int hash)
+        {
+            int local = set.add(marking, hash);
+
+            return local >= 0 ? local : -local - 1;
+        }
+
+        /**
+         * Copies the marking at a local index.
+         *
+         * @param local
+         * @param marking
+         */
+        synchronized void get(int local, int[] marking)
+        {
+            set.get(local, marking);
+        }
+
+        /**
+         * Sizes the final numbers to the states of the stripe.
+         */
+        void ensureNumbers()
+        {
+            if(number.length < set.size())
+            {
+                int old = number.length;
+                number = Arrays.copyOf(number, Math.max(set.size(), old + (old >> 1)));
+                Arrays.fill(number, old, number.length, -1);
+            }
+        }
+    }
+
+    /**
+     * Successors found by a leaf task, grouped by expanded state.
+     */
+    private static class Chunk
+    {
+        final int parents;
+
+        final int[] start;
+
+        int[] transitions = new int[64];
+
+        long[] targets = new long[64];
+
+        int size;
+
+        Chunk(int parents)
+        {
+            this.parents = parents;
+            this.start = new int[parents + 1];
+        }
+
+        void add(int transition, long target)
+        {
+            if(size == targets.length)
+            {
+                transitions = Arrays.copyOf(transitions, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+
+            transitions[size] = transition;
+            targets[size] = target;
+            size++;
+        }
+    }
+}
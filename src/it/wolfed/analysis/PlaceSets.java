@@ -0,0 +1,129 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sets of places of a {@link CompiledNet} (siphons or traps), as bitsets.
+ */
+public class PlaceSets
+{
+    private final CompiledNet net;
+
+    /**
+     * One bitset (places by index) per set.
+     */
+    private final List<long[]> sets;
+
+    /**
+     * False if the search has given up (count limit).
+     */
+    private final boolean complete;
+
+    /**
+     * {@link PlaceSets} Constructor.
+     *
+     * @param net
+     * @param sets
+     * @param complete
+     */
+    PlaceSets(CompiledNet net, List<long[]> sets, boolean complete)
+    {
+        this.net = net;
+        this.sets = sets;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the number of sets.
+     *
+     * @return int
+     */
+    public int getCount()
+    {
+        return sets.size();
+    }
+
+    /**
+     * Returns if the search has found all the sets.
+     *
+     * @return boolean
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Returns if a set contains the place at index.
+     *
+     * @param set
+     * @param place
+     * @return boolean
+     */
+    public boolean contains(int set, int place)
+    {
+        return (sets.get(set)[place >>> 6] & (1L << (place & 63))) != 0;
+    }
+
+    /**
+     * Returns the place indexes of a set (sorted).
+     *
+     * @param set
+     * @return int[]
+     */
+    public int[] getIndexes(int set)
+    {
+        long[] bits = sets.get(set);
+        int[] indexes = new int[cardinality(bits)];
+        int size = 0;
+
+        for (int w = 0; w < bits.length; w++)
+        {
+            for (long word = bits[w]; word != 0; word &= word - 1)
+            {
+                indexes[size++] = (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Returns the places of a set.
+     *
+     * @param set
+     * @return List<Vertex>
+     */
+    public List<Vertex> getPlaces(int set)
+    {
+        List<Vertex> places = new ArrayList<>();
+
+        for (int p : getIndexes(set))
+        {
+            places.add(net.getPlace(p));
+        }
+
+        return Collections.unmodifiableList(places);
+    }
+
+    /**
+     * Returns the number of set bits.
+     *
+     * @param bits
+     * @return int
+     */
+    static int cardinality(long[] bits)
+    {
+        int count = 0;
+
+        for (long word : bits)
+        {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+}
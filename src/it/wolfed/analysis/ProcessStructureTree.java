@@ -0,0 +1,1167 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Decomposition of a workflow net into nested single-entry single-exit
+ * {@link Fragment}s.
+ *
+ * The net is read as a flow graph (places and transitions as nodes, arcs
+ * as links) and reduced until a single link from the initial to the final
+ * place is left, each reduction replacing a fragment by one link:
+ *
+ * Sequence: a node with one incoming and one outgoing link.
+ * Bond: links between the same two nodes, all in one direction (PARALLEL
+ * or CHOICE, after the split node) or in both (LOOP, if the loop is only
+ * entered on one side and left on the other). A sequence closing on its
+ * own start is a LOOP on that node.
+ *
+ * Both rules are local and run from a worklist: a block-structured net is
+ * decomposed in linear time. When none applies, the smallest regions
+ * between a node u and its immediate post-dominator v (u being the
+ * immediate dominator of v), closed to the rest of the net, are reduced
+ * as RIGID fragments and the rules go on. Whatever is left is a RIGID root.
+ *
+ * Each fragment carries a structural hash, so that fragments of the same
+ * shape share their analysis.
+ */
+public class ProcessStructureTree
+{
+    private final CompiledNet net;
+
+    private final int initialPlace;
+
+    private final int finalPlace;
+
+    private final Fragment root;
+
+    /**
+     * Fragments in post-order (children first).
+     */
+    private final List<Fragment> fragments;
+
+    /**
+     * {@link ProcessStructureTree} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph     a workflow net
+     */
+    public ProcessStructureTree(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph), graph);
+    }
+
+    /**
+     * @param net
+     * @param graph
+     */
+    private ProcessStructureTree(CompiledNet net, PetriNetGraph graph)
+    {
+        this(net, net.indexOfPlace(graph.getInitialPlaces().get(0)), net.indexOfPlace(graph.getFinalPlaces().get(0)));
+    }
+
+    /**
+     * {@link ProcessStructureTree} Constructor.
+     *
+     * @param net
+     * @param initialPlace
+     * @param finalPlace
+     */
+    public ProcessStructureTree(CompiledNet net, int initialPlace, int finalPlace)
+    {
+        this.net = net;
+        this.initialPlace = initialPlace;
+        this.finalPlace = finalPlace;
+        this.root = new Decomposition().run();
+
+        List<Fragment> order = new ArrayList<>();
+        Deque<Fragment> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        // Reversed pre-order with children pushed in order is a post-order
+        while ( ! stack.isEmpty())
+        {
+            Fragment fragment = stack.pop();
+            order.add(fragment);
+
+            for (Fragment child : fragment.getChildren())
+            {
+                stack.push(child);
+            }
+        }
+
+        Collections.reverse(order);
+        this.fragments = Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Returns the compiled net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Returns the initial place index.
+     *
+     * @return int
+     */
+    public int getInitialPlace()
+    {
+        return initialPlace;
+    }
+
+    /**
+     * Returns the final place index.
+     *
+     * @return int
+     */
+    public int getFinalPlace()
+    {
+        return finalPlace;
+    }
+
+    /**
+     * Returns the root fragment.
+     *
+     * @return Fragment
+     */
+    public Fragment getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Returns all the fragments, children before their parent.
+     *
+     * @return List<Fragment>
+     */
+    public List<Fragment> getFragments()
+    {
+        return fragments;
+    }
+
+    /**
+     * Returns if the net is block-structured (no RIGID fragment).
+     *
+     * @return boolean
+     */
+    public boolean isStructured()
+    {
+        return root.isStructured();
+    }
+
+    /**
+     * Bit mixer (splitmix64 finalizer).
+     *
+     * @param h
+     * @return long
+     */
+    private static long mix(long h)
+    {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Ordered combination of two hashes.
+     *
+     * @param seed
+     * @param value
+     * @return long
+     */
+    private static long combine(long seed, long value)
+    {
+        return mix(seed * 0x9e3779b97f4a7c15L + value);
+    }
+
+    /**
+     * A link of the flow graph, carrying the fragment it stands for.
+     */
+    private static class Link
+    {
+        final int source;
+
+        final int target;
+
+        final Fragment fragment;
+
+        boolean alive = true;
+
+        Link(int source, int target, Fragment fragment)
+        {
+            this.source = source;
+            this.target = target;
+            this.fragment = fragment;
+        }
+    }
+
+    /**
+     * Working state of one decomposition.
+     */
+    private class Decomposition
+    {
+        private final int places = net.getPlaceCount();
+
+        private final int nodes = places + net.getTransitionCount();
+
+        /**
+         * Links by node (dead ones dropped lazily) and live counts.
+         */
+        private final List<List<Link>> in = new ArrayList<>(nodes);
+
+        private final List<List<Link>> out = new ArrayList<>(nodes);
+
+        private final int[] inCount = new int[nodes];
+
+        private final int[] outCount = new int[nodes];
+
+        private int linkCount;
+
+        /**
+         * Nodes absorbed into a fragment interior.
+         */
+        private final boolean[] absorbed = new boolean[nodes];
+
+        /**
+         * Bodies of the loops closing on each node, null if none.
+         */
+        private final List<List<Fragment>> loops = new ArrayList<>(nodes);
+
+        /**
+         * Nodes to try the sequence rule on.
+         */
+        private final Deque<Integer> worklist = new ArrayDeque<>();
+
+        private final boolean[] queued = new boolean[nodes];
+
+        /**
+         * Scratch stamps by node.
+         */
+        private final int[] stamps = new int[nodes];
+
+        private int stamp;
+
+        /**
+         * Runs the decomposition.
+         *
+         * @return Fragment     the root
+         */
+        Fragment run()
+        {
+            for (int node = 0; node < nodes; node++)
+            {
+                in.add(new ArrayList<Link>(2));
+                out.add(new ArrayList<Link>(2));
+                loops.add(null);
+                enqueue(node);
+            }
+
+            for (int t = 0; t < net.getTransitionCount(); t++)
+            {
+                for (int k = net.getPresetStart()[t]; k < net.getPresetStart()[t + 1]; k++)
+                {
+                    addLink(trivial(net.getPreset()[k], places + t, net.getPresetWeight()[k]));
+                }
+
+                for (int k = net.getPostsetStart()[t]; k < net.getPostsetStart()[t + 1]; k++)
+                {
+                    addLink(trivial(places + t, net.getPostset()[k], net.getPostsetWeight()[k]));
+                }
+            }
+
+            // Arcs both ways between a place and a transition
+            for (int node = 0; node < places; node++)
+            {
+                List<Integer> loopTransitions = new ArrayList<>();
+                stamp++;
+
+                for (Link link : live(in.get(node)))
+                {
+                    stamps[link.source] = stamp;
+                }
+
+                for (Link link : live(out.get(node)))
+                {
+                    if(stamps[link.target] == stamp)
+                    {
+                        loopTransitions.add(link.target);
+                    }
+                }
+
+                for (int transition : loopTransitions)
+                {
+                    tryBond(node, transition);
+                }
+            }
+
+            while (true)
+            {
+                while ( ! worklist.isEmpty())
+                {
+                    int node = worklist.poll();
+                    queued[node] = false;
+                    trySequence(node);
+                }
+
+                if(isDone() || ! reduceRigids())
+                {
+                    break;
+                }
+            }
+
+            return getRoot();
+        }
+
+        /**
+         * Returns a TRIVIAL fragment.
+         *
+         * @param source
+         * @param target
+         * @param weight
+         * @return Fragment
+         */
+        private Fragment trivial(int source, int target, int weight)
+        {
+            return new Fragment(
+                Fragment.Type.TRIVIAL,
+                net,
+                source,
+                target,
+                weight,
+                Collections.<Fragment>emptyList(),
+                new int[0],
+                combine(combine(Fragment.Type.TRIVIAL.ordinal(), kind(source)), weight)
+            );
+        }
+
+        /**
+         * Returns a fragment.
+         *
+         * @param type
+         * @param entry
+         * @param exit
+         * @param children
+         * @param interior
+         * @param hash
+         * @return Fragment
+         */
+        private Fragment fragment(Fragment.Type type, int entry, int exit, List<Fragment> children, int[] interior, long hash)
+        {
+            return new Fragment(type, net, entry, exit, 0, children, interior, hash);
+        }
+
+        /**
+         * Returns 1 for a place, 2 for a transition.
+         *
+         * @param node
+         * @return int
+         */
+        private int kind(int node)
+        {
+            return node < places ? 1 : 2;
+        }
+
+        /**
+         * Adds the link of a fragment, or a loop body if it closes on its
+         * entry.
+         *
+         * @param fragment
+         */
+        private void addLink(Fragment fragment)
+        {
+            int source = fragment.getEntryNode();
+            int target = fragment.getExitNode();
+
+            if(source == target)
+            {
+                if(loops.get(source) == null)
+                {
+                    loops.set(source, new ArrayList<Fragment>());
+                }
+
+                loops.get(source).add(fragment);
+                return;
+            }
+
+            Link link = new Link(source, target, fragment);
+            out.get(source).add(link);
+            in.get(target).add(link);
+            outCount[source]++;
+            inCount[target]++;
+            linkCount++;
+        }
+
+        /**
+         * Removes a link.
+         *
+         * @param link
+         */
+        private void kill(Link link)
+        {
+            link.alive = false;
+            outCount[link.source]--;
+            inCount[link.target]--;
+            linkCount--;
+        }
+
+        /**
+         * Drops the dead links of a list.
+         *
+         * @param links
+         * @return List<Link>   the same list
+         */
+        private List<Link> live(List<Link> links)
+        {
+            int size = 0;
+
+            for (int i = 0; i < links.size(); i++)
+            {
+                if(links.get(i).alive)
+                {
+                    links.set(size++, links.get(i));
+                }
+            }
+
+            links.subList(size, links.size()).clear();
+
+            return links;
+        }
+
+        /**
+         * Queues a node for the sequence rule.
+         *
+         * @param node
+         */
+        private void enqueue(int node)
+        {
+            if( ! queued[node])
+            {
+                queued[node] = true;
+                worklist.add(node);
+            }
+        }
+
+        /**
+         * Absorbs a node, returning its loop (if any) to become a child.
+         *
+         * @param node
+         * @return Fragment     null if none
+         */
+        private Fragment absorb(int node)
+        {
+            absorbed[node] = true;
+
+            return takeLoop(node);
+        }
+
+        /**
+         * Returns the LOOP fragment of the bodies closing on a node, null if
+         * none.
+         *
+         * @param node
+         * @return Fragment
+         */
+        private Fragment takeLoop(int node)
+        {
+            List<Fragment> bodies = loops.get(node);
+
+            if(bodies == null)
+            {
+                return null;
+            }
+
+            loops.set(node, null);
+
+            long sum = 0;
+
+            for (Fragment body : bodies)
+            {
+                sum += mix(body.getHash());
+            }
+
+            return fragment(
+                Fragment.Type.LOOP,
+                node,
+                node,
+                bodies,
+                new int[0],
+                combine(combine(combine(Fragment.Type.LOOP.ordinal(), kind(node)), 0), sum)
+            );
+        }
+
+        /**
+         * Sequence rule: a node with one link in and one out.
+         *
+         * @param node
+         */
+        private void trySequence(int node)
+        {
+            if(node == initialPlace || node == finalPlace || absorbed[node]
+                || inCount[node] != 1 || outCount[node] != 1)
+            {
+                return;
+            }
+
+            Link first = live(in.get(node)).get(0);
+            Link second = live(out.get(node)).get(0);
+            List<Fragment> children = new ArrayList<>();
+            int[] interior = new int[0];
+
+            interior = flatten(first.fragment, children, interior);
+            Fragment loop = absorb(node);
+            interior = Arrays.copyOf(interior, interior.length + 1);
+            interior[interior.length - 1] = node;
+
+            if(loop != null)
+            {
+                children.add(loop);
+            }
+
+            interior = flatten(second.fragment, children, interior);
+
+            long hash = Fragment.Type.SEQUENCE.ordinal();
+
+            for (Fragment child : children)
+            {
+                hash = combine(hash, child.getHash());
+            }
+
+            kill(first);
+            kill(second);
+            addLink(fragment(Fragment.Type.SEQUENCE, first.source, second.target, children, interior, hash));
+
+            if(first.source == second.target)
+            {
+                enqueue(first.source);
+            }
+            else
+            {
+                tryBond(first.source, second.target);
+            }
+        }
+
+        /**
+         * Adds a sequence part: its children if it's a sequence itself.
+         *
+         * @param fragment
+         * @param children
+         * @param interior
+         * @return int[]    the interior with the flattened one
+         */
+        private int[] flatten(Fragment fragment, List<Fragment> children, int[] interior)
+        {
+            if(fragment.getType() != Fragment.Type.SEQUENCE)
+            {
+                children.add(fragment);
+                return interior;
+            }
+
+            children.addAll(fragment.getChildren());
+            int[] merged = Arrays.copyOf(interior, interior.length + fragment.getInterior().length);
+            System.arraycopy(fragment.getInterior(), 0, merged, interior.length, fragment.getInterior().length);
+
+            return merged;
+        }
+
+        /**
+         * Bond rule: links between the same two nodes.
+         *
+         * @param u
+         * @param v
+         */
+        private void tryBond(int u, int v)
+        {
+            List<Link> forward = new ArrayList<>();
+            List<Link> backward = new ArrayList<>();
+
+            for (Link link : live(out.get(u)))
+            {
+                if(link.target == v)
+                {
+                    forward.add(link);
+                }
+            }
+
+            for (Link link : live(in.get(u)))
+            {
+                if(link.source == v)
+                {
+                    backward.add(link);
+                }
+            }
+
+            if(forward.size() + backward.size() < 2)
+            {
+                return;
+            }
+
+            if(forward.isEmpty() || backward.isEmpty())
+            {
+                int entry = forward.isEmpty() ? v : u;
+                int exit = forward.isEmpty() ? u : v;
+                Fragment.Type type = entry < places ? Fragment.Type.CHOICE : Fragment.Type.PARALLEL;
+                List<Fragment> children = new ArrayList<>();
+                long sum = 0;
+
+                for (Link link : forward.isEmpty() ? backward : forward)
+                {
+                    kill(link);
+
+                    // Nested bonds of the same kind are merged
+                    if(link.fragment.getType() == type)
+                    {
+                        children.addAll(link.fragment.getChildren());
+                    }
+                    else
+                    {
+                        children.add(link.fragment);
+                    }
+                }
+
+                for (Fragment child : children)
+                {
+                    sum += mix(child.getHash());
+                }
+
+                addLink(fragment(type, entry, exit, children, new int[0],
+                    combine(combine(combine(type.ordinal(), kind(entry)), kind(exit)), sum)));
+                enqueue(entry);
+                enqueue(exit);
+                return;
+            }
+
+            // A loop: entered only on one side, left only on the other
+            if(outCount[u] == forward.size() && inCount[v] == forward.size())
+            {
+                reduceLoop(u, v, forward, backward);
+            }
+            else if(outCount[v] == backward.size() && inCount[u] == backward.size())
+            {
+                reduceLoop(v, u, backward, forward);
+            }
+        }
+
+        /**
+         * Replaces a loop by a LOOP link from entry to exit.
+         *
+         * @param entry
+         * @param exit
+         * @param forward   links entry -> exit
+         * @param backward  links exit -> entry
+         */
+        private void reduceLoop(int entry, int exit, List<Link> forward, List<Link> backward)
+        {
+            List<Fragment> children = new ArrayList<>();
+            long forwardSum = 0;
+            long backwardSum = 0;
+
+            for (Link link : forward)
+            {
+                kill(link);
+                children.add(link.fragment);
+                forwardSum += mix(link.fragment.getHash());
+            }
+
+            for (Link link : backward)
+            {
+                kill(link);
+                children.add(link.fragment);
+                backwardSum += mix(link.fragment.getHash());
+            }
+
+            long hash = combine(combine(combine(Fragment.Type.LOOP.ordinal(), kind(entry)), forwardSum), backwardSum);
+            addLink(fragment(Fragment.Type.LOOP, entry, exit, children, new int[0], hash));
+            enqueue(entry);
+            enqueue(exit);
+        }
+
+        /**
+         * Returns if a single link from the initial to the final place is left.
+         *
+         * @return boolean
+         */
+        private boolean isDone()
+        {
+            return linkCount == 1
+                && outCount[initialPlace] == 1
+                && live(out.get(initialPlace)).get(0).target == finalPlace;
+        }
+
+        /**
+         * Reduces the smallest closed regions as RIGID links.
+         *
+         * @return boolean  false if there was none
+         */
+        private boolean reduceRigids()
+        {
+            int[] dominator = dominators(initialPlace, true);
+            int[] postDominator = dominators(finalPlace, false);
+            List<int[]> regions = new ArrayList<>();
+
+            for (int u = 0; u < nodes; u++)
+            {
+                int v = postDominator[u];
+
+                if(absorbed[u] || v < 0 || v == u || dominator[v] != u)
+                {
+                    continue;
+                }
+
+                int[] interior = getRegion(u, v);
+
+                if(interior != null)
+                {
+                    int[] region = Arrays.copyOf(interior, interior.length + 2);
+                    region[interior.length] = u;
+                    region[interior.length + 1] = v;
+                    regions.add(region);
+                }
+            }
+
+            Collections.sort(regions, new Comparator<int[]>()
+            {
+                @Override
+                public int compare(int[] a, int[] b)
+                {
+                    return Integer.compare(a.length, b.length);
+                }
+            });
+
+            // Disjoint ones only: the enclosing regions wait for the next round
+            boolean[] taken = new boolean[nodes];
+            boolean reduced = false;
+
+            for (int[] region : regions)
+            {
+                boolean free = true;
+
+                for (int node : region)
+                {
+                    free = free && ! taken[node];
+                }
+
+                if( ! free)
+                {
+                    continue;
+                }
+
+                for (int node : region)
+                {
+                    taken[node] = true;
+                }
+
+                int u = region[region.length - 2];
+                int v = region[region.length - 1];
+                int[] interior = Arrays.copyOf(region, region.length - 2);
+                reduceRigid(u, v, interior);
+                reduced = true;
+            }
+
+            return reduced;
+        }
+
+        /**
+         * Returns the interior of the region from u to v, null if empty or
+         * not closed.
+         *
+         * @param u
+         * @param v
+         * @return int[]
+         */
+        private int[] getRegion(int u, int v)
+        {
+            stamp++;
+            stamps[u] = stamp;
+            stamps[v] = stamp;
+
+            int[] interior = new int[8];
+            int size = 0;
+
+            for (Link link : live(out.get(u)))
+            {
+                if(stamps[link.target] != stamp)
+                {
+                    stamps[link.target] = stamp;
+                    interior = grow(interior, size);
+                    interior[size++] = link.target;
+                }
+            }
+
+            for (int i = 0; i < size; i++)
+            {
+                for (Link link : live(out.get(interior[i])))
+                {
+                    if(link.target == u)
+                    {
+                        return null;
+                    }
+
+                    if(stamps[link.target] != stamp)
+                    {
+                        stamps[link.target] = stamp;
+                        interior = grow(interior, size);
+                        interior[size++] = link.target;
+                    }
+                }
+            }
+
+            if(size == 0)
+            {
+                return null;
+            }
+
+            for (int i = 0; i < size; i++)
+            {
+                if(interior[i] == initialPlace || interior[i] == finalPlace)
+                {
+                    return null;
+                }
+
+                for (Link link : live(in.get(interior[i])))
+                {
+                    if(stamps[link.source] != stamp || link.source == v)
+                    {
+                        return null;
+                    }
+                }
+            }
+
+            return Arrays.copyOf(interior, size);
+        }
+
+        /**
+         * Replaces a closed region by a RIGID link from u to v.
+         *
+         * @param u
+         * @param v
+         * @param interior
+         */
+        private void reduceRigid(int u, int v, int[] interior)
+        {
+            List<Fragment> children = new ArrayList<>();
+            stamp++;
+
+            for (int node : interior)
+            {
+                stamps[node] = stamp;
+            }
+
+            for (Link link : live(out.get(u)))
+            {
+                if(stamps[link.target] == stamp)
+                {
+                    kill(link);
+                    children.add(link.fragment);
+                }
+            }
+
+            for (int node : interior)
+            {
+                for (Link link : live(out.get(node)))
+                {
+                    kill(link);
+                    children.add(link.fragment);
+                }
+
+                Fragment loop = absorb(node);
+
+                if(loop != null)
+                {
+                    children.add(loop);
+                }
+            }
+
+            addLink(fragment(Fragment.Type.RIGID, u, v, children, interior,
+                rigidHash(u, v, interior, children)));
+            tryBond(u, v);
+            enqueue(u);
+            enqueue(v);
+        }
+
+        /**
+         * Returns the immediate (post-)dominator of each live node, -1 if
+         * unreachable (Cooper, Harvey, Kennedy).
+         *
+         * @param start
+         * @param forward   false to follow the links backwards
+         * @return int[]
+         */
+        private int[] dominators(int start, boolean forward)
+        {
+            List<List<Link>> edges = forward ? out : in;
+            int[] order = new int[nodes];
+            int[] number = new int[nodes];
+            int[] cursor = new int[nodes];
+            int[] stack = new int[nodes];
+            int count = 0;
+            int depth = 0;
+
+            Arrays.fill(number, -1);
+            stack[depth++] = start;
+            number[start] = -2;
+
+            // Iterative depth-first post-order
+            while (depth > 0)
+            {
+                int node = stack[depth - 1];
+                List<Link> links = live(edges.get(node));
+
+                if(cursor[node] < links.size())
+                {
+                    Link link = links.get(cursor[node]++);
+                    int next = forward ? link.target : link.source;
+
+                    if(number[next] == -1)
+                    {
+                        number[next] = -2;
+                        stack[depth++] = next;
+                    }
+                }
+                else
+                {
+                    depth--;
+                    number[node] = count;
+                    order[count++] = node;
+                }
+            }
+
+            int[] dominator = new int[nodes];
+            Arrays.fill(dominator, -1);
+            dominator[start] = start;
+            boolean changed = true;
+
+            while (changed)
+            {
+                changed = false;
+
+                for (int i = count - 2; i >= 0; i--)
+                {
+                    int node = order[i];
+                    int candidate = -1;
+
+                    for (Link link : live((forward ? in : out).get(node)))
+                    {
+                        int previous = forward ? link.source : link.target;
+
+                        if(number[previous] >= 0 && dominator[previous] != -1)
+                        {
+                            candidate = candidate == -1 ? previous : intersect(dominator, number, candidate, previous);
+                        }
+                    }
+
+                    if(candidate != dominator[node])
+                    {
+                        dominator[node] = candidate;
+                        changed = true;
+                    }
+                }
+            }
+
+            dominator[start] = -1;
+
+            return dominator;
+        }
+
+        /**
+         * Returns the nearest common dominator of two nodes.
+         *
+         * @param dominator
+         * @param number    post-order numbers
+         * @param a
+         * @param b
+         * @return int
+         */
+        private int intersect(int[] dominator, int[] number, int a, int b)
+        {
+            while (a != b)
+            {
+                while (number[a] < number[b])
+                {
+                    a = dominator[a];
+                }
+
+                while (number[b] < number[a])
+                {
+                    b = dominator[b];
+                }
+            }
+
+            return a;
+        }
+
+        /**
+         * Returns the root: the last link, or a RIGID fragment of all that
+         * is left.
+         *
+         * @return Fragment
+         */
+        private Fragment getRoot()
+        {
+            Fragment initialLoop = takeLoop(initialPlace);
+            Fragment finalLoop = takeLoop(finalPlace);
+
+            if(isDone() && initialLoop == null && finalLoop == null)
+            {
+                return live(out.get(initialPlace)).get(0).fragment;
+            }
+
+            List<Fragment> children = new ArrayList<>();
+            int[] interior = new int[0];
+            int size = 0;
+
+            for (int node = 0; node < nodes; node++)
+            {
+                for (Link link : live(out.get(node)))
+                {
+                    children.add(link.fragment);
+                }
+
+                if(node != initialPlace && node != finalPlace && ! absorbed[node]
+                    && (inCount[node] > 0 || outCount[node] > 0 || loops.get(node) != null))
+                {
+                    Fragment loop = absorb(node);
+
+                    if(loop != null)
+                    {
+                        children.add(loop);
+                    }
+
+                    interior = grow(interior, size);
+                    interior[size++] = node;
+                }
+            }
+
+            if(initialLoop != null)
+            {
+                children.add(initialLoop);
+            }
+
+            if(finalLoop != null)
+            {
+                children.add(finalLoop);
+            }
+
+            interior = Arrays.copyOf(interior, size);
+
+            return fragment(Fragment.Type.RIGID, initialPlace, finalPlace, children, interior,
+                rigidHash(initialPlace, finalPlace, interior, children));
+        }
+
+        /**
+         * Returns the hash of a RIGID fragment, by colour refinement
+         * (Weisfeiler-Lehman) of its nodes until the colours are stable.
+         *
+         * @param entry
+         * @param exit
+         * @param interior
+         * @param children
+         * @return long
+         */
+        private long rigidHash(int entry, int exit, int[] interior, List<Fragment> children)
+        {
+            int size = interior.length + 2;
+            int[] local = new int[nodes];
+            long[] colour = new long[size];
+
+            for (int i = 0; i < interior.length; i++)
+            {
+                local[interior[i]] = i + 2;
+                colour[i + 2] = kind(interior[i]);
+            }
+
+            local[entry] = 0;
+            local[exit] = 1;
+            colour[0] = combine(kind(entry), 1);
+            colour[1] = combine(kind(exit), 2);
+
+            int distinct = countDistinct(colour);
+
+            for (int round = 0; round < size; round++)
+            {
+                long[] next = new long[size];
+
+                for (Fragment child : children)
+                {
+                    int source = local[child.getEntryNode()];
+                    int target = local[child.getExitNode()];
+
+                    next[target] += mix(combine(child.getHash(), colour[source]));
+                    next[source] += mix(combine(~child.getHash(), colour[target]));
+                }
+
+                for (int i = 0; i < size; i++)
+                {
+                    next[i] = combine(colour[i], next[i]);
+                }
+
+                colour = next;
+                int refined = countDistinct(colour);
+
+                if(refined == distinct)
+                {
+                    break;
+                }
+
+                distinct = refined;
+            }
+
+            long sum = 0;
+
+            for (long value : colour)
+            {
+                sum += mix(value);
+            }
+
+            return combine(combine(combine(Fragment.Type.RIGID.ordinal(), colour[0]), colour[1]), sum);
+        }
+
+        /**
+         * Returns the number of distinct values.
+         *
+         * @param values
+         * @return int
+         */
+        private int countDistinct(long[] values)
+        {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            int count = sorted.length > 0 ? 1 : 0;
+
+            for (int i = 1; i < sorted.length; i++)
+            {
+                if(sorted[i] != sorted[i - 1])
+                {
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        /**
+         * Grows an array to hold one more element.
+         *
+         * @param array
+         * @param size
+         * @return int[]
+         */
+        private int[] grow(int[] array, int size)
+        {
+            return size < array.length ? array : Arrays.copyOf(array, Math.max(8, size * 2));
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import java.util.Arrays;
+
+/**
+ * Breadth-first enumeration of the reachable markings of a net.
+ *
+ * The frontier is implicit: states are expanded in discovery order, so the
+ * next state to expand is just the next index of the {@link MarkingStore}.
+ * Everything else (predecessors, edges, deadlocks) lives in growable int
+ * arrays.
+ */
+public class ReachabilityExplorer
+{
+    /**
+     * Net to explore.
+     */
+    private final CompiledNet net;
+
+    /**
+     * Exploration stops when this many states are reached.
+     */
+    private int maxStates = Integer.MAX_VALUE - 8;
+
+    /**
+     * Keep the edges (needed to walk the graph afterwards).
+     */
+    private boolean storeEdges = true;
+
+    /**
+     * Worker threads, 1 for the sequential search.
+     */
+    private int parallelism = 1;
+
+    /**
+     * Notified on every expanded state, may be null.
+     */
+    private StateListener listener;
+
+    /**
+     * Fire only the enabled transitions of a stubborn set.
+     */
+    private boolean reduced;
+
+    /**
+     * Transitions forcing a full expansion when in the stubborn set, may be null.
+     */
+    private boolean[] visible;
+
+    /**
+     * {@link ReachabilityExplorer} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public ReachabilityExplorer(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph));
+    }
+
+    /**
+     * {@link ReachabilityExplorer} Constructor.
+     *
+     * @param net
+     */
+    public ReachabilityExplorer(CompiledNet net)
+    {
+        this.net = net;
+    }
+
+    /**
+     * Sets the states limit.
+     *
+     * @param maxStates
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setMaxStates(int maxStates)
+    {
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    /**
+     * Sets if the edges are stored, or only counted.
+     *
+     * @param storeEdges
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setStoreEdges(boolean storeEdges)
+    {
+        this.storeEdges = storeEdges;
+        return this;
+    }
+
+    /**
+     * Sets the worker threads.
+     *
+     * The parallel search gives the same graph of the sequential one. On a
+     * single processor the search stays sequential, whatever the setting.
+     *
+     * @see ParallelExploration
+     * @param parallelism
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setParallelism(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Sets the listener of the expanded states (it can stop the exploration).
+     *
+     * @param listener
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setStateListener(StateListener listener)
+    {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Sets the stubborn-set reduced search.
+     *
+     * Deadlocks are preserved. A state is expanded fully when its stubborn
+     * set contains a visible transition, or leads back to a known state
+     * (so no transition is ignored along a cycle). The reduced search is
+     * sequential.
+     *
+     * @see StubbornSets
+     * @param reduced
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setReduced(boolean reduced)
+    {
+        this.reduced = reduced;
+        return this;
+    }
+
+    /**
+     * Sets the visible transitions of the reduced search.
+     *
+     * @param visible   by transition index, null for none
+     * @return ReachabilityExplorer
+     */
+    public ReachabilityExplorer setVisibleTransitions(boolean[] visible)
+    {
+        this.visible = visible;
+        return this;
+    }
+
+    /**
+     * Explores the state space.
+     *
+     * @return ReachabilityGraph
+     */
+    public ReachabilityGraph explore()
+    {
+        if(parallelism > 1 && ! reduced && Runtime.getRuntime().availableProcessors() > 1)
+        {
+            return new ParallelExploration(net, maxStates, storeEdges, parallelism, listener).explore();
+        }
+
+        int places = net.getPlaceCount();
+        int transitions = net.getTransitionCount();
+        MarkingStore store = new MarkingStore(places);
+
+        int[] predecessorState = new int[1024];
+        int[] predecessorTransition = new int[1024];
+        int[] edgeStart = storeEdges ? new int[1024] : null;
+        int[] edgeTarget = storeEdges ? new int[4096] : null;
+        int[] edgeTransition = storeEdges ? new int[4096] : null;
+        int[] deadlocks = new int[16];
+        int deadlockCount = 0;
+        long edgeCount = 0;
+        long enabledCount = 0;
+        boolean complete = true;
+
+        int[] marking = new int[places];
+        int[] successor = new int[places];
+        int[] enabled = new int[transitions];
+        boolean[] selected = new boolean[transitions];
+        StubbornSets stubborn = reduced ? new StubbornSets(net) : null;
+
+        store.add(net.getInitialMarking());
+        predecessorState[0] = -1;
+        predecessorTransition[0] = -1;
+
+        int expanded = 0;
+
+        for (; expanded < store.size(); expanded++)
+        {
+            store.get(expanded, marking);
+
+            if(storeEdges)
+            {
+                edgeStart = ensure(edgeStart, expanded + 2);
+                edgeStart[expanded] = (int) edgeCount;
+            }
+
+            int enabledSize = 0;
+
+            for (int t = 0; t < transitions; t++)
+            {
+                if(net.isEnabled(t, marking))
+                {
+                    enabled[enabledSize++] = t;
+                }
+            }
+
+            boolean dead = enabledSize == 0;
+            boolean full = true;
+            enabledCount += enabledSize;
+
+            if(reduced && enabledSize > 1)
+            {
+                Arrays.fill(selected, false);
+                full = stubborn.select(marking, enabled, enabledSize, selected) == enabledSize
+                    || isVisible(selected) || closesCycle(store, marking, successor, selected);
+            }
+
+            for (int i = 0; i < enabledSize; i++)
+            {
+                int t = enabled[i];
+
+                if( ! full && ! selected[t])
+                {
+                    continue;
+                }
+
+                System.arraycopy(marking, 0, successor, 0, places);
+                net.fire(t, successor);
+
+                int state;
+
+                if(store.size() < maxStates)
+                {
+                    state = store.add(successor);
+
+                    if(state >= 0)
+                    {
+                        // New state: expanded is its BFS parent
+                        predecessorState = ensure(predecessorState, state + 1);
+                        predecessorTransition = ensure(predecessorTransition, state + 1);
+                        predecessorState[state] = expanded;
+                        predecessorTransition[state] = t;
+                    }
+                    else
+                    {
+                        state = -state - 1;
+                    }
+                }
+                else
+                {
+                    state = store.indexOf(successor);
+
+                    if(state == -1)
+                    {
+                        // Over the limit: the successor is dropped
+                        complete = false;
+                        continue;
+                    }
+                }
+
+                if(storeEdges)
+                {
+                    edgeTarget = ensure(edgeTarget, (int) edgeCount + 1);
+                    edgeTransition = ensure(edgeTransition, (int) edgeCount + 1);
+                    edgeTarget[(int) edgeCount] = state;
+                    edgeTransition[(int) edgeCount] = t;
+                }
+
+                edgeCount++;
+            }
+
+            if(dead)
+            {
+                deadlocks = ensure(deadlocks, deadlockCount + 1);
+                deadlocks[deadlockCount++] = expanded;
+            }
+
+            if(listener != null && ! listener.stateExpanded(expanded, marking, dead))
+            {
+                // Stopped: the states left have no edges
+                complete = false;
+                expanded++;
+                break;
+            }
+        }
+
+        if(storeEdges)
+        {
+            edgeStart = ensure(edgeStart, store.size() + 1);
+            Arrays.fill(edgeStart, expanded, store.size() + 1, (int) edgeCount);
+            edgeStart = Arrays.copyOf(edgeStart, store.size() + 1);
+            edgeTarget = Arrays.copyOf(edgeTarget, (int) edgeCount);
+            edgeTransition = Arrays.copyOf(edgeTransition, (int) edgeCount);
+        }
+
+        return new ReachabilityGraph(
+            net,
+            store,
+            Arrays.copyOf(predecessorState, store.size()),
+            Arrays.copyOf(predecessorTransition, store.size()),
+            edgeStart,
+            edgeTarget,
+            edgeTransition,
+            edgeCount,
+            enabledCount,
+            Arrays.copyOf(deadlocks, deadlockCount),
+            complete
+        );
+    }
+
+    /**
+     * Returns if a selected transition is visible.
+     *
+     * @param selected
+     * @return boolean
+     */
+    private boolean isVisible(boolean[] selected)
+    {
+        if(visible != null)
+        {
+            for (int t = 0; t < selected.length; t++)
+            {
+                if(selected[t] && visible[t])
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns if a selected transition leads to a known state (cycle proviso).
+     *
+     * @param store
+     * @param marking
+     * @param successor     scratch buffer
+     * @param selected
+     * @return boolean
+     */
+    private boolean closesCycle(MarkingStore store, int[] marking, int[] successor, boolean[] selected)
+    {
+        for (int t = 0; t < selected.length; t++)
+        {
+            if(selected[t])
+            {
+                System.arraycopy(marking, 0, successor, 0, marking.length);
+                net.fire(t, successor);
+
+                if(store.indexOf(successor) != -1)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Grows an array (by half) to hold at least size elements.
+     *
+     * @param array
+     * @param size
+     * @return int[]
+     */
+    static int[] ensure(int[] array, int size)
+    {
+        if(size <= array.length)
+        {
+            return array;
+        }
+
+        return Arrays.copyOf(array, Math.max(size, array.length + (array.length >> 1)));
+    }
+}
@@ -0,0 +1,297 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.TransitionVertex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reachability graph of a {@link CompiledNet}, as built by {@link ReachabilityExplorer}.
+ *
+ * States are numbered in discovery order (0 is the initial marking); the
+ * markings live in a {@link MarkingStore}, the edges in compressed rows
+ * (the outgoing edges of state s are edgeStart[s]..edgeStart[s+1]-1) and
+ * the BFS tree in predecessor arrays, so a shortest firing sequence to any
+ * state can be rebuilt.
+ */
+public class ReachabilityGraph
+{
+    /**
+     * Explored net.
+     */
+    private final CompiledNet net;
+
+    /**
+     * Markings of the states.
+     */
+    private final MarkingStore store;
+
+    /**
+     * BFS tree: predecessor state (-1 for the initial state).
+     */
+    private final int[] predecessorState;
+
+    /**
+     * BFS tree: transition fired from the predecessor.
+     */
+    private final int[] predecessorTransition;
+
+    /**
+     * Edge rows offsets (null if the edges are not stored).
+     */
+    private final int[] edgeStart;
+
+    /**
+     * Edges target state.
+     */
+    private final int[] edgeTarget;
+
+    /**
+     * Edges fired transition.
+     */
+    private final int[] edgeTransition;
+
+    /**
+     * Number of edges (counted even if not stored).
+     */
+    private final long edgeCount;
+
+    /**
+     * Enabled transitions, summed over the expanded states.
+     */
+    private final long enabledCount;
+
+    /**
+     * States without enabled transitions.
+     */
+    private final int[] deadlocks;
+
+    /**
+     * False if the exploration has been stopped (states limit or listener).
+     */
+    private final boolean complete;
+
+    /**
+     * {@link ReachabilityGraph} Constructor.
+     *
+     * @param net
+     * @param store
+     * @param predecessorState
+     * @param predecessorTransition
+     * @param edgeStart
+     * @param edgeTarget
+     * @param edgeTransition
+     * @param edgeCount
+     * @param enabledCount
+     * @param deadlocks
+     * @param complete
+     */
+    ReachabilityGraph(CompiledNet net, MarkingStore store,
+            int[] predecessorState, int[] predecessorTransition,
+            int[] edgeStart, int[] edgeTarget, int[] edgeTransition, long edgeCount,
+            long enabledCount, int[] deadlocks, boolean complete)
+    {
+        this.net = net;
+        this.store = store;
+        this.predecessorState = predecessorState;
+        this.predecessorTransition = predecessorTransition;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeTransition = edgeTransition;
+        this.edgeCount = edgeCount;
+        this.enabledCount = enabledCount;
+        this.deadlocks = deadlocks;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the explored net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Returns the number of states.
+     *
+     * @return int
+     */
+    public int getStateCount()
+    {
+        return store.size();
+    }
+
+    /**
+     * Returns the number of edges (firings between states).
+     *
+     * @return long
+     */
+    public long getEdgeCount()
+    {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the fraction of the enabled firings skipped by the reduced
+     * search (0 for a full search).
+     *
+     * @return double
+     */
+    public double getReductionRatio()
+    {
+        return enabledCount == 0 ? 0 : 1 - (double) edgeCount / enabledCount;
+    }
+
+    /**
+     * Returns if all the reachable markings have been explored.
+     *
+     * @return boolean
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Returns the approximate bytes held by the graph.
+     *
+     * @return long
+     */
+    public long getMemoryUsage()
+    {
+        long bytes = store.getMemoryUsage()
+            + 4L * predecessorState.length
+            + 4L * predecessorTransition.length
+            + 4L * deadlocks.length;
+
+        if(hasEdges())
+        {
+            bytes += 4L * edgeStart.length + 4L * edgeTarget.length + 4L * edgeTransition.length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Returns the marking of a state.
+     *
+     * @param state
+     * @return int[]
+     */
+    public int[] getMarking(int state)
+    {
+        int[] marking = new int[net.getPlaceCount()];
+        store.get(state, marking);
+
+        return marking;
+    }
+
+    /**
+     * Returns the state of a marking, -1 if not reached.
+     *
+     * @param marking
+     * @return int
+     */
+    public int indexOf(int[] marking)
+    {
+        return store.indexOf(marking);
+    }
+
+    /**
+     * Returns the indexes of the transitions fired on the shortest path
+     * from the initial state to state.
+     *
+     * @param state
+     * @return int[]
+     */
+    public int[] getFiringSequence(int state)
+    {
+        int length = 0;
+
+        for (int s = state; predecessorState[s] != -1; s = predecessorState[s])
+        {
+            length++;
+        }
+
+        int[] sequence = new int[length];
+
+        for (int s = state; predecessorState[s] != -1; s = predecessorState[s])
+        {
+            sequence[--length] = predecessorTransition[s];
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Returns the transitions fired on the shortest path from the initial
+     * state to state.
+     *
+     * @param state
+     * @return List<TransitionVertex>
+     */
+    public List<TransitionVertex> getTrace(int state)
+    {
+        List<TransitionVertex> trace = new ArrayList<>();
+
+        for (int transition : getFiringSequence(state))
+        {
+            trace.add(net.getTransition(transition));
+        }
+
+        return Collections.unmodifiableList(trace);
+    }
+
+    /**
+     * Returns the states without enabled transitions.
+     *
+     * @return int[]
+     */
+    public int[] getDeadlocks()
+    {
+        return deadlocks.clone();
+    }
+
+    /**
+     * Returns if the edges have been stored.
+     *
+     * @return boolean
+     */
+    public boolean hasEdges()
+    {
+        return edgeStart != null;
+    }
+
+    /**
+     * Row offsets of the outgoing edges, by state.
+     *
+     * @return int[]
+     */
+    public int[] getEdgeStart()
+    {
+        return edgeStart;
+    }
+
+    /**
+     * Target state of each edge.
+     *
+     * @return int[]
+     */
+    public int[] getEdgeTarget()
+    {
+        return edgeTarget;
+    }
+
+    /**
+     * Fired transition of each edge.
+     *
+     * @return int[]
+     */
+    public int[] getEdgeTransition()
+    {
+        return edgeTransition;
+    }
+}
@@ -0,0 +1,726 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal siphons and traps of a {@link CompiledNet}.
+ *
+ * A siphon S is a set of places whose producers all consume from S: once
+ * empty, it stays empty. A trap is the dual: once marked, it stays marked.
+ * By Commoner's theorem a free-choice net is live iff every (minimal)
+ * siphon contains an initially marked trap, so the siphons without one
+ * are the structural deadlocks.
+ *
+ * The minimal sets are enumerated by branch and bound on bitsets: starting
+ * from each place p, with the places before p excluded, the closure adds
+ * the places forced by the unsatisfied transitions and branches (with
+ * disjoint exclusions) where a transition has several candidates; branches
+ * containing a set already found are cut, and each leaf is kept if no
+ * proper subset of it is a siphon (trap).
+ */
+public class SiphonAnalyzer
+{
+    /**
+     * Default limit of sets found.
+     */
+    public static final int DEFAULT_MAX_SETS = 10000;
+
+    private final CompiledNet net;
+
+    /**
+     * Marking the traps are checked against.
+     */
+    private final int[] marking;
+
+    /**
+     * Transitions and places, the short-circuit transition included.
+     */
+    private final int transitions;
+
+    private final int places;
+
+    private final int[] presetStart, preset, postsetStart, postset;
+
+    private final int[] consumersStart, consumers, producersStart, producers;
+
+    private int maxSets = DEFAULT_MAX_SETS;
+
+    /**
+     * {@link SiphonAnalyzer} Constructor.
+     *
+     * A workflow net is short-circuited (a transition from the final to the
+     * initial place), and marked with one token in the initial place plus
+     * the resources, as in {@link SoundnessChecker}.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public SiphonAnalyzer(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph), graph);
+    }
+
+    /**
+     * @param net
+     * @param graph
+     */
+    private SiphonAnalyzer(CompiledNet net, PetriNetGraph graph)
+    {
+        this(net,
+            graph.isWorkFlow() ? net.indexOfPlace(graph.getFinalPlaces().get(0)) : -1,
+            graph.isWorkFlow() ? net.indexOfPlace(graph.getInitialPlaces().get(0)) : -1);
+    }
+
+    /**
+     * {@link SiphonAnalyzer} Constructor.
+     *
+     * @param net
+     */
+    public SiphonAnalyzer(CompiledNet net)
+    {
+        this(net, -1, -1);
+    }
+
+    /**
+     * {@link SiphonAnalyzer} Constructor.
+     *
+     * The net is short-circuited from finalPlace to initialPlace, which
+     * also gets one token.
+     *
+     * @param net
+     * @param finalPlace    -1 for none
+     * @param initialPlace  -1 for none
+     */
+    public SiphonAnalyzer(CompiledNet net, int finalPlace, int initialPlace)
+    {
+        this.net = net;
+        this.places = net.getPlaceCount();
+        this.marking = net.getInitialMarking();
+
+        int[][] presets = {net.getPresetStart(), net.getPreset()};
+        int[][] postsets = {net.getPostsetStart(), net.getPostset()};
+        int[][] consumed = {net.getConsumersStart(), net.getConsumers()};
+        int[][] produced = {net.getProducersStart(), net.getProducers()};
+
+        if(finalPlace != -1 && initialPlace != -1)
+        {
+            int shortCircuit = net.getTransitionCount();
+            presets = append(presets, shortCircuit, finalPlace);
+            postsets = append(postsets, shortCircuit, initialPlace);
+            consumed = append(consumed, finalPlace, shortCircuit);
+            produced = append(produced, initialPlace, shortCircuit);
+            marking[initialPlace] = 1;
+        }
+
+        this.transitions = presets[0].length - 1;
+        this.presetStart = presets[0];
+        this.preset = presets[1];
+        this.postsetStart = postsets[0];
+        this.postset = postsets[1];
+        this.consumersStart = consumed[0];
+        this.consumers = consumed[1];
+        this.producersStart = produced[0];
+        this.producers = produced[1];
+    }
+
+    /**
+     * Appends a column to a row of a compressed matrix (row may be a new,
+     * last one).
+     *
+     * @param matrix    {start, index}
+     * @param row
+     * @param column
+     * @return int[][]  {start, index}
+     */
+    private static int[][] append(int[][] matrix, int row, int column)
+    {
+        int[] start = matrix[0];
+        int[] index = matrix[1];
+        int rows = Math.max(start.length - 1, row + 1);
+        int[] newStart = Arrays.copyOf(start, rows + 1);
+        int end = start[start.length - 1];
+
+        for (int r = start.length; r <= rows; r++)
+        {
+            newStart[r] = end;
+        }
+
+        int[] newIndex = new int[index.length + 1];
+        int at = newStart[row + 1];
+        System.arraycopy(index, 0, newIndex, 0, at);
+        newIndex[at] = column;
+        System.arraycopy(index, at, newIndex, at + 1, index.length - at);
+
+        for (int r = row + 1; r <= rows; r++)
+        {
+            newStart[r]++;
+        }
+
+        return new int[][] {newStart, newIndex};
+    }
+
+    /**
+     * Sets the limit of sets found.
+     *
+     * @param maxSets
+     * @return SiphonAnalyzer
+     */
+    public SiphonAnalyzer setMaxSets(int maxSets)
+    {
+        this.maxSets = maxSets;
+        return this;
+    }
+
+    /**
+     * Returns the marking the traps are checked against.
+     *
+     * @return int[]
+     */
+    public int[] getMarking()
+    {
+        return marking.clone();
+    }
+
+    /**
+     * Returns the minimal siphons.
+     *
+     * @return PlaceSets
+     */
+    public PlaceSets getMinimalSiphons()
+    {
+        return siphons().enumerate();
+    }
+
+    /**
+     * Returns the minimal traps.
+     *
+     * @return PlaceSets
+     */
+    public PlaceSets getMinimalTraps()
+    {
+        return traps().enumerate();
+    }
+
+    /**
+     * Returns the minimal siphons without an initially marked trap.
+     *
+     * Empty and complete, for a free-choice net, means live (and, if
+     * short-circuited, deadlock-free up to the final place).
+     *
+     * @return PlaceSets
+     */
+    public PlaceSets getUnmarkedTrapSiphons()
+    {
+        PlaceSets siphons = getMinimalSiphons();
+        Search traps = traps();
+        List<long[]> unmarked = new ArrayList<>();
+        long[] trap = new long[words()];
+
+        for (int s = 0; s < siphons.getCount(); s++)
+        {
+            long[] siphon = new long[words()];
+
+            for (int p : siphons.getIndexes(s))
+            {
+                siphon[p >>> 6] |= 1L << (p & 63);
+            }
+
+            System.arraycopy(siphon, 0, trap, 0, trap.length);
+            traps.maximal(trap);
+
+            if( ! isMarked(trap))
+            {
+                unmarked.add(siphon);
+            }
+        }
+
+        return new PlaceSets(net, unmarked, siphons.isComplete());
+    }
+
+    /**
+     * Returns the largest siphon contained in a set of places.
+     *
+     * @param places    bitset, by place index
+     * @return long[]   bitset, empty if none
+     */
+    long[] getMaximalSiphon(long[] places)
+    {
+        long[] siphon = places.clone();
+        siphons().maximal(siphon);
+
+        return siphon;
+    }
+
+    /**
+     * Returns the siphon search.
+     *
+     * @return Search
+     */
+    private Search siphons()
+    {
+        return new Search(producersStart, producers, presetStart, preset, consumersStart, consumers,
+            postsetStart, postset);
+    }
+
+    /**
+     * Returns the trap search.
+     *
+     * @return Search
+     */
+    private Search traps()
+    {
+        return new Search(consumersStart, consumers, postsetStart, postset, producersStart, producers,
+            presetStart, preset);
+    }
+
+    /**
+     * Returns if some place of the set is initially marked.
+     *
+     * @param set
+     * @return boolean
+     */
+    private boolean isMarked(long[] set)
+    {
+        for (int p = 0; p < places; p++)
+        {
+            if(marking[p] > 0 && (set[p >>> 6] & (1L << (p & 63))) != 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the bitset words for the places.
+     *
+     * @return int
+     */
+    private int words()
+    {
+        return (places + 63) >>> 6;
+    }
+
+    /**
+     * The siphon search; traps are the same search on the reversed net.
+     *
+     * A set S is closed when every transition in in(p), p in S, has some
+     * place of out(t) in S.
+     */
+    private class Search
+    {
+        /**
+         * Place -> transitions to satisfy (producers for siphons).
+         */
+        private final int[] inStart, in;
+
+        /**
+         * Transition -> places satisfying it (preset for siphons).
+         */
+        private final int[] outStart, out;
+
+        /**
+         * Inverse of out: place -> transitions it satisfies.
+         */
+        private final int[] satisfiesStart, satisfies;
+
+        /**
+         * Inverse of in: transition -> places needing it.
+         */
+        private final int[] neededStart, needed;
+
+        /**
+         * Scratch counters by transition, always back to zero.
+         */
+        private final int[] counts = new int[transitions];
+
+        /**
+         * Scratch place queue.
+         */
+        private final int[] queue = new int[places];
+
+        Search(int[] inStart, int[] in, int[] outStart, int[] out,
+                int[] satisfiesStart, int[] satisfies, int[] neededStart, int[] needed)
+        {
+            this.inStart = inStart;
+            this.in = in;
+            this.outStart = outStart;
+            this.out = out;
+            this.satisfiesStart = satisfiesStart;
+            this.satisfies = satisfies;
+            this.neededStart = neededStart;
+            this.needed = needed;
+        }
+
+        /**
+         * Enumerates the minimal closed sets.
+         *
+         * @return PlaceSets
+         */
+        PlaceSets enumerate()
+        {
+            List<long[]> found = new ArrayList<>();
+            List<Frame> stack = new ArrayList<>();
+
+            for (int first = 0; first < places; first++)
+            {
+                long[] set = new long[words()];
+                long[] excluded = new long[words()];
+                set[first >>> 6] |= 1L << (first & 63);
+
+                for (int p = 0; p < first; p++)
+                {
+                    excluded[p >>> 6] |= 1L << (p & 63);
+                }
+
+                stack.add(new Frame(set, excluded, new int[] {first}, new int[0]));
+
+                while ( ! stack.isEmpty())
+                {
+                    Frame frame = stack.remove(stack.size() - 1);
+
+                    if( ! close(frame) || containsAny(frame.set, found))
+                    {
+                        continue;
+                    }
+
+                    int branch = cheapest(frame);
+
+                    if(branch == -1)
+                    {
+                        if(isMinimal(frame.set))
+                        {
+                            found.add(frame.set);
+
+                            if(found.size() >= maxSets)
+                            {
+                                return new PlaceSets(net, found, false);
+                            }
+                        }
+
+                        continue;
+                    }
+
+                    // Disjoint branches: candidate k, the ones before it excluded
+                    long[] taken = frame.excluded.clone();
+                    List<Frame> children = new ArrayList<>();
+
+                    for (int k = outStart[branch]; k < outStart[branch + 1]; k++)
+                    {
+                        int p = out[k];
+
+                        if(has(taken, p))
+                        {
+                            continue;
+                        }
+
+                        long[] child = frame.set.clone();
+                        child[p >>> 6] |= 1L << (p & 63);
+                        children.add(new Frame(child, taken.clone(), new int[] {p}, frame.pending));
+                        taken[p >>> 6] |= 1L << (p & 63);
+                    }
+
+                    for (int c = children.size() - 1; c >= 0; c--)
+                    {
+                        stack.add(children.get(c));
+                    }
+                }
+            }
+
+            return new PlaceSets(net, found, true);
+        }
+
+        /**
+         * Adds the forced places of a frame, and collects its unsatisfied
+         * transitions in pending.
+         *
+         * @param frame
+         * @return boolean  false if some transition cannot be satisfied
+         */
+        private boolean close(Frame frame)
+        {
+            int[] pending = Arrays.copyOf(frame.pending, frame.pending.length + 16);
+            int pendingSize = frame.pending.length;
+            int head = 0;
+            int tail = 0;
+
+            for (int p : frame.added)
+            {
+                queue[tail++] = p;
+            }
+
+            while (head < tail)
+            {
+                int p = queue[head++];
+
+                for (int k = inStart[p]; k < inStart[p + 1]; k++)
+                {
+                    int t = in[k];
+                    int candidate = -1;
+                    int candidates = 0;
+                    boolean satisfied = false;
+
+                    for (int j = outStart[t]; j < outStart[t + 1] && ! satisfied; j++)
+                    {
+                        satisfied = has(frame.set, out[j]);
+
+                        if( ! has(frame.excluded, out[j]))
+                        {
+                            candidate = out[j];
+                            candidates++;
+                        }
+                    }
+
+                    if(satisfied)
+                    {
+                        continue;
+                    }
+
+                    if(candidates == 0)
+                    {
+                        return false;
+                    }
+
+                    if(candidates == 1)
+                    {
+                        frame.set[candidate >>> 6] |= 1L << (candidate & 63);
+                        queue[tail++] = candidate;
+                    }
+                    else
+                    {
+                        pending = ReachabilityExplorer.ensure(pending, pendingSize + 1);
+                        pending[pendingSize++] = t;
+                    }
+                }
+            }
+
+            frame.pending = Arrays.copyOf(pending, pendingSize);
+
+            return true;
+        }
+
+        /**
+         * Returns the unsatisfied pending transition with the fewest
+         * candidates, -1 if the set is closed.
+         *
+         * @param frame
+         * @return int
+         */
+        private int cheapest(Frame frame)
+        {
+            int best = -1;
+            int bestCandidates = Integer.MAX_VALUE;
+            int size = 0;
+
+            for (int t : frame.pending)
+            {
+                int candidates = 0;
+                boolean satisfied = false;
+
+                for (int j = outStart[t]; j < outStart[t + 1] && ! satisfied; j++)
+                {
+                    satisfied = has(frame.set, out[j]);
+                    candidates += has(frame.excluded, out[j]) ? 0 : 1;
+                }
+
+                if(satisfied)
+                {
+                    continue;
+                }
+
+                frame.pending[size++] = t;
+
+                if(candidates < bestCandidates)
+                {
+                    best = t;
+                    bestCandidates = candidates;
+                }
+            }
+
+            frame.pending = Arrays.copyOf(frame.pending, size);
+
+            return best;
+        }
+
+        /**
+         * Returns if no non-empty proper subset of the closed set is closed.
+         *
+         * @param set
+         * @return boolean
+         */
+        private boolean isMinimal(long[] set)
+        {
+            long[] subset = new long[set.length];
+
+            for (int w = 0; w < set.length; w++)
+            {
+                for (long word = set[w]; word != 0; word &= word - 1)
+                {
+                    System.arraycopy(set, 0, subset, 0, set.length);
+                    subset[w] &= ~Long.lowestOneBit(word);
+                    maximal(subset);
+
+                    if(PlaceSets.cardinality(subset) > 0)
+                    {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Shrinks a set to the largest closed set it contains.
+         *
+         * @param set
+         */
+        void maximal(long[] set)
+        {
+            int tail = 0;
+
+            // Places of set satisfying each transition
+            for (int w = 0; w < set.length; w++)
+            {
+                for (long word = set[w]; word != 0; word &= word - 1)
+                {
+                    int p = (w << 6) + Long.numberOfTrailingZeros(word);
+
+                    for (int k = satisfiesStart[p]; k < satisfiesStart[p + 1]; k++)
+                    {
+                        counts[satisfies[k]]++;
+                    }
+                }
+            }
+
+            for (int w = 0; w < set.length; w++)
+            {
+                for (long word = set[w]; word != 0; word &= word - 1)
+                {
+                    int p = (w << 6) + Long.numberOfTrailingZeros(word);
+
+                    for (int k = inStart[p]; k < inStart[p + 1]; k++)
+                    {
+                        if(counts[in[k]] == 0)
+                        {
+                            queue[tail++] = p;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            for (int k = 0; k < tail; k++)
+            {
+                set[queue[k] >>> 6] &= ~(1L << (queue[k] & 63));
+            }
+
+            for (int head = 0; head < tail; head++)
+            {
+                int p = queue[head];
+
+                for (int k = satisfiesStart[p]; k < satisfiesStart[p + 1]; k++)
+                {
+                    int t = satisfies[k];
+
+                    if(--counts[t] != 0)
+                    {
+                        continue;
+                    }
+
+                    // t lost its last place: the places needing it go
+                    for (int j = neededStart[t]; j < neededStart[t + 1]; j++)
+                    {
+                        int q = needed[j];
+
+                        if(has(set, q))
+                        {
+                            set[q >>> 6] &= ~(1L << (q & 63));
+                            queue[tail++] = q;
+                        }
+                    }
+                }
+            }
+
+            // Back to zero: the remaining places only
+            for (int w = 0; w < set.length; w++)
+            {
+                for (long word = set[w]; word != 0; word &= word - 1)
+                {
+                    int p = (w << 6) + Long.numberOfTrailingZeros(word);
+
+                    for (int k = satisfiesStart[p]; k < satisfiesStart[p + 1]; k++)
+                    {
+                        counts[satisfies[k]] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns if set includes some of the sets.
+     *
+     * @param set
+     * @param sets
+     * @return boolean
+     */
+    private static boolean containsAny(long[] set, List<long[]> sets)
+    {
+        search:
+        for (long[] other : sets)
+        {
+            for (int w = 0; w < set.length; w++)
+            {
+                if((other[w] & ~set[w]) != 0)
+                {
+                    continue search;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns if the bitset has the index.
+     *
+     * @param bits
+     * @param index
+     * @return boolean
+     */
+    private static boolean has(long[] bits, int index)
+    {
+        return (bits[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * A node of the search: the set, the excluded places, the places added
+     * and not closed yet, the transitions left unsatisfied.
+     */
+    private static class Frame
+    {
+        final long[] set;
+
+        final long[] excluded;
+
+        final int[] added;
+
+        int[] pending;
+
+        Frame(long[] set, long[] excluded, int[] added, int[] pending)
+        {
+            this.set = set;
+            this.excluded = excluded;
+            this.added = added;
+            this.pending = pending;
+        }
+    }
+}
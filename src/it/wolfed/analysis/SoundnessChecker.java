@@ -0,0 +1,562 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.AnalysisFact;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Soundness of a workflow net (van der Aalst).
+ *
+ * Starting from one token in the initial place (plus the tokens of the
+ * other places, e.g. the mutex of {@link it.wolfed.operation.MutualExclusionOperation},
+ * as resources):
+ *
+ * Option to complete: the final marking (the token moved to the final
+ * place, the resources given back) is reachable from every reachable
+ * marking.
+ * Proper completion: a marking with a token in the final place is the
+ * final marking.
+ * No dead transitions: every transition fires in some reachable marking.
+ *
+ * Improper completions and deadlocks are caught while exploring, and stop
+ * the search at once; livelocks and dead transitions need the whole
+ * reachability graph.
+ *
+ * The reduced mode explores with stubborn sets, the transitions of the
+ * final place being visible: deadlocks, improper completions and livelocks
+ * are kept. Transitions never enabled in the reduced graph may still be
+ * alive, so in that case the check is repeated with the full search.
+ *
+ * Nets carrying the {@link AnalysisFact#SOUND} fact need no search; free-choice
+ * nets are first decided by {@link StructuralSoundness}, the others by
+ * {@link FragmentSoundness}: a sound verdict needs no search, an unsound
+ * one is searched for its counterexample.
+ */
+public class SoundnessChecker
+{
+    /**
+     * Default states limit.
+     */
+    public static final int DEFAULT_MAX_STATES = 5000000;
+
+    /**
+     * Nodes of the boundedness check before a reduced search.
+     */
+    private static final int REDUCED_BOUNDEDNESS_NODES = 100000;
+
+    /**
+     * Compiled net, null if not a workflow net.
+     */
+    private final CompiledNet net;
+
+    /**
+     * Index of the initial place.
+     */
+    private final int initialPlace;
+
+    /**
+     * Index of the final place.
+     */
+    private final int finalPlace;
+
+    /**
+     * Final marking.
+     */
+    private final int[] finalMarking;
+
+    /**
+     * Soundness already verified on the graph (e.g. inherited through an
+     * operation).
+     */
+    private final boolean knownSound;
+
+    /**
+     * If the net may be decided fragment by fragment.
+     */
+    private final boolean decomposed;
+
+    private int maxStates = DEFAULT_MAX_STATES;
+
+    private int parallelism = 1;
+
+    private boolean reduced;
+
+    /**
+     * Reduction ratio of the last reduced search.
+     */
+    private double reductionRatio;
+
+    /**
+     * {@link SoundnessChecker} Constructor.
+     *
+     * Must be called on the thread owning the graph model;
+     * {@link SoundnessChecker#check()} can then run on any thread.
+     *
+     * @param graph
+     */
+    public SoundnessChecker(PetriNetGraph graph)
+    {
+        knownSound = graph.getFact(AnalysisFact.SOUND) == Boolean.TRUE;
+        decomposed = true;
+
+        if(graph.isWorkFlow())
+        {
+            net = CompiledNet.compile(graph);
+            initialPlace = net.indexOfPlace(graph.getInitialPlaces().get(0));
+            finalPlace = net.indexOfPlace(graph.getFinalPlaces().get(0));
+
+            finalMarking = getStartMarking();
+            finalMarking[initialPlace] = 0;
+            finalMarking[finalPlace] += 1;
+        }
+        else
+        {
+            net = null;
+            initialPlace = -1;
+            finalPlace = -1;
+            finalMarking = null;
+        }
+    }
+
+    /**
+     * {@link SoundnessChecker} Constructor, for a fragment of a larger net
+     * (not decomposed again).
+     *
+     * @param net
+     * @param initialPlace
+     * @param finalPlace
+     */
+    SoundnessChecker(CompiledNet net, int initialPlace, int finalPlace)
+    {
+        this.net = net;
+        this.initialPlace = initialPlace;
+        this.finalPlace = finalPlace;
+        this.knownSound = false;
+        this.decomposed = false;
+
+        finalMarking = getStartMarking();
+        finalMarking[initialPlace] = 0;
+        finalMarking[finalPlace] += 1;
+    }
+
+    /**
+     * Sets the states limit.
+     *
+     * @param maxStates
+     * @return SoundnessChecker
+     */
+    public SoundnessChecker setMaxStates(int maxStates)
+    {
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    /**
+     * Sets the exploration worker threads.
+     *
+     * @param parallelism
+     * @return SoundnessChecker
+     */
+    public SoundnessChecker setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets the stubborn-set reduced search.
+     *
+     * @param reduced
+     * @return SoundnessChecker
+     */
+    public SoundnessChecker setReduced(boolean reduced)
+    {
+        this.reduced = reduced;
+        return this;
+    }
+
+    /**
+     * Returns the reduction ratio of the last check.
+     *
+     * @see ReachabilityGraph#getReductionRatio()
+     * @return double
+     */
+    public double getReductionRatio()
+    {
+        return reductionRatio;
+    }
+
+    /**
+     * Checks the soundness.
+     *
+     * Boundedness is checked first on the coverability graph (a sound net
+     * is bounded): if the net is bounded and the graph fits the states limit,
+     * it is the reachability graph as well, and the full search reuses it.
+     *
+     * @return SoundnessResult
+     */
+    public SoundnessResult check()
+    {
+        if(net == null)
+        {
+            return new SoundnessResult(
+                SoundnessResult.Violation.NOT_WORKFLOW,
+                Collections.<TransitionVertex>emptyList(),
+                Collections.<Vertex, Integer>emptyMap(),
+                Collections.<TransitionVertex>emptyList(),
+                0
+            );
+        }
+
+        if(knownSound
+            || new StructuralSoundness(net, initialPlace, finalPlace).decide() == StructuralSoundness.Verdict.SOUND
+            || (decomposed && isSoundByFragments()))
+        {
+            return new SoundnessResult(
+                null,
+                Collections.<TransitionVertex>emptyList(),
+                Collections.<Vertex, Integer>emptyMap(),
+                Collections.<TransitionVertex>emptyList(),
+                0
+            );
+        }
+
+        CoverabilityGraph cover = new CoverabilityExplorer(net.withInitialMarking(getStartMarking()))
+            .setMaxNodes(reduced ? Math.min(maxStates, REDUCED_BOUNDEDNESS_NODES) : maxStates)
+            .setStopOnUnbounded(true)
+            .explore();
+
+        if( ! cover.isBounded())
+        {
+            return SoundnessResult.violation(SoundnessResult.Violation.UNBOUNDED, cover, cover.getUnboundedWitness());
+        }
+
+        if( ! reduced && parallelism == 1 && cover.isComplete())
+        {
+            reductionRatio = 0;
+
+            for (int state = 0; state < cover.getStateCount(); state++)
+            {
+                boolean deadlock = cover.getEdgeStart()[state] == cover.getEdgeStart()[state + 1];
+                SoundnessResult.Violation violation = getViolation(cover.getMarking(state), deadlock);
+
+                if(violation != null)
+                {
+                    return SoundnessResult.violation(violation, cover, state);
+                }
+            }
+
+            return getVerdict(cover, null);
+        }
+
+        return check(reduced);
+    }
+
+    /**
+     * Returns if every fragment of the net is sound, when the net has more
+     * than one (a RIGID root of single arcs would be searched as a whole).
+     *
+     * @return boolean
+     */
+    private boolean isSoundByFragments()
+    {
+        ProcessStructureTree tree = new ProcessStructureTree(net, initialPlace, finalPlace);
+        Fragment root = tree.getRoot();
+
+        if(root.getType() == Fragment.Type.RIGID && tree.getFragments().size() == root.getChildren().size() + 1)
+        {
+            return false;
+        }
+
+        return new FragmentSoundness(tree)
+            .setMaxStates(maxStates)
+            .setParallelism(parallelism)
+            .decide() == StructuralSoundness.Verdict.SOUND;
+    }
+
+    /**
+     * Checks the soundness on a new search, with or without the reduction.
+     *
+     * @param reduced
+     * @return SoundnessResult
+     */
+    private SoundnessResult check(boolean reduced)
+    {
+        final SoundnessResult.Violation[] violation = new SoundnessResult.Violation[1];
+        final int[] witness = {-1};
+        final boolean[] everEnabled = reduced ? new boolean[net.getTransitionCount()] : null;
+
+        StateListener listener = new StateListener()
+        {
+            @Override
+            public boolean stateExpanded(int state, int[] marking, boolean deadlock)
+            {
+                if(everEnabled != null)
+                {
+                    for (int t = 0; t < everEnabled.length; t++)
+                    {
+                        everEnabled[t] = everEnabled[t] || net.isEnabled(t, marking);
+                    }
+                }
+
+                violation[0] = getViolation(marking, deadlock);
+
+                if(violation[0] == null)
+                {
+                    return true;
+                }
+
+                witness[0] = state;
+
+                return false;
+            }
+        };
+
+        ReachabilityGraph graph = new ReachabilityExplorer(net.withInitialMarking(getStartMarking()))
+            .setMaxStates(maxStates)
+            .setParallelism(parallelism)
+            .setStateListener(listener)
+            .setReduced(reduced)
+            .setVisibleTransitions(getFinalProducers())
+            .explore();
+
+        reductionRatio = graph.getReductionRatio();
+
+        if(violation[0] != null)
+        {
+            return SoundnessResult.violation(violation[0], graph, witness[0]);
+        }
+
+        return getVerdict(graph, everEnabled);
+    }
+
+    /**
+     * Returns the violation shown by a single state, null if none.
+     *
+     * @param marking
+     * @param deadlock
+     * @return SoundnessResult.Violation
+     */
+    private SoundnessResult.Violation getViolation(int[] marking, boolean deadlock)
+    {
+        boolean isFinal = Arrays.equals(marking, finalMarking);
+
+        if(marking[finalPlace] >= finalMarking[finalPlace] && ! isFinal)
+        {
+            return SoundnessResult.Violation.IMPROPER_COMPLETION;
+        }
+
+        if(deadlock && ! isFinal)
+        {
+            return SoundnessResult.Violation.NO_OPTION_TO_COMPLETE;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the verdict on the whole graph: livelocks and dead transitions.
+     *
+     * @param graph
+     * @param everEnabled   transitions enabled in some state, null if not reduced
+     * @return SoundnessResult
+     */
+    private SoundnessResult getVerdict(ReachabilityGraph graph, boolean[] everEnabled)
+    {
+        if( ! graph.isComplete())
+        {
+            return new SoundnessResult(
+                SoundnessResult.Violation.STATE_LIMIT,
+                Collections.<TransitionVertex>emptyList(),
+                Collections.<Vertex, Integer>emptyMap(),
+                Collections.<TransitionVertex>emptyList(),
+                graph.getStateCount()
+            );
+        }
+
+        // Option to complete: every state must reach the final marking
+        int livelock = findNotCompleting(graph);
+
+        if(livelock != -1)
+        {
+            return SoundnessResult.violation(SoundnessResult.Violation.NO_OPTION_TO_COMPLETE, graph, livelock);
+        }
+
+        List<TransitionVertex> dead = findDeadTransitions(graph);
+
+        if(everEnabled != null && ! dead.isEmpty())
+        {
+            for (int t = 0; t < everEnabled.length; t++)
+            {
+                if( ! everEnabled[t])
+                {
+                    // Maybe hidden by the reduction
+                    return check(false);
+                }
+            }
+
+            // Enabled somewhere, fired on some full path
+            dead.clear();
+        }
+
+        if( ! dead.isEmpty())
+        {
+            return new SoundnessResult(
+                SoundnessResult.Violation.DEAD_TRANSITION,
+                Collections.<TransitionVertex>emptyList(),
+                Collections.<Vertex, Integer>emptyMap(),
+                Collections.unmodifiableList(dead),
+                graph.getStateCount()
+            );
+        }
+
+        return new SoundnessResult(
+            null,
+            Collections.<TransitionVertex>emptyList(),
+            Collections.<Vertex, Integer>emptyMap(),
+            Collections.<TransitionVertex>emptyList(),
+            graph.getStateCount()
+        );
+    }
+
+    /**
+     * Returns the marking the check starts from: the net marking, with a
+     * single token in the initial place.
+     *
+     * @return int[]
+     */
+    private int[] getStartMarking()
+    {
+        int[] marking = net.getInitialMarking();
+        marking[initialPlace] = 1;
+
+        return marking;
+    }
+
+    /**
+     * Returns the transitions producing in the final place.
+     *
+     * @return boolean[]
+     */
+    private boolean[] getFinalProducers()
+    {
+        boolean[] producers = new boolean[net.getTransitionCount()];
+
+        for (int k = net.getProducersStart()[finalPlace]; k < net.getProducersStart()[finalPlace + 1]; k++)
+        {
+            producers[net.getProducers()[k]] = true;
+        }
+
+        return producers;
+    }
+
+    /**
+     * Returns the first state without a path to the final marking, -1 if none.
+     *
+     * Backward search from the final state over the reversed edges.
+     *
+     * @param graph
+     * @return int
+     */
+    private int findNotCompleting(ReachabilityGraph graph)
+    {
+        int states = graph.getStateCount();
+        int finalState = graph.indexOf(finalMarking);
+
+        if(finalState == -1)
+        {
+            return 0;
+        }
+
+        int[] edgeStart = graph.getEdgeStart();
+        int[] edgeTarget = graph.getEdgeTarget();
+
+        // Reversed edges, as compressed rows
+        int[] reverseStart = new int[states + 1];
+
+        for (int target : edgeTarget)
+        {
+            reverseStart[target + 1]++;
+        }
+
+        for (int s = 0; s < states; s++)
+        {
+            reverseStart[s + 1] += reverseStart[s];
+        }
+
+        int[] reverse = new int[edgeTarget.length];
+        int[] fill = Arrays.copyOf(reverseStart, states);
+
+        for (int s = 0; s < states; s++)
+        {
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+            {
+                reverse[fill[edgeTarget[e]]++] = s;
+            }
+        }
+
+        boolean[] completing = new boolean[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        completing[finalState] = true;
+        queue[tail++] = finalState;
+
+        while (head < tail)
+        {
+            int state = queue[head++];
+
+            for (int e = reverseStart[state]; e < reverseStart[state + 1]; e++)
+            {
+                if( ! completing[reverse[e]])
+                {
+                    completing[reverse[e]] = true;
+                    queue[tail++] = reverse[e];
+                }
+            }
+        }
+
+        for (int s = 0; s < states; s++)
+        {
+            if( ! completing[s])
+            {
+                return s;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the transitions without edges in the graph.
+     *
+     * @param graph
+     * @return List<TransitionVertex>
+     */
+    private List<TransitionVertex> findDeadTransitions(ReachabilityGraph graph)
+    {
+        boolean[] fired = new boolean[net.getTransitionCount()];
+
+        for (int transition : graph.getEdgeTransition())
+        {
+            fired[transition] = true;
+        }
+
+        List<TransitionVertex> dead = new ArrayList<>();
+
+        for (int t = 0; t < fired.length; t++)
+        {
+            if( ! fired[t])
+            {
+                dead.add(net.getTransition(t));
+            }
+        }
+
+        return dead;
+    }
+}
@@ -0,0 +1,240 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verdict of the {@link SoundnessChecker}.
+ *
+ * For a violation, the trace is the firing sequence from the initial
+ * marking to the marking showing the problem.
+ */
+public class SoundnessResult
+{
+    /**
+     * Kinds of violation.
+     */
+    public enum Violation
+    {
+        /**
+         * The net is not a workflow net (structurally).
+         */
+        NOT_WORKFLOW("Not a workflow net"),
+
+        /**
+         * Tokens pile up in some place (omega in the marking).
+         */
+        UNBOUNDED("Unbounded"),
+
+        /**
+         * A marking covers the final place, but is not the final marking.
+         */
+        IMPROPER_COMPLETION("Improper completion"),
+
+        /**
+         * A marking (deadlock or livelock) can't reach the final marking.
+         */
+        NO_OPTION_TO_COMPLETE("No option to complete"),
+
+        /**
+         * A transition never fires.
+         */
+        DEAD_TRANSITION("Dead transitions"),
+
+        /**
+         * The states limit has been reached before a verdict.
+         */
+        STATE_LIMIT("State limit reached");
+
+        private final String label;
+
+        private Violation(String label)
+        {
+            this.label = label;
+        }
+
+        /**
+         * Returns a readable label.
+         *
+         * @return String
+         */
+        public String getLabel()
+        {
+            return label;
+        }
+    }
+
+    private final Violation violation;
+
+    private final List<TransitionVertex> trace;
+
+    private final Map<Vertex, Integer> marking;
+
+    private final List<TransitionVertex> deadTransitions;
+
+    private final int stateCount;
+
+    /**
+     * {@link SoundnessResult} Constructor.
+     *
+     * @param violation         null if sound
+     * @param trace
+     * @param marking           non-empty places of the counterexample marking
+     * @param deadTransitions
+     * @param stateCount
+     */
+    SoundnessResult(Violation violation, List<TransitionVertex> trace, Map<Vertex, Integer> marking,
+            List<TransitionVertex> deadTransitions, int stateCount)
+    {
+        this.violation = violation;
+        this.trace = trace;
+        this.marking = marking;
+        this.deadTransitions = deadTransitions;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * Builds a result showing a marking of the reachability graph.
+     *
+     * @param violation
+     * @param graph
+     * @param state
+     * @return SoundnessResult
+     */
+    static SoundnessResult violation(Violation violation, ReachabilityGraph graph, int state)
+    {
+        Map<Vertex, Integer> marking = new LinkedHashMap<>();
+        int[] tokens = graph.getMarking(state);
+
+        for (int p = 0; p < tokens.length; p++)
+        {
+            if(tokens[p] != 0)
+            {
+                marking.put(graph.getNet().getPlace(p), tokens[p]);
+            }
+        }
+
+        return new SoundnessResult(
+            violation,
+            graph.getTrace(state),
+            Collections.unmodifiableMap(marking),
+            Collections.<TransitionVertex>emptyList(),
+            graph.getStateCount()
+        );
+    }
+
+    /**
+     * Returns if the net is sound.
+     *
+     * @return boolean
+     */
+    public boolean isSound()
+    {
+        return violation == null;
+    }
+
+    /**
+     * Returns the violation, null if sound.
+     *
+     * @return Violation
+     */
+    public Violation getViolation()
+    {
+        return violation;
+    }
+
+    /**
+     * Returns the firing sequence leading to the counterexample marking.
+     *
+     * @return List<TransitionVertex>
+     */
+    public List<TransitionVertex> getTrace()
+    {
+        return trace;
+    }
+
+    /**
+     * Returns the tokens of the counterexample marking (non-empty places only).
+     *
+     * Unbounded places hold {@link MarkingStore#OMEGA}.
+     *
+     * @return Map<Vertex, Integer>
+     */
+    public Map<Vertex, Integer> getMarking()
+    {
+        return marking;
+    }
+
+    /**
+     * Returns the transitions never enabled.
+     *
+     * @return List<TransitionVertex>
+     */
+    public List<TransitionVertex> getDeadTransitions()
+    {
+        return deadTransitions;
+    }
+
+    /**
+     * Returns the number of explored states.
+     *
+     * @return int
+     */
+    public int getStateCount()
+    {
+        return stateCount;
+    }
+
+    /**
+     * Returns a readable description.
+     *
+     * @return String
+     */
+    public String getDescription()
+    {
+        if(isSound())
+        {
+            return "Sound";
+        }
+
+        StringBuilder description = new StringBuilder(violation.getLabel());
+
+        if( ! deadTransitions.isEmpty())
+        {
+            description.append(": ").append(ids(deadTransitions));
+        }
+        else if(violation != Violation.NOT_WORKFLOW && violation != Violation.STATE_LIMIT)
+        {
+            description.append(" after [").append(ids(trace)).append("]");
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Joins the ids of vertices.
+     *
+     * @param vertices
+     * @return String
+     */
+    private static String ids(List<? extends Vertex> vertices)
+    {
+        StringBuilder ids = new StringBuilder();
+
+        for (Vertex vertex : vertices)
+        {
+            if(ids.length() > 0)
+            {
+                ids.append(", ");
+            }
+
+            ids.append(vertex.getId());
+        }
+
+        return ids.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package it.wolfed.analysis;
+
+/**
+ * Notified by {@link ReachabilityExplorer} on every expanded state.
+ */
+public interface StateListener
+{
+    /**
+     * Called after a state has been expanded, in state order.
+     *
+     * @param state
+     * @param marking   the marking of state (do not keep)
+     * @param deadlock  true if no transition is enabled
+     * @return boolean  false to stop the exploration
+     */
+    boolean stateExpanded(int state, int[] marking, boolean deadlock);
+}
@@ -0,0 +1,244 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.PetriNetGraph;
+
+/**
+ * Polynomial soundness of free-choice workflow nets, without a state space.
+ *
+ * A workflow net is sound iff its short-circuited net, marked with one
+ * token in the initial place, is live and bounded (van der Aalst). For a
+ * free-choice net, the latter is decided by the rank theorem (Desel,
+ * Esparza): the net is covered by P- and T-invariants, the rank of its
+ * incidence matrix is the number of clusters minus one, and every siphon
+ * is initially marked.
+ *
+ * The net is first shrunk by {@link NetReducer}; block-structured nets
+ * usually reduce to a single transition from the initial to the final
+ * place, which is sound at once. Nets not free-choice, or with resource
+ * tokens, are left undecided.
+ */
+public class StructuralSoundness
+{
+    /**
+     * The structural verdict.
+     */
+    public enum Verdict
+    {
+        SOUND,
+        UNSOUND,
+        UNKNOWN
+    }
+
+    private final CompiledNet net;
+
+    private final int initialPlace;
+
+    private final int finalPlace;
+
+    private int maxRows = InvariantSolver.DEFAULT_MAX_ROWS;
+
+    /**
+     * {@link StructuralSoundness} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph     a workflow net
+     */
+    public StructuralSoundness(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph), graph);
+    }
+
+    /**
+     * @param net
+     * @param graph
+     */
+    private StructuralSoundness(CompiledNet net, PetriNetGraph graph)
+    {
+        this(net, net.indexOfPlace(graph.getInitialPlaces().get(0)), net.indexOfPlace(graph.getFinalPlaces().get(0)));
+    }
+
+    /**
+     * {@link StructuralSoundness} Constructor.
+     *
+     * @param net           a workflow net
+     * @param initialPlace
+     * @param finalPlace
+     */
+    public StructuralSoundness(CompiledNet net, int initialPlace, int finalPlace)
+    {
+        this.net = net;
+        this.initialPlace = initialPlace;
+        this.finalPlace = finalPlace;
+    }
+
+    /**
+     * Sets the rows limit of the invariants.
+     *
+     * @see InvariantSolver#setMaxRows(int)
+     * @param maxRows
+     * @return StructuralSoundness
+     */
+    public StructuralSoundness setMaxRows(int maxRows)
+    {
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Decides the soundness.
+     *
+     * @return Verdict
+     */
+    public Verdict decide()
+    {
+        int[] marking = net.getInitialMarking();
+        marking[initialPlace] = 1;
+
+        for (int p = 0; p < marking.length; p++)
+        {
+            if(p != initialPlace && marking[p] != 0)
+            {
+                return Verdict.UNKNOWN;
+            }
+        }
+
+        CompiledNet start = net.withInitialMarking(marking);
+
+        if( ! new NetClassification(start.withShortCircuit(finalPlace, initialPlace)).isFreeChoice())
+        {
+            return Verdict.UNKNOWN;
+        }
+
+        NetReduction reduction = new NetReducer(start).protect(initialPlace).protect(finalPlace).reduce();
+        CompiledNet reduced = reduction.getNet();
+        int reducedInitial = reduction.getReducedPlace(initialPlace);
+        int reducedFinal = reduction.getReducedPlace(finalPlace);
+
+        if(isTrivial(reduced, reducedInitial, reducedFinal))
+        {
+            return Verdict.SOUND;
+        }
+
+        CompiledNet closed = reduced.withShortCircuit(reducedFinal, reducedInitial);
+
+        if( ! new NetClassification(closed).isFreeChoice())
+        {
+            return Verdict.UNKNOWN;
+        }
+
+        // Every siphon marked: no siphon among the unmarked places
+        long[] unmarked = new long[(closed.getPlaceCount() + 63) >>> 6];
+
+        for (int p = 0; p < closed.getPlaceCount(); p++)
+        {
+            if(p != reducedInitial)
+            {
+                unmarked[p >>> 6] |= 1L << (p & 63);
+            }
+        }
+
+        if(PlaceSets.cardinality(new SiphonAnalyzer(closed).getMaximalSiphon(unmarked)) > 0)
+        {
+            return Verdict.UNSOUND;
+        }
+
+        IncidenceMatrix matrix = new IncidenceMatrix(closed);
+        InvariantSolver solver = new InvariantSolver().setMaxRows(maxRows);
+        Invariants pInvariants = solver.getPInvariants(matrix);
+
+        if( ! pInvariants.isComplete())
+        {
+            return Verdict.UNKNOWN;
+        }
+
+        if( ! pInvariants.isCovering())
+        {
+            return Verdict.UNSOUND;
+        }
+
+        Invariants tInvariants = solver.getTInvariants(matrix);
+
+        if( ! tInvariants.isComplete())
+        {
+            return Verdict.UNKNOWN;
+        }
+
+        if( ! tInvariants.isCovering() || matrix.getRank() != getClusterCount(closed) - 1)
+        {
+            return Verdict.UNSOUND;
+        }
+
+        return Verdict.SOUND;
+    }
+
+    /**
+     * Returns if the net is one transition from the initial to the final place.
+     *
+     * @param net
+     * @param initialPlace
+     * @param finalPlace
+     * @return boolean
+     */
+    private static boolean isTrivial(CompiledNet net, int initialPlace, int finalPlace)
+    {
+        return net.getPlaceCount() == 2
+            && net.getTransitionCount() == 1
+            && net.getPreset().length == 1 && net.getPreset()[0] == initialPlace && net.getPresetWeight()[0] == 1
+            && net.getPostset().length == 1 && net.getPostset()[0] == finalPlace && net.getPostsetWeight()[0] == 1;
+    }
+
+    /**
+     * Returns the number of clusters: the connected components of the
+     * place -> transition arcs.
+     *
+     * @param net
+     * @return int
+     */
+    private static int getClusterCount(CompiledNet net)
+    {
+        int places = net.getPlaceCount();
+        int[] parent = new int[places + net.getTransitionCount()];
+        int clusters = parent.length;
+
+        for (int i = 0; i < parent.length; i++)
+        {
+            parent[i] = i;
+        }
+
+        for (int t = 0; t < net.getTransitionCount(); t++)
+        {
+            for (int k = net.getPresetStart()[t]; k < net.getPresetStart()[t + 1]; k++)
+            {
+                int a = find(parent, net.getPreset()[k]);
+                int b = find(parent, places + t);
+
+                if(a != b)
+                {
+                    parent[a] = b;
+                    clusters--;
+                }
+            }
+        }
+
+        return clusters;
+    }
+
+    /**
+     * Union-find root, halving the path.
+     *
+     * @param parent
+     * @param node
+     * @return int
+     */
+    private static int find(int[] parent, int node)
+    {
+        while (parent[node] != node)
+        {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+
+        return node;
+    }
+}
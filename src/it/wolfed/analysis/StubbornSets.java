@@ -0,0 +1,194 @@
+package it.wolfed.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Stubborn sets of a {@link CompiledNet} (Valmari), for the reduced search.
+ *
+ * A set is closed from an enabled seed: an enabled transition brings in
+ * all the transitions competing for its input places, a disabled one all
+ * the producers of one of its insufficiently marked input places. Firing
+ * only the enabled transitions of such a set preserves the deadlocks.
+ * Every enabled transition is tried as a seed, keeping the set with the
+ * fewest enabled transitions.
+ */
+class StubbornSets
+{
+    private final CompiledNet net;
+
+    /**
+     * Stamp of the current closure, by transition.
+     */
+    private final int[] stamps;
+
+    private int stamp;
+
+    /**
+     * Closure stack.
+     */
+    private final int[] stack;
+
+    /**
+     * Members of the current closure.
+     */
+    private final int[] members;
+
+    /**
+     * {@link StubbornSets} Constructor.
+     *
+     * @param net
+     */
+    StubbornSets(CompiledNet net)
+    {
+        this.net = net;
+        this.stamps = new int[net.getTransitionCount()];
+        this.stack = new int[net.getTransitionCount()];
+        this.members = new int[net.getTransitionCount()];
+    }
+
+    /**
+     * Selects the enabled transitions of the smallest stubborn set.
+     *
+     * @param marking
+     * @param enabled       enabled transitions of marking
+     * @param enabledCount
+     * @param selected      output: true for the transitions to fire
+     * @return int          number of selected transitions
+     */
+    int select(int[] marking, int[] enabled, int enabledCount, boolean[] selected)
+    {
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+
+        for (int i = 0; i < enabledCount && bestCount > 1; i++)
+        {
+            int count = close(enabled[i], marking);
+
+            if(count < bestCount)
+            {
+                best = enabled[i];
+                bestCount = count;
+            }
+        }
+
+        if(best == -1)
+        {
+            return 0;
+        }
+
+        int size = closeMembers(best, marking);
+
+        for (int i = 0; i < size; i++)
+        {
+            if(net.isEnabled(members[i], marking))
+            {
+                selected[members[i]] = true;
+            }
+        }
+
+        return bestCount;
+    }
+
+    /**
+     * Closes a set from seed, returning its enabled transitions count.
+     *
+     * @param seed
+     * @param marking
+     * @return int
+     */
+    private int close(int seed, int[] marking)
+    {
+        int size = closeMembers(seed, marking);
+        int count = 0;
+
+        for (int i = 0; i < size; i++)
+        {
+            if(net.isEnabled(members[i], marking))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Closes a set from seed into members, returning its size.
+     *
+     * @param seed
+     * @param marking
+     * @return int
+     */
+    private int closeMembers(int seed, int[] marking)
+    {
+        int[] presetStart = net.getPresetStart();
+        int[] preset = net.getPreset();
+        int[] presetWeight = net.getPresetWeight();
+        int[] consumersStart = net.getConsumersStart();
+        int[] consumers = net.getConsumers();
+        int[] producersStart = net.getProducersStart();
+        int[] producers = net.getProducers();
+
+        if(++stamp == 0)
+        {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+
+        int size = 0;
+        int top = 0;
+        stamps[seed] = stamp;
+        stack[top++] = seed;
+
+        while (top > 0)
+        {
+            int t = stack[--top];
+            members[size++] = t;
+
+            if(net.isEnabled(t, marking))
+            {
+                // Transitions which may disable t
+                for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+                {
+                    int p = preset[k];
+
+                    for (int c = consumersStart[p]; c < consumersStart[p + 1]; c++)
+                    {
+                        if(stamps[consumers[c]] != stamp)
+                        {
+                            stamps[consumers[c]] = stamp;
+                            stack[top++] = consumers[c];
+                        }
+                    }
+                }
+            }
+            else
+            {
+                // Transitions which may enable t: producers of its scarcest place
+                int scarce = -1;
+
+                for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+                {
+                    int p = preset[k];
+
+                    if(marking[p] < presetWeight[k] && (scarce == -1
+                            || producersStart[p + 1] - producersStart[p] < producersStart[scarce + 1] - producersStart[scarce]))
+                    {
+                        scarce = p;
+                    }
+                }
+
+                for (int c = producersStart[scarce]; c < producersStart[scarce + 1]; c++)
+                {
+                    if(stamps[producers[c]] != stamp)
+                    {
+                        stamps[producers[c]] = stamp;
+                        stack[top++] = producers[c];
+                    }
+                }
+            }
+        }
+
+        return size;
+    }
+}
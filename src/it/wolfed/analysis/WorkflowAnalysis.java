@@ -0,0 +1,275 @@
+package it.wolfed.analysis;
+
+import it.wolfed.model.AdjacencyIndex;
+import it.wolfed.model.AnalysisFact;
+import it.wolfed.model.GraphSnapshot;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.PlaceVertex;
+import it.wolfed.model.TransitionVertex;
+import it.wolfed.model.Vertex;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Structural workflow analysis over a read snapshot of a {@link PetriNetGraph}.
+ *
+ * The snapshot (a flat copy of the cells, the initial and final places) is
+ * taken in the constructor, on the thread owning the model;
+ * {@link WorkflowAnalysis#process()} builds the adjacency index and the
+ * compiled net from the snapshot only and can therefore run on any thread.
+ */
+public class WorkflowAnalysis
+{
+    /**
+     * Cells snapshot.
+     */
+    private final GraphSnapshot snapshot;
+
+    /**
+     * Adjacency of the snapshot, built by the analysis.
+     */
+    private AdjacencyIndex adjacency;
+
+    /**
+     * Initial places snapshot.
+     */
+    private final Set<PlaceVertex> initialPlaces;
+
+    /**
+     * Final places snapshot.
+     */
+    private final Set<PlaceVertex> finalPlaces;
+
+    /**
+     * Vertices without a path from the initial to the final place.
+     *
+     * Empty if the final place is not unique.
+     */
+    private Set<Vertex> notConnectedVertices = Collections.emptySet();
+
+    /**
+     * Compiled snapshot, for the structural checks, built by the analysis.
+     */
+    private CompiledNet net;
+
+    /**
+     * Soundness fact of the graph, null if unknown.
+     */
+    private final Boolean knownSoundness;
+
+    /**
+     * Structural class (short-circuited if the places allow it).
+     */
+    private NetClassification classification;
+
+    /**
+     * Soundness (the graph fact, or the structural verdict), UNKNOWN if
+     * not a workflow net.
+     */
+    private StructuralSoundness.Verdict soundness = StructuralSoundness.Verdict.UNKNOWN;
+
+    /**
+     * {@link WorkflowAnalysis} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public WorkflowAnalysis(PetriNetGraph graph)
+    {
+        snapshot = new GraphSnapshot(graph);
+        initialPlaces = new HashSet<>(graph.getInitialPlaces());
+        finalPlaces = new HashSet<>(graph.getFinalPlaces());
+        knownSoundness = graph.getFact(AnalysisFact.SOUND);
+    }
+
+    /**
+     * Runs the analysis on the snapshot.
+     *
+     * @return WorkflowAnalysis
+     */
+    public WorkflowAnalysis process()
+    {
+        adjacency = new AdjacencyIndex(snapshot);
+        net = CompiledNet.compile(snapshot);
+
+        if(isSingleFinalPlace())
+        {
+            Vertex initialPlace = isSingleInitialPlace() ? initialPlaces.iterator().next() : null;
+            notConnectedVertices = getNotConnectedVertices(adjacency, finalPlaces.iterator().next(), initialPlace);
+        }
+
+        if(isSingleInitialPlace() && isSingleFinalPlace())
+        {
+            int initialPlace = net.indexOfPlace(initialPlaces.iterator().next());
+            int finalPlace = net.indexOfPlace(finalPlaces.iterator().next());
+            classification = new NetClassification(net.withShortCircuit(finalPlace, initialPlace));
+
+            if(isWorkFlow() && knownSoundness != null)
+            {
+                soundness = knownSoundness ? StructuralSoundness.Verdict.SOUND : StructuralSoundness.Verdict.UNSOUND;
+            }
+            else if(isWorkFlow())
+            {
+                soundness = new StructuralSoundness(net, initialPlace, finalPlace).decide();
+            }
+        }
+        else
+        {
+            classification = new NetClassification(net);
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns all the Places and Transition without a path to target Vertex.
+     *
+     * One reverse traversal from target marks every vertex with a path to it,
+     * and (if given) one forward traversal from the initial place marks every
+     * vertex reachable from it: O(V+E) overall.
+     *
+     * @param adjacency
+     * @param target
+     * @param initialPlace  may be null
+     * @return Set<Vertex>
+     */
+    public static Set<Vertex> getNotConnectedVertices(AdjacencyIndex adjacency, Vertex target, Vertex initialPlace)
+    {
+        Set<Vertex> notConnected = new HashSet<>();
+        boolean[] reachingTarget = adjacency.reachingTo(adjacency.indexOf(target));
+        boolean[] fromInitial = (initialPlace == null)
+            ? null
+            : adjacency.reachableFrom(adjacency.indexOf(initialPlace));
+
+        for (int i = 0; i < adjacency.size(); i++)
+        {
+            Object cell = adjacency.getVertex(i);
+
+            // Ignore Interfaces
+            if( ! (cell instanceof TransitionVertex || cell instanceof PlaceVertex))
+            {
+                continue;
+            }
+
+            // Path not exists
+            if( ! reachingTarget[i] || (fromInitial != null && ! fromInitial[i]))
+            {
+                notConnected.add((Vertex) cell);
+            }
+
+            // Case with a Transition "Initial" (only postset arc)
+            if(cell instanceof TransitionVertex && adjacency.getInDegree(i) == 0)
+            {
+                notConnected.add((Vertex) cell);
+            }
+        }
+
+        return notConnected;
+    }
+
+    /**
+     * Returns the adjacency of the snapshot, null until processed.
+     *
+     * @return AdjacencyIndex
+     */
+    public AdjacencyIndex getAdjacencyIndex()
+    {
+        return adjacency;
+    }
+
+    /**
+     * Returns if the place was initial in the snapshot.
+     *
+     * @param place
+     * @return boolean
+     */
+    public boolean isInitialPlace(Object place)
+    {
+        return initialPlaces.contains(place);
+    }
+
+    /**
+     * Returns if the place was final in the snapshot.
+     *
+     * @param place
+     * @return boolean
+     */
+    public boolean isFinalPlace(Object place)
+    {
+        return finalPlaces.contains(place);
+    }
+
+    /**
+     * Returns if the snapshot has only an initial place.
+     *
+     * @return boolean
+     */
+    public boolean isSingleInitialPlace()
+    {
+        return initialPlaces.size() == 1;
+    }
+
+    /**
+     * Returns if the snapshot has only a final place.
+     *
+     * @return boolean
+     */
+    public boolean isSingleFinalPlace()
+    {
+        return finalPlaces.size() == 1;
+    }
+
+    /**
+     * Returns the vertices without a path from the initial to the final place.
+     *
+     * @return Set<Vertex>
+     */
+    public Set<Vertex> getNotConnectedVertices()
+    {
+        return notConnectedVertices;
+    }
+
+    /**
+     * Returns if a workflow has a path from initial to final place for each vertex.
+     *
+     * @return boolean
+     */
+    public boolean isWorkflowStronglyConnected()
+    {
+        return isSingleInitialPlace() && isSingleFinalPlace() && notConnectedVertices.isEmpty();
+    }
+
+    /**
+     * Returns if the snapshot is a workflow net.
+     *
+     * @see PetriNetGraph#isWorkFlow()
+     * @return boolean
+     */
+    public boolean isWorkFlow()
+    {
+        return isWorkflowStronglyConnected();
+    }
+
+    /**
+     * Returns the structural class of the snapshot.
+     *
+     * @return NetClassification
+     */
+    public NetClassification getClassification()
+    {
+        return classification;
+    }
+
+    /**
+     * Returns the structural soundness of the snapshot.
+     *
+     * @see StructuralSoundness
+     * @return StructuralSoundness.Verdict
+     */
+    public StructuralSoundness.Verdict getStructuralSoundness()
+    {
+        return soundness;
+    }
+}
@@ -0,0 +1,16 @@
+package it.wolfed.event;
+
+import it.wolfed.analysis.WorkflowAnalysis;
+
+/**
+ * Receives the results published by an {@link AnalysisScheduler}.
+ */
+public interface AnalysisListener
+{
+    /**
+     * Called on the Event Dispatch Thread with an up to date analysis.
+     * 
+     * @param analysis 
+     */
+    void analysisCompleted(WorkflowAnalysis analysis);
+}
@@ -0,0 +1,208 @@
+package it.wolfed.event;
+
+import com.mxgraph.util.mxEvent;
+import com.mxgraph.util.mxEventObject;
+import com.mxgraph.util.mxEventSource.mxIEventListener;
+import it.wolfed.analysis.StructuralSoundness;
+import it.wolfed.analysis.WorkflowAnalysis;
+import it.wolfed.model.AnalysisFact;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.util.Constants;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Runs the workflow analysis of a graph off the Event Dispatch Thread.
+ *
+ * Bursts of structural changes are coalesced by a short delay; a flat copy
+ * of the cells is then taken on the EDT, indexed and analysed on a
+ * background worker and published back on the EDT to the
+ * {@link AnalysisListener}s, unless a newer change has made it stale in the
+ * meantime.
+ */
+public class AnalysisScheduler implements mxIEventListener
+{
+    /**
+     * Worker shared by all the schedulers.
+     */
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, Constants.EDITOR_NAME + "-analysis");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The analysed graph.
+     */
+    private final PetriNetGraph graph;
+
+    /**
+     * Coalesces the bursts of changes.
+     */
+    private final Timer timer;
+
+    /**
+     * Bumped on every structural change: older results are stale.
+     */
+    private volatile long generation;
+
+    /**
+     * Listeners, notified on the EDT.
+     */
+    private final List<AnalysisListener> listeners = new ArrayList<>();
+
+    /**
+     * Last published analysis.
+     */
+    private WorkflowAnalysis lastAnalysis;
+
+    /**
+     * {@link AnalysisScheduler} Constructor.
+     *
+     * @param graph
+     */
+    public AnalysisScheduler(PetriNetGraph graph)
+    {
+        this.graph = graph;
+
+        timer = new Timer(Constants.ANALYSIS_DELAY, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                submit();
+            }
+        });
+        timer.setRepeats(false);
+
+        graph.getModel().addListener(mxEvent.CHANGE, this);
+    }
+
+    /**
+     * Adds a listener for the published results.
+     *
+     * @param listener
+     */
+    public void addAnalysisListener(AnalysisListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the last published analysis, null if none.
+     *
+     * @return WorkflowAnalysis
+     */
+    public WorkflowAnalysis getLastAnalysis()
+    {
+        return lastAnalysis;
+    }
+
+    /**
+     * Schedules a new analysis (and makes the pending one stale).
+     */
+    public void schedule()
+    {
+        generation++;
+        timer.restart();
+    }
+
+    /**
+     * Schedules on structural changes only.
+     *
+     * @param sender
+     * @param evt
+     */
+    @Override
+    public void invoke(Object sender, mxEventObject evt)
+    {
+        List<?> changes = (List<?>) evt.getProperty("changes");
+
+        if(changes == null)
+        {
+            schedule();
+            return;
+        }
+
+        for(Object change : changes)
+        {
+            if(PetriNetGraph.isStructuralChange(change))
+            {
+                schedule();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the copy of the cells (on the EDT) and hands it to the worker.
+     */
+    private void submit()
+    {
+        final long snapshotGeneration = generation;
+        final WorkflowAnalysis analysis = new WorkflowAnalysis(graph);
+
+        worker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(snapshotGeneration != generation)
+                {
+                    return;
+                }
+
+                analysis.process();
+
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        publish(snapshotGeneration, analysis);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Records the verdict on the graph and notifies the listeners, unless
+     * the analysis is stale.
+     *
+     * @param snapshotGeneration
+     * @param analysis
+     */
+    private void publish(long snapshotGeneration, WorkflowAnalysis analysis)
+    {
+        if(snapshotGeneration != generation)
+        {
+            return;
+        }
+
+        lastAnalysis = analysis;
+
+        // Not stale: the graph is still the analysed snapshot
+        if(analysis.getStructuralSoundness() != StructuralSoundness.Verdict.UNKNOWN)
+        {
+            graph.setFact(AnalysisFact.SOUND, analysis.getStructuralSoundness() == StructuralSoundness.Verdict.SOUND);
+        }
+
+        for(AnalysisListener listener : listeners)
+        {
+            listener.analysisCompleted(analysis);
+        }
+    }
+}
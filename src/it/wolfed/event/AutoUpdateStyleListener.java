@@ -1,92 +1,128 @@
 package it.wolfed.event;
 
-import com.mxgraph.util.mxEventObject;
-import com.mxgraph.util.mxEventSource.mxIEventListener;
+import com.mxgraph.model.mxIGraphModel;
+import it.wolfed.analysis.WorkflowAnalysis;
+import it.wolfed.model.AdjacencyIndex;
 import it.wolfed.model.InterfaceVertex;
 import it.wolfed.model.PetriNetGraph;
 import it.wolfed.model.PlaceVertex;
 import it.wolfed.model.TransitionVertex;
 import it.wolfed.model.Vertex;
 import it.wolfed.util.Constants;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public class AutoUpdateStyleListener implements mxIEventListener
+/**
+ * Keeps the cells style in sync with the workflow analysis.
+ *
+ * The new style of every cell is computed once per published analysis,
+ * and only the styles that actually differ are applied, in a single model
+ * update: the graph view then repaints just the restyled cells.
+ *
+ * @see AnalysisScheduler
+ */
+public class AutoUpdateStyleListener implements AnalysisListener
 {
     private PetriNetGraph graph;
-    
+
     public AutoUpdateStyleListener(PetriNetGraph graph)
     {
         this.graph = graph;
     }
-    
+
     @Override
-    public void invoke(Object o, mxEventObject eo)
+    public void analysisCompleted(WorkflowAnalysis analysis)
     {
-        updateEdgesStyle();
-        updateVerticesStyle();
-        graph.refresh();
+        Map<Object, String> styles = new LinkedHashMap<>();
+        updateEdgesStyle(styles, analysis);
+        updateVerticesStyle(styles, analysis);
+        applyStyles(styles);
     }
-    
-    private void updateEdgesStyle()
+
+    /**
+     * Applies the changed styles only, in a single update.
+     *
+     * @param styles
+     */
+    private void applyStyles(Map<Object, String> styles)
     {
-        // Reset Arc Style
-        for(Object edge: graph.getChildEdges())
+        mxIGraphModel model = graph.getModel();
+        model.beginUpdate();
+
+        try
         {
-            if(graph.isWorkFlow())
+            for(Map.Entry<Object, String> entry : styles.entrySet())
             {
-                graph.getModel().setStyle(edge, Constants.STYLE_ARC_FLOW_CONNECTED);
-            }
-            else
-            {
-                graph.getModel().setStyle(edge, Constants.STYLE_ARC);
+                if( ! entry.getValue().equals(model.getStyle(entry.getKey())))
+                {
+                    model.setStyle(entry.getKey(), entry.getValue());
+                }
             }
         }
-        
+        finally
+        {
+            model.endUpdate();
+        }
+    }
+
+    private void updateEdgesStyle(Map<Object, String> styles, WorkflowAnalysis analysis)
+    {
+        boolean workflow = analysis.isWorkFlow();
+        AdjacencyIndex adjacency = analysis.getAdjacencyIndex();
+
+        // Reset Arc Style
+        for(Object edge: graph.getChildEdges())
+        {
+            styles.put(edge, workflow ? Constants.STYLE_ARC_FLOW_CONNECTED : Constants.STYLE_ARC);
+        }
+
         // Highlight not strongly connected arc
-        if( ! graph.isWorkFlow() && graph.isSingleFinalPlace())
+        if( ! workflow && analysis.isSingleFinalPlace())
         {
-            for(Vertex vertex : graph.getNotConnectedVertices(graph.getFinalPlaces().get(0)))
+            for(Vertex vertex : analysis.getNotConnectedVertices())
             {
                 for(Object edge : graph.getIncomingEdges(vertex))
                 {
-                    graph.getModel().setStyle(edge, Constants.STYLE_ARC_FLOW_UNCONNECTED);
+                    styles.put(edge, Constants.STYLE_ARC_FLOW_UNCONNECTED);
                 }
-                
+
                 // Caso limite di "Transition Initial"
                 if(vertex instanceof TransitionVertex &&
-                        graph.getIncomingEdges(vertex).length == 0)
+                        adjacency.getInDegree(adjacency.indexOf(vertex)) == 0)
                 {
                     for(Object edge : graph.getOutgoingEdges(vertex))
                     {
-                        graph.getModel().setStyle(edge, Constants.STYLE_ARC_FLOW_UNCONNECTED);
+                        styles.put(edge, Constants.STYLE_ARC_FLOW_UNCONNECTED);
                     }
                 }
             }
         }
     }
 
-    private void updateVerticesStyle()
+    private void updateVerticesStyle(Map<Object, String> styles, WorkflowAnalysis analysis)
     {
         String newStyle;
+        boolean workflow = analysis.isWorkFlow();
+        boolean singleInitial = analysis.isSingleInitialPlace();
+        boolean singleFinal = analysis.isSingleFinalPlace();
 
         for (Object objVertex : graph.getChildVertices())
         {
             if(objVertex instanceof PlaceVertex)
             {
-                PlaceVertex place = (PlaceVertex) objVertex;
-
-                if(graph.getInitialPlaces().contains(place))
+                if(analysis.isInitialPlace(objVertex))
                 {
-                    newStyle = (graph.getInitialPlaces().size() > 1)
-                            ? Constants.STYLE_PLACE_SPECIAL_INVALID
-                            : Constants.STYLE_PLACE_SPECIAL_VALID;
+                    newStyle = singleInitial
+                            ? Constants.STYLE_PLACE_SPECIAL_VALID
+                            : Constants.STYLE_PLACE_SPECIAL_INVALID;
                 }
-                else if(graph.getFinalPlaces().contains(place))
+                else if(analysis.isFinalPlace(objVertex))
                 {
-                    newStyle = (graph.getFinalPlaces().size() > 1)
-                            ? Constants.STYLE_PLACE_SPECIAL_INVALID
-                            : Constants.STYLE_PLACE_SPECIAL_VALID;
+                    newStyle = singleFinal
+                            ? Constants.STYLE_PLACE_SPECIAL_VALID
+                            : Constants.STYLE_PLACE_SPECIAL_INVALID;
                 }
-                else if(graph.isWorkFlow())
+                else if(workflow)
                 {
                     newStyle = Constants.STYLE_PLACE_VALID;
                 }
@@ -94,12 +130,12 @@ public class AutoUpdateStyleListener implements mxIEventListener
                 {
                     newStyle = Constants.STYLE_PLACE;
                 }
-                
-                graph.getModel().setStyle(place, newStyle);
+
+                styles.put(objVertex, newStyle);
             }
             else if(objVertex instanceof TransitionVertex)
             {
-                if(graph.isWorkFlow())
+                if(workflow)
                 {
                     newStyle = Constants.STYLE_TRANSITION_VALID;
                 }
@@ -107,16 +143,16 @@ public class AutoUpdateStyleListener implements mxIEventListener
                 {
                     newStyle = Constants.STYLE_TRANSITION;
                 }
-                
-                graph.getModel().setStyle(objVertex, newStyle);
+
+                styles.put(objVertex, newStyle);
             }
             else if(objVertex instanceof InterfaceVertex)
             {
                 for(Object edgeObj : graph.getEdges(objVertex))
                 {
-                    graph.getModel().setStyle(edgeObj, Constants.STYLE_ARC_WITH_INTERFACE);
+                    styles.put(edgeObj, Constants.STYLE_ARC_WITH_INTERFACE);
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
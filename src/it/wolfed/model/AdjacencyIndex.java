@@ -0,0 +1,231 @@
+package it.wolfed.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Int-indexed adjacency snapshot of a {@link PetriNetGraph}.
+ *
+ * Vertices are numbered 0..n-1 and the successors/predecessors of each vertex
+ * are stored in compressed rows (CSR), so a full traversal of the graph
+ * costs O(V+E) without allocating per-vertex arrays.
+ *
+ * The index is immutable: it must be rebuilt after any structural change.
+ */
+public class AdjacencyIndex
+{
+    /**
+     * Vertices by index.
+     */
+    private final Object[] vertices;
+
+    /**
+     * Index by vertex.
+     */
+    private final Map<Object, Integer> indexes;
+
+    /**
+     * Row offsets for successors (size n + 1).
+     */
+    private final int[] successorsStart;
+
+    /**
+     * Successors, grouped by source vertex.
+     */
+    private final int[] successors;
+
+    /**
+     * Row offsets for predecessors (size n + 1).
+     */
+    private final int[] predecessorsStart;
+
+    /**
+     * Predecessors, grouped by target vertex.
+     */
+    private final int[] predecessors;
+
+    /**
+     * {@link AdjacencyIndex} Constructor.
+     *
+     * @param graph
+     */
+    public AdjacencyIndex(PetriNetGraph graph)
+    {
+        this(new GraphSnapshot(graph));
+    }
+
+    /**
+     * {@link AdjacencyIndex} Constructor, from a snapshot (on any thread).
+     *
+     * @param snapshot
+     */
+    public AdjacencyIndex(GraphSnapshot snapshot)
+    {
+        int edgeCount = snapshot.getEdgeCount();
+        vertices = new Object[snapshot.getVertexCount()];
+        indexes = new HashMap<>(vertices.length * 2);
+
+        for (int i = 0; i < vertices.length; i++)
+        {
+            vertices[i] = snapshot.getVertex(i);
+            indexes.put(vertices[i], i);
+        }
+
+        // Resolve terminals once
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        successorsStart = new int[vertices.length + 1];
+        predecessorsStart = new int[vertices.length + 1];
+
+        for (int e = 0; e < edgeCount; e++)
+        {
+            sources[e] = indexOf(snapshot.getSource(e));
+            targets[e] = indexOf(snapshot.getTarget(e));
+
+            // Dangling edges are ignored
+            if (sources[e] >= 0 && targets[e] >= 0)
+            {
+                successorsStart[sources[e] + 1]++;
+                predecessorsStart[targets[e] + 1]++;
+            }
+        }
+
+        for (int i = 0; i < vertices.length; i++)
+        {
+            successorsStart[i + 1] += successorsStart[i];
+            predecessorsStart[i + 1] += predecessorsStart[i];
+        }
+
+        successors = new int[successorsStart[vertices.length]];
+        predecessors = new int[predecessorsStart[vertices.length]];
+        int[] successorsFill = new int[vertices.length];
+        int[] predecessorsFill = new int[vertices.length];
+
+        for (int e = 0; e < edgeCount; e++)
+        {
+            if (sources[e] >= 0 && targets[e] >= 0)
+            {
+                successors[successorsStart[sources[e]] + successorsFill[sources[e]]++] = targets[e];
+                predecessors[predecessorsStart[targets[e]] + predecessorsFill[targets[e]]++] = sources[e];
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed vertices.
+     *
+     * @return int
+     */
+    public int size()
+    {
+        return vertices.length;
+    }
+
+    /**
+     * Returns the index of a vertex, -1 if not indexed.
+     *
+     * @param vertex
+     * @return int
+     */
+    public int indexOf(Object vertex)
+    {
+        Integer index = indexes.get(vertex);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Returns the vertex at index.
+     *
+     * @param index
+     * @return Object
+     */
+    public Object getVertex(int index)
+    {
+        return vertices[index];
+    }
+
+    /**
+     * Returns the number of arcs entering the vertex at index.
+     *
+     * @param index
+     * @return int
+     */
+    public int getInDegree(int index)
+    {
+        return predecessorsStart[index + 1] - predecessorsStart[index];
+    }
+
+    /**
+     * Returns the number of arcs leaving the vertex at index.
+     *
+     * @param index
+     * @return int
+     */
+    public int getOutDegree(int index)
+    {
+        return successorsStart[index + 1] - successorsStart[index];
+    }
+
+    /**
+     * Marks all the vertices reachable from source (source included).
+     *
+     * @param source    index of the source, -1 marks nothing
+     * @return boolean[]
+     */
+    public boolean[] reachableFrom(int source)
+    {
+        return traverse(source, successorsStart, successors);
+    }
+
+    /**
+     * Marks all the vertices with a path to target (target included).
+     *
+     * @param target    index of the target, -1 marks nothing
+     * @return boolean[]
+     */
+    public boolean[] reachingTo(int target)
+    {
+        return traverse(target, predecessorsStart, predecessors);
+    }
+
+    /**
+     * Breadth-first visit over a CSR row set.
+     *
+     * @param start
+     * @param rowStart
+     * @param rows
+     * @return boolean[]
+     */
+    private boolean[] traverse(int start, int[] rowStart, int[] rows)
+    {
+        boolean[] visited = new boolean[vertices.length];
+
+        if (start < 0)
+        {
+            return visited;
+        }
+
+        int[] queue = new int[vertices.length];
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        visited[start] = true;
+
+        while (head < tail)
+        {
+            int current = queue[head++];
+
+            for (int k = rowStart[current]; k < rowStart[current + 1]; k++)
+            {
+                int next = rows[k];
+
+                if ( ! visited[next])
+                {
+                    visited[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        return visited;
+    }
+}
@@ -0,0 +1,15 @@
+package it.wolfed.model;
+
+/**
+ * Verified analysis facts a {@link PetriNetGraph} can carry.
+ *
+ * @see PetriNetGraph#getFact(it.wolfed.model.AnalysisFact)
+ */
+public enum AnalysisFact
+{
+    /**
+     * Workflow soundness, as checked by
+     * {@link it.wolfed.analysis.SoundnessChecker}.
+     */
+    SOUND
+}
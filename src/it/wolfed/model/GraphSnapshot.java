@@ -0,0 +1,129 @@
+package it.wolfed.model;
+
+import com.mxgraph.model.mxIGraphModel;
+
+/**
+ * Flat, immutable copy of the cells of a {@link PetriNetGraph}.
+ *
+ * Taking it is a plain O(V+E) copy (vertices, arc ends and place tokens)
+ * without any hashing; the indexes built on it ({@link AdjacencyIndex},
+ * the compiled net of the analyses) never touch the mxGraph model again
+ * and can therefore be built on any thread.
+ */
+public class GraphSnapshot
+{
+    /**
+     * Vertices, in model order.
+     */
+    private final Object[] vertices;
+
+    /**
+     * Source of each edge, null if dangling.
+     */
+    private final Object[] sources;
+
+    /**
+     * Target of each edge, null if dangling.
+     */
+    private final Object[] targets;
+
+    /**
+     * Tokens of each vertex (0 for anything but a place).
+     */
+    private final int[] tokens;
+
+    /**
+     * {@link GraphSnapshot} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public GraphSnapshot(PetriNetGraph graph)
+    {
+        mxIGraphModel model = graph.getModel();
+        Object[] edges = graph.getChildEdges();
+        vertices = graph.getChildVertices();
+        sources = new Object[edges.length];
+        targets = new Object[edges.length];
+        tokens = new int[vertices.length];
+
+        for (int e = 0; e < edges.length; e++)
+        {
+            sources[e] = model.getTerminal(edges[e], true);
+            targets[e] = model.getTerminal(edges[e], false);
+        }
+
+        for (int i = 0; i < vertices.length; i++)
+        {
+            if (vertices[i] instanceof PlaceVertex)
+            {
+                tokens[i] = ((PlaceVertex) vertices[i]).getTokens();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of vertices.
+     *
+     * @return int
+     */
+    public int getVertexCount()
+    {
+        return vertices.length;
+    }
+
+    /**
+     * Returns the vertex at index.
+     *
+     * @param index
+     * @return Object
+     */
+    public Object getVertex(int index)
+    {
+        return vertices[index];
+    }
+
+    /**
+     * Returns the tokens of the vertex at index (0 if not a place).
+     *
+     * @param index
+     * @return int
+     */
+    public int getTokens(int index)
+    {
+        return tokens[index];
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return int
+     */
+    public int getEdgeCount()
+    {
+        return sources.length;
+    }
+
+    /**
+     * Returns the source of the edge at index, null if dangling.
+     *
+     * @param index
+     * @return Object
+     */
+    public Object getSource(int index)
+    {
+        return sources[index];
+    }
+
+    /**
+     * Returns the target of the edge at index, null if dangling.
+     *
+     * @param index
+     * @return Object
+     */
+    public Object getTarget(int index)
+    {
+        return targets[index];
+    }
+}
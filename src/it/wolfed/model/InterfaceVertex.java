@@ -2,10 +2,9 @@
 package it.wolfed.model;
 
 import it.wolfed.util.Constants;
-import it.wolfed.util.IterableNodeList;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Interface.
@@ -31,35 +30,32 @@ public class InterfaceVertex extends Vertex
     }
     
     /**
-     * Generate a new {@link InterfaceVertex} from a pnml valid dom node.
-     * From toolSpecific
-     * 
+     * Generate a new {@link InterfaceVertex} from a pnml stream, positioned
+     * on the interface start element. From toolSpecific
      * 
      * <interface id="p2" /> 
-
+     * 
      * @param parent
-     * @param dom
-     * @return  InterfaceVertex
-     */  
-    public static InterfaceVertex factory(Object parent, Node dom)
+     * @param reader
+     * @return InterfaceVertex
+     */
+    public static InterfaceVertex factory(Object parent, XMLStreamReader reader)
     {
-        String id = dom.getAttributes().getNamedItem(Constants.PNML_ID).getNodeValue();
+        String id = reader.getAttributeValue(null, Constants.PNML_ID);
         return new InterfaceVertex(parent, id, id);
-    };
+    }
 
     /**
      * Export PNML interface
      * 
-     * @param doc
-     * @return 
+     * @param writer
+     * @throws XMLStreamException 
      */
-    public Element exportPNML(Document doc) 
+    public void exportPNML(XMLStreamWriter writer) throws XMLStreamException 
     {
-        /**<interface id="i1"> */
-        Element interf = doc.createElement(Constants.PNML_INTERFACE);
-	interf.setAttribute(Constants.PNML_ID, getId());
-        
-        return interf;
+        /**<interface id="i1"/> */
+        writer.writeEmptyElement(Constants.PNML_INTERFACE);
+        writer.writeAttribute(Constants.PNML_ID, getId());
     }
     
     /**
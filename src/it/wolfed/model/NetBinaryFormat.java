@@ -0,0 +1,589 @@
+package it.wolfed.model;
+
+import com.mxgraph.model.mxCell;
+import com.mxgraph.model.mxGraphModel;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format of a {@link PetriNetGraph}, for fast load and
+ * save: it holds all a pnml file does (ids, names, positions, tokens,
+ * times, arcs and interfaces), and the id counters of the graph.
+ *
+ * Version 1 layout (ints are unsigned LEB128 varints, doubles are 8 bytes
+ * big endian):
+ *
+ *  magic "WLFB", version
+ *  strings:     count, then (utf-8 length, bytes) for each
+ *  net:         id, type, place/transition/interface/arc counters
+ *  cells:       count, then a kind byte for each, in the graph order
+ *  vertices:    ids, values, xs, ys
+ *  places:      tokens
+ *  transitions: times, time units
+ *  arcs:        ids, sources, targets (vertex ordinals)
+ *
+ * Strings are interned in the table and referenced by index + 1 (0 for
+ * null); the columns follow the cells order, one entry for each cell of
+ * the kind.
+ */
+public class NetBinaryFormat
+{
+    /**
+     * "WLFB"
+     */
+    private static final int MAGIC = 0x574C4642;
+
+    /**
+     * Current version, readers reject any other.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte KIND_PLACE = 0;
+
+    private static final byte KIND_TRANSITION = 1;
+
+    private static final byte KIND_INTERFACE = 2;
+
+    private static final byte KIND_ARC = 3;
+
+    /**
+     * Saves a graph to a file.
+     *
+     * @param graph
+     * @param file
+     * @throws IOException
+     */
+    public static void save(PetriNetGraph graph, File file) throws IOException
+    {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file.toPath())))
+        {
+            write(graph, output);
+        }
+    }
+
+    /**
+     * Loads a graph from a file.
+     *
+     * The file is read whole into a heap buffer and closed before decoding:
+     * a memory mapping would keep it locked (on Windows) until collected,
+     * so saving over a file just opened would fail.
+     *
+     * @param file
+     * @return PetriNetGraph
+     * @throws IOException
+     */
+    public static PetriNetGraph load(File file) throws IOException
+    {
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+
+            if(size > Integer.MAX_VALUE)
+            {
+                throw new IOException("Binary net too large: " + size + " bytes");
+            }
+
+            buffer = ByteBuffer.allocate((int) size);
+
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+            {
+                // Until full or end of file
+            }
+        }
+
+        buffer.flip();
+        return read(buffer);
+    }
+
+    /**
+     * Writes a graph to a stream.
+     *
+     * @param graph
+     * @param output
+     * @throws IOException
+     */
+    public static void write(PetriNetGraph graph, OutputStream output) throws IOException
+    {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+
+        List<Vertex> vertices = new ArrayList<>();
+        List<mxCell> arcs = new ArrayList<>();
+        Map<Object, Integer> ordinals = new IdentityHashMap<>();
+        Object[] cells = graph.getChildCells();
+        byte[] kinds = new byte[cells.length];
+        int count = 0;
+
+        for (Object cellObj : cells)
+        {
+            if(cellObj instanceof PlaceVertex)
+            {
+                kinds[count++] = KIND_PLACE;
+            }
+            else if(cellObj instanceof TransitionVertex)
+            {
+                kinds[count++] = KIND_TRANSITION;
+            }
+            else if(cellObj instanceof InterfaceVertex)
+            {
+                kinds[count++] = KIND_INTERFACE;
+            }
+            else if(cellObj instanceof mxCell && ((mxCell) cellObj).isEdge())
+            {
+                kinds[count++] = KIND_ARC;
+                arcs.add((mxCell) cellObj);
+                continue;
+            }
+            else
+            {
+                continue;
+            }
+
+            ordinals.put(cellObj, vertices.size());
+            vertices.add((Vertex) cellObj);
+        }
+
+        // Interns the strings, in the order they are referenced
+        int netId = intern(graph.getId(), strings, table);
+        int netType = intern(graph.getType(), strings, table);
+        int[] vertexIds = new int[vertices.size()];
+        int[] vertexValues = new int[vertices.size()];
+        int[] arcIds = new int[arcs.size()];
+
+        for (int i = 0; i < vertices.size(); i++)
+        {
+            Vertex vertex = vertices.get(i);
+            vertexIds[i] = intern(vertex.getId(), strings, table);
+            vertexValues[i] = intern(vertex.getValue() == null ? null : vertex.getValue().toString(), strings, table);
+        }
+
+        for (int i = 0; i < arcs.size(); i++)
+        {
+            arcIds[i] = intern(arcs.get(i).getId(), strings, table);
+        }
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        writeVarInt(data, VERSION);
+
+        // Strings
+        writeVarInt(data, table.size());
+
+        for (String string : table)
+        {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(data, bytes.length);
+            data.write(bytes);
+        }
+
+        // Net
+        writeVarInt(data, netId);
+        writeVarInt(data, netType);
+
+        for (int index : graph.getIndexes())
+        {
+            writeVarInt(data, index);
+        }
+
+        // Cells
+        writeVarInt(data, count);
+        data.write(kinds, 0, count);
+
+        // Vertices
+        for (int id : vertexIds)
+        {
+            writeVarInt(data, id);
+        }
+
+        for (int value : vertexValues)
+        {
+            writeVarInt(data, value);
+        }
+
+        for (Vertex vertex : vertices)
+        {
+            data.writeDouble(vertex.getGeometry().getX());
+        }
+
+        for (Vertex vertex : vertices)
+        {
+            data.writeDouble(vertex.getGeometry().getY());
+        }
+
+        // Places
+        for (Vertex vertex : vertices)
+        {
+            if(vertex instanceof PlaceVertex)
+            {
+                writeVarInt(data, ((PlaceVertex) vertex).getTokens());
+            }
+        }
+
+        // Transitions
+        for (Vertex vertex : vertices)
+        {
+            if(vertex instanceof TransitionVertex)
+            {
+                data.writeDouble(((TransitionVertex) vertex).getTime());
+            }
+        }
+
+        for (Vertex vertex : vertices)
+        {
+            if(vertex instanceof TransitionVertex)
+            {
+                writeVarInt(data, ((TransitionVertex) vertex).getTimeUnit());
+            }
+        }
+
+        // Arcs
+        for (int id : arcIds)
+        {
+            writeVarInt(data, id);
+        }
+
+        for (mxCell arc : arcs)
+        {
+            writeVarInt(data, ordinal(arc, arc.getSource(), ordinals));
+        }
+
+        for (mxCell arc : arcs)
+        {
+            writeVarInt(data, ordinal(arc, arc.getTarget(), ordinals));
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Reads a graph from a buffer, from its position.
+     *
+     * @param buffer
+     * @return PetriNetGraph
+     * @throws IOException  if not a valid file of the current version
+     */
+    public static PetriNetGraph read(ByteBuffer buffer) throws IOException
+    {
+        try
+        {
+            if(buffer.getInt() != MAGIC)
+            {
+                throw new IOException("Not a " + NetBinaryFormat.class.getSimpleName() + " file");
+            }
+
+            int version = readVarInt(buffer);
+
+            if(version != VERSION)
+            {
+                throw new IOException("Unsupported binary net version " + version);
+            }
+
+            // Strings
+            String[] table = new String[readCount(buffer) + 1];
+            byte[] bytes = new byte[64];
+
+            for (int i = 1; i < table.length; i++)
+            {
+                int length = readCount(buffer);
+
+                if(length > bytes.length)
+                {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+
+                buffer.get(bytes, 0, length);
+                table[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            // Net
+            String id = table[readVarInt(buffer)];
+            String type = table[readVarInt(buffer)];
+            int[] indexes = readVarInts(buffer, 4);
+
+            // Cells
+            byte[] kinds = new byte[readCount(buffer)];
+            buffer.get(kinds);
+            int vertexCount = 0;
+
+            for (byte kind : kinds)
+            {
+                if(kind != KIND_ARC)
+                {
+                    vertexCount++;
+                }
+            }
+
+            int arcCount = kinds.length - vertexCount;
+
+            // Vertices
+            int[] ids = readVarInts(buffer, vertexCount);
+            int[] values = readVarInts(buffer, vertexCount);
+            double[] xs = readDoubles(buffer, vertexCount);
+            double[] ys = readDoubles(buffer, vertexCount);
+
+            // The cells tree is built off the model, then the graph is
+            // created on it: no change event for each cell
+            mxCell root = new mxCell();
+            mxCell layer = new mxCell();
+            root.insert(layer);
+            Vertex[] vertices = new Vertex[vertexCount];
+            int placeCount = 0;
+            int transitionCount = 0;
+
+            for (int i = 0, v = 0; i < kinds.length; i++)
+            {
+                switch (kinds[i])
+                {
+                    case KIND_PLACE:
+                    {
+                        vertices[v] = new PlaceVertex(layer, table[ids[v]], table[values[v]], xs[v], ys[v]);
+                        placeCount++;
+                        break;
+                    }
+
+                    case KIND_TRANSITION:
+                    {
+                        vertices[v] = new TransitionVertex(layer, table[ids[v]], table[values[v]], xs[v], ys[v]);
+                        transitionCount++;
+                        break;
+                    }
+
+                    case KIND_INTERFACE:
+                    {
+                        vertices[v] = new InterfaceVertex(layer, table[ids[v]], table[values[v]]);
+                        vertices[v].getGeometry().setX(xs[v]);
+                        vertices[v].getGeometry().setY(ys[v]);
+                        break;
+                    }
+
+                    case KIND_ARC:
+                    {
+                        continue;
+                    }
+
+                    default:
+                    {
+                        throw new IOException("Unknown cell kind " + kinds[i]);
+                    }
+                }
+
+                v++;
+            }
+
+            // Places
+            int[] tokens = readVarInts(buffer, placeCount);
+
+            // Transitions
+            double[] times = readDoubles(buffer, transitionCount);
+            int[] timeUnits = readVarInts(buffer, transitionCount);
+
+            for (int v = 0, p = 0, t = 0; v < vertexCount; v++)
+            {
+                if(vertices[v] instanceof PlaceVertex)
+                {
+                    ((PlaceVertex) vertices[v]).setTokens(tokens[p++]);
+                }
+                else if(vertices[v] instanceof TransitionVertex)
+                {
+                    TransitionVertex transition = (TransitionVertex) vertices[v];
+                    transition.setTime(times[t]);
+                    transition.setTimeUnit(timeUnits[t++]);
+                }
+            }
+
+            // Arcs
+            int[] arcIds = readVarInts(buffer, arcCount);
+            int[] sources = readVarInts(buffer, arcCount);
+            int[] targets = readVarInts(buffer, arcCount);
+
+            // Cells, in the saved order
+            for (int i = 0, v = 0, a = 0; i < kinds.length; i++)
+            {
+                if(kinds[i] != KIND_ARC)
+                {
+                    layer.insert(vertices[v++]);
+                    continue;
+                }
+
+                ArcEdge arc = new ArcEdge(layer, table[arcIds[a]], null, vertices[sources[a]], vertices[targets[a]]);
+                layer.insert(arc);
+                vertices[sources[a]].insertEdge(arc, true);
+                vertices[targets[a]].insertEdge(arc, false);
+                a++;
+            }
+
+            PetriNetGraph graph = new PetriNetGraph(id, new mxGraphModel(root));
+            graph.setType(type);
+            graph.setIndexes(indexes[0], indexes[1], indexes[2], indexes[3]);
+
+            return graph;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex)
+        {
+            throw new IOException("Truncated or corrupted binary net", ex);
+        }
+    }
+
+    /**
+     * Returns the reference of a string, adding it to the table if new.
+     *
+     * @param string
+     * @param strings
+     * @param table
+     * @return int  index + 1, 0 for null
+     */
+    private static int intern(String string, Map<String, Integer> strings, List<String> table)
+    {
+        if(string == null)
+        {
+            return 0;
+        }
+
+        Integer reference = strings.get(string);
+
+        if(reference == null)
+        {
+            table.add(string);
+            reference = table.size();
+            strings.put(string, reference);
+        }
+
+        return reference;
+    }
+
+    /**
+     * Returns the ordinal of the terminal of an arc.
+     *
+     * @param arc
+     * @param terminal
+     * @param ordinals
+     * @return int
+     * @throws IOException  if the terminal is not a vertex of the graph
+     */
+    private static int ordinal(mxCell arc, Object terminal, Map<Object, Integer> ordinals) throws IOException
+    {
+        Integer ordinal = ordinals.get(terminal);
+
+        if(ordinal == null)
+        {
+            throw new IOException("Arc " + arc.getId() + " is not connected to a vertex of the graph");
+        }
+
+        return ordinal;
+    }
+
+    /**
+     * Writes an int as an unsigned varint (7 bits a byte, low first).
+     *
+     * @param data
+     * @param value
+     * @throws IOException
+     */
+    private static void writeVarInt(DataOutputStream data, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            data.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        data.write(value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     *
+     * @param buffer
+     * @return int
+     * @throws IOException
+     */
+    private static int readVarInt(ByteBuffer buffer) throws IOException
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if(b >= 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a count of entries of at least a byte each, checked against
+     * the bytes left.
+     *
+     * @param buffer
+     * @return int
+     * @throws IOException
+     */
+    private static int readCount(ByteBuffer buffer) throws IOException
+    {
+        int count = readVarInt(buffer);
+
+        if(count < 0 || count > buffer.remaining())
+        {
+            throw new IOException("Truncated or corrupted binary net");
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads a column of varints.
+     *
+     * @param buffer
+     * @param count
+     * @return int[]
+     * @throws IOException
+     */
+    private static int[] readVarInts(ByteBuffer buffer, int count) throws IOException
+    {
+        int[] values = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            values[i] = readVarInt(buffer);
+        }
+
+        return values;
+    }
+
+    /**
+     * Reads a column of doubles.
+     *
+     * @param buffer
+     * @param count
+     * @return double[]
+     */
+    private static double[] readDoubles(ByteBuffer buffer, int count)
+    {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + 8 * count);
+
+        return values;
+    }
+}
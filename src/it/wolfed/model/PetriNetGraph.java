@@ -1,33 +1,33 @@
 
 package it.wolfed.model;
 
+import it.wolfed.analysis.WorkflowAnalysis;
 import it.wolfed.manipulation.GraphManipulation;
-import com.mxgraph.analysis.mxDistanceCostFunction;
-import com.mxgraph.analysis.mxGraphAnalysis;
 import com.mxgraph.model.mxCell;
+import com.mxgraph.model.mxGraphModel;
+import com.mxgraph.model.mxGraphModel.mxChildChange;
+import com.mxgraph.model.mxGraphModel.mxRootChange;
+import com.mxgraph.model.mxGraphModel.mxTerminalChange;
+import com.mxgraph.model.mxIGraphModel;
 import com.mxgraph.util.mxEvent;
 import com.mxgraph.util.mxEventObject;
 import com.mxgraph.util.mxEventSource;
 import com.mxgraph.view.mxGraph;
 import it.wolfed.swing.GraphComponent;
 import it.wolfed.util.Constants;
-import it.wolfed.util.IterableNodeList;
+import it.wolfed.util.StaxUtilities;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * PetriNet implementation.
@@ -97,28 +97,46 @@ public class PetriNetGraph extends mxGraph
     private int indexInterfaces;
     
     /**
-     * Holds all the initialPlaces of the graph.
+     * Holds all the NOT "workflow connected" vertices of the graph.
      * 
-     * Refreshed on every change.
-     * @see PetriNetGraph#getInitialPlaces()
+     * Refreshed on every structural change.
+     * @see PetriNetGraph#getNotConnectedVertices(it.wolfed.model.Vertex)
+     */
+    private Set<Vertex> notConnectedVertices;
+    
+    /**
+     * The target {@link PetriNetGraph#notConnectedVertices} was computed for.
      */
-    private List<PlaceVertex> initialPlaces;
+    private Vertex notConnectedTarget;
     
     /**
-     * Holds all the initialPlaces of the graph.
+     * Adjacency snapshot used by the connectivity analysis.
      * 
-     * Refreshed on every change.
+     * Refreshed on every structural change.
+     * @see PetriNetGraph#getAdjacencyIndex()
+     */
+    private AdjacencyIndex adjacencyIndex;
+    
+    /**
+     * Hashed id and value lookup of the vertices, with their preset and
+     * postset counters and the live initial and final places.
+     * 
+     * Kept in sync on every executed, undone or redone change.
+     * @see PetriNetGraph#getVertexById(java.lang.String)
+     * @see PetriNetGraph#getVertexByValue(java.lang.Object)
+     * @see PetriNetGraph#getInitialPlaces()
      * @see PetriNetGraph#getFinalPlaces()
      */
-    private List<PlaceVertex> finalPlaces;
+    private final VertexIndex vertexIndex = new VertexIndex(this);
     
     /**
-     * Holds all the NOT "workflow connected" vertices of the graph.
+     * Verified analysis facts, set by the analyses or inherited through
+     * the operations.
      * 
-     * Refreshed on every change.
-     * @see PetriNetGraph#getNotConnectedVertices(it.wolfed.model.Vertex)
+     * Dropped on every structural change.
+     * @see PetriNetGraph#getFact(it.wolfed.model.AnalysisFact)
      */
-    private Set<Vertex> notConnectedVertices;
+    private final Map<AnalysisFact, Boolean> facts = new EnumMap<>(AnalysisFact.class);
 
     /**
      * {@link PetriNetGraph} Constructor.
@@ -127,6 +145,20 @@ public class PetriNetGraph extends mxGraph
      */
     public PetriNetGraph(String id)
     {
+        this(id, new mxGraphModel());
+    }
+    
+    /**
+     * {@link PetriNetGraph} Constructor, on a model already holding its
+     * cells: the vertex index is built from them at once, with no change
+     * event for each cell.
+     * 
+     * @param id
+     * @param model 
+     */
+    PetriNetGraph(String id, mxIGraphModel model)
+    {
+        super(model);
         this.id = id;
         
         setCellsResizable(false);
@@ -135,18 +167,43 @@ public class PetriNetGraph extends mxGraph
         setDropEnabled(false);
         setMultigraph(false);
         
-        // Dirty Pattern: Force refreshing of analysis on change event
-        // @todo filter this only on add and remove events
+        // Decode the changes while they are executed:
+        // only structural edits touch the analysis caches
+        getModel().addListener(mxEvent.EXECUTE, new mxEventSource.mxIEventListener()
+        {
+            @Override
+            public void invoke(Object sender, mxEventObject evt)
+            {
+                Object change = evt.getProperty("change");
+                vertexIndex.apply(change);
+                applyStructuralChange(change);
+            }
+        });
+        
+        // ... and when they are dispatched again by undo\redo
         getModel().addListener(mxEvent.CHANGE, new mxEventSource.mxIEventListener()
         {
             @Override
             public void invoke(Object sender, mxEventObject evt)
             {
-                initialPlaces = null;
-                finalPlaces = null;
-                notConnectedVertices = null;
+                List<?> changes = (List<?>) evt.getProperty("changes");
+                
+                if(changes == null)
+                {
+                    vertexIndex.rebuild();
+                    invalidateConnectivity();
+                    return;
+                }
+                
+                for(Object change : changes)
+                {
+                    vertexIndex.apply(change);
+                    applyStructuralChange(change);
+                }
             }
         });
+        
+        vertexIndex.rebuild();
     }
     
     /**
@@ -159,19 +216,25 @@ public class PetriNetGraph extends mxGraph
     }
     
     /**
-     * Imports a pnmlXML node in a new {@link PetriNetGraph}.
+     * Imports a pnml net from a stream, in a new {@link PetriNetGraph}.
      * 
-     * @todo refactor this in "divide et impera"
-     * @param dom
-     * @param defaultId
+     * The reader must be on the net start element, and is left on its end
+     * element: nothing but the graph is kept, whatever the size of the
+     * document. The arcs and the interfaces are added once all the
+     * vertices are known, in document order (see
+     * {@link PetriNetGraph#addBuffered(java.util.List, java.util.List)}).
+     * 
+     * @param reader
+     * @param defaultId     used when the net has no id (WoPeD "noID")
      * @return PetriNetGraph
-     * @see <a href="http://www.pnmlXML.org/">http://www.pnmlXML.org/</a>
+     * @throws XMLStreamException 
+     * @see <a href="http://www.pnml.org/">http://www.pnml.org/</a>
      */
-    public static PetriNetGraph factory(Node dom, String defaultId)
+    public static PetriNetGraph factory(XMLStreamReader reader, String defaultId) throws XMLStreamException
     {
-        // Xml Mapping 1:1
-        String id = dom.getAttributes().getNamedItem(Constants.PNML_ID).getTextContent().trim();
-        String type = dom.getAttributes().getNamedItem(Constants.PNML_TYPE).getTextContent().trim();
+        String id = reader.getAttributeValue(null, Constants.PNML_ID);
+        String type = reader.getAttributeValue(null, Constants.PNML_TYPE);
+        id = id == null ? "" : id.trim();
         
         // Fix Woped "noID" behaviour
         if(id.isEmpty() || id.equals("noID"))
@@ -179,95 +242,81 @@ public class PetriNetGraph extends mxGraph
             id = defaultId;
         }
         
-        // Creates new Graph
         PetriNetGraph graph = new PetriNetGraph(id);
-        graph.setType(type);
-                
-        // Pmnl Import
+        graph.setType(type == null ? null : type.trim());
+        
         graph.getModel().beginUpdate();
         Object parent = graph.getDefaultParent();
-
-        // Holds the arcsNodes founds
-        Set<Node> arcsNodes = new HashSet<>();
-        Set<Node> interfacesNodes = new HashSet<>();
+        
+        // Arcs as (id, source, target) and interfaces, in document order
+        List<String[]> arcs = new ArrayList<>();
+        List<InterfaceVertex> interfaces = new ArrayList<>();
         
         try
         {
-            for (final Node elementNode : new IterableNodeList(dom.getChildNodes())) 
+            while (StaxUtilities.nextChild(reader))
             {
-                if (elementNode.getNodeType() == Node.ELEMENT_NODE) 
+                switch (reader.getLocalName())
                 {
-                    switch (elementNode.getNodeName())
+                    case Constants.PNML_PLACE:
                     {
-                        case Constants.PNML_PLACE:
-                        {
-                            graph.addCell(PlaceVertex.factory(parent, elementNode));
-                            graph.getSetNextPlaceId();
-                            break;
-                        }
-
-                        case Constants.PNML_TRANSITION:
+                        graph.addCell(PlaceVertex.factory(parent, reader));
+                        graph.getSetNextPlaceId();
+                        break;
+                    }
+                    
+                    case Constants.PNML_TRANSITION:
+                    {
+                        graph.addCell(TransitionVertex.factory(parent, reader));
+                        graph.getSetNextTransitionId();
+                        break;
+                    }
+                    
+                    case Constants.PNML_ARC:
+                    {
+                        arcs.add(new String[] {
+                            reader.getAttributeValue(null, Constants.PNML_ID),
+                            reader.getAttributeValue(null, Constants.PNML_SOURCE),
+                            reader.getAttributeValue(null, Constants.PNML_TARGET)
+                        });
+                        StaxUtilities.skip(reader);
+                        break;
+                    }
+                    
+                    case Constants.PNML_TOOL_SPECIFIC:
+                    {
+                        if( ! Constants.EDITOR_NAME.equals(reader.getAttributeValue(null, Constants.PNML_TOOL)))
                         {
-                            graph.addCell(TransitionVertex.factory(parent, elementNode));
-                            graph.getSetNextTransitionId();
+                            StaxUtilities.skip(reader);
                             break;
                         }
-
-                        case Constants.PNML_ARC:
+                        
+                        while (StaxUtilities.nextChild(reader))
                         {
-                            arcsNodes.add(elementNode);             
-                            break;
-                        }
+                            if( ! reader.getLocalName().equals(Constants.PNML_INTERFACES))
+                            {
+                                StaxUtilities.skip(reader);
+                                continue;
+                            }
                             
-                        case Constants.PNML_TOOL_SPECIFIC:
-                        {
-                            if(elementNode.getAttributes().getNamedItem(Constants.PNML_TOOL)
-                                    .getTextContent().trim().equals(Constants.EDITOR_NAME))
+                            while (StaxUtilities.nextChild(reader))
                             {
-                                for(final Node toolNode : new IterableNodeList(elementNode.getChildNodes()))
-                                {
-                                    switch (toolNode.getNodeName())
-                                    {
-                                        case Constants.PNML_INTERFACES:
-                                        {
-                                            for(final Node interfNode : new IterableNodeList(toolNode.getChildNodes()))
-                                            {
-                                                interfacesNodes.add(interfNode);
-                                            }
-                                        }
-                                    }
-                                }
+                                interfaces.add(InterfaceVertex.factory(parent, reader));
+                                StaxUtilities.skip(reader);
                             }
                         }
+                        
+                        break;
+                    }
+                    
+                    default:
+                    {
+                        StaxUtilities.skip(reader);
                     }
                 }
             }
             
-            /**
-             * Arcs should always be processed AFTER all the vertex.
-             */
-            for(Node arcNode : arcsNodes)
-            {
-                graph.addCell(ArcEdge.factory(parent, arcNode, graph));
-                graph.getSetNextArcId();
-            }
-            
-            /**
-             * Casting place to interface
-             */
-            for(Node interfNode : interfacesNodes)
-            {
-                // Tranform place into interface
-                InterfaceVertex interf = InterfaceVertex.factory(parent, interfNode);
-                PlaceVertex placeMirror = (PlaceVertex) graph.getVertexByValue(interf.getValue());
-                interf.setGeometry(placeMirror.getGeometry());
-
-                graph.addCell(interf);
-                graph.getSetNextInterfaceId();
-                
-                GraphManipulation.cloneEdges(graph, placeMirror, interf);
-                GraphManipulation.removeVertexAndHisEdges(graph, placeMirror);
-            }
+            graph.addBuffered(arcs, interfaces);
         }
         finally
         {
@@ -276,6 +325,51 @@ public class PetriNetGraph extends mxGraph
         
         return graph;
     }
+    
+    /**
+     * Adds the arcs and the interfaces buffered by an import, in document
+     * order, so that the model (and so any export) is the same on every
+     * run.
+     * 
+     * Arcs should always be processed AFTER all the vertex: their ends are
+     * resolved by id. The interfaces then replace their mirror places.
+     * 
+     * @param arcs          (id, source, target)
+     * @param interfaces 
+     */
+    private void addBuffered(List<String[]> arcs, List<InterfaceVertex> interfaces)
+    {
+        Object parent = getDefaultParent();
+        
+        for (String[] arc : arcs)
+        {
+            addCell(new ArcEdge(parent, arc[0], null, getVertexById(arc[1]), getVertexById(arc[2])));
+            getSetNextArcId();
+        }
+        
+        for (InterfaceVertex interf : interfaces)
+        {
+            castInterface(interf);
+        }
+    }
+    
+    /**
+     * Transforms the place mirrored by an imported interface (same value)
+     * into the interface.
+     * 
+     * @param interf 
+     */
+    private void castInterface(InterfaceVertex interf)
+    {
+        PlaceVertex placeMirror = (PlaceVertex) getVertexByValue(interf.getValue());
+        interf.setGeometry(placeMirror.getGeometry());
+
+        addCell(interf);
+        getSetNextInterfaceId();
+        
+        GraphManipulation.cloneEdges(this, placeMirror, interf);
+        GraphManipulation.removeVertexAndHisEdges(this, placeMirror);
+    }
 
     /**
      * Returns graph id.
@@ -347,6 +441,32 @@ public class PetriNetGraph extends mxGraph
         return "a" + String.valueOf(++indexArcs);
     }
     
+    /**
+     * Returns the places, transitions, interfaces and arcs indexes.
+     * 
+     * @return int[]
+     */
+    int[] getIndexes()
+    {
+        return new int[] {indexPlaces, indexTransitions, indexInterfaces, indexArcs};
+    }
+    
+    /**
+     * Restores the indexes of a saved graph.
+     * 
+     * @param places
+     * @param transitions
+     * @param interfaces
+     * @param arcs 
+     */
+    void setIndexes(int places, int transitions, int interfaces, int arcs)
+    {
+        indexPlaces = places;
+        indexTransitions = transitions;
+        indexInterfaces = interfaces;
+        indexArcs = arcs;
+    }
+    
     /**
      * Returns if the graph has only an initial place.
      * 
@@ -354,7 +474,7 @@ public class PetriNetGraph extends mxGraph
      */
     public boolean isSingleInitialPlace()
     {
-        return (getInitialPlaces().size() == 1);
+        return (vertexIndex.getInitialPlacesCount() == 1);
     }
     
     /**
@@ -364,7 +484,7 @@ public class PetriNetGraph extends mxGraph
      */
     public boolean isSingleFinalPlace()
     {
-        return (getFinalPlaces().size() == 1);
+        return (vertexIndex.getFinalPlacesCount() == 1);
     }
     
     /**
@@ -402,58 +522,106 @@ public class PetriNetGraph extends mxGraph
     /**
      * Returns all the Places and Transition without a path to target Vertex.
      * 
+     * One reverse traversal from target marks every vertex with a path to it,
+     * and (with a single initial place) one forward traversal from the initial
+     * place marks every vertex reachable from it: O(V+E) overall.
+     * 
      * @param target
      * @return HashSet<Vertex>
+     * @see WorkflowAnalysis#getNotConnectedVertices(it.wolfed.model.AdjacencyIndex, it.wolfed.model.Vertex, it.wolfed.model.Vertex)
      */
     public Set<Vertex> getNotConnectedVertices(Vertex target)
     {
-        if(notConnectedVertices == null)
+        if(notConnectedVertices == null || notConnectedTarget != target)
         {
-            notConnectedVertices = new HashSet<>();
-            
-            for (Object cell : getChildVertices())
-            {
-                /**
-                 * Search a path to target.
-                 * 
-                 * @todo Change this with a simple path check (shortestpath now)
-                 */
-                if(cell != target)
-                {
-                    Object[] paths = mxGraphAnalysis
-                        .getInstance()
-                        .getShortestPath(
-                            this,
-                            cell,
-                            target,
-                            new mxDistanceCostFunction(),
-                            getChildVertices().length,
-                            true
-                     );
-
-                    // Path not exists
-                    if(paths.length == 0)
-                    {
-                        // Ignore Interfaces
-                        if(cell instanceof TransitionVertex || cell instanceof PlaceVertex)
-                        {
-                            notConnectedVertices.add((Vertex) cell);
-                        }
-                    }
-                }
-
-                // Case with a Transition "Initial" (only postset arc)
-                if(cell instanceof TransitionVertex 
-                        && getIncomingEdges(cell).length == 0)
-                {
-                    notConnectedVertices.add((Vertex) cell);
-                }
-            }
+            Vertex initialPlace = isSingleInitialPlace() ? getInitialPlaces().get(0) : null;
+            notConnectedVertices = WorkflowAnalysis.getNotConnectedVertices(getAdjacencyIndex(), target, initialPlace);
+            notConnectedTarget = target;
         }
 
         return notConnectedVertices;
     }
     
+    /**
+     * Updates the connectivity caches for an atomic model change.
+     * 
+     * Child, terminal and root changes are structural and drop the
+     * connectivity caches (preset and postset counters are kept by the
+     * {@link VertexIndex}). Value, style, geometry, visibility and collapse
+     * changes leave the structure untouched and cost nothing here.
+     * 
+     * @param change 
+     */
+    private void applyStructuralChange(Object change)
+    {
+        if(isStructuralChange(change))
+        {
+            invalidateConnectivity();
+        }
+    }
+    
+    /**
+     * Returns if an atomic model change can alter the net structure.
+     * 
+     * @param change
+     * @return boolean
+     */
+    public static boolean isStructuralChange(Object change)
+    {
+        return change instanceof mxChildChange
+            || change instanceof mxTerminalChange
+            || change instanceof mxRootChange;
+    }
+    
+    /**
+     * Drops the connectivity caches (and the analysis facts).
+     */
+    private void invalidateConnectivity()
+    {
+        notConnectedVertices = null;
+        adjacencyIndex = null;
+        facts.clear();
+    }
+    
+    /**
+     * Returns a verified analysis fact, null if unknown.
+     * 
+     * @param fact
+     * @return Boolean
+     */
+    public Boolean getFact(AnalysisFact fact)
+    {
+        return facts.get(fact);
+    }
+    
+    /**
+     * Records a verified analysis fact, until the next structural change.
+     * 
+     * @param fact
+     * @param value
+     */
+    public void setFact(AnalysisFact fact, boolean value)
+    {
+        facts.put(fact, value);
+    }
+    
+    /**
+     * Returns the adjacency index of the graph.
+     * 
+     * Built once per change and shared by all the connectivity checks.
+     * 
+     * @return AdjacencyIndex
+     */
+    public AdjacencyIndex getAdjacencyIndex()
+    {
+        if(adjacencyIndex == null)
+        {
+            adjacencyIndex = new AdjacencyIndex(this);
+        }
+        
+        return adjacencyIndex;
+    }
+    
     /**
      * Get a vertex by his id.
      * 
@@ -462,20 +630,7 @@ public class PetriNetGraph extends mxGraph
      */
     public Vertex getVertexById(String id)
     {
-        for (Object objVertex : getChildVertices())
-        {
-            if (objVertex instanceof Vertex)
-            {
-                Vertex vertex = (Vertex) objVertex;
-
-                if (vertex.getId().equals(id))
-                {
-                    return vertex;
-                }
-            }
-        }
-        
-        return null;
+        return vertexIndex.getById(id);
     }
     
     /**
@@ -486,20 +641,7 @@ public class PetriNetGraph extends mxGraph
      */
     public Vertex getVertexByValue(Object value)
     {
-        for (Object objVertex : getChildVertices())
-        {
-            if (objVertex instanceof Vertex)
-            {
-                Vertex vertex = (Vertex) objVertex;
-
-                if (vertex.getValue().equals(value))
-                {
-                    return vertex;
-                }
-            }
-        }
-        
-        return null;
+        return vertexIndex.getByValue(value);
     }
     
     /**
@@ -514,24 +656,7 @@ public class PetriNetGraph extends mxGraph
      */
     public List<PlaceVertex> getInitialPlaces()
     {
-        if(initialPlaces == null)
-        {        
-            initialPlaces = new ArrayList<>();
-        
-            for (Object vertexObj : getChildVertices())
-            {   
-                if(vertexObj instanceof PlaceVertex)
-                {
-                    if(getIncomingEdges(vertexObj).length == 0
-                        && getOutgoingEdges(vertexObj).length > 0)
-                    {
-                        initialPlaces.add((PlaceVertex) vertexObj);
-                    }
-                }
-            }
-        }
-
-        return initialPlaces;
+        return vertexIndex.getInitialPlaces();
     }
     
     /**
@@ -546,24 +671,29 @@ public class PetriNetGraph extends mxGraph
      */
     public List<PlaceVertex> getFinalPlaces()
     {
-        if(finalPlaces == null)
-        {
-            finalPlaces = new ArrayList<>();
-            
-             for (Object vertexObj : getChildVertices())
-            {   
-                if(vertexObj instanceof PlaceVertex)
-                {
-                    if(getOutgoingEdges(vertexObj).length == 0
-                        && getIncomingEdges(vertexObj).length > 0)
-                    {
-                        finalPlaces.add((PlaceVertex) vertexObj);
-                    }
-                }    
-            }
-        }
-        
-        return finalPlaces;
+        return vertexIndex.getFinalPlaces();
+    }
+    
+    /**
+     * Returns the number of preset arcs of a vertex.
+     * 
+     * @param vertex
+     * @return int
+     */
+    public int getPresetCount(Object vertex)
+    {
+        return vertexIndex.getInDegree(vertex);
+    }
+    
+    /**
+     * Returns the number of postset arcs of a vertex.
+     * 
+     * @param vertex
+     * @return int
+     */
+    public int getPostsetCount(Object vertex)
+    {
+        return vertexIndex.getOutDegree(vertex);
     }
     
     /**
@@ -707,8 +837,8 @@ public class PetriNetGraph extends mxGraph
         
         if(cell instanceof Vertex)
         {
-            tip += " | PRESET: " + String.format("%d", getIncomingEdges(cell).length);
-            tip += " | POSTSET: " + String.format("%d", getOutgoingEdges(cell).length);
+            tip += " | PRESET: " + String.format("%d", getPresetCount(cell));
+            tip += " | POSTSET: " + String.format("%d", getPostsetCount(cell));
             
             if(cell instanceof PlaceVertex)
             {
@@ -723,24 +853,42 @@ public class PetriNetGraph extends mxGraph
     /**
      * Export graph to XML String.
      * 
-     * @param exportType
-     * @return 
+     * @return String
+     * @throws XMLStreamException
+     * @throws IOException 
+     * @see PetriNetGraph#exportPNML(java.io.Writer)
      */
-    public String exportPNML() throws ParserConfigurationException, TransformerConfigurationException, TransformerException 
+    public String exportPNML() throws XMLStreamException, IOException
     {
-        /** <?xml version="1.0" encoding="UTF-8"?> */
-        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        Element interfaces = doc.createElement(Constants.PNML_INTERFACES);
+        StringWriter out = new StringWriter();
+        exportPNML(out);
+        
+        return out.toString();
+    }
+    
+    /**
+     * Streams the graph as pnml, with no intermediate document: the
+     * memory used does not grow with the graph.
+     * 
+     * The declaration is UTF-8, the writer must encode it so.
+     * 
+     * @param out
+     * @throws XMLStreamException
+     * @throws IOException 
+     */
+    public void exportPNML(Writer out) throws XMLStreamException, IOException
+    {
+        /** <?xml version="1.0" encoding="UTF-8" standalone="no"?> */
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
 
         /** <pnml> */
-        Element pnml = doc.createElement(Constants.PNML_TAG);
-        doc.appendChild(pnml);
+        writer.writeStartElement(Constants.PNML_TAG);
 
         /**     <net type="http://www.informatik.hu-berlin.de/top/pntd/ptNetb" id="noId"> */
-        Element net = doc.createElement(Constants.PNML_NET);
-        net.setAttribute(Constants.PNML_TYPE, getType());
-        net.setAttribute(Constants.PNML_ID, getId());
-        pnml.appendChild(net);
+        writer.writeStartElement(Constants.PNML_NET);
+        writer.writeAttribute(Constants.PNML_ID, getId());
+        writer.writeAttribute(Constants.PNML_TYPE, getType() == null ? "" : getType());
         
         for (Object cellObj : getChildCells())
         {           
@@ -748,19 +896,18 @@ public class PetriNetGraph extends mxGraph
             if(cellObj instanceof PlaceVertex)
             {
                 PlaceVertex place = (PlaceVertex) cellObj;
-                net.appendChild(place.exportPNML(doc));
+                place.exportPNML(writer);
             }
             /** <transition id="t1" name="t1"> ... </transition> */
             else if(cellObj instanceof TransitionVertex)
             {
                 TransitionVertex transition = (TransitionVertex) cellObj;
-                net.appendChild(transition.exportPNML(doc));
+                transition.exportPNML(writer);
             }
             /**  <interface id="i1" name="i1"> ... </interface> */
             else if(cellObj instanceof InterfaceVertex)
             {
                 InterfaceVertex interf = (InterfaceVertex) cellObj;
-                interfaces.appendChild(interf.exportPNML(doc));
                 
                 /**
                  * Interfaces are not PNML complaint.
@@ -776,7 +923,7 @@ public class PetriNetGraph extends mxGraph
                  * See {@link PetriNetGraph#factory}
                  */
                  PlaceVertex mirrorInterf = new PlaceVertex(getDefaultParent(), interf.getId(), interf.getValue(), interf.getGeometry().getX(), interf.getGeometry().getY());
-                 net.appendChild(mirrorInterf.exportPNML(doc));
+                 mirrorInterf.exportPNML(writer);
             }
             /**  <arc id="a17" source="t3" target="p5"> ... </arc> */
             else if(cellObj instanceof mxCell)
@@ -785,7 +932,7 @@ public class PetriNetGraph extends mxGraph
                 
                 if(cell.isEdge())
                 {
-                    net.appendChild(ArcEdge.exportPNML(doc, cell));
+                    ArcEdge.exportPNML(writer, cell);
                 }
             }
         }
@@ -793,40 +940,78 @@ public class PetriNetGraph extends mxGraph
         if(indexInterfaces > 0)
         {
             /**     <toolspecific tool="WoLFEd" version="currentVersion">
-            *            <interface id="i1" />
+            *            <interfaces>
+            *                <interface id="i1" />
+            *            </interfaces>
             *       </toolspecific>
             */
-            Element toolSpecific = doc.createElement(Constants.PNML_TOOL_SPECIFIC);
-            toolSpecific.setAttribute(Constants.PNML_TOOL, Constants.EDITOR_NAME);
-            toolSpecific.setAttribute(Constants.PNML_TOOL_VERSION, Constants.EDITOR_VERSION);
-            toolSpecific.appendChild(interfaces);
-            net.appendChild(toolSpecific);
+            writer.writeStartElement(Constants.PNML_TOOL_SPECIFIC);
+            writer.writeAttribute(Constants.PNML_TOOL, Constants.EDITOR_NAME);
+            writer.writeAttribute(Constants.PNML_TOOL_VERSION, Constants.EDITOR_VERSION);
+            
+            // Second pass on the cells, the mirror places are already written
+            List<InterfaceVertex> interfaces = new ArrayList<>();
+            
+            for (Object cellObj : getChildCells())
+            {
+                if(cellObj instanceof InterfaceVertex)
+                {
+                    interfaces.add((InterfaceVertex) cellObj);
+                }
+            }
+            
+            if(interfaces.isEmpty())
+            {
+                writer.writeEmptyElement(Constants.PNML_INTERFACES);
+            }
+            else
+            {
+                writer.writeStartElement(Constants.PNML_INTERFACES);
+                
+                for (InterfaceVertex interf : interfaces)
+                {
+                    interf.exportPNML(writer);
+                }
+                
+                writer.writeEndElement();
+            }
+            
+            writer.writeEndElement();
         }
 
         /**     </net>
         * </pnml> 
         */
-        
-        // Output
-        doc.getDocumentElement().normalize();
-        DOMSource source = new DOMSource(doc);
-        StringWriter sw = new StringWriter();
-        StreamResult result = new StreamResult(sw);
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.transform(source, result);
-
-        return sw.toString();
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.flush();
+        writer.close();
     }
     
     /**
      * Export graph to DOT String.
      * 
-     * @return 
+     * @return String
+     * @throws IOException 
+     * @see PetriNetGraph#exportDOT(java.io.Writer)
+     */
+    public String exportDOT() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        exportDOT(out);
+        
+        return out.toString();
+    }
+    
+    /**
+     * Streams the graph as DOT, a vertex or an edge at a time.
+     * 
+     * @param out
+     * @throws IOException 
      */
-    public String exportDOT() 
+    public void exportDOT(Writer out) throws IOException
     {
-        StringBuilder dot = new StringBuilder();
-        dot.append("digraph WoLFEdGraph{\nrankdir=LR;");
+        out.write("digraph WoLFEdGraph{\nrankdir=LR;");
      
         // Vertex
         for (Object cellObj : this.getChildVertices())
@@ -834,17 +1019,17 @@ public class PetriNetGraph extends mxGraph
             if (cellObj instanceof InterfaceVertex)
             {
                 InterfaceVertex interfaceVertex = (InterfaceVertex) cellObj;
-                dot.append(interfaceVertex.exportDOT());
+                out.write(interfaceVertex.exportDOT());
             }
             if (cellObj instanceof PlaceVertex)
             {
                 PlaceVertex placeVertex = (PlaceVertex) cellObj;
-                dot.append(placeVertex.exportDOT());
+                out.write(placeVertex.exportDOT());
             }
             if (cellObj instanceof TransitionVertex)
             {
                 TransitionVertex transitionVertex = (TransitionVertex) cellObj;
-                dot.append(transitionVertex.exportDOT());
+                out.write(transitionVertex.exportDOT());
             }
         }
 
@@ -855,12 +1040,11 @@ public class PetriNetGraph extends mxGraph
             
             if (edge.isEdge())
             {
-                dot.append(ArcEdge.exportDOT(edge));
+                out.write(ArcEdge.exportDOT(edge));
             }
         }
 
-        dot.append("\n }");
-        
-        return dot.toString();
+        out.write("\n }");
+        out.flush();
     }
 }
@@ -2,11 +2,10 @@
 package it.wolfed.model;
 
 import it.wolfed.util.Constants;
-import it.wolfed.util.IterableNodeList;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import it.wolfed.util.StaxUtilities;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Place.
@@ -41,14 +40,14 @@ public class PlaceVertex extends Vertex
     }
     
     /**
-     * Generate a new {@link PlaceVertex} from a pnml valid dom node.
+     * Generate a new {@link PlaceVertex} from a pnml stream, positioned on
+     * the place start element (and left on its end element). The pnml
+     * "name" is mapped to the "value" property, the "initialMarking" to the
+     * "tokens" one.
      * 
      * <place id="p2"> 
      * 	<name> 
      * 		<text>p2</text> 
-     * 		<graphics> 
-     * 			<offset x="200" y="110"/> 
-     * 		</graphics> 
      * 	</name> 
      * 	<graphics> 
      * 		<position x="200" y="70"/>
@@ -60,74 +59,52 @@ public class PlaceVertex extends Vertex
      * </place>
      * 
      * @param parent
-     * @param dom
-     * @return  PlaceVertex
+     * @param reader
+     * @return PlaceVertex
+     * @throws XMLStreamException 
      * @see <a href="http://www.pnml.org/">http://www.pnml.org/</a>
-     */  
-    public static PlaceVertex factory(Object parent, Node dom)
+     */
+    public static PlaceVertex factory(Object parent, XMLStreamReader reader) throws XMLStreamException
     {
-        String id, value = "";
+        String id = reader.getAttributeValue(null, Constants.PNML_ID), value = "";
         int tokens = 0;
-        double x = 0, y = 0;
+        double[] position = null;
         
-        id = dom.getAttributes().getNamedItem(Constants.PNML_ID).getNodeValue();
-
-        for (final Node childNode : new IterableNodeList(dom.getChildNodes()))
+        while (StaxUtilities.nextChild(reader))
         {
-            if (childNode.getNodeType() == Node.ELEMENT_NODE)
+            switch (reader.getLocalName())
             {
-                switch (childNode.getNodeName())
+                case Constants.PNML_NAME:
+                {
+                    value = StaxUtilities.readText(reader);
+                    break;
+                }
+                
+                case Constants.PNML_INITIALMARKING:
+                {
+                    tokens = Integer.parseInt(StaxUtilities.readText(reader));
+                    break;
+                }
+                
+                case Constants.PNML_GRAPHICS:
+                {
+                    position = readPosition(reader);
+                    break;
+                }
+                
+                default:
                 {
-                    // @note pnml "name" will be mapped to "value" property
-                    case Constants.PNML_NAME:
-                    {
-                        value = childNode.getTextContent().trim();
-                        break;
-                    }
-                        
-                    // @note pnml "initialmarking" will be mapped to "tokens" property
-                    case Constants.PNML_INITIALMARKING:
-                    {
-                        tokens = Integer.parseInt(childNode.getTextContent().trim());
-                        break;
-                    }
-                    
-                    /** 
-                    * Set the geometric aspect of the Vertex
-                    * 
-                    *  <graphics> 
-                    *       <position x="200" y="70"/>
-                    * 	    <dimension x="40" y="40"/> 
-                    * 	</graphics> 
-                    */
-                    case Constants.PNML_GRAPHICS:
-                    { 
-                        for (final Node graphNode : new IterableNodeList(childNode.getChildNodes()))
-                        {
-                            if (graphNode.getNodeType() == Node.ELEMENT_NODE)
-                            {
-                                switch(graphNode.getNodeName())
-                                {
-                                    case Constants.PNML_GRAPHICS_POSITION :
-                                    {
-                                        x = Double.valueOf(graphNode.getAttributes().getNamedItem(Constants.PNML_GRAPHICS_POSITION_X).getNodeValue());
-                                        y = Double.valueOf(graphNode.getAttributes().getNamedItem(Constants.PNML_GRAPHICS_POSITION_Y).getNodeValue());
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        
-                        break;
-                    }
+                    StaxUtilities.skip(reader);
                 }
             }
         }
-
-        PlaceVertex place = new PlaceVertex(parent, id, value, x, y);
+        
+        PlaceVertex place = position == null
+            ? new PlaceVertex(parent, id, value, 0, 0)
+            : new PlaceVertex(parent, id, value, position[0], position[1]);
         place.setTokens(tokens);
         return place;
-    };
+    }
     
     /**
      * Sets place tokens number.
@@ -149,57 +126,43 @@ public class PlaceVertex extends Vertex
         return tokens;
     }
 
-    public Element exportPNML(Document doc) throws ParserConfigurationException 
+    /**
+     * Export PNML Place.
+     * 
+     * @param writer
+     * @throws XMLStreamException 
+     */
+    public void exportPNML(XMLStreamWriter writer) throws XMLStreamException 
     {
         /** <place id="p6"> */
-        Element place = doc.createElement(Constants.PNML_PLACE);
-	place.setAttribute(Constants.PNML_ID, getId());
-
-        /**     <name> */
-        Element name = doc.createElement(Constants.PNML_NAME);
-        place.appendChild(name);
+        writer.writeStartElement(Constants.PNML_PLACE);
+        writer.writeAttribute(Constants.PNML_ID, getId());
 
-        /**         <text>p6</text> */
-        Element text = doc.createElement(Constants.PNML_TEXT);
-	text.setTextContent(getValue().toString());
-        name.appendChild(text);
-       
-	 /**    
-         *     Ignored:
-         *     <graphics>
-	 *          <offset x="650" y="110"/>
-	 *        </graphics>
-         *
-	 *      </name>
+        /**     <name>
+         *          <text>p6</text>
+         *      </name>
          */
+        writeName(writer);
         
         /**     <graphics>
          *          <position x="650" y="70"/>
-	 *          <dimension x="40" y="40"/>
+         *      </graphics>
          */
-        Element graphics = doc.createElement(Constants.PNML_GRAPHICS);
-        Element position = doc.createElement(Constants.PNML_GRAPHICS_POSITION);
-        position.setAttribute(Constants.PNML_GRAPHICS_POSITION_X, String.valueOf(getGeometry().getX()));
-        position.setAttribute(Constants.PNML_GRAPHICS_POSITION_Y, String.valueOf(getGeometry().getY()));
-	graphics.appendChild(position);
-        place.appendChild(graphics);
+        writeGraphics(writer);
         
         if(tokens > 0)
         {
-            /**     <initialMarking> */
-            Element initialMarking = doc.createElement(Constants.PNML_INITIALMARKING);
-            
-            /**         <text>2</text> */
-            Element initialMarkingText = doc.createElement(Constants.PNML_TEXT);
-            initialMarkingText.setTextContent(String.valueOf(getTokens()));
-            initialMarking.appendChild(initialMarkingText);
-
-            /**    </initialMarking>*/
-            place.appendChild(initialMarking);
-	}
+            /**     <initialMarking>
+             *          <text>2</text>
+             *      </initialMarking>
+             */
+            writer.writeStartElement(Constants.PNML_INITIALMARKING);
+            StaxUtilities.writeTextElement(writer, Constants.PNML_TEXT, String.valueOf(getTokens()));
+            writer.writeEndElement();
+        }
         
         /**  </place>  */
-        return place;
+        writer.writeEndElement();
     }
     
     /**
@@ -2,17 +2,36 @@
 package it.wolfed.model;
 
 import it.wolfed.util.Constants;
-import it.wolfed.util.IterableNodeList;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import it.wolfed.util.StaxUtilities;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Transition.
  */
 public class TransitionVertex extends Vertex
 {
+    /**
+     * Seconds of each WoPeD time unit: seconds, minutes, hours, days,
+     * weeks, months (30 days), years (365 days).
+     */
+    private static final double[] TIME_UNIT_SECONDS = {1, 60, 3600, 86400, 604800, 2592000, 31536000};
+    
+    /**
+     * Mean duration, in time units.
+     * 
+     * Pnml mapped from the WoPeD {@link Constants#PNML_TIME}
+     */
+    private double time = 0;
+    
+    /**
+     * WoPeD time unit (index of {@link TransitionVertex#TIME_UNIT_SECONDS}).
+     * 
+     * Pnml mapped from the WoPeD {@link Constants#PNML_TIMEUNIT}
+     */
+    private int timeUnit = 1;
+    
     /**
      * TransitionVertex Constructor
      * 
@@ -34,14 +53,14 @@ public class TransitionVertex extends Vertex
     }
     
     /**
-     * Generate a new {@link TransitionVertex} from a pnml valid dom node.
+     * Generate a new {@link TransitionVertex} from a pnml stream,
+     * positioned on the transition start element (and left on its end
+     * element). The pnml "name" is mapped to the "value" property, the
+     * WoPeD "time" and "timeUnit" to the duration of the task.
      * 
      * <transition id="t1"> 
      * 	<name> 
      * 		<text>t1</text> 
-     * 		<graphics> 
-     * 			<offset x="120" y="110"/> 
-     * 		</graphics> 
      * 	</name> 
      * 	<graphics> 
      * 		<position x="125" y="70"/>
@@ -53,108 +72,240 @@ public class TransitionVertex extends Vertex
      * 		<orientation>1</orientation> 
      * 	</toolspecific> 
      * </transition>
-     *
+     * 
      * @param parent
-     * @param dom
+     * @param reader
      * @return TransitionVertex
+     * @throws XMLStreamException 
      * @see <a href="http://www.pnml.org/">http://www.pnml.org/</a>
      */
-    public static TransitionVertex factory(Object parent, Node dom)
+    public static TransitionVertex factory(Object parent, XMLStreamReader reader) throws XMLStreamException
     {
-        String id, value = "";
-        double x = 0, y = 0;
+        String id = reader.getAttributeValue(null, Constants.PNML_ID), value = "";
+        double[] position = null;
+        double time = 0;
+        int timeUnit = 1;
         
-        id = dom.getAttributes().getNamedItem(Constants.PNML_ID).getNodeValue();
-
-        for (final Node childNode : new IterableNodeList(dom.getChildNodes()))
+        while (StaxUtilities.nextChild(reader))
         {
-            if (childNode.getNodeType() == Node.ELEMENT_NODE)
+            switch (reader.getLocalName())
             {
-                switch (childNode.getNodeName())
+                case Constants.PNML_NAME:
+                {
+                    value = StaxUtilities.readText(reader);
+                    break;
+                }
+                
+                case Constants.PNML_GRAPHICS:
                 {
-                    // @note pnml "name" will be mapped to "value" property
-                    case Constants.PNML_NAME:
+                    position = readPosition(reader);
+                    break;
+                }
+                
+                case Constants.PNML_TOOL_SPECIFIC:
+                {
+                    if( ! Constants.PNML_TOOL_WOPED.equals(reader.getAttributeValue(null, Constants.PNML_TOOL)))
                     {
-                        value = childNode.getTextContent().trim();
+                        StaxUtilities.skip(reader);
                         break;
                     }
-                        
-                    /** 
-                    * Set the geometric aspect of the Vertex
-                    * 
-                    *  <graphics> 
-                    *       <position x="200" y="70"/>
-                    * 	    <dimension x="40" y="40"/> 
-                    * 	</graphics> 
-                    */
-                    case Constants.PNML_GRAPHICS:
+                    
+                    while (StaxUtilities.nextChild(reader))
                     {
-                        for (final Node graphNode : new IterableNodeList(childNode.getChildNodes()))
+                        switch (reader.getLocalName())
                         {
-                            if (graphNode.getNodeType() == Node.ELEMENT_NODE)
+                            case Constants.PNML_TIME:
+                            {
+                                String text = StaxUtilities.readText(reader);
+                                
+                                try
+                                {
+                                    time = Double.parseDouble(text);
+                                }
+                                catch (NumberFormatException ex)
+                                {
+                                    time = Double.NaN;
+                                }
+                                
+                                if( ! isTime(time))
+                                {
+                                    throw new XMLStreamException("Invalid time \"" + text + "\" for transition " + id, reader.getLocation());
+                                }
+                                
+                                break;
+                            }
+                            
+                            case Constants.PNML_TIMEUNIT:
                             {
-                                switch(graphNode.getNodeName())
+                                String text = StaxUtilities.readText(reader);
+                                
+                                try
+                                {
+                                    timeUnit = Integer.parseInt(text);
+                                }
+                                catch (NumberFormatException ex)
+                                {
+                                    timeUnit = -1;
+                                }
+                                
+                                if( ! isTimeUnit(timeUnit))
                                 {
-                                    case Constants.PNML_GRAPHICS_POSITION :
-                                    {
-                                        x = Double.valueOf(graphNode.getAttributes().getNamedItem(Constants.PNML_GRAPHICS_POSITION_X).getNodeValue());
-                                        y = Double.valueOf(graphNode.getAttributes().getNamedItem(Constants.PNML_GRAPHICS_POSITION_Y).getNodeValue());
-                                        break;
-                                    }
+                                    throw new XMLStreamException("Unknown time unit \"" + text + "\" for transition " + id, reader.getLocation());
                                 }
+                                
+                                break;
+                            }
+                            
+                            default:
+                            {
+                                StaxUtilities.skip(reader);
                             }
                         }
-                        
-                        break;
-                    } 
+                    }
+                    
+                    break;
+                }
+                
+                default:
+                {
+                    StaxUtilities.skip(reader);
                 }
             }
         }
         
-        return new TransitionVertex(parent, id, value, x, y);
+        TransitionVertex transition = position == null
+            ? new TransitionVertex(parent, id, value, 0, 0)
+            : new TransitionVertex(parent, id, value, position[0], position[1]);
+        transition.setTime(time);
+        transition.setTimeUnit(timeUnit);
+        return transition;
+    }
+    
+    /**
+     * Sets the mean duration, in time units.
+     * 
+     * @param time 
+     * @throws IllegalArgumentException if negative, NaN or infinite
+     */
+    public void setTime(double time)
+    {
+        if( ! isTime(time))
+        {
+            throw new IllegalArgumentException("Invalid time " + time);
+        }
+        
+        this.time = time;
+    }
+    
+    /**
+     * Returns if a mean duration is valid: finite and not negative.
+     * 
+     * @param time
+     * @return boolean
+     */
+    public static boolean isTime(double time)
+    {
+        return time >= 0 && time <= Double.MAX_VALUE;
+    }
+    
+    /**
+     * Get the mean duration, in time units.
+     * 
+     * @return the time
+     */
+    public double getTime()
+    {
+        return time;
+    }
+    
+    /**
+     * Sets the WoPeD time unit: 0 seconds, 1 minutes, 2 hours, 3 days,
+     * 4 weeks, 5 months, 6 years.
+     * 
+     * @param timeUnit 
+     * @throws IllegalArgumentException if not one of these units
+     */
+    public void setTimeUnit(int timeUnit)
+    {
+        if( ! isTimeUnit(timeUnit))
+        {
+            throw new IllegalArgumentException("Unknown time unit " + timeUnit);
+        }
+        
+        this.timeUnit = timeUnit;
+    }
+    
+    /**
+     * Returns if a WoPeD time unit is known.
+     * 
+     * @param timeUnit
+     * @return boolean
+     */
+    public static boolean isTimeUnit(int timeUnit)
+    {
+        return timeUnit >= 0 && timeUnit < TIME_UNIT_SECONDS.length;
+    }
+    
+    /**
+     * Get the WoPeD time unit.
+     * 
+     * @return the timeUnit
+     */
+    public int getTimeUnit()
+    {
+        return timeUnit;
+    }
+    
+    /**
+     * Get the mean duration in seconds (0 for an immediate transition).
+     * 
+     * @return double
+     */
+    public double getDuration()
+    {
+        return time * TIME_UNIT_SECONDS[timeUnit];
     }
     
     /**
      * Export PNML Transition.
      * 
-     * @return 
+     * @param writer
+     * @throws XMLStreamException 
      */
-    public Element exportPNML(Document doc ) throws ParserConfigurationException 
+    public void exportPNML(XMLStreamWriter writer) throws XMLStreamException 
     {
         /** <transition id="t3"> */
-	Element transition = doc.createElement(Constants.PNML_TRANSITION);
-	transition.setAttribute(Constants.PNML_ID, getId());
-
-        /**    <name> */
-	Element name = doc.createElement(Constants.PNML_NAME);
-        transition.appendChild(name);
+        writer.writeStartElement(Constants.PNML_TRANSITION);
+        writer.writeAttribute(Constants.PNML_ID, getId());
 
-        /**         <text>p6</text> */
-	Element text = doc.createElement(Constants.PNML_TEXT);
-	text.setTextContent(getValue().toString());
-        name.appendChild(text);
-       
-	 /**
-	 *              <graphics>
-	 *                  <position x="275" y="140"/>
-	 *                  <dimension x="40" y="40"/>
-	 *              </graphics>
-	 *              <toolspecific tool="WoPeD" version="1.0">
-	 *                  <time>0</time>
-	 *                  <timeUnit>1</timeUnit>
-	 *                  <orientation>1</orientation>
-	 *              </toolspecific>
-	 */
-        Element graphics = doc.createElement(Constants.PNML_GRAPHICS);
-        Element position = doc.createElement(Constants.PNML_GRAPHICS_POSITION);
-        position.setAttribute(Constants.PNML_GRAPHICS_POSITION_X, String.valueOf(getGeometry().getX()));
-        position.setAttribute(Constants.PNML_GRAPHICS_POSITION_Y, String.valueOf(getGeometry().getY()));
-	graphics.appendChild(position);
+        /**     <name>
+         *          <text>t3</text>
+         *      </name>
+         */
+        writeName(writer);
         
-        transition.appendChild(graphics);
+        /**     <graphics>
+         *          <position x="275" y="140"/>
+         *      </graphics>
+         */
+        writeGraphics(writer);
+        
+        /**     <toolspecific tool="WoPeD" version="1.0"> */
+        writer.writeStartElement(Constants.PNML_TOOL_SPECIFIC);
+        writer.writeAttribute(Constants.PNML_TOOL, Constants.PNML_TOOL_WOPED);
+        writer.writeAttribute(Constants.PNML_TOOL_VERSION, Constants.PNML_TOOL_WOPED_VERSION);
+        
+        /**         <time>0</time> */
+        StaxUtilities.writeTextElement(writer, Constants.PNML_TIME, time == Math.rint(time) ? String.valueOf((long) time) : String.valueOf(time));
+        
+        /**         <timeUnit>1</timeUnit> */
+        StaxUtilities.writeTextElement(writer, Constants.PNML_TIMEUNIT, String.valueOf(timeUnit));
+        
+        /**     </toolspecific> */
+        writer.writeEndElement();
         
         /**  </transition>  */
-        return transition;
+        writer.writeEndElement();
     }
     
     /**
@@ -3,6 +3,11 @@ package it.wolfed.model;
 
 import com.mxgraph.model.mxCell;
 import com.mxgraph.model.mxGeometry;
+import it.wolfed.util.Constants;
+import it.wolfed.util.StaxUtilities;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Vertices are the node elements of the graph model. 
@@ -31,4 +36,73 @@ abstract public class Vertex extends mxCell
         setVertex(true);
         setConnectable(true);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Reads the position of a pnml graphics element from a stream, up to
+     * its end.
+     * 
+     *  <graphics> 
+     *       <position x="200" y="70"/>
+     * 	    <dimension x="40" y="40"/> 
+     * 	</graphics> 
+     * 
+     * @param reader
+     * @return double[] x and y, null if missing
+     * @throws XMLStreamException 
+     */
+    static double[] readPosition(XMLStreamReader reader) throws XMLStreamException
+    {
+        double[] position = null;
+        
+        while (StaxUtilities.nextChild(reader))
+        {
+            if (reader.getLocalName().equals(Constants.PNML_GRAPHICS_POSITION))
+            {
+                position = new double[] {
+                    Double.valueOf(reader.getAttributeValue(null, Constants.PNML_GRAPHICS_POSITION_X)),
+                    Double.valueOf(reader.getAttributeValue(null, Constants.PNML_GRAPHICS_POSITION_Y))
+                };
+            }
+            
+            StaxUtilities.skip(reader);
+        }
+        
+        return position;
+    }
+    
+    /**
+     * Writes the pnml name of the vertex.
+     * 
+     *  <name>
+     *      <text>p6</text>
+     *  </name>
+     * 
+     * @param writer
+     * @throws XMLStreamException 
+     */
+    void writeName(XMLStreamWriter writer) throws XMLStreamException
+    {
+        writer.writeStartElement(Constants.PNML_NAME);
+        StaxUtilities.writeTextElement(writer, Constants.PNML_TEXT, getValue().toString());
+        writer.writeEndElement();
+    }
+    
+    /**
+     * Writes the pnml graphics of the vertex.
+     * 
+     *  <graphics>
+     *      <position x="650" y="70"/>
+     *  </graphics>
+     * 
+     * @param writer
+     * @throws XMLStreamException 
+     */
+    void writeGraphics(XMLStreamWriter writer) throws XMLStreamException
+    {
+        writer.writeStartElement(Constants.PNML_GRAPHICS);
+        writer.writeEmptyElement(Constants.PNML_GRAPHICS_POSITION);
+        writer.writeAttribute(Constants.PNML_GRAPHICS_POSITION_X, String.valueOf(getGeometry().getX()));
+        writer.writeAttribute(Constants.PNML_GRAPHICS_POSITION_Y, String.valueOf(getGeometry().getY()));
+        writer.writeEndElement();
+    }
+}
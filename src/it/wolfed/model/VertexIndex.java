@@ -0,0 +1,523 @@
+package it.wolfed.model;
+
+import com.mxgraph.model.mxGraphModel;
+import com.mxgraph.model.mxGraphModel.mxChildChange;
+import com.mxgraph.model.mxGraphModel.mxRootChange;
+import com.mxgraph.model.mxGraphModel.mxTerminalChange;
+import com.mxgraph.model.mxGraphModel.mxValueChange;
+import com.mxgraph.model.mxIGraphModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed lookup index for the vertices of a {@link PetriNetGraph}.
+ *
+ * Ids are resolved through the cell map that {@link mxGraphModel} already
+ * keeps unique (it is updated on add, remove, undo and redo by the model
+ * itself); values are indexed here and kept in sync by the graph through
+ * {@link VertexIndex#apply(java.lang.Object)} for every model change.
+ *
+ * Each vertex also owns a slot in two primitive arrays counting its preset
+ * and postset arcs, so the initial and final places are kept as live sets.
+ *
+ * Applying a change is idempotent, so the same change can be safely applied
+ * both when executed and when dispatched (undo/redo).
+ */
+public class VertexIndex
+{
+    /**
+     * The indexed graph.
+     */
+    private final PetriNetGraph graph;
+
+    /**
+     * Vertices by value, in insertion order.
+     */
+    private final Map<Object, Set<Vertex>> byValue = new HashMap<>();
+
+    /**
+     * The value each vertex is currently indexed with.
+     */
+    private final Map<Vertex, Object> indexedValues = new HashMap<>();
+
+    /**
+     * Degree slot by vertex.
+     */
+    private final Map<Object, Integer> slots = new HashMap<>();
+
+    /**
+     * Vertex by degree slot (null when free).
+     */
+    private Object[] slotCells = new Object[16];
+
+    /**
+     * Allocation stamp by degree slot (0 when free).
+     */
+    private int[] slotStamps = new int[16];
+
+    /**
+     * Preset arcs count by degree slot.
+     */
+    private int[] inDegrees = new int[16];
+
+    /**
+     * Postset arcs count by degree slot.
+     */
+    private int[] outDegrees = new int[16];
+
+    /**
+     * Released slots, reused before growing the arrays.
+     */
+    private int[] freeSlots = new int[16];
+
+    /**
+     * Number of released slots.
+     */
+    private int freeCount;
+
+    /**
+     * Number of slots ever allocated.
+     */
+    private int slotCount;
+
+    /**
+     * Last allocation stamp.
+     */
+    private int lastStamp;
+
+    /**
+     * The terminals each arc is currently counted for.
+     */
+    private final Map<Object, CountedArc> countedArcs = new HashMap<>();
+
+    /**
+     * Live initial places (preset 0, postset > 0).
+     */
+    private final Set<PlaceVertex> initialPlaces = new LinkedHashSet<>();
+
+    /**
+     * Live final places (preset > 0, postset 0).
+     */
+    private final Set<PlaceVertex> finalPlaces = new LinkedHashSet<>();
+
+    /**
+     * Snapshot of {@link VertexIndex#initialPlaces}, null when stale.
+     */
+    private List<PlaceVertex> initialPlacesList;
+
+    /**
+     * Snapshot of {@link VertexIndex#finalPlaces}, null when stale.
+     */
+    private List<PlaceVertex> finalPlacesList;
+
+    /**
+     * {@link VertexIndex} Constructor.
+     *
+     * @param graph
+     */
+    public VertexIndex(PetriNetGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the vertex with the given id, null if not found.
+     *
+     * @param id
+     * @return Vertex
+     */
+    public Vertex getById(String id)
+    {
+        Object cell = ((mxGraphModel) graph.getModel()).getCell(id);
+
+        return isIndexable(cell) ? (Vertex) cell : null;
+    }
+
+    /**
+     * Returns the first inserted vertex with the given value, null if not found.
+     *
+     * @param value
+     * @return Vertex
+     */
+    public Vertex getByValue(Object value)
+    {
+        Set<Vertex> vertices = byValue.get(value);
+
+        return (vertices == null) ? null : vertices.iterator().next();
+    }
+
+    /**
+     * Returns the number of arcs entering a vertex.
+     *
+     * @param vertex
+     * @return int
+     */
+    public int getInDegree(Object vertex)
+    {
+        Integer slot = slots.get(vertex);
+
+        return (slot == null) ? 0 : inDegrees[slot];
+    }
+
+    /**
+     * Returns the number of arcs leaving a vertex.
+     *
+     * @param vertex
+     * @return int
+     */
+    public int getOutDegree(Object vertex)
+    {
+        Integer slot = slots.get(vertex);
+
+        return (slot == null) ? 0 : outDegrees[slot];
+    }
+
+    /**
+     * Returns the live initial places, in the order they became initial.
+     *
+     * @return List<PlaceVertex>
+     */
+    public List<PlaceVertex> getInitialPlaces()
+    {
+        if(initialPlacesList == null)
+        {
+            initialPlacesList = Collections.unmodifiableList(new ArrayList<>(initialPlaces));
+        }
+
+        return initialPlacesList;
+    }
+
+    /**
+     * Returns the live final places, in the order they became final.
+     *
+     * @return List<PlaceVertex>
+     */
+    public List<PlaceVertex> getFinalPlaces()
+    {
+        if(finalPlacesList == null)
+        {
+            finalPlacesList = Collections.unmodifiableList(new ArrayList<>(finalPlaces));
+        }
+
+        return finalPlacesList;
+    }
+
+    /**
+     * Returns the number of initial places.
+     *
+     * @return int
+     */
+    public int getInitialPlacesCount()
+    {
+        return initialPlaces.size();
+    }
+
+    /**
+     * Returns the number of final places.
+     *
+     * @return int
+     */
+    public int getFinalPlacesCount()
+    {
+        return finalPlaces.size();
+    }
+
+    /**
+     * Applies an atomic model change to the index.
+     *
+     * @param change
+     */
+    public void apply(Object change)
+    {
+        if(change instanceof mxChildChange)
+        {
+            Object child = ((mxChildChange) change).getChild();
+
+            if(graph.getModel().isEdge(child))
+            {
+                reconcileArc(child);
+            }
+            else
+            {
+                reindex(child);
+            }
+        }
+        else if(change instanceof mxTerminalChange)
+        {
+            reconcileArc(((mxTerminalChange) change).getCell());
+        }
+        else if(change instanceof mxValueChange)
+        {
+            reindex(((mxValueChange) change).getCell());
+        }
+        else if(change instanceof mxRootChange)
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * Brings a single vertex in sync with the model.
+     *
+     * @param cell
+     */
+    public void reindex(Object cell)
+    {
+        if( ! (cell instanceof Vertex))
+        {
+            return;
+        }
+
+        Vertex vertex = (Vertex) cell;
+        boolean indexable = isIndexable(vertex);
+
+        if(indexedValues.containsKey(vertex))
+        {
+            Object value = indexedValues.remove(vertex);
+            Set<Vertex> vertices = byValue.get(value);
+            vertices.remove(vertex);
+
+            if(vertices.isEmpty())
+            {
+                byValue.remove(value);
+            }
+        }
+
+        if(indexable)
+        {
+            Set<Vertex> vertices = byValue.get(vertex.getValue());
+
+            if(vertices == null)
+            {
+                vertices = new LinkedHashSet<>();
+                byValue.put(vertex.getValue(), vertices);
+            }
+
+            vertices.add(vertex);
+            indexedValues.put(vertex, vertex.getValue());
+        }
+
+        Integer slot = slots.get(vertex);
+
+        if(indexable && slot == null)
+        {
+            allocateSlot(vertex);
+            mxIGraphModel model = graph.getModel();
+
+            // Count the arcs already connected to it
+            for(int i = 0; i < model.getEdgeCount(vertex); i++)
+            {
+                reconcileArc(model.getEdgeAt(vertex, i));
+            }
+        }
+        else if( ! indexable && slot != null)
+        {
+            releaseSlot(vertex, slot);
+        }
+    }
+
+    /**
+     * Rebuilds the whole index from the graph children.
+     */
+    public void rebuild()
+    {
+        byValue.clear();
+        indexedValues.clear();
+        slots.clear();
+        countedArcs.clear();
+        initialPlaces.clear();
+        finalPlaces.clear();
+        initialPlacesList = null;
+        finalPlacesList = null;
+        Arrays.fill(slotCells, null);
+        Arrays.fill(slotStamps, 0);
+        Arrays.fill(inDegrees, 0);
+        Arrays.fill(outDegrees, 0);
+        freeCount = 0;
+        slotCount = 0;
+
+        for(Object cell : graph.getChildVertices())
+        {
+            reindex(cell);
+        }
+
+        for(Object cell : graph.getChildEdges())
+        {
+            reconcileArc(cell);
+        }
+    }
+
+    /**
+     * Brings the degree counters in sync with a single arc.
+     *
+     * The previous count is undone only for terminals whose slot is
+     * still owned by the same allocation (stamp check).
+     *
+     * @param edge
+     */
+    private void reconcileArc(Object edge)
+    {
+        CountedArc counted = countedArcs.remove(edge);
+
+        if(counted != null)
+        {
+            if(counted.sourceSlot >= 0 && slotStamps[counted.sourceSlot] == counted.sourceStamp)
+            {
+                outDegrees[counted.sourceSlot]--;
+                updateSpecialPlace(counted.sourceSlot);
+            }
+
+            if(counted.targetSlot >= 0 && slotStamps[counted.targetSlot] == counted.targetStamp)
+            {
+                inDegrees[counted.targetSlot]--;
+                updateSpecialPlace(counted.targetSlot);
+            }
+        }
+
+        mxIGraphModel model = graph.getModel();
+
+        // Self-loops are not part of any preset or postset (as in mxGraph)
+        if(edge == null || model.getParent(edge) != graph.getDefaultParent()
+            || model.getTerminal(edge, true) == model.getTerminal(edge, false))
+        {
+            return;
+        }
+
+        counted = new CountedArc();
+        Integer source = slots.get(model.getTerminal(edge, true));
+        Integer target = slots.get(model.getTerminal(edge, false));
+
+        if(source != null)
+        {
+            counted.sourceSlot = source;
+            counted.sourceStamp = slotStamps[source];
+            outDegrees[source]++;
+            updateSpecialPlace(source);
+        }
+
+        if(target != null)
+        {
+            counted.targetSlot = target;
+            counted.targetStamp = slotStamps[target];
+            inDegrees[target]++;
+            updateSpecialPlace(target);
+        }
+
+        countedArcs.put(edge, counted);
+    }
+
+    /**
+     * Gives a fresh slot to a vertex.
+     *
+     * @param vertex
+     */
+    private void allocateSlot(Vertex vertex)
+    {
+        int slot;
+
+        if(freeCount > 0)
+        {
+            slot = freeSlots[--freeCount];
+        }
+        else
+        {
+            if(slotCount == slotCells.length)
+            {
+                int size = slotCount * 2;
+                slotCells = Arrays.copyOf(slotCells, size);
+                slotStamps = Arrays.copyOf(slotStamps, size);
+                inDegrees = Arrays.copyOf(inDegrees, size);
+                outDegrees = Arrays.copyOf(outDegrees, size);
+                freeSlots = Arrays.copyOf(freeSlots, size);
+            }
+
+            slot = slotCount++;
+        }
+
+        slotCells[slot] = vertex;
+        slotStamps[slot] = ++lastStamp;
+        inDegrees[slot] = 0;
+        outDegrees[slot] = 0;
+        slots.put(vertex, slot);
+    }
+
+    /**
+     * Takes the slot back from a vertex no more in the graph.
+     *
+     * @param vertex
+     * @param slot
+     */
+    private void releaseSlot(Vertex vertex, int slot)
+    {
+        if(initialPlaces.remove(vertex))
+        {
+            initialPlacesList = null;
+        }
+
+        if(finalPlaces.remove(vertex))
+        {
+            finalPlacesList = null;
+        }
+
+        slots.remove(vertex);
+        slotCells[slot] = null;
+        slotStamps[slot] = 0;
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Re-checks the place in slot against the initial and final sets.
+     *
+     * @param slot
+     */
+    private void updateSpecialPlace(int slot)
+    {
+        if( ! (slotCells[slot] instanceof PlaceVertex))
+        {
+            return;
+        }
+
+        PlaceVertex place = (PlaceVertex) slotCells[slot];
+        boolean initial = inDegrees[slot] == 0 && outDegrees[slot] > 0;
+        boolean last = outDegrees[slot] == 0 && inDegrees[slot] > 0;
+
+        if(initial ? initialPlaces.add(place) : initialPlaces.remove(place))
+        {
+            initialPlacesList = null;
+        }
+
+        if(last ? finalPlaces.add(place) : finalPlaces.remove(place))
+        {
+            finalPlacesList = null;
+        }
+    }
+
+    /**
+     * Returns if a cell is a vertex child of the default graph parent.
+     *
+     * @param cell
+     * @return boolean
+     */
+    private boolean isIndexable(Object cell)
+    {
+        return cell instanceof Vertex
+            && graph.getModel().getParent(cell) == graph.getDefaultParent();
+    }
+
+    /**
+     * Terminal slots an arc has been counted for (-1 when none).
+     */
+    private static class CountedArc
+    {
+        int sourceSlot = -1;
+        int sourceStamp;
+        int targetSlot = -1;
+        int targetStamp;
+    }
+}
@@ -1,5 +1,6 @@
 package it.wolfed.operation;
 
+import it.wolfed.model.AnalysisFact;
 import it.wolfed.model.PetriNetGraph;
 
 /**
@@ -18,6 +19,7 @@ public class CloneGraphOperation extends Operation
     public CloneGraphOperation(PetriNetGraph operationGraph, PetriNetGraph firstGraph) throws Exception
     {
         super(operationGraph);
+        this.firstGraph = firstGraph;
         this.operationGraph = (new FullMergeOperation(operationGraph, firstGraph)).getOperationGraph();
         execute();
     }
@@ -28,4 +30,19 @@ public class CloneGraphOperation extends Operation
     {
         // Nothing
     }
+    
+    /**
+     * A clone has the same facts.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        for (AnalysisFact fact : AnalysisFact.values())
+        {
+            if(firstGraph.getFact(fact) != null)
+            {
+                operationGraph.setFact(fact, firstGraph.getFact(fact));
+            }
+        }
+    }
 }
\ No newline at end of file
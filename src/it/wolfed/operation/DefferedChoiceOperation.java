@@ -57,4 +57,13 @@ public class DefferedChoiceOperation extends Operation
         // set token
         initialPlaceAsFirst.setTokens(1);
     }
+    
+    /**
+     * Sound inputs make a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(firstGraph, secondGraph);
+    }
 }
\ No newline at end of file
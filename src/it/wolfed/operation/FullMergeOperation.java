@@ -64,7 +64,10 @@ public class FullMergeOperation extends Operation
                 }
                 else if(cell instanceof TransitionVertex)
                 {
+                    TransitionVertex transition = (TransitionVertex) cell;
                     clone = new TransitionVertex(parent, getPrefix(i + 1) + cell.getId(), cell.getValue(), 0, 0);
+                    ((TransitionVertex)clone).setTime(transition.getTime());
+                    ((TransitionVertex)clone).setTimeUnit(transition.getTimeUnit());
                     operationGraph.getSetNextTransitionId();
                 }
                 else if(cell instanceof InterfaceVertex)
@@ -72,4 +72,13 @@ public class IterationPatternOperation extends Operation
         operationGraph.insertArc(null, finalTransition, finalPlace);
         operationGraph.insertArc(null, finalPlaceAsFirst, finalTransition);
     }
+    
+    /**
+     * A sound input makes a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(firstGraph);
+    }
 }
\ No newline at end of file
@@ -31,4 +31,13 @@ public class OneOrMoreIterationOperation extends Operation
         // set token to initial place
         operationGraph.getInitialPlaces().get(0).setTokens(1);
     }
+    
+    /**
+     * A sound input makes a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(iterationGraph);
+    }
 }
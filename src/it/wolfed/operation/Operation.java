@@ -2,7 +2,9 @@
 package it.wolfed.operation;
 
 import it.wolfed.manipulation.GraphManipulation;
+import it.wolfed.model.AnalysisFact;
 import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.PlaceVertex;
 import it.wolfed.model.Vertex;
 import it.wolfed.util.Constants;
 
@@ -31,6 +33,9 @@ abstract public class Operation
     
     /**
      * Execute the specific operation process.
+     * 
+     * The facts are propagated once the changes (which drop the facts
+     * of the result) have been dispatched.
      * @throws Exception 
      */
     protected void execute() throws Exception
@@ -45,6 +50,8 @@ abstract public class Operation
         {
             operationGraph.getModel().endUpdate();
         }
+        
+        propagateFacts();
     }
     
     /**
@@ -52,6 +59,65 @@ abstract public class Operation
      */
     abstract void process() throws Exception;
     
+    /**
+     * Sets on the result the analysis facts implied by the inputs ones.
+     * 
+     * Nothing by default: the result is analysed from scratch.
+     */
+    protected void propagateFacts()
+    {
+    }
+    
+    /**
+     * Marks the result sound if all the inputs are, and it has kept
+     * their resources: the same tokens outside the initial places.
+     * 
+     * For the operations known to preserve soundness only.
+     * 
+     * @param inputs 
+     */
+    protected void inheritSoundness(PetriNetGraph... inputs)
+    {
+        int resources = 0;
+        
+        for (PetriNetGraph input : inputs)
+        {
+            if(input.getFact(AnalysisFact.SOUND) != Boolean.TRUE)
+            {
+                return;
+            }
+            
+            resources += getResourceTokens(input);
+        }
+        
+        if(operationGraph.isWorkFlow() && getResourceTokens(operationGraph) == resources)
+        {
+            operationGraph.setFact(AnalysisFact.SOUND, true);
+        }
+    }
+    
+    /**
+     * Returns the tokens outside the initial place of a workflow.
+     * 
+     * @param graph
+     * @return int
+     */
+    private static int getResourceTokens(PetriNetGraph graph)
+    {
+        int tokens = 0;
+        PlaceVertex initialPlace = graph.getInitialPlaces().get(0);
+        
+        for (Object cell : graph.getChildVertices())
+        {
+            if(cell instanceof PlaceVertex && cell != initialPlace)
+            {
+                tokens += ((PlaceVertex) cell).getTokens();
+            }
+        }
+        
+        return tokens;
+    }
+    
     /**
      * Return the graph if is a Graph is a valid workflow.
      * 
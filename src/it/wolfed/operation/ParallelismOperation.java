@@ -107,4 +107,13 @@ public class ParallelismOperation extends Operation
         getOperationGraph().insertArc(null, finalPlaceAsFirst, andJoin);
         getOperationGraph().insertArc(null, finalPlaceAsSecond, andJoin);
     }
+    
+    /**
+     * Sound inputs make a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(firstGraph, secondGraph);
+    }
 }
\ No newline at end of file
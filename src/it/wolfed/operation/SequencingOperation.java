@@ -59,4 +59,13 @@ public class SequencingOperation extends Operation
         // set token to initial place
         operationGraph.getInitialPlaces().get(0).setTokens(1);
     }
+    
+    /**
+     * Sound inputs make a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(firstGraph, secondGraph);
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package it.wolfed.operation;
 import it.wolfed.model.PetriNetGraph;
 import it.wolfed.model.PlaceVertex;
 import it.wolfed.model.TransitionVertex;
+import java.util.List;
 
 /**
  * Wrap Petri Net Graph Operation.
@@ -27,21 +28,27 @@ public class WrapGraphOperation extends Operation
     @Override
     void process()
     {
-        if(operationGraph.getInitialPlaces().size() > 1)
+        // Initial and final places are live: take them before wrapping
+        List<PlaceVertex> initialPlaces = operationGraph.getInitialPlaces();
+        List<PlaceVertex> finalPlaces = operationGraph.getFinalPlaces();
+        
+        if(initialPlaces.size() > 1)
         {
-            andSplitPattern();
+            andSplitPattern(initialPlaces);
         }
         
-        if(operationGraph.getFinalPlaces().size() > 1)
+        if(finalPlaces.size() > 1)
         {
-            andJoinPattern();
+            andJoinPattern(finalPlaces);
         }
     }
     
     /**
      * And-Split for initial places
+     * 
+     * @param initialPlaces
      */
-    private void andSplitPattern()
+    private void andSplitPattern(List<PlaceVertex> initialPlaces)
     {
         // new initial Place i
         PlaceVertex initialPlaceI = operationGraph.insertPlace(null);
@@ -53,7 +60,7 @@ public class WrapGraphOperation extends Operation
         operationGraph.insertArc(null, initialPlaceI, andSplitTransition);
         
         // for each old initial place i_old, create an Edge (and-split, i_old)
-        for (PlaceVertex initialPlace  : operationGraph.getInitialPlaces())
+        for (PlaceVertex initialPlace  : initialPlaces)
         {
             initialPlace.setTokens(0);
             operationGraph.insertArc(null, andSplitTransition, initialPlace);
@@ -61,8 +68,10 @@ public class WrapGraphOperation extends Operation
     }
     /**
      * And-Join for final places
+     * 
+     * @param finalPlaces
      */
-    private void andJoinPattern()
+    private void andJoinPattern(List<PlaceVertex> finalPlaces)
     {
         // new final place o
         PlaceVertex finalPlaceO = this.operationGraph.insertPlace(null);
@@ -73,7 +82,7 @@ public class WrapGraphOperation extends Operation
         this.operationGraph.insertArc(null, andJoinTransition, finalPlaceO);
         
         // for each old final palce o_old, create an Edge (o_old, and-join) 
-        for (PlaceVertex finalPlace  : this.operationGraph.getFinalPlaces())
+        for (PlaceVertex finalPlace  : finalPlaces)
         {
             this.operationGraph.insertArc(null, finalPlace, andJoinTransition);
         }
@@ -8,9 +8,12 @@ import it.wolfed.model.TransitionVertex;
  */
 public class ZeroOrMoreIterationOperation extends Operation
 {
+    private final PetriNetGraph iterationGraph;
+
     public ZeroOrMoreIterationOperation(PetriNetGraph operationGraph, PetriNetGraph iterationGraph) throws Exception
     {
         super(operationGraph);
+        this.iterationGraph = iterationGraph;
         this.operationGraph = (new OneOrMoreIterationOperation(operationGraph, iterationGraph)).getOperationGraph();
         execute();
     }
@@ -22,4 +25,13 @@ public class ZeroOrMoreIterationOperation extends Operation
         getOperationGraph().insertArc(null, this.operationGraph.getInitialPlaces().get(0), zeroTransition);
         getOperationGraph().insertArc(null, zeroTransition, this.operationGraph.getFinalPlaces().get(0));
     }
+    
+    /**
+     * A sound input makes a sound result.
+     */
+    @Override
+    protected void propagateFacts()
+    {
+        inheritSoundness(iterationGraph);
+    }
 }
\ No newline at end of file
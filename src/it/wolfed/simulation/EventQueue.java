@@ -0,0 +1,161 @@
+package it.wolfed.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Event list of a {@link TimedSimulation}: a binary min-heap on parallel
+ * primitive arrays (time, case, transition), with no object per event.
+ */
+class EventQueue
+{
+    private double[] times = new double[256];
+
+    private int[] cases = new int[256];
+
+    private int[] transitions = new int[256];
+
+    private int size;
+
+    /**
+     * Returns if no event is left.
+     *
+     * @return boolean
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of events.
+     *
+     * @return int
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Schedules an event.
+     *
+     * @param time
+     * @param caseSlot
+     * @param transition    -1 for an arrival
+     */
+    void push(double time, int caseSlot, int transition)
+    {
+        if(size == times.length)
+        {
+            times = Arrays.copyOf(times, size * 2);
+            cases = Arrays.copyOf(cases, size * 2);
+            transitions = Arrays.copyOf(transitions, size * 2);
+        }
+
+        // Sift up, moving the parents down into the hole
+        int i = size++;
+
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+
+            if(times[parent] <= time)
+            {
+                break;
+            }
+
+            move(parent, i);
+            i = parent;
+        }
+
+        times[i] = time;
+        cases[i] = caseSlot;
+        transitions[i] = transition;
+    }
+
+    /**
+     * Returns the time of the next event.
+     *
+     * @return double
+     */
+    double peekTime()
+    {
+        return times[0];
+    }
+
+    /**
+     * Returns the case of the next event.
+     *
+     * @return int
+     */
+    int peekCase()
+    {
+        return cases[0];
+    }
+
+    /**
+     * Returns the transition of the next event (-1 for an arrival).
+     *
+     * @return int
+     */
+    int peekTransition()
+    {
+        return transitions[0];
+    }
+
+    /**
+     * Removes the next event.
+     */
+    void pop()
+    {
+        size--;
+
+        if(size == 0)
+        {
+            return;
+        }
+
+        double time = times[size];
+        int caseSlot = cases[size];
+        int transition = transitions[size];
+
+        // Sift down the last event, moving the smaller children up
+        int i = 0;
+        int half = size >>> 1;
+
+        while (i < half)
+        {
+            int child = 2 * i + 1;
+
+            if(child + 1 < size && times[child + 1] < times[child])
+            {
+                child++;
+            }
+
+            if(time <= times[child])
+            {
+                break;
+            }
+
+            move(child, i);
+            i = child;
+        }
+
+        times[i] = time;
+        cases[i] = caseSlot;
+        transitions[i] = transition;
+    }
+
+    /**
+     * Copies an event to another position.
+     *
+     * @param from
+     * @param to
+     */
+    private void move(int from, int to)
+    {
+        times[to] = times[from];
+        cases[to] = cases[from];
+        transitions[to] = transitions[from];
+    }
+}
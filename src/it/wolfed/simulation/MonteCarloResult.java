@@ -0,0 +1,386 @@
+package it.wolfed.simulation;
+
+import it.wolfed.analysis.CompiledNet;
+import java.util.Arrays;
+
+/**
+ * Statistics of a {@link MonteCarloSimulation}.
+ *
+ * Every case ends in one outcome: completed (the final marking), improper
+ * completion (a token in the final place, others left behind), deadlock,
+ * or truncated (still running after the steps limit). The path lengths
+ * are those of the completed cases.
+ */
+public class MonteCarloResult
+{
+    private final CompiledNet net;
+
+    private long cases;
+
+    private long completed;
+
+    private long improper;
+
+    private long deadlocked;
+
+    private long truncated;
+
+    /**
+     * Completed cases by path length.
+     */
+    private long[] lengths = new long[64];
+
+    /**
+     * Firings by transition.
+     */
+    private final long[] firings;
+
+    /**
+     * {@link MonteCarloResult} Constructor, with no cases.
+     *
+     * @param net
+     */
+    MonteCarloResult(CompiledNet net)
+    {
+        this.net = net;
+        this.firings = new long[net.getTransitionCount()];
+    }
+
+    /**
+     * Records a completed case.
+     *
+     * @param length
+     */
+    void addCompleted(int length)
+    {
+        if(length >= lengths.length)
+        {
+            lengths = Arrays.copyOf(lengths, Math.max(length + 1, lengths.length * 2));
+        }
+
+        lengths[length]++;
+        completed++;
+        cases++;
+    }
+
+    /**
+     * Records an improper completion.
+     */
+    void addImproper()
+    {
+        improper++;
+        cases++;
+    }
+
+    /**
+     * Records a deadlock.
+     */
+    void addDeadlock()
+    {
+        deadlocked++;
+        cases++;
+    }
+
+    /**
+     * Records a truncated case.
+     */
+    void addTruncated()
+    {
+        truncated++;
+        cases++;
+    }
+
+    /**
+     * Returns the firings array, to count into.
+     *
+     * @return long[]
+     */
+    long[] getFirings()
+    {
+        return firings;
+    }
+
+    /**
+     * Adds the statistics of another result (of the same net).
+     *
+     * @param other
+     * @return MonteCarloResult
+     */
+    MonteCarloResult merge(MonteCarloResult other)
+    {
+        cases += other.cases;
+        completed += other.completed;
+        improper += other.improper;
+        deadlocked += other.deadlocked;
+        truncated += other.truncated;
+
+        if(other.lengths.length > lengths.length)
+        {
+            lengths = Arrays.copyOf(lengths, other.lengths.length);
+        }
+
+        for (int i = 0; i < other.lengths.length; i++)
+        {
+            lengths[i] += other.lengths[i];
+        }
+
+        for (int t = 0; t < firings.length; t++)
+        {
+            firings[t] += other.firings[t];
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the compiled net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Returns the number of cases.
+     *
+     * @return long
+     */
+    public long getCaseCount()
+    {
+        return cases;
+    }
+
+    /**
+     * Returns the cases reaching the final marking.
+     *
+     * @return long
+     */
+    public long getCompletedCount()
+    {
+        return completed;
+    }
+
+    /**
+     * Returns the cases ending with a token in the final place and others
+     * left behind.
+     *
+     * @return long
+     */
+    public long getImproperCount()
+    {
+        return improper;
+    }
+
+    /**
+     * Returns the cases ending in a deadlock (final place empty).
+     *
+     * @return long
+     */
+    public long getDeadlockCount()
+    {
+        return deadlocked;
+    }
+
+    /**
+     * Returns the cases stopped by the steps limit.
+     *
+     * @return long
+     */
+    public long getTruncatedCount()
+    {
+        return truncated;
+    }
+
+    /**
+     * Returns the ratio of completed cases.
+     *
+     * @return double
+     */
+    public double getCompletionRate()
+    {
+        return rate(completed);
+    }
+
+    /**
+     * Returns the ratio of deadlocked cases.
+     *
+     * @return double
+     */
+    public double getDeadlockRate()
+    {
+        return rate(deadlocked);
+    }
+
+    /**
+     * Returns the ratio of improper completions.
+     *
+     * @return double
+     */
+    public double getImproperRate()
+    {
+        return rate(improper);
+    }
+
+    /**
+     * Returns the ratio of truncated cases.
+     *
+     * @return double
+     */
+    public double getTruncatedRate()
+    {
+        return rate(truncated);
+    }
+
+    /**
+     * Returns the completed cases with a path length.
+     *
+     * @param length
+     * @return long
+     */
+    public long getLengthCount(int length)
+    {
+        return length < lengths.length ? lengths[length] : 0;
+    }
+
+    /**
+     * Returns the longest completed path, -1 if none.
+     *
+     * @return int
+     */
+    public int getMaxLength()
+    {
+        for (int i = lengths.length - 1; i >= 0; i--)
+        {
+            if(lengths[i] != 0)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the shortest completed path, -1 if none.
+     *
+     * @return int
+     */
+    public int getMinLength()
+    {
+        for (int i = 0; i < lengths.length; i++)
+        {
+            if(lengths[i] != 0)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the mean length of the completed paths.
+     *
+     * @return double
+     */
+    public double getMeanLength()
+    {
+        if(completed == 0)
+        {
+            return Double.NaN;
+        }
+
+        double sum = 0;
+
+        for (int i = 0; i < lengths.length; i++)
+        {
+            sum += (double) i * lengths[i];
+        }
+
+        return sum / completed;
+    }
+
+    /**
+     * Returns a percentile of the completed path lengths (the smallest
+     * length covering the ratio of the cases).
+     *
+     * @param ratio     between 0 and 1
+     * @return int      -1 if no case completed
+     */
+    public int getLengthPercentile(double ratio)
+    {
+        if(completed == 0)
+        {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(ratio * completed));
+        long seen = 0;
+
+        for (int i = 0; i < lengths.length; i++)
+        {
+            seen += lengths[i];
+
+            if(seen >= rank)
+            {
+                return i;
+            }
+        }
+
+        return getMaxLength();
+    }
+
+    /**
+     * Returns the firings of a transition, over all the cases.
+     *
+     * @param transition
+     * @return long
+     */
+    public long getFiringCount(int transition)
+    {
+        return firings[transition];
+    }
+
+    /**
+     * Returns the mean firings of a transition per case.
+     *
+     * @param transition
+     * @return double
+     */
+    public double getFiringFrequency(int transition)
+    {
+        return cases == 0 ? 0 : (double) firings[transition] / cases;
+    }
+
+    /**
+     * Returns a ratio of the cases.
+     *
+     * @param count
+     * @return double
+     */
+    private double rate(long count)
+    {
+        return cases == 0 ? 0 : (double) count / cases;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "%d cases: %.2f%% completed, %.2f%% deadlocked, %.2f%% improper, %.2f%% truncated; "
+            + "length min %d, mean %.2f, median %d, p95 %d, max %d",
+            cases,
+            100 * getCompletionRate(),
+            100 * getDeadlockRate(),
+            100 * getImproperRate(),
+            100 * getTruncatedRate(),
+            getMinLength(),
+            getMeanLength(),
+            getLengthPercentile(0.5),
+            getLengthPercentile(0.95),
+            getMaxLength()
+        );
+    }
+}
@@ -0,0 +1,313 @@
+package it.wolfed.simulation;
+
+import it.wolfed.analysis.CompiledNet;
+import it.wolfed.model.PetriNetGraph;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Monte Carlo simulation of the cases of a workflow net.
+ *
+ * Each case is a random walk of a {@link TokenGame}, from a token in the
+ * initial place (plus the resources of the net) up to a deadlock or the
+ * steps limit. The cases are split in fixed chunks, each with its own
+ * random stream derived from the seed: the chunks run on a fork/join pool,
+ * every task counting into its own {@link MonteCarloResult}, merged on
+ * join. No state is shared while simulating, and the statistics of a seed
+ * are the same whatever the parallelism.
+ */
+public class MonteCarloSimulation
+{
+    /**
+     * Default steps limit of a case.
+     */
+    public static final int DEFAULT_MAX_STEPS = 100000;
+
+    /**
+     * Cases of a chunk (one random stream).
+     */
+    private static final int CHUNK_CASES = 4096;
+
+    private final CompiledNet net;
+
+    private final int initialPlace;
+
+    private final int finalPlace;
+
+    private long cases = 100000;
+
+    private int maxSteps = DEFAULT_MAX_STEPS;
+
+    private long seed = System.nanoTime();
+
+    private int parallelism = 1;
+
+    /**
+     * {@link MonteCarloSimulation} Constructor.
+     *
+     * Must be called on the thread owning the graph model;
+     * {@link MonteCarloSimulation#run()} can then run on any thread.
+     *
+     * @param graph
+     * @throws IllegalArgumentException if not a workflow net
+     */
+    public MonteCarloSimulation(PetriNetGraph graph)
+    {
+        if( ! graph.isWorkFlow())
+        {
+            throw new IllegalArgumentException("Not a workflow net");
+        }
+
+        net = CompiledNet.compile(graph);
+        initialPlace = net.indexOfPlace(graph.getInitialPlaces().get(0));
+        finalPlace = net.indexOfPlace(graph.getFinalPlaces().get(0));
+    }
+
+    /**
+     * {@link MonteCarloSimulation} Constructor.
+     *
+     * @param net
+     * @param initialPlace
+     * @param finalPlace
+     */
+    public MonteCarloSimulation(CompiledNet net, int initialPlace, int finalPlace)
+    {
+        this.net = net;
+        this.initialPlace = initialPlace;
+        this.finalPlace = finalPlace;
+    }
+
+    /**
+     * Sets the number of cases.
+     *
+     * @param cases
+     * @return MonteCarloSimulation
+     */
+    public MonteCarloSimulation setCases(long cases)
+    {
+        this.cases = cases;
+        return this;
+    }
+
+    /**
+     * Sets the steps limit of a case.
+     *
+     * @param maxSteps
+     * @return MonteCarloSimulation
+     */
+    public MonteCarloSimulation setMaxSteps(int maxSteps)
+    {
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    /**
+     * Sets the seed, for repeatable runs.
+     *
+     * @param seed
+     * @return MonteCarloSimulation
+     */
+    public MonteCarloSimulation setSeed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Returns the seed.
+     *
+     * @return long
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Sets the worker threads.
+     *
+     * @param parallelism
+     * @return MonteCarloSimulation
+     */
+    public MonteCarloSimulation setParallelism(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Simulates the cases.
+     *
+     * @return MonteCarloResult
+     */
+    public MonteCarloResult run()
+    {
+        int chunks = (int) ((cases + CHUNK_CASES - 1) / CHUNK_CASES);
+
+        if(parallelism == 1 || chunks < 2)
+        {
+            MonteCarloResult result = new MonteCarloResult(net);
+
+            for (int chunk = 0; chunk < chunks; chunk++)
+            {
+                result.merge(simulate(chunk));
+            }
+
+            return result;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try
+        {
+            return pool.invoke(new SimulationTask(0, chunks));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Simulates the cases of a chunk.
+     *
+     * @param chunk
+     * @return MonteCarloResult
+     */
+    private MonteCarloResult simulate(int chunk)
+    {
+        MonteCarloResult result = new MonteCarloResult(net);
+        long[] firings = result.getFirings();
+        Random random = new Random(mix(seed + chunk * 0x9e3779b97f4a7c15L));
+
+        int[] start = net.getInitialMarking();
+        start[initialPlace] = 1;
+
+        TokenGame game = new TokenGame(net);
+        game.setMarking(start);
+
+        long first = (long) chunk * CHUNK_CASES;
+        long last = Math.min(cases, first + CHUNK_CASES);
+
+        for (long i = first; i < last; i++)
+        {
+            int steps = 0;
+            int transition;
+
+            while (steps < maxSteps && (transition = game.step(random)) >= 0)
+            {
+                firings[transition]++;
+                steps++;
+            }
+
+            if( ! game.isDeadlock())
+            {
+                result.addTruncated();
+            }
+            else if(game.getTokens(finalPlace) == 0)
+            {
+                result.addDeadlock();
+            }
+            else if(isFinal(game, start))
+            {
+                result.addCompleted(steps);
+            }
+            else
+            {
+                result.addImproper();
+            }
+
+            // Back to the start, touching the changed places only
+            for (int p = 0; p < start.length; p++)
+            {
+                if(game.getTokens(p) != start[p])
+                {
+                    game.setTokens(p, start[p]);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns if the game is in the final marking: a token moved from the
+     * initial to the final place, the resources given back.
+     *
+     * @param game
+     * @param start
+     * @return boolean
+     */
+    private boolean isFinal(TokenGame game, int[] start)
+    {
+        for (int p = 0; p < start.length; p++)
+        {
+            int expected = start[p];
+
+            if(p == initialPlace)
+            {
+                expected--;
+            }
+
+            if(p == finalPlace)
+            {
+                expected++;
+            }
+
+            if(game.getTokens(p) != expected)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Bit mixer (splitmix64 finalizer), spreading the seeds of the chunks.
+     *
+     * @param h
+     * @return long
+     */
+    private static long mix(long h)
+    {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Simulates a range of chunks, splitting it until a single one is left,
+     * and merges the statistics of the halves.
+     */
+    private class SimulationTask extends RecursiveTask<MonteCarloResult>
+    {
+        private final int from;
+
+        private final int to;
+
+        SimulationTask(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MonteCarloResult compute()
+        {
+            if(to - from == 1)
+            {
+                return simulate(from);
+            }
+
+            int middle = (from + to) >>> 1;
+            SimulationTask left = new SimulationTask(from, middle);
+            left.fork();
+
+            MonteCarloResult right = new SimulationTask(middle, to).compute();
+
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package it.wolfed.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of durations (seconds), in logarithmic buckets: each
+ * bucket is 1% wider than the previous one, so that percentiles are
+ * within 1% of the exact value at any scale, in constant memory per
+ * decade. Durations under a millisecond count as zero.
+ */
+public class TimeHistogram
+{
+    /**
+     * Smallest duration told apart from zero.
+     */
+    private static final double RESOLUTION = 0.001;
+
+    /**
+     * Ratio between the bounds of a bucket.
+     */
+    private static final double GROWTH = 1.01;
+
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    /**
+     * Last bucket: every duration over about 30000 years (or infinite)
+     * falls in it, so a huge value cannot overflow the bucket index.
+     */
+    private static final int MAX_BUCKET = 1 + (int) (Math.log(1e12 / RESOLUTION) / LOG_GROWTH);
+
+    /**
+     * Counts: zero first, then bucket i covers
+     * [RESOLUTION * GROWTH^(i-1), RESOLUTION * GROWTH^i).
+     */
+    private long[] counts = new long[1024];
+
+    private long count;
+
+    private double sum;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max;
+
+    /**
+     * Adds a duration.
+     *
+     * @param value
+     */
+    void add(double value)
+    {
+        int bucket = value < RESOLUTION ? 0 : 1 + (int) Math.min(MAX_BUCKET - 1, Math.log(value / RESOLUTION) / LOG_GROWTH);
+
+        if(bucket >= counts.length)
+        {
+            counts = Arrays.copyOf(counts, Math.max(bucket + 1, counts.length * 2));
+        }
+
+        counts[bucket]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Returns the number of durations.
+     *
+     * @return long
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the mean duration.
+     *
+     * @return double
+     */
+    public double getMean()
+    {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Returns the shortest duration.
+     *
+     * @return double
+     */
+    public double getMin()
+    {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Returns the longest duration.
+     *
+     * @return double
+     */
+    public double getMax()
+    {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * Returns a percentile (the middle of the bucket covering the ratio of
+     * the durations, clamped to the exact extremes).
+     *
+     * @param ratio     between 0 and 1
+     * @return double
+     */
+    public double getPercentile(double ratio)
+    {
+        if(count == 0)
+        {
+            return Double.NaN;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(ratio * count));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+
+            if(seen >= rank)
+            {
+                double value = i == 0 ? 0 : RESOLUTION * Math.pow(GROWTH, i - 0.5);
+                return Math.min(max, Math.max(min, value));
+            }
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,927 @@
+package it.wolfed.simulation;
+
+import it.wolfed.analysis.CompiledNet;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.model.TransitionVertex;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Discrete-event simulation of a workflow net with timed transitions.
+ *
+ * Cases arrive as a Poisson process, each with its own tokens: a token in
+ * the initial place, plus a copy of the rest of the initial marking. A
+ * transition lasts the duration of its {@link TransitionVertex} (WoPeD
+ * time and time unit), as a fixed or exponential delay with that mean;
+ * untimed transitions fire at once. Each timed transition has a pool of
+ * servers shared by all the cases: a case enabling it reserves the input
+ * tokens, chosen at random among its enabled transitions, and waits in a
+ * FIFO queue for a free server.
+ *
+ * Events (arrivals and ends of firings) are kept in a primitive binary
+ * heap. Arrivals stop at the horizon; the cases in progress are then run
+ * to the end. A case ends when a token reaches the final place (completed
+ * if in the final marking, improper otherwise), when nothing is left to
+ * fire (deadlock), or at the steps limit (truncated, e.g. a livelock).
+ */
+public class TimedSimulation
+{
+    /**
+     * Delay distributions, from the mean duration of a transition.
+     */
+    public enum Delay
+    {
+        FIXED,
+        EXPONENTIAL
+    }
+
+    /**
+     * Default horizon of the arrivals: one year.
+     */
+    public static final double DEFAULT_HORIZON = 365 * 86400;
+
+    /**
+     * Default firings limit of a case.
+     */
+    public static final int DEFAULT_MAX_STEPS = 100000;
+
+    private final CompiledNet net;
+
+    private final int initialPlace;
+
+    private final int finalPlace;
+
+    /**
+     * Mean duration of each transition, in seconds.
+     */
+    private final double[] durations;
+
+    private double interarrival = 3600;
+
+    private double horizon = DEFAULT_HORIZON;
+
+    private int servers = 1;
+
+    private int maxSteps = DEFAULT_MAX_STEPS;
+
+    private Delay delay = Delay.EXPONENTIAL;
+
+    private long seed = System.nanoTime();
+
+    /**
+     * {@link TimedSimulation} Constructor.
+     *
+     * Must be called on the thread owning the graph model;
+     * {@link TimedSimulation#run()} can then run on any thread.
+     *
+     * @param graph
+     * @throws IllegalArgumentException if not a workflow net, or if a
+     *         duration is infinite
+     */
+    public TimedSimulation(PetriNetGraph graph)
+    {
+        if( ! graph.isWorkFlow())
+        {
+            throw new IllegalArgumentException("Not a workflow net");
+        }
+
+        net = CompiledNet.compile(graph);
+        initialPlace = net.indexOfPlace(graph.getInitialPlaces().get(0));
+        finalPlace = net.indexOfPlace(graph.getFinalPlaces().get(0));
+        durations = new double[net.getTransitionCount()];
+
+        for (int t = 0; t < durations.length; t++)
+        {
+            durations[t] = net.getTransition(t).getDuration();
+        }
+
+        checkDurations(durations);
+    }
+
+    /**
+     * {@link TimedSimulation} Constructor.
+     *
+     * @param net
+     * @param initialPlace
+     * @param finalPlace
+     * @param durations     mean duration of each transition, in seconds
+     * @throws IllegalArgumentException if a duration is negative, NaN or
+     *         infinite
+     */
+    public TimedSimulation(CompiledNet net, int initialPlace, int finalPlace, double[] durations)
+    {
+        this.net = net;
+        this.initialPlace = initialPlace;
+        this.finalPlace = finalPlace;
+        this.durations = checkDurations(durations.clone());
+    }
+
+    /**
+     * Rejects the durations which would move the clock backwards or
+     * nowhere: negative, NaN or infinite.
+     *
+     * @param durations
+     * @return double[] the durations
+     * @throws IllegalArgumentException
+     */
+    private double[] checkDurations(double[] durations)
+    {
+        for (int t = 0; t < durations.length; t++)
+        {
+            if( ! (durations[t] >= 0 && durations[t] <= Double.MAX_VALUE))
+            {
+                throw new IllegalArgumentException("Invalid duration " + durations[t] + " of transition " + net.getTransition(t).getId());
+            }
+        }
+
+        return durations;
+    }
+
+    /**
+     * Sets the mean time between two arrivals, in seconds.
+     *
+     * @param interarrival
+     * @return TimedSimulation
+     */
+    public TimedSimulation setInterarrival(double interarrival)
+    {
+        this.interarrival = interarrival;
+        return this;
+    }
+
+    /**
+     * Sets the time of the last arrival, in seconds.
+     *
+     * @param horizon
+     * @return TimedSimulation
+     */
+    public TimedSimulation setHorizon(double horizon)
+    {
+        this.horizon = horizon;
+        return this;
+    }
+
+    /**
+     * Sets the servers of each timed transition (0 for unlimited).
+     *
+     * @param servers
+     * @return TimedSimulation
+     */
+    public TimedSimulation setServers(int servers)
+    {
+        this.servers = Math.max(0, servers);
+        return this;
+    }
+
+    /**
+     * Sets the firings limit of a case.
+     *
+     * @param maxSteps
+     * @return TimedSimulation
+     */
+    public TimedSimulation setMaxSteps(int maxSteps)
+    {
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    /**
+     * Sets the delay distribution.
+     *
+     * @param delay
+     * @return TimedSimulation
+     */
+    public TimedSimulation setDelay(Delay delay)
+    {
+        this.delay = delay;
+        return this;
+    }
+
+    /**
+     * Sets the seed, for repeatable runs.
+     *
+     * @param seed
+     * @return TimedSimulation
+     */
+    public TimedSimulation setSeed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @return TimedSimulationResult
+     */
+    public TimedSimulationResult run()
+    {
+        return new Run().simulate();
+    }
+
+    /**
+     * State of a run.
+     */
+    private class Run
+    {
+        private final int[] presetStart = net.getPresetStart();
+
+        private final int[] preset = net.getPreset();
+
+        private final int[] presetWeight = net.getPresetWeight();
+
+        private final int[] postsetStart = net.getPostsetStart();
+
+        private final int[] postset = net.getPostset();
+
+        private final int[] postsetWeight = net.getPostsetWeight();
+
+        private final int[] consumersStart = net.getConsumersStart();
+
+        private final int[] consumers = net.getConsumers();
+
+        private final Random random = new Random(seed);
+
+        private final EventQueue events = new EventQueue();
+
+        /**
+         * Marking a case starts from.
+         */
+        private final int[] start;
+
+        /**
+         * Marking a case completes in.
+         */
+        private final int[] end;
+
+        /*
+         * Cases, by slot: the marking as a short list of (place, tokens),
+         * the arrival time, the firings reserved or in progress, the
+         * firings so far, and if already ended (the slot is freed once
+         * nothing is pending).
+         */
+        private int[][] casePlaces = new int[64][];
+
+        private int[][] caseTokens = new int[64][];
+
+        private int[] caseSize = new int[64];
+
+        private double[] caseArrival = new double[64];
+
+        private int[] casePending = new int[64];
+
+        private int[] caseSteps = new int[64];
+
+        private boolean[] caseEnded = new boolean[64];
+
+        private int slotCount;
+
+        private int[] freeSlots = new int[64];
+
+        private int freeCount;
+
+        /*
+         * FIFO queues of the transitions (case, time enqueued), as ring
+         * buffers.
+         */
+        private final int[][] queueCases;
+
+        private final double[][] queueTimes;
+
+        private final int[] queueHead;
+
+        private final int[] queueSize;
+
+        /**
+         * Firings in progress, by transition.
+         */
+        private final int[] busy;
+
+        /*
+         * Tokens of all the cases, by place, and their integral over time.
+         */
+        private final long[] tokens;
+
+        private final double[] tokensArea;
+
+        private final double[] tokensSince;
+
+        private final double[] busyArea;
+
+        private final double[] busySince;
+
+        private final long[] firings;
+
+        private final TimeHistogram cycleTimes = new TimeHistogram();
+
+        private final TimeHistogram waitingTimes = new TimeHistogram();
+
+        /**
+         * Enabled transitions of a case (scratch) and visit stamps.
+         */
+        private final int[] candidates;
+
+        private final int[] visited;
+
+        private int stamp;
+
+        private long arrivals;
+
+        private long completed;
+
+        private long improper;
+
+        private long deadlocked;
+
+        private long truncated;
+
+        private long eventCount;
+
+        Run()
+        {
+            int places = net.getPlaceCount();
+            int transitions = net.getTransitionCount();
+
+            start = net.getInitialMarking();
+            start[initialPlace] = 1;
+            end = start.clone();
+            end[initialPlace]--;
+            end[finalPlace]++;
+
+            queueCases = new int[transitions][];
+            queueTimes = new double[transitions][];
+            queueHead = new int[transitions];
+            queueSize = new int[transitions];
+            busy = new int[transitions];
+            busyArea = new double[transitions];
+            busySince = new double[transitions];
+            firings = new long[transitions];
+            candidates = new int[transitions];
+            visited = new int[transitions];
+
+            tokens = new long[places];
+            tokensArea = new double[places];
+            tokensSince = new double[places];
+        }
+
+        /**
+         * Processes the events up to the end of the last case.
+         *
+         * @return TimedSimulationResult
+         */
+        TimedSimulationResult simulate()
+        {
+            double now = 0;
+            events.push(0, -1, -1);
+
+            while ( ! events.isEmpty())
+            {
+                now = events.peekTime();
+                int caseSlot = events.peekCase();
+                int transition = events.peekTransition();
+                events.pop();
+                eventCount++;
+
+                if(transition < 0)
+                {
+                    arrive(now);
+                }
+                else
+                {
+                    complete(caseSlot, transition, now);
+                }
+            }
+
+            double[] occupancy = new double[tokens.length];
+            double[] utilization = new double[busy.length];
+
+            for (int p = 0; p < occupancy.length; p++)
+            {
+                occupancy[p] = now == 0 ? 0 : (tokensArea[p] + tokens[p] * (now - tokensSince[p])) / now;
+            }
+
+            for (int t = 0; t < utilization.length; t++)
+            {
+                utilization[t] = now == 0 ? 0 : busyArea[t] / now / (isQueued(t) ? servers : 1);
+            }
+
+            return new TimedSimulationResult(net, arrivals, completed, improper, deadlocked, truncated, now,
+                cycleTimes, waitingTimes, occupancy, utilization, firings, eventCount);
+        }
+
+        /**
+         * A new case, and the next arrival.
+         *
+         * @param now
+         */
+        private void arrive(double now)
+        {
+            if(now >= horizon)
+            {
+                return;
+            }
+
+            arrivals++;
+            events.push(now - interarrival * Math.log(1 - random.nextDouble()), -1, -1);
+
+            int c = allocate();
+            caseArrival[c] = now;
+
+            for (int p = 0; p < start.length; p++)
+            {
+                if(start[p] != 0)
+                {
+                    produce(c, p, start[p], now);
+                }
+            }
+
+            advance(c, now);
+        }
+
+        /**
+         * The end of a firing: the server goes to the next case in the
+         * queue, the tokens to the case.
+         *
+         * @param c
+         * @param transition
+         * @param now
+         */
+        private void complete(int c, int transition, double now)
+        {
+            changeBusy(transition, -1, now);
+
+            if(isQueued(transition))
+            {
+                serveNext(transition, now);
+            }
+
+            casePending[c]--;
+
+            if(caseEnded[c])
+            {
+                if(casePending[c] == 0)
+                {
+                    release(c);
+                }
+
+                return;
+            }
+
+            for (int k = postsetStart[transition]; k < postsetStart[transition + 1]; k++)
+            {
+                produce(c, postset[k], postsetWeight[k], now);
+            }
+
+            advance(c, now);
+        }
+
+        /**
+         * Starts the enabled transitions of a case, chosen at random, until
+         * none is left; ends the case on a token in the final place or
+         * with nothing pending.
+         *
+         * @param c
+         * @param now
+         */
+        private void advance(int c, double now)
+        {
+            if(getTokens(c, finalPlace) > 0)
+            {
+                if(casePending[c] == 0 && isEnd(c))
+                {
+                    completed++;
+                    cycleTimes.add(now - caseArrival[c]);
+                }
+                else
+                {
+                    improper++;
+                }
+
+                end(c, now);
+                return;
+            }
+
+            while (true)
+            {
+                if(caseSteps[c] == maxSteps)
+                {
+                    truncated++;
+                    end(c, now);
+                    return;
+                }
+
+                int count = 0;
+                stamp++;
+
+                for (int i = 0; i < caseSize[c]; i++)
+                {
+                    int p = casePlaces[c][i];
+
+                    for (int j = consumersStart[p]; j < consumersStart[p + 1]; j++)
+                    {
+                        int t = consumers[j];
+
+                        if(visited[t] != stamp)
+                        {
+                            visited[t] = stamp;
+
+                            if(isEnabled(c, t))
+                            {
+                                candidates[count++] = t;
+                            }
+                        }
+                    }
+                }
+
+                if(count == 0)
+                {
+                    break;
+                }
+
+                int transition = candidates[count == 1 ? 0 : random.nextInt(count)];
+
+                for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+                {
+                    consume(c, preset[k], presetWeight[k]);
+                }
+
+                casePending[c]++;
+                caseSteps[c]++;
+                request(c, transition, now);
+            }
+
+            if(casePending[c] == 0)
+            {
+                deadlocked++;
+                end(c, now);
+            }
+        }
+
+        /**
+         * A case asks for a transition: started at once if untimed or a
+         * server is free, queued otherwise.
+         *
+         * @param c
+         * @param transition
+         * @param now
+         */
+        private void request(int c, int transition, double now)
+        {
+            if( ! isQueued(transition) || busy[transition] < servers)
+            {
+                start(c, transition, now, now);
+                return;
+            }
+
+            if(queueCases[transition] == null)
+            {
+                queueCases[transition] = new int[16];
+                queueTimes[transition] = new double[16];
+            }
+            else if(queueSize[transition] == queueCases[transition].length)
+            {
+                // Unroll the ring into a larger one
+                int length = queueCases[transition].length;
+                int[] cases = new int[length * 2];
+                double[] times = new double[length * 2];
+
+                for (int i = 0; i < length; i++)
+                {
+                    cases[i] = queueCases[transition][(queueHead[transition] + i) % length];
+                    times[i] = queueTimes[transition][(queueHead[transition] + i) % length];
+                }
+
+                queueCases[transition] = cases;
+                queueTimes[transition] = times;
+                queueHead[transition] = 0;
+            }
+
+            int tail = (queueHead[transition] + queueSize[transition]++) % queueCases[transition].length;
+            queueCases[transition][tail] = c;
+            queueTimes[transition][tail] = now;
+        }
+
+        /**
+         * Starts the next queued firing of a transition, dropping those of
+         * the ended cases.
+         *
+         * @param transition
+         * @param now
+         */
+        private void serveNext(int transition, double now)
+        {
+            while (queueSize[transition] > 0 && busy[transition] < servers)
+            {
+                int head = queueHead[transition];
+                int c = queueCases[transition][head];
+                double enqueued = queueTimes[transition][head];
+
+                queueHead[transition] = (head + 1) % queueCases[transition].length;
+                queueSize[transition]--;
+
+                if(caseEnded[c])
+                {
+                    for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+                    {
+                        changeTokens(preset[k], -presetWeight[k], now);
+                    }
+
+                    if(--casePending[c] == 0)
+                    {
+                        release(c);
+                    }
+
+                    continue;
+                }
+
+                start(c, transition, enqueued, now);
+            }
+        }
+
+        /**
+         * Starts a firing: the reserved tokens leave their places.
+         *
+         * @param c
+         * @param transition
+         * @param enqueued
+         * @param now
+         */
+        private void start(int c, int transition, double enqueued, double now)
+        {
+            for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+            {
+                changeTokens(preset[k], -presetWeight[k], now);
+            }
+
+            if(durations[transition] > 0)
+            {
+                waitingTimes.add(now - enqueued);
+            }
+
+            firings[transition]++;
+            changeBusy(transition, 1, now);
+            events.push(now + sample(durations[transition]), c, transition);
+        }
+
+        /**
+         * Ends a case: its tokens leave the net (reserved ones leave when
+         * dequeued).
+         *
+         * @param c
+         * @param now
+         */
+        private void end(int c, double now)
+        {
+            caseEnded[c] = true;
+
+            for (int i = 0; i < caseSize[c]; i++)
+            {
+                changeTokens(casePlaces[c][i], -caseTokens[c][i], now);
+            }
+
+            caseSize[c] = 0;
+
+            if(casePending[c] == 0)
+            {
+                release(c);
+            }
+        }
+
+        /**
+         * Returns if the timed transition waits for servers.
+         *
+         * @param transition
+         * @return boolean
+         */
+        private boolean isQueued(int transition)
+        {
+            return servers > 0 && durations[transition] > 0;
+        }
+
+        /**
+         * Returns a delay.
+         *
+         * @param mean
+         * @return double
+         */
+        private double sample(double mean)
+        {
+            if(mean == 0 || delay == Delay.FIXED)
+            {
+                return mean;
+            }
+
+            return -mean * Math.log(1 - random.nextDouble());
+        }
+
+        /**
+         * Returns if a transition is enabled in a case.
+         *
+         * @param c
+         * @param transition
+         * @return boolean
+         */
+        private boolean isEnabled(int c, int transition)
+        {
+            for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+            {
+                if(getTokens(c, preset[k]) < presetWeight[k])
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Returns if a case is in the final marking.
+         *
+         * @param c
+         * @return boolean
+         */
+        private boolean isEnd(int c)
+        {
+            int marked = 0;
+
+            for (int p = 0; p < end.length; p++)
+            {
+                if(end[p] != 0)
+                {
+                    marked++;
+
+                    if(getTokens(c, p) != end[p])
+                    {
+                        return false;
+                    }
+                }
+            }
+
+            return marked == caseSize[c];
+        }
+
+        /**
+         * Returns the tokens of a place in a case.
+         *
+         * @param c
+         * @param place
+         * @return int
+         */
+        private int getTokens(int c, int place)
+        {
+            int[] places = casePlaces[c];
+
+            for (int i = 0; i < caseSize[c]; i++)
+            {
+                if(places[i] == place)
+                {
+                    return caseTokens[c][i];
+                }
+            }
+
+            return 0;
+        }
+
+        /**
+         * Adds tokens to a place of a case.
+         *
+         * @param c
+         * @param place
+         * @param count
+         * @param now
+         */
+        private void produce(int c, int place, int count, double now)
+        {
+            changeTokens(place, count, now);
+
+            for (int i = 0; i < caseSize[c]; i++)
+            {
+                if(casePlaces[c][i] == place)
+                {
+                    caseTokens[c][i] += count;
+                    return;
+                }
+            }
+
+            if(caseSize[c] == casePlaces[c].length)
+            {
+                casePlaces[c] = Arrays.copyOf(casePlaces[c], caseSize[c] * 2);
+                caseTokens[c] = Arrays.copyOf(caseTokens[c], caseSize[c] * 2);
+            }
+
+            casePlaces[c][caseSize[c]] = place;
+            caseTokens[c][caseSize[c]++] = count;
+        }
+
+        /**
+         * Reserves tokens of a place of a case (they stay in the place,
+         * for the occupancy, until the firing starts).
+         *
+         * @param c
+         * @param place
+         * @param count
+         */
+        private void consume(int c, int place, int count)
+        {
+            for (int i = 0; i < caseSize[c]; i++)
+            {
+                if(casePlaces[c][i] == place)
+                {
+                    caseTokens[c][i] -= count;
+
+                    if(caseTokens[c][i] == 0)
+                    {
+                        int last = --caseSize[c];
+                        casePlaces[c][i] = casePlaces[c][last];
+                        caseTokens[c][i] = caseTokens[c][last];
+                    }
+
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Changes the tokens of a place over all the cases.
+         *
+         * @param place
+         * @param delta
+         * @param now
+         */
+        private void changeTokens(int place, int delta, double now)
+        {
+            tokensArea[place] += tokens[place] * (now - tokensSince[place]);
+            tokensSince[place] = now;
+            tokens[place] += delta;
+        }
+
+        /**
+         * Changes the firings in progress of a transition.
+         *
+         * @param transition
+         * @param delta
+         * @param now
+         */
+        private void changeBusy(int transition, int delta, double now)
+        {
+            busyArea[transition] += busy[transition] * (now - busySince[transition]);
+            busySince[transition] = now;
+            busy[transition] += delta;
+        }
+
+        /**
+         * Returns a free case slot.
+         *
+         * @return int
+         */
+        private int allocate()
+        {
+            int c;
+
+            if(freeCount > 0)
+            {
+                c = freeSlots[--freeCount];
+            }
+            else
+            {
+                if(slotCount == casePlaces.length)
+                {
+                    int length = slotCount * 2;
+                    casePlaces = Arrays.copyOf(casePlaces, length);
+                    caseTokens = Arrays.copyOf(caseTokens, length);
+                    caseSize = Arrays.copyOf(caseSize, length);
+                    caseArrival = Arrays.copyOf(caseArrival, length);
+                    casePending = Arrays.copyOf(casePending, length);
+                    caseSteps = Arrays.copyOf(caseSteps, length);
+                    caseEnded = Arrays.copyOf(caseEnded, length);
+                }
+
+                c = slotCount++;
+                casePlaces[c] = new int[4];
+                caseTokens[c] = new int[4];
+            }
+
+            caseSize[c] = 0;
+            casePending[c] = 0;
+            caseSteps[c] = 0;
+            caseEnded[c] = false;
+
+            return c;
+        }
+
+        /**
+         * Frees the slot of an ended case, with nothing pending.
+         *
+         * @param c
+         */
+        private void release(int c)
+        {
+            if(freeCount == freeSlots.length)
+            {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+
+            freeSlots[freeCount++] = c;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package it.wolfed.simulation;
+
+import it.wolfed.analysis.CompiledNet;
+
+/**
+ * Statistics of a {@link TimedSimulation}. Times are in seconds.
+ */
+public class TimedSimulationResult
+{
+    private final CompiledNet net;
+
+    private final long arrivals;
+
+    private final long completed;
+
+    private final long improper;
+
+    private final long deadlocked;
+
+    private final long truncated;
+
+    private final double endTime;
+
+    private final TimeHistogram cycleTimes;
+
+    private final TimeHistogram waitingTimes;
+
+    private final double[] occupancy;
+
+    private final double[] utilization;
+
+    private final long[] firings;
+
+    private final long events;
+
+    /**
+     * {@link TimedSimulationResult} Constructor.
+     *
+     * @param net
+     * @param arrivals
+     * @param completed
+     * @param improper
+     * @param deadlocked
+     * @param truncated
+     * @param endTime
+     * @param cycleTimes
+     * @param waitingTimes
+     * @param occupancy
+     * @param utilization
+     * @param firings
+     * @param events
+     */
+    TimedSimulationResult(CompiledNet net, long arrivals, long completed, long improper, long deadlocked,
+            long truncated, double endTime, TimeHistogram cycleTimes, TimeHistogram waitingTimes,
+            double[] occupancy, double[] utilization, long[] firings, long events)
+    {
+        this.net = net;
+        this.arrivals = arrivals;
+        this.completed = completed;
+        this.improper = improper;
+        this.deadlocked = deadlocked;
+        this.truncated = truncated;
+        this.endTime = endTime;
+        this.cycleTimes = cycleTimes;
+        this.waitingTimes = waitingTimes;
+        this.occupancy = occupancy;
+        this.utilization = utilization;
+        this.firings = firings;
+        this.events = events;
+    }
+
+    /**
+     * Returns the compiled net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Returns the cases arrived.
+     *
+     * @return long
+     */
+    public long getArrivalCount()
+    {
+        return arrivals;
+    }
+
+    /**
+     * Returns the cases reaching the final marking.
+     *
+     * @return long
+     */
+    public long getCompletedCount()
+    {
+        return completed;
+    }
+
+    /**
+     * Returns the cases putting a token in the final place with others left
+     * behind.
+     *
+     * @return long
+     */
+    public long getImproperCount()
+    {
+        return improper;
+    }
+
+    /**
+     * Returns the cases stuck in a deadlock.
+     *
+     * @return long
+     */
+    public long getDeadlockCount()
+    {
+        return deadlocked;
+    }
+
+    /**
+     * Returns the cases stopped by the steps limit.
+     *
+     * @return long
+     */
+    public long getTruncatedCount()
+    {
+        return truncated;
+    }
+
+    /**
+     * Returns the time of the last event (the cases are run to the end).
+     *
+     * @return double
+     */
+    public double getEndTime()
+    {
+        return endTime;
+    }
+
+    /**
+     * Returns the completed cases per second.
+     *
+     * @return double
+     */
+    public double getThroughput()
+    {
+        return endTime == 0 ? 0 : completed / endTime;
+    }
+
+    /**
+     * Returns the cycle times (arrival to completion) of the completed
+     * cases.
+     *
+     * @return TimeHistogram
+     */
+    public TimeHistogram getCycleTimes()
+    {
+        return cycleTimes;
+    }
+
+    /**
+     * Returns the waiting times of the timed transitions (enabled in a
+     * case to started by a server).
+     *
+     * @return TimeHistogram
+     */
+    public TimeHistogram getWaitingTimes()
+    {
+        return waitingTimes;
+    }
+
+    /**
+     * Returns the mean tokens of a place, over all the cases (the tokens
+     * waiting for a server included).
+     *
+     * @param place
+     * @return double
+     */
+    public double getOccupancy(int place)
+    {
+        return occupancy[place];
+    }
+
+    /**
+     * Returns the busy ratio of the servers of a transition (the mean
+     * firings in progress if unlimited).
+     *
+     * @param transition
+     * @return double
+     */
+    public double getUtilization(int transition)
+    {
+        return utilization[transition];
+    }
+
+    /**
+     * Returns the firings of a transition.
+     *
+     * @param transition
+     * @return long
+     */
+    public long getFiringCount(int transition)
+    {
+        return firings[transition];
+    }
+
+    /**
+     * Returns the events processed.
+     *
+     * @return long
+     */
+    public long getEventCount()
+    {
+        return events;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "%d cases: %d completed, %d deadlocked, %d improper, %d truncated; throughput %.3f/h; "
+            + "cycle time mean %.1fs, median %.1fs, p95 %.1fs; waiting time mean %.1fs, median %.1fs, p95 %.1fs",
+            arrivals,
+            completed,
+            deadlocked,
+            improper,
+            truncated,
+            3600 * getThroughput(),
+            cycleTimes.getMean(),
+            cycleTimes.getPercentile(0.5),
+            cycleTimes.getPercentile(0.95),
+            waitingTimes.getMean(),
+            waitingTimes.getPercentile(0.5),
+            waitingTimes.getPercentile(0.95)
+        );
+    }
+}
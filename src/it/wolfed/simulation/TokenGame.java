@@ -0,0 +1,373 @@
+package it.wolfed.simulation;
+
+import it.wolfed.analysis.CompiledNet;
+import it.wolfed.model.PetriNetGraph;
+import java.util.Random;
+
+/**
+ * Headless token game on a {@link CompiledNet}.
+ *
+ * The enabled transitions are kept in an array set, updated on each
+ * firing: for every input arc a transition counts the places short of
+ * tokens, and only the consumers of the places whose marking changed are
+ * rechecked (and only if the change crosses their arc weight). A firing
+ * then costs the arcs of the transition and of its neighbours, whatever
+ * the size of the net, and picking a random enabled transition is O(1).
+ *
+ * Not thread-safe: one game per thread (the compiled net may be shared).
+ */
+public class TokenGame
+{
+    private final CompiledNet net;
+
+    private final int[] presetStart, preset, presetWeight;
+
+    private final int[] postsetStart, postset, postsetWeight;
+
+    /**
+     * Consumers of each place, with the weight of the arc.
+     */
+    private final int[] consumersStart, consumers, consumerWeight;
+
+    private final int[] marking;
+
+    /**
+     * Input places short of tokens, by transition.
+     */
+    private final int[] deficit;
+
+    /**
+     * Enabled transitions (first enabledCount) and their position, -1 if
+     * disabled.
+     */
+    private final int[] enabled, position;
+
+    private int enabledCount;
+
+    /**
+     * Transitions fired since the last reset.
+     */
+    private long steps;
+
+    /**
+     * {@link TokenGame} Constructor.
+     *
+     * Must be called on the thread owning the graph model.
+     *
+     * @param graph
+     */
+    public TokenGame(PetriNetGraph graph)
+    {
+        this(CompiledNet.compile(graph));
+    }
+
+    /**
+     * {@link TokenGame} Constructor, from the initial marking of the net.
+     *
+     * @param net
+     */
+    public TokenGame(CompiledNet net)
+    {
+        this.net = net;
+        presetStart = net.getPresetStart();
+        preset = net.getPreset();
+        presetWeight = net.getPresetWeight();
+        postsetStart = net.getPostsetStart();
+        postset = net.getPostset();
+        postsetWeight = net.getPostsetWeight();
+        consumersStart = net.getConsumersStart();
+        consumers = net.getConsumers();
+
+        // Weights by consumer, found through the presets
+        consumerWeight = new int[consumers.length];
+
+        for (int t = 0; t < net.getTransitionCount(); t++)
+        {
+            for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+            {
+                int p = preset[k];
+                int j = consumersStart[p];
+
+                while (consumers[j] != t)
+                {
+                    j++;
+                }
+
+                consumerWeight[j] = presetWeight[k];
+            }
+        }
+
+        marking = new int[net.getPlaceCount()];
+        deficit = new int[net.getTransitionCount()];
+        enabled = new int[net.getTransitionCount()];
+        position = new int[net.getTransitionCount()];
+
+        reset();
+    }
+
+    /**
+     * Returns the compiled net.
+     *
+     * @return CompiledNet
+     */
+    public CompiledNet getNet()
+    {
+        return net;
+    }
+
+    /**
+     * Goes back to the initial marking of the net.
+     */
+    public void reset()
+    {
+        setMarking(net.getInitialMarking());
+    }
+
+    /**
+     * Sets the marking, recomputing the enabled transitions (the steps
+     * start again from zero).
+     *
+     * @param marking
+     */
+    public void setMarking(int[] marking)
+    {
+        System.arraycopy(marking, 0, this.marking, 0, this.marking.length);
+        enabledCount = 0;
+        steps = 0;
+
+        for (int t = 0; t < deficit.length; t++)
+        {
+            deficit[t] = 0;
+
+            for (int k = presetStart[t]; k < presetStart[t + 1]; k++)
+            {
+                if(marking[preset[k]] < presetWeight[k])
+                {
+                    deficit[t]++;
+                }
+            }
+
+            position[t] = -1;
+
+            if(deficit[t] == 0)
+            {
+                enable(t);
+            }
+        }
+    }
+
+    /**
+     * Sets the tokens of a place, rechecking only its consumers.
+     *
+     * @param place
+     * @param tokens
+     */
+    public void setTokens(int place, int tokens)
+    {
+        int before = marking[place];
+        marking[place] = tokens;
+        update(place, before, tokens);
+    }
+
+    /**
+     * Returns a copy of the marking.
+     *
+     * @return int[]
+     */
+    public int[] getMarking()
+    {
+        return marking.clone();
+    }
+
+    /**
+     * Returns the tokens of a place.
+     *
+     * @param place
+     * @return int
+     */
+    public int getTokens(int place)
+    {
+        return marking[place];
+    }
+
+    /**
+     * Returns the number of enabled transitions.
+     *
+     * @return int
+     */
+    public int getEnabledCount()
+    {
+        return enabledCount;
+    }
+
+    /**
+     * Returns the i-th enabled transition (in no particular order).
+     *
+     * @param i
+     * @return int
+     */
+    public int getEnabled(int i)
+    {
+        return enabled[i];
+    }
+
+    /**
+     * Returns if a transition is enabled.
+     *
+     * @param transition
+     * @return boolean
+     */
+    public boolean isEnabled(int transition)
+    {
+        return position[transition] >= 0;
+    }
+
+    /**
+     * Returns if no transition is enabled.
+     *
+     * @return boolean
+     */
+    public boolean isDeadlock()
+    {
+        return enabledCount == 0;
+    }
+
+    /**
+     * Returns the transitions fired since the last reset.
+     *
+     * @return long
+     */
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * Fires an enabled transition.
+     *
+     * @param transition
+     * @throws IllegalStateException if not enabled
+     */
+    public void fire(int transition)
+    {
+        if(position[transition] < 0)
+        {
+            throw new IllegalStateException("Transition " + transition + " is not enabled");
+        }
+
+        for (int k = presetStart[transition]; k < presetStart[transition + 1]; k++)
+        {
+            int p = preset[k];
+            int before = marking[p];
+            marking[p] = before - presetWeight[k];
+            update(p, before, marking[p]);
+        }
+
+        for (int k = postsetStart[transition]; k < postsetStart[transition + 1]; k++)
+        {
+            int p = postset[k];
+            int before = marking[p];
+            marking[p] = before + postsetWeight[k];
+            update(p, before, marking[p]);
+        }
+
+        steps++;
+    }
+
+    /**
+     * Fires a random enabled transition.
+     *
+     * @param random
+     * @return int  the transition, -1 on a deadlock
+     */
+    public int step(Random random)
+    {
+        if(enabledCount == 0)
+        {
+            return -1;
+        }
+
+        int transition = enabled[enabledCount == 1 ? 0 : random.nextInt(enabledCount)];
+        fire(transition);
+
+        return transition;
+    }
+
+    /**
+     * Random walk, up to a deadlock or maxSteps firings.
+     *
+     * @param random
+     * @param maxSteps
+     * @return long     the firings
+     */
+    public long run(Random random, long maxSteps)
+    {
+        long fired = 0;
+
+        while (fired < maxSteps && step(random) >= 0)
+        {
+            fired++;
+        }
+
+        return fired;
+    }
+
+    /**
+     * Rechecks the consumers of a place whose marking changed.
+     *
+     * @param place
+     * @param before
+     * @param after
+     */
+    private void update(int place, int before, int after)
+    {
+        for (int j = consumersStart[place]; j < consumersStart[place + 1]; j++)
+        {
+            int weight = consumerWeight[j];
+            boolean was = before >= weight;
+
+            if(was == after >= weight)
+            {
+                continue;
+            }
+
+            int t = consumers[j];
+
+            if(was)
+            {
+                if(deficit[t]++ == 0)
+                {
+                    disable(t);
+                }
+            }
+            else if(--deficit[t] == 0)
+            {
+                enable(t);
+            }
+        }
+    }
+
+    /**
+     * Adds a transition to the enabled set.
+     *
+     * @param transition
+     */
+    private void enable(int transition)
+    {
+        position[transition] = enabledCount;
+        enabled[enabledCount++] = transition;
+    }
+
+    /**
+     * Removes a transition from the enabled set (swapping the last one in).
+     *
+     * @param transition
+     */
+    private void disable(int transition)
+    {
+        int last = enabled[--enabledCount];
+        enabled[position[transition]] = last;
+        position[last] = position[transition];
+        position[transition] = -1;
+    }
+}
@@ -1,34 +1,29 @@
 package it.wolfed.swing;
 
-import com.mxgraph.util.mxEvent;
-import com.mxgraph.util.mxEventObject;
-import com.mxgraph.util.mxEventSource;
-import it.wolfed.model.PetriNetGraph;
+import it.wolfed.analysis.StructuralSoundness;
+import it.wolfed.analysis.WorkflowAnalysis;
+import it.wolfed.event.AnalysisListener;
+import it.wolfed.event.AnalysisScheduler;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
-public final class AnalysisComponent extends JPanel
+public final class AnalysisComponent extends JPanel implements AnalysisListener
 {
-    private PetriNetGraph graph;
+    public AnalysisComponent(AnalysisScheduler scheduler)
+    {
+        // Auto update analysis panel when a new analysis is published
+        scheduler.addAnalysisListener(this);
+    }
     
-    public AnalysisComponent(PetriNetGraph graph)
+    @Override
+    public void analysisCompleted(WorkflowAnalysis analysis)
     {
-        this.graph = graph;
-        process();
-        
-        // Auto update analysis panel on change
-        graph.getModel().addListener(mxEvent.CHANGE, new mxEventSource.mxIEventListener()
-        {
-            @Override
-            public void invoke(Object sender, mxEventObject evt)
-            {
-                process();
-                doLayout();
-            }
-        });
+        process(analysis);
+        revalidate();
+        repaint();
     }
     
-    public void process()
+    public void process(WorkflowAnalysis analysis)
     {
         // Refresh
         removeAll();
@@ -37,12 +32,27 @@ public final class AnalysisComponent extends JPanel
         add(new JLabel(
             "<html>"
             + "<strong>Is WorkFlow: </strong>"
-            + checkProperty("Single Initial Place", graph.isSingleInitialPlace()) + " | "
-            + checkProperty("Single Final Place", graph.isSingleFinalPlace()) + " | "
-            + checkProperty("Flow Strongly Connected", graph.isWorkflowStronglyConnected())
+            + checkProperty("Single Initial Place", analysis.isSingleInitialPlace()) + " | "
+            + checkProperty("Single Final Place", analysis.isSingleFinalPlace()) + " | "
+            + checkProperty("Flow Strongly Connected", analysis.isWorkflowStronglyConnected())
             +"</html>"
 
         ));
+
+        // Structure
+        add(new JLabel(
+            "<html>"
+            + "<strong>Class: </strong>" + analysis.getClassification().getName() + " | "
+            + checkSoundness(analysis.getStructuralSoundness())
+            + "</html>"
+        ));
+    }
+
+    private String checkSoundness(StructuralSoundness.Verdict verdict)
+    {
+        return (verdict == StructuralSoundness.Verdict.UNKNOWN)
+            ? "<span>Soundness not decided structurally</span> "
+            : checkProperty("Sound", verdict == StructuralSoundness.Verdict.SOUND);
     }
     
     private String checkProperty(String text, Boolean question)
@@ -4,10 +4,8 @@ import com.mxgraph.model.mxGeometry;
 import com.mxgraph.model.mxIGraphModel;
 import com.mxgraph.swing.handler.mxConnectionHandler;
 import com.mxgraph.swing.mxGraphComponent;
-import com.mxgraph.util.mxEvent;
-import com.mxgraph.util.mxEventObject;
-import com.mxgraph.util.mxEventSource;
 import com.mxgraph.util.mxPoint;
+import it.wolfed.event.AnalysisScheduler;
 import it.wolfed.event.AutoUpdateStyleListener;
 import it.wolfed.model.InterfaceVertex;
 import it.wolfed.model.PetriNetGraph;
@@ -22,10 +20,16 @@ import javax.swing.JPopupMenu;
 
 public class GraphComponent extends mxGraphComponent
 {
+    /**
+     * Token game on the graph (overlays only).
+     */
+    private final TokenGameAnimator tokenGame = new TokenGameAnimator(this);
+
     /**
      * @param graph
+     * @param scheduler
      */
-    public GraphComponent(PetriNetGraph graph)
+    public GraphComponent(PetriNetGraph graph, AnalysisScheduler scheduler)
     {
         super(graph);
 
@@ -47,10 +51,8 @@ public class GraphComponent extends mxGraphComponent
         // Autocreate on mouseRelease
         getConnectionHandler().setCreateTarget(true);
         
-        // Autoupdate Style cells on Change
-        AutoUpdateStyleListener autoupdateGraph = new AutoUpdateStyleListener(graph);
-        graph.getModel().addListener(mxEvent.CHANGE, autoupdateGraph);
-        autoupdateGraph.invoke(null, null);
+        // Autoupdate Style cells on every published analysis
+        scheduler.addAnalysisListener(new AutoUpdateStyleListener(graph));
     }
     
     @Override
@@ -59,6 +61,16 @@ public class GraphComponent extends mxGraphComponent
         return (PetriNetGraph) super.getGraph();
     }
 
+    /**
+     * Returns the token game of the graph.
+     *
+     * @return TokenGameAnimator
+     */
+    public TokenGameAnimator getTokenGame()
+    {
+        return tokenGame;
+    }
+
    /*
     * Custom create connection handler
     */
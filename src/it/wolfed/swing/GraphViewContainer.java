@@ -1,6 +1,7 @@
 package it.wolfed.swing;
 
 
+import it.wolfed.event.AnalysisScheduler;
 import it.wolfed.model.PetriNetGraph;
 import java.awt.BorderLayout;
 import java.awt.Container;
@@ -10,17 +11,30 @@ public class GraphViewContainer extends Container
 {
     private PetriNetGraph graph;
     
+    private GraphComponent graphComponent;
+    
     public GraphViewContainer(PetriNetGraph graph)
     {
         this.graph = graph;
 
+        // Analysis runs in background, shared by the graph and analysis views
+        AnalysisScheduler scheduler = new AnalysisScheduler(graph);
+
         setLayout(new BorderLayout(2, 2));
-        add(new GraphComponent(graph), BorderLayout.CENTER);
-        add(new AnalysisComponent(graph), BorderLayout.SOUTH);
+        graphComponent = new GraphComponent(graph, scheduler);
+        add(graphComponent, BorderLayout.CENTER);
+        add(new AnalysisComponent(scheduler), BorderLayout.SOUTH);
+        
+        scheduler.schedule();
     }
 
     public PetriNetGraph getGraph()
     {
         return graph;
     }
+
+    public GraphComponent getGraphComponent()
+    {
+        return graphComponent;
+    }
 }
@@ -0,0 +1,436 @@
+package it.wolfed.swing;
+
+import it.wolfed.model.NetBinaryFormat;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.util.Constants;
+import it.wolfed.util.SpringUtilities;
+import it.wolfed.util.StaxUtilities;
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.SpringLayout;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Imports a batch of pnml and binary files.
+ *
+ * The files are parsed and their nets built concurrently, on a pool of at
+ * most one thread per processor; each net is attached to a new tab on the
+ * EDT as soon as it is built. The dialog shows the progress of every file
+ * (bytes read) and cancels the whole batch: the pending files are dropped
+ * and the running ones stop at their next read.
+ */
+public class ImportDialog extends JDialog
+{
+    /**
+     * The editor receiving the nets.
+     */
+    private final WolfedEditor editor;
+
+    /**
+     * One import for each file.
+     */
+    private final List<FileImport> imports = new ArrayList<>();
+
+    /**
+     * Runs the imports.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Refreshes the progress bars.
+     */
+    private final Timer timer;
+
+    private final JButton button = new JButton("Cancel");
+
+    /**
+     * Set by the cancel button, read by the workers.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * {@link ImportDialog} Constructor.
+     *
+     * @param editor
+     * @param files
+     */
+    public ImportDialog(WolfedEditor editor, List<File> files)
+    {
+        super(editor, "Import " + files.size() + " file(s)");
+        this.editor = editor;
+
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, Constants.EDITOR_NAME + "-import-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (File file : files)
+        {
+            imports.add(new FileImport(file));
+        }
+
+        timer = new Timer(Constants.IMPORT_PROGRESS_DELAY, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                refresh();
+            }
+        });
+
+        button.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if(isFinished())
+                {
+                    dispose();
+                }
+                else
+                {
+                    cancel();
+                }
+            }
+        });
+
+        addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowClosing(WindowEvent e)
+            {
+                if( ! isFinished())
+                {
+                    cancel();
+                }
+
+                dispose();
+            }
+        });
+
+        setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        setContentPane(createProgressWindow());
+        setSize(500, Math.min(400, 80 + 30 * files.size()));
+        setLocationRelativeTo(editor);
+    }
+
+    /**
+     * Shows the dialog and starts the imports.
+     */
+    public void start()
+    {
+        setVisible(true);
+
+        for (FileImport fileImport : imports)
+        {
+            executor.execute(fileImport);
+        }
+
+        executor.shutdown();
+        timer.start();
+    }
+
+    /**
+     * Cancels the imports not finished yet.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    private JPanel createProgressWindow()
+    {
+        JPanel window = new JPanel(new SpringLayout());
+
+        for (FileImport fileImport : imports)
+        {
+            JLabel label = new JLabel(fileImport.file.getName());
+            label.setLabelFor(fileImport.bar);
+            fileImport.bar.setStringPainted(true);
+            fileImport.bar.setString("Waiting");
+
+            window.add(label);
+            window.add(fileImport.bar);
+        }
+
+        //Layout the panel.
+        SpringUtilities.makeCompactGrid(window,
+                imports.size(), 2,  //rows, cols
+                6, 6,               //initX, initY
+                6, 6);              //xPad, yPad
+
+        JPanel mainWindow = new JPanel(new BorderLayout());
+        mainWindow.add(new JScrollPane(window), BorderLayout.CENTER);
+        mainWindow.add(button, BorderLayout.PAGE_END);
+
+        return mainWindow;
+    }
+
+    /**
+     * Returns if every import is over (done, failed or cancelled).
+     *
+     * @return boolean
+     */
+    private boolean isFinished()
+    {
+        return executor.isTerminated();
+    }
+
+    /**
+     * Updates the progress bars; once all the imports are over the dialog
+     * closes, unless something went wrong.
+     */
+    private void refresh()
+    {
+        boolean failed = false;
+
+        for (FileImport fileImport : imports)
+        {
+            fileImport.refresh();
+            failed |= fileImport.error != null;
+        }
+
+        if( ! isFinished())
+        {
+            return;
+        }
+
+        timer.stop();
+
+        if(failed || cancelled)
+        {
+            button.setText("Close");
+        }
+        else
+        {
+            dispose();
+        }
+    }
+
+    /**
+     * Attaches a net to a new tab, on the EDT.
+     *
+     * @param tabName
+     * @param graph
+     */
+    private void attach(final String tabName, final PetriNetGraph graph)
+    {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if( ! cancelled)
+                {
+                    editor.insertGraph(tabName, graph);
+                }
+            }
+        });
+    }
+
+    /**
+     * The import of a file, run by a worker.
+     */
+    private class FileImport implements Runnable
+    {
+        private final File file;
+
+        /**
+         * Owned by the EDT.
+         */
+        private final JProgressBar bar = new JProgressBar(0, 1000);
+
+        private final long length;
+
+        private volatile long read;
+
+        private volatile int nets;
+
+        private volatile boolean started;
+
+        private volatile boolean done;
+
+        private volatile Exception error;
+
+        FileImport(File file)
+        {
+            this.file = file;
+            this.length = file.length();
+        }
+
+        @Override
+        public void run()
+        {
+            started = true;
+
+            try
+            {
+                if(cancelled)
+                {
+                    return;
+                }
+
+                if(file.getName().endsWith(Constants.EDITOR_EXPORT_BINARY))
+                {
+                    attach(file.getName(), NetBinaryFormat.load(file));
+                    nets++;
+                    read = length;
+                }
+                else
+                {
+                    importPnml();
+                }
+            }
+            catch (XMLStreamException | IOException | RuntimeException ex)
+            {
+                if( ! cancelled)
+                {
+                    error = ex;
+                }
+            }
+            finally
+            {
+                done = true;
+            }
+        }
+
+        /**
+         * Streams the nets of a pnml file (one or MORE).
+         *
+         * @throws XMLStreamException
+         * @throws IOException
+         * @see <a href="http://www.pnml.org/">http://www.pnml.org/</a>
+         */
+        private void importPnml() throws XMLStreamException, IOException
+        {
+            // Sets the graph id as the filename without ext
+            String defaultId = file.getName().substring(0, file.getName().lastIndexOf('.'));
+
+            try (InputStream input = new BufferedInputStream(new ProgressInputStream(new FileInputStream(file))))
+            {
+                XMLStreamReader reader = StaxUtilities.newInputFactory().createXMLStreamReader(input);
+
+                try
+                {
+                    while (reader.hasNext())
+                    {
+                        if(reader.next() == XMLStreamConstants.START_ELEMENT
+                            && reader.getLocalName().equals(Constants.PNML_NET))
+                        {
+                            attach(file.getName(), PetriNetGraph.factory(reader, defaultId));
+                            nets++;
+                        }
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+        }
+
+        /**
+         * Shows the state of the import, on the EDT.
+         */
+        void refresh()
+        {
+            if(error != null)
+            {
+                // Runtime failures (NPE...) may carry no message
+                String message = error.getMessage() != null ? error.getMessage() : error.toString();
+                bar.setString("Error: " + message);
+                bar.setToolTipText(message);
+            }
+            else if(done && cancelled)
+            {
+                bar.setString("Cancelled");
+            }
+            else if(done)
+            {
+                bar.setValue(bar.getMaximum());
+                bar.setString(nets + " net(s)");
+            }
+            else if(cancelled)
+            {
+                bar.setString(started ? "Cancelling" : "Cancelled");
+            }
+            else if(started)
+            {
+                bar.setValue(length == 0 ? 0 : (int) (bar.getMaximum() * read / length));
+                bar.setString(nets + " net(s), " + (100 * read / Math.max(1, length)) + "%");
+            }
+        }
+
+        /**
+         * Counts the bytes read and stops the parser once cancelled.
+         */
+        private class ProgressInputStream extends FilterInputStream
+        {
+            ProgressInputStream(InputStream input)
+            {
+                super(input);
+            }
+
+            @Override
+            public int read() throws IOException
+            {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if(cancelled)
+                {
+                    throw new InterruptedIOException("Import cancelled");
+                }
+
+                int n = super.read(b, off, len);
+
+                if(n > 0)
+                {
+                    read += n;
+                }
+
+                return n;
+            }
+        }
+    }
+}
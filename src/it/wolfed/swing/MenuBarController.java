@@ -41,6 +41,17 @@ public class MenuBarController extends JMenuBar
         //Constants.LAYOUT_ORGANIC,
     };
     
+    /**
+     * Token game commands (in menu).
+     */
+    private final String[] tokenGameCommands =
+    {
+        Constants.TOKENGAME_START,
+        Constants.TOKENGAME_STEP,
+        Constants.TOKENGAME_PLAY,
+        Constants.TOKENGAME_STOP
+    };
+    
     
     public MenuBarController(final WolfedEditor editor)
     {
@@ -89,6 +100,18 @@ public class MenuBarController extends JMenuBar
             });
             fileMenu.add(savePnmlItem);
             
+            // Save Binary
+            JMenuItem saveBinaryItem = new JMenuItem("Save " + Constants.EDITOR_EXPORT_BINARY);
+            saveBinaryItem.addMouseListener(new MouseAdapter() 
+            {
+                @Override
+                public void mousePressed(MouseEvent e)
+                {
+                    editor.saveFile(Constants.EDITOR_EXPORT_BINARY);
+                }
+            });
+            fileMenu.add(saveBinaryItem);
+            
             // Save Dot
             JMenuItem saveDotItem = new JMenuItem("Save " + Constants.EDITOR_EXPORT_GV);
             saveDotItem.addMouseListener(new MouseAdapter() 
@@ -159,6 +182,28 @@ public class MenuBarController extends JMenuBar
             }
         }
         
+        // Token game
+        {
+            JMenu tokenGameMenu = new JMenu("Token Game");
+            tokenGameMenu.setMnemonic('t');
+            add(tokenGameMenu);
+
+            for(String command : tokenGameCommands)
+            {
+                JMenuItem commandItem = new JMenuItem(command);
+                commandItem.addActionListener(new ActionListener() 
+                {  
+                    @Override
+                    public void actionPerformed(ActionEvent e)
+                    {
+                        editor.executeTokenGame(e.getActionCommand());
+                    }
+                });
+                
+                tokenGameMenu.add(commandItem);
+            }
+        }
+        
         // Help
         {
             JMenu helpMenu = new JMenu("Help");
@@ -0,0 +1,314 @@
+package it.wolfed.swing;
+
+import com.mxgraph.swing.util.mxCellOverlay;
+import com.mxgraph.util.mxConstants;
+import com.mxgraph.util.mxEvent;
+import com.mxgraph.util.mxEventObject;
+import com.mxgraph.util.mxEventSource.mxIEventListener;
+import it.wolfed.analysis.CompiledNet;
+import it.wolfed.model.PetriNetGraph;
+import it.wolfed.simulation.TokenGame;
+import it.wolfed.util.Constants;
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+import javax.swing.ImageIcon;
+import javax.swing.Timer;
+
+/**
+ * Animates a {@link TokenGame} on a {@link GraphComponent}.
+ *
+ * The live marking is drawn as overlays (token counts on the places, a
+ * marker on the enabled transitions, fired by a click): the graph model,
+ * and the initial marking of the places, are never touched. Playing fires
+ * a random enabled transition on every tick of a Swing timer, up to a
+ * deadlock. A workflow net starts with a token in its initial place. Any
+ * structural change of the graph stops the game.
+ */
+public class TokenGameAnimator implements mxIEventListener
+{
+    private final GraphComponent graphComponent;
+
+    private final Timer timer;
+
+    private final Random random = new Random();
+
+    /**
+     * The running game, null if stopped.
+     */
+    private TokenGame game;
+
+    /**
+     * {@link TokenGameAnimator} Constructor.
+     *
+     * @param graphComponent
+     */
+    public TokenGameAnimator(GraphComponent graphComponent)
+    {
+        this.graphComponent = graphComponent;
+
+        timer = new Timer(Constants.TOKENGAME_DELAY, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                step();
+            }
+        });
+    }
+
+    /**
+     * Returns if the game is running.
+     *
+     * @return boolean
+     */
+    public boolean isRunning()
+    {
+        return game != null;
+    }
+
+    /**
+     * Returns if the random walk is playing.
+     *
+     * @return boolean
+     */
+    public boolean isPlaying()
+    {
+        return timer.isRunning();
+    }
+
+    /**
+     * Sets the delay between two random firings.
+     *
+     * @param delay     milliseconds
+     */
+    public void setDelay(int delay)
+    {
+        timer.setDelay(delay);
+    }
+
+    /**
+     * Starts the game from the initial marking.
+     */
+    public void start()
+    {
+        if(game == null)
+        {
+            graphComponent.getGraph().getModel().addListener(mxEvent.CHANGE, this);
+        }
+
+        PetriNetGraph graph = graphComponent.getGraph();
+        game = new TokenGame(graph);
+
+        // A workflow net starts from a token in its initial place
+        if(graph.isWorkFlow())
+        {
+            int initialPlace = game.getNet().indexOfPlace(graph.getInitialPlaces().get(0));
+            int[] marking = game.getMarking();
+
+            if(marking[initialPlace] == 0)
+            {
+                marking[initialPlace] = 1;
+                game.setMarking(marking);
+            }
+        }
+
+        refresh();
+    }
+
+    /**
+     * Stops the game and removes the overlays.
+     */
+    public void stop()
+    {
+        timer.stop();
+
+        if(game != null)
+        {
+            graphComponent.getGraph().getModel().removeListener(this);
+            game = null;
+            graphComponent.clearCellOverlays();
+        }
+    }
+
+    /**
+     * Plays the random walk (starting the game if needed).
+     */
+    public void play()
+    {
+        if(game == null)
+        {
+            start();
+        }
+
+        timer.start();
+    }
+
+    /**
+     * Pauses the random walk.
+     */
+    public void pause()
+    {
+        timer.stop();
+    }
+
+    /**
+     * Fires a random enabled transition, pausing on a deadlock.
+     */
+    public void step()
+    {
+        if(game == null || game.step(random) < 0)
+        {
+            pause();
+        }
+
+        refresh();
+    }
+
+    /**
+     * Fires a transition, if enabled.
+     *
+     * @param transition
+     */
+    private void fire(int transition)
+    {
+        if(game != null && game.isEnabled(transition))
+        {
+            game.fire(transition);
+            refresh();
+        }
+    }
+
+    /**
+     * Stops on structural changes.
+     *
+     * @param sender
+     * @param evt
+     */
+    @Override
+    public void invoke(Object sender, mxEventObject evt)
+    {
+        List<?> changes = (List<?>) evt.getProperty("changes");
+
+        if(changes == null)
+        {
+            stop();
+            return;
+        }
+
+        for(Object change : changes)
+        {
+            if(PetriNetGraph.isStructuralChange(change))
+            {
+                stop();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Redraws the overlays of the marking.
+     */
+    private void refresh()
+    {
+        graphComponent.clearCellOverlays();
+
+        if(game == null)
+        {
+            return;
+        }
+
+        CompiledNet net = game.getNet();
+
+        for (int p = 0; p < net.getPlaceCount(); p++)
+        {
+            if(game.getTokens(p) > 0)
+            {
+                graphComponent.addCellOverlay(net.getPlace(p), new TokensOverlay(game.getTokens(p)));
+            }
+        }
+
+        for (int i = 0; i < game.getEnabledCount(); i++)
+        {
+            final int transition = game.getEnabled(i);
+            EnabledOverlay overlay = new EnabledOverlay();
+            overlay.addMouseListener(new MouseAdapter()
+            {
+                @Override
+                public void mouseReleased(MouseEvent e)
+                {
+                    fire(transition);
+                }
+            });
+
+            graphComponent.addCellOverlay(net.getTransition(transition), overlay);
+        }
+    }
+
+    /**
+     * Token count, in the middle of a place.
+     */
+    private static class TokensOverlay extends mxCellOverlay
+    {
+        private final int tokens;
+
+        TokensOverlay(int tokens)
+        {
+            super(new ImageIcon(new BufferedImage(22, 22, BufferedImage.TYPE_INT_ARGB)), tokens + " tokens");
+            this.tokens = tokens;
+            setAlign(mxConstants.ALIGN_CENTER);
+            setVerticalAlign(mxConstants.ALIGN_MIDDLE);
+        }
+
+        @Override
+        public void paint(Graphics g)
+        {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(Color.black);
+
+            if(tokens == 1)
+            {
+                g2.fillOval(getWidth() / 4, getHeight() / 4, getWidth() / 2, getHeight() / 2);
+                return;
+            }
+
+            String text = String.valueOf(tokens);
+            int x = (getWidth() - g2.getFontMetrics().stringWidth(text)) / 2;
+            int y = (getHeight() + g2.getFontMetrics().getAscent()) / 2 - 1;
+            g2.drawString(text, x, y);
+        }
+    }
+
+    /**
+     * Marker of an enabled transition, firing it on click.
+     */
+    private static class EnabledOverlay extends mxCellOverlay
+    {
+        EnabledOverlay()
+        {
+            super(new ImageIcon(new BufferedImage(14, 14, BufferedImage.TYPE_INT_ARGB)), "Enabled: click to fire");
+            setAlign(mxConstants.ALIGN_RIGHT);
+            setVerticalAlign(mxConstants.ALIGN_TOP);
+            setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        }
+
+        @Override
+        public void paint(Graphics g)
+        {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(new Color(0x31, 0xB4, 0x04));
+            g2.fillOval(1, 1, getWidth() - 2, getHeight() - 2);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.mxgraph.layout.hierarchical.mxHierarchicalLayout;
 import com.mxgraph.layout.mxCompactTreeLayout;
 import com.mxgraph.layout.mxOrganicLayout;
 import com.mxgraph.view.mxGraph;
+import it.wolfed.model.NetBinaryFormat;
 import it.wolfed.model.PetriNetGraph;
 import it.wolfed.operation.AlternationOperation;
 import it.wolfed.operation.CloneGraphOperation;
@@ -19,14 +20,16 @@ import it.wolfed.operation.SequencingOperation;
 import it.wolfed.operation.WrapGraphOperation;
 import it.wolfed.operation.ZeroOrMoreIterationOperation;
 import it.wolfed.util.Constants;
-import it.wolfed.util.IterableNodeList;
 import java.awt.Component;
 import java.awt.Toolkit;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -35,13 +38,7 @@ import javax.swing.JTabbedPane;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamException;
 
 /**
  * Wolfed. WOrkflow Light Fast EDitor.
@@ -180,49 +177,71 @@ public class WolfedEditor extends JFrame
     }
 
     /**
-     * Open the filechooser and import a valid xml\pnml file.
+     * Open the filechooser and import valid xml\pnml or binary files, or
+     * the ones of the selected directories.
      */
     public void openFile()
     {
         JFileChooser fileChooser = new JFileChooser(".");
-        fileChooser.setFileFilter(new FileNameExtensionFilter("xml, pnml", "xml", "pnml"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("xml, pnml, wnet", "xml", "pnml", "wnet"));
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setMultiSelectionEnabled(true);
         fileChooser.setCurrentDirectory(new File("nets"));
 
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
         {
-            File file = fileChooser.getSelectedFile();
-            importFile(file);
+            List<File> files = new ArrayList<>();
+            
+            for (File file : fileChooser.getSelectedFiles())
+            {
+                if(file.isDirectory())
+                {
+                    File[] children = file.listFiles(new FileFilter()
+                    {
+                        @Override
+                        public boolean accept(File child)
+                        {
+                            String name = child.getName().toLowerCase();
+                            
+                            return child.isFile()
+                                && (name.endsWith(".xml")
+                                    || name.endsWith(Constants.EDITOR_EXPORT_PNML)
+                                    || name.endsWith(Constants.EDITOR_EXPORT_BINARY));
+                        }
+                    });
+                    
+                    if(children != null)
+                    {
+                        Arrays.sort(children);
+                        files.addAll(Arrays.asList(children));
+                    }
+                }
+                else
+                {
+                    files.add(file);
+                }
+            }
+            
+            importFiles(files);
         }
     }
 
     /**
-     * Import a pnml file. Note: A pnml file can contains one or MORE nets.
-     *
-     * @see <a href="http://www.pnml.org/">http://www.pnml.org/</a>
-     * @param File pnml complaint file
+     * Imports pnml files (each one can contain one or MORE nets) and binary
+     * files, concurrently: each net gets its tab as soon as it is built.
+     * 
+     * @param files
+     * @see ImportDialog
+     * @see NetBinaryFormat
      */
-    private void importFile(File filePnml)
+    public void importFiles(List<File> files)
     {
-        try
-        {
-            DocumentBuilder builder = DocumentBuilderFactory
-                    .newInstance()
-                    .newDocumentBuilder();
-
-            Document doc = builder.parse(filePnml);
-            doc.getDocumentElement().normalize();
-
-            for (final Node netNode : new IterableNodeList(doc.getElementsByTagName(Constants.PNML_NET)))
-            {
-                // Sets the graph id as the filename without ext
-                String defaultId = filePnml.getName().substring(0, filePnml.getName().lastIndexOf('.'));
-                insertGraph(filePnml.getName(), PetriNetGraph.factory(netNode, defaultId));
-            }
-        }
-        catch (ParserConfigurationException | SAXException | IOException ex)
+        if(files.isEmpty())
         {
-            showErrorMessage(ex);
+            return;
         }
+        
+        new ImportDialog(this, files).start();
     }
 
     /**
@@ -231,6 +250,7 @@ public class WolfedEditor extends JFrame
      * @param exportType
      * @see {@link Constants#EDITOR_EXPORT_PNML}
      * @see {@link Constants#EDITOR_EXPORT_DOT}
+     * @see {@link Constants#EDITOR_EXPORT_BINARY}
      */
     public void saveFile(String exportType)
     {
@@ -256,7 +276,7 @@ public class WolfedEditor extends JFrame
                         case JOptionPane.NO_OPTION:
                         {   
                             saveFile(exportType);
-                            break;
+                            return;
                         }
                         case JOptionPane.CANCEL_OPTION: 
                         case JOptionPane.CLOSED_OPTION:
@@ -267,29 +287,34 @@ public class WolfedEditor extends JFrame
                 }
 
                 File exportedFile = fileChooser.getSelectedFile();
-                String exportedGraph = "";
+                
+                if(exportType.equals(Constants.EDITOR_EXPORT_BINARY))
+                {
+                    NetBinaryFormat.save(getSelectedGraph(), exportedFile);
+                    return;
+                }
 
-                switch (exportType)
+                // Streamed straight to the file, with no whole-graph string
+                try (Writer writer = Files.newBufferedWriter(exportedFile.toPath(), StandardCharsets.UTF_8))
                 {
-                    case Constants.EDITOR_EXPORT_PNML:
+                    switch (exportType)
                     {
-                        exportedGraph = getSelectedGraph().exportPNML();
-                        break;
-                    }
+                        case Constants.EDITOR_EXPORT_PNML:
+                        {
+                            getSelectedGraph().exportPNML(writer);
+                            break;
+                        }
 
-                    case Constants.EDITOR_EXPORT_GV:
-                    {
-                        exportedGraph = getSelectedGraph().exportDOT();
-                        break;
+                        case Constants.EDITOR_EXPORT_GV:
+                        {
+                            getSelectedGraph().exportDOT(writer);
+                            break;
+                        }
                     }
                 }
-
-                BufferedWriter pnmlWriter = new BufferedWriter(new FileWriter(exportedFile.getCanonicalPath()));
-                pnmlWriter.write(exportedGraph);
-                pnmlWriter.flush();
             }
         }
-        catch (TransformerException | ParserConfigurationException | IOException ex)
+        catch (XMLStreamException | IOException ex)
         {
             showErrorMessage(ex);
         }
@@ -469,6 +494,63 @@ public class WolfedEditor extends JFrame
         }
     }
     
+    /**
+     * Drives the token game of the selected graph.
+     *
+     * @param command
+     * @see {@link Constants#TOKENGAME_START}
+     */
+    public void executeTokenGame(String command)
+    {
+        if(tabs.getSelectedComponent() == null)
+        {
+            return;
+        }
+
+        TokenGameAnimator tokenGame = ((GraphViewContainer) tabs.getSelectedComponent())
+            .getGraphComponent()
+            .getTokenGame();
+
+        switch (command)
+        {
+            case Constants.TOKENGAME_START:
+            {
+                tokenGame.start();
+                break;
+            }
+
+            case Constants.TOKENGAME_STEP:
+            {
+                if( ! tokenGame.isRunning())
+                {
+                    tokenGame.start();
+                }
+
+                tokenGame.step();
+                break;
+            }
+
+            case Constants.TOKENGAME_PLAY:
+            {
+                if(tokenGame.isPlaying())
+                {
+                    tokenGame.pause();
+                }
+                else
+                {
+                    tokenGame.play();
+                }
+                break;
+            }
+
+            case Constants.TOKENGAME_STOP:
+            {
+                tokenGame.stop();
+                break;
+            }
+        }
+    }
+    
     /**
      * Show About Message
      */
@@ -17,6 +17,7 @@ public class Constants
     public static final String EDITOR_NAME                          = "WoLFEd";
     public static final String EDITOR_EXPORT_GV                    = ".gv";
     public static final String EDITOR_EXPORT_PNML                   = ".pnml";
+    public static final String EDITOR_EXPORT_BINARY                 = ".wnet";
     
     // Styles
     public static final String STYLE_TRANSITION                     = "fillColor=white;";
@@ -46,6 +47,19 @@ public class Constants
     public static final String OPERATION_PARALLELISM                = "Parallelism";
     public static final String OPERATION_WRAP                       = "Wrap";
     
+    // Analysis
+    public static final int ANALYSIS_DELAY                          = 40;
+    
+    // Import
+    public static final int IMPORT_PROGRESS_DELAY                   = 100;
+    
+    // Token game
+    public static final int TOKENGAME_DELAY                         = 400;
+    public static final String TOKENGAME_START                      = "Start";
+    public static final String TOKENGAME_STEP                       = "Step";
+    public static final String TOKENGAME_PLAY                       = "Play / Pause";
+    public static final String TOKENGAME_STOP                       = "Stop";
+    
     // Layouts
     public static final String LAYOUT_VERTICALTREE                  = "VerticalTree";
     public static final String LAYOUT_HORIZONTALTREE                = "HorizontalTree";
@@ -74,6 +88,10 @@ public class Constants
     public static final String PNML_TOOL_SPECIFIC                   = "toolspecific";
     public static final String PNML_TOOL                            = "tool";
     public static final String PNML_TOOL_VERSION                    = "version";
+    public static final String PNML_TOOL_WOPED                      = "WoPeD";
+    public static final String PNML_TOOL_WOPED_VERSION              = "1.0";
+    public static final String PNML_TIME                            = "time";
+    public static final String PNML_TIMEUNIT                        = "timeUnit";
    
 //    public static final String NAMED_TARGET = "namedTarget";
 //    public static final String POSITION = "position";
@@ -0,0 +1,151 @@
+package it.wolfed.util;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Cursor helpers for the streaming (StAX) pnml import and export.
+ *
+ * An element is read from its START_ELEMENT to its END_ELEMENT: the
+ * parsers walk the children with {@link StaxUtilities#nextChild}, and
+ * consume each of them (or skip it) before asking for the next one.
+ */
+public class StaxUtilities
+{
+    /**
+     * Returns a new input factory, with no DTD nor external entities.
+     *
+     * @return XMLInputFactory
+     */
+    public static XMLInputFactory newInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return factory;
+    }
+
+    /**
+     * Moves to the next child element of the current one.
+     *
+     * The cursor must be on the START_ELEMENT of the parent, or on the
+     * END_ELEMENT of the previous child.
+     *
+     * @param reader
+     * @return boolean  false on the END_ELEMENT of the parent
+     * @throws XMLStreamException
+     */
+    public static boolean nextChild(XMLStreamReader reader) throws XMLStreamException
+    {
+        while (reader.hasNext())
+        {
+            switch (reader.next())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Skips the current element, up to its END_ELEMENT.
+     *
+     * @param reader
+     * @throws XMLStreamException
+     */
+    public static void skip(XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+
+        while (depth > 0 && reader.hasNext())
+        {
+            switch (reader.next())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                {
+                    depth++;
+                    break;
+                }
+
+                case XMLStreamConstants.END_ELEMENT:
+                {
+                    depth--;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the text of the current element and of its descendants (as
+     * the dom getTextContent()), trimmed, up to its END_ELEMENT.
+     *
+     * @param reader
+     * @return String
+     * @throws XMLStreamException
+     */
+    public static String readText(XMLStreamReader reader) throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+
+        while (depth > 0 && reader.hasNext())
+        {
+            switch (reader.next())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                {
+                    depth++;
+                    break;
+                }
+
+                case XMLStreamConstants.END_ELEMENT:
+                {
+                    depth--;
+                    break;
+                }
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                }
+            }
+        }
+
+        return text.toString().trim();
+    }
+
+    /**
+     * Writes an element holding only a text, empty (<text/>) if the text
+     * is.
+     *
+     * @param writer
+     * @param name
+     * @param text
+     * @throws XMLStreamException
+     */
+    public static void writeTextElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException
+    {
+        if(text.isEmpty())
+        {
+            writer.writeEmptyElement(name);
+            return;
+        }
+
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+}